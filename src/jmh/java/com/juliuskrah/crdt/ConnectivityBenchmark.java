@@ -0,0 +1,102 @@
+package com.juliuskrah.crdt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Connectivity queries under edge churn, on a sparse random graph of many small components.
+ * Each {@link #churn()} changes one edge and asks whether two random vertices are connected: added edges join
+ * components in the index as they come, while every removed edge has the next query rebuild it, so the score
+ * follows the fraction of removals from near constant time towards the cost of a rebuild. {@link #findAnyPath()}
+ * answers the same queries with a search, for comparison.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectivityBenchmark {
+    private static final int SAMPLES = 1 << 16;
+    @Param({"10000", "100000"})
+    private int size;
+    @Param({"0", "0.001", "0.01"})
+    private double removeFraction;
+    private LwwElementGraph<Integer> graph;
+    private Edge<Integer>[] edges;
+    private boolean[] removes;
+    private int[] sources;
+    private int[] destinations;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        graph = new LwwElementGraph<>("node1");
+        final Vertex<Integer>[] vertices = new Vertex[size];
+        for (int i = 0; i < size; i++) {
+            graph.addVertex(i);
+            vertices[i] = Vertex.of(i, graph.findVectorClock(i));
+        }
+        final var random = new Random(42);
+        // half an edge per vertex leaves components of a few vertices, and paths that searches must exhaust
+        for (int i = 0; i < size / 2; i++) {
+            graph.addEdge(Edge.of(vertices[random.nextInt(size)], vertices[random.nextInt(size)]));
+        }
+        edges = new Edge[SAMPLES];
+        removes = new boolean[SAMPLES];
+        sources = new int[SAMPLES];
+        destinations = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            removes[i] = i > 0 && random.nextDouble() < removeFraction;
+            // a removal takes back an edge an earlier sample added, so that it splits what the index joined
+            edges[i] = removes[i] ? edges[random.nextInt(i)]
+                : Edge.of(vertices[random.nextInt(size)], vertices[random.nextInt(size)]);
+            sources[i] = random.nextInt(size);
+            destinations[i] = random.nextInt(size);
+        }
+        graph.isConnected(0, 1);
+    }
+
+    private int advance() {
+        next = (next + 1) & (SAMPLES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean isConnected() {
+        final int sample = advance();
+        return graph.isConnected(sources[sample], destinations[sample]);
+    }
+
+    @Benchmark
+    public boolean findAnyPath() {
+        final int sample = advance();
+        return !graph.findAnyPath(sources[sample], destinations[sample]).isEmpty();
+    }
+
+    @Benchmark
+    public boolean churn() {
+        final int sample = advance();
+        if (removes[sample]) {
+            graph.removeEdge(edges[sample]);
+        } else {
+            graph.addEdge(edges[sample]);
+        }
+        return graph.isConnected(sources[sample], destinations[sample]);
+    }
+}
@@ -0,0 +1,133 @@
+package com.juliuskrah.crdt;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link LwwElementGraph#findAnyPath(Comparable, Comparable)} across graph sizes and shapes.
+ * The source and destination sit at opposite ends of the graph, and {@link #findMissingPath()} searches for a
+ * vertex with no edges, so the whole component is traversed.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindAnyPathBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int size;
+    @Param({"LINE", "GRID", "RANDOM", "STAR"})
+    private Shape shape;
+    private LwwElementGraph<Integer> graph;
+    private Vertex<Integer>[] vertices;
+
+    /**
+     * How the vertices are connected.
+     */
+    public enum Shape {
+        /**
+         * Every vertex is connected to the next, the longest possible path.
+         */
+        LINE,
+        /**
+         * A square grid, each vertex connected to its right and lower neighbour.
+         */
+        GRID,
+        /**
+         * Every vertex connected to four random vertices.
+         */
+        RANDOM,
+        /**
+         * Every vertex connected to the first, a single hub.
+         */
+        STAR
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        graph = new LwwElementGraph<>("node1");
+        // the extra vertex has no edges, see findMissingPath
+        vertices = new Vertex[size + 1];
+        for (int i = 0; i <= size; i++) {
+            graph.addVertex(i);
+            vertices[i] = Vertex.of(i, graph.findVectorClock(i));
+        }
+        switch (shape) {
+            case LINE:
+                connectLine();
+                break;
+            case GRID:
+                connectGrid();
+                break;
+            case RANDOM:
+                connectRandom();
+                break;
+            default:
+                connectStar();
+        }
+    }
+
+    private void connect(int source, int destination) {
+        graph.addEdge(Edge.of(vertices[source], vertices[destination]));
+    }
+
+    private void connectLine() {
+        for (int i = 1; i < size; i++) {
+            connect(i - 1, i);
+        }
+    }
+
+    private void connectGrid() {
+        final int side = (int) Math.ceil(Math.sqrt(size));
+        for (int i = 0; i < size; i++) {
+            if ((i + 1) % side != 0 && i + 1 < size) {
+                connect(i, i + 1);
+            }
+            if (i + side < size) {
+                connect(i, i + side);
+            }
+        }
+    }
+
+    private void connectRandom() {
+        final var random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < 4; j++) {
+                connect(i, random.nextInt(size));
+            }
+        }
+    }
+
+    private void connectStar() {
+        for (int i = 1; i < size; i++) {
+            connect(0, i);
+        }
+    }
+
+    @Benchmark
+    public Set<Integer> findAnyPath() {
+        return graph.findAnyPath(1, size - 1);
+    }
+
+    @Benchmark
+    public Set<Integer> findMissingPath() {
+        return graph.findAnyPath(1, size);
+    }
+}
@@ -0,0 +1,89 @@
+package com.juliuskrah.crdt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of vertex and edge mutations. The edge benchmarks work on a hub adjacent to {@link #degree}
+ * vertices, so their scores show how edge writes scale with the degree of the vertices they touch.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphMutationBenchmark {
+    private static final int HUB = 0;
+    @Param({"10000", "100000"})
+    private int size;
+    @Param({"10", "1000", "10000"})
+    private int degree;
+    private LwwElementGraph<Integer> graph;
+    private Vertex<Integer>[] vertices;
+    private int nextVertex;
+    private int nextNeighbor;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        graph = new LwwElementGraph<>("node1");
+        vertices = new Vertex[size];
+        for (int i = 0; i < size; i++) {
+            graph.addVertex(i);
+            vertices[i] = Vertex.of(i, graph.findVectorClock(i));
+        }
+        for (int i = 1; i <= degree; i++) {
+            graph.addEdge(Edge.of(vertices[HUB], vertices[i]));
+        }
+    }
+
+    /**
+     * @return an element outside the graph, so vertex benchmarks do not disturb the edges
+     */
+    private int nextVertex() {
+        nextVertex = nextVertex + 1 == size ? 0 : nextVertex + 1;
+        return size + nextVertex;
+    }
+
+    private Edge<Integer> nextHubEdge() {
+        nextNeighbor = nextNeighbor == degree ? 1 : nextNeighbor + 1;
+        return Edge.of(vertices[HUB], vertices[nextNeighbor]);
+    }
+
+    @Benchmark
+    public void addVertex() {
+        graph.addVertex(nextVertex());
+    }
+
+    @Benchmark
+    public void removeVertex() {
+        graph.removeVertex(nextVertex());
+    }
+
+    @Benchmark
+    public boolean addHubEdge() {
+        // the hub already has the edge, as it does when replicas re-send it
+        return graph.addEdge(nextHubEdge());
+    }
+
+    @Benchmark
+    public boolean removeAndAddHubEdge() {
+        final var edge = nextHubEdge();
+        graph.removeEdge(edge);
+        return graph.addEdge(edge);
+    }
+}
@@ -0,0 +1,57 @@
+package com.juliuskrah.crdt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk import of {@link #size} vertices, each connected to the previous one, into an empty graph,
+ * one change at a time against a single {@link LwwElementGraph#batch(java.util.function.Consumer)}.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+    @Param({"10000", "100000"})
+    private int size;
+
+    @Benchmark
+    public LwwElementGraph<Integer> singleChanges() {
+        final var graph = new LwwElementGraph<Integer>("node1");
+        for (int i = 0; i < size; i++) {
+            graph.addVertex(i);
+        }
+        for (int i = 1; i < size; i++) {
+            graph.addEdge(Edge.of(Vertex.of(i - 1, graph.findVectorClock(i - 1)),
+                Vertex.of(i, graph.findVectorClock(i))));
+        }
+        return graph;
+    }
+
+    @Benchmark
+    public LwwElementGraph<Integer> batch() {
+        final var graph = new LwwElementGraph<Integer>("node1");
+        graph.batch(batch -> {
+            for (int i = 0; i < size; i++) {
+                batch.addVertex(i);
+            }
+            for (int i = 1; i < size; i++) {
+                batch.addEdge(i - 1, i);
+            }
+        });
+        return graph;
+    }
+}
@@ -0,0 +1,162 @@
+package com.juliuskrah.crdt;
+
+import java.lang.ref.Reference;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link LongLwwElementGraph} against {@link LwwElementGraph} of {@code Long} elements on the same random graph of
+ * {@link #size} vertices with as many edges: building it, lookups of random elements and shortest paths between
+ * them, in operations per second. The {@code footprint} benchmarks report the heap a built graph retains per vertex
+ * as the {@code bytesPerVertex} counter, their time is that of the collections around every build.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongGraphBenchmark {
+    private static final int SAMPLES = 1 << 16;
+    @Param({"10000", "1000000"})
+    private int size;
+    private long[] sources;
+    private long[] destinations;
+    private LwwElementGraph<Long> genericGraph;
+    private LongLwwElementGraph longGraph;
+    private long[] samples;
+    private int next;
+
+    /**
+     * Heap a built graph retains, read after the collector ran.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerVertex;
+
+        private long before;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            before = usedHeap();
+        }
+
+        void retained(Object graph, int vertices) {
+            bytesPerVertex = (usedHeap() - before) / vertices;
+            Reference.reachabilityFence(graph);
+        }
+
+        private static long usedHeap() {
+            final var runtime = Runtime.getRuntime();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final var random = new Random(42);
+        sources = new long[size];
+        destinations = new long[size];
+        for (int i = 0; i < size; i++) {
+            sources[i] = random.nextInt(size);
+            destinations[i] = random.nextInt(size);
+        }
+        genericGraph = buildGeneric();
+        longGraph = buildLong();
+        samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = random.nextInt(size);
+        }
+    }
+
+    private LwwElementGraph<Long> buildGeneric() {
+        final var graph = new LwwElementGraph<Long>("node1");
+        for (long element = 0; element < size; element++) {
+            graph.addVertex(element);
+        }
+        for (int i = 0; i < size; i++) {
+            graph.addEdge(Edge.of(Vertex.of(sources[i], graph.findVectorClock(sources[i])),
+                Vertex.of(destinations[i], graph.findVectorClock(destinations[i]))));
+        }
+        return graph;
+    }
+
+    private LongLwwElementGraph buildLong() {
+        final var graph = new LongLwwElementGraph("node1");
+        for (long element = 0; element < size; element++) {
+            graph.addVertex(element);
+        }
+        for (int i = 0; i < size; i++) {
+            graph.addEdge(sources[i], destinations[i]);
+        }
+        return graph;
+    }
+
+    private long nextSample() {
+        next = (next + 1) & (SAMPLES - 1);
+        return samples[next];
+    }
+
+    @Benchmark
+    public Object genericBuild() {
+        return buildGeneric();
+    }
+
+    @Benchmark
+    public Object longBuild() {
+        return buildLong();
+    }
+
+    @Benchmark
+    public Object genericLookup() {
+        final long element = nextSample();
+        return (next & 1) == 0 ? genericGraph.containsVertex(element) : genericGraph.findAdjacentVertices(element);
+    }
+
+    @Benchmark
+    public Object longLookup() {
+        final long element = nextSample();
+        return (next & 1) == 0 ? longGraph.containsVertex(element) : longGraph.findAdjacentVertices(element);
+    }
+
+    @Benchmark
+    public Object genericShortestPath() {
+        return genericGraph.findShortestPath(nextSample(), nextSample());
+    }
+
+    @Benchmark
+    public Object longShortestPath() {
+        return longGraph.findShortestPath(nextSample(), nextSample());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void genericFootprint(Footprint footprint) {
+        footprint.retained(buildGeneric(), size);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void longFootprint(Footprint footprint) {
+        footprint.retained(buildLong(), size);
+    }
+}
@@ -0,0 +1,119 @@
+package com.juliuskrah.crdt;
+
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The map based clock that {@link VectorClock} replaced, kept as the baseline of {@link VectorClockBenchmark}.
+ * @author Julius Krah
+ */
+final class MapVectorClock implements Comparable<MapVectorClock> {
+    private final String key;
+    private final Map<String, Long> entries;
+
+    private MapVectorClock(String key, Map<String, Long> entries) {
+        this.key = key;
+        this.entries = entries;
+    }
+
+    private MapVectorClock(String key) {
+        this(key, Map.of());
+    }
+
+    static MapVectorClock of(String key) {
+        return new MapVectorClock(key);
+    }
+
+    static MapVectorClock of(String key, Map<String, Long> entries) {
+        return new MapVectorClock(key, entries);
+    }
+
+    /**
+     * increments the logical clock in the vector by 1.
+     * @return incremented VectorClock
+     */
+    public MapVectorClock increment() {
+        final long counter = entries.getOrDefault(key, 1L) + 1L;
+        // The internal state of the map must remain unchanged
+        return new MapVectorClock(key, Collections.unmodifiableMap(Map.of(key, counter)));
+    }
+
+    /**
+     * Computes the difference between {@linkplain this} clock and {@linkplain other} clock.
+     * @param other another Vector clock to {@link #compareTo(MapVectorClock)}
+     * @return all differences
+     */
+    private Set<Long> calculateDiffs(MapVectorClock other) {
+        Set<String> allKeys = new HashSet<>(entries.keySet());
+        allKeys.addAll(other.entries.keySet());
+        return allKeys.stream().map(existingKey ->
+            entries.getOrDefault(existingKey, 0L) - other.entries.getOrDefault(key, 0L)
+        ).collect(toSet());
+    }
+
+    /**
+     * Merges this vector clock with other.
+     * @param other another clock
+     * @return merged clocks
+     */
+    public MapVectorClock merge(MapVectorClock other) {
+        Map<String, Long> merged = Stream.concat(entries.entrySet().stream(), other.entries.entrySet().stream())
+            .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, Math::max));
+        return new MapVectorClock(this.key, merged);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(MapVectorClock other) {
+        final Set<Long> diffs = calculateDiffs(other);
+        final boolean isGreater = diffs.stream().anyMatch(diff -> diff > 0);
+        final boolean isLess = diffs.stream().anyMatch(diff -> diff < 0);
+        if (isGreater && isLess) {
+            return this.key.compareTo(other.key);
+        }
+        if (isLess) {
+            return -1;
+        }
+        return isGreater ? 1 : key.compareTo(other.key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return Objects.toString(entries, "entries");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(entries);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MapVectorClock that = (MapVectorClock) o;
+        return calculateDiffs(that).stream().allMatch(diff -> diff == 0);
+    }
+}
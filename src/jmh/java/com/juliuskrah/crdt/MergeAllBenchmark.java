@@ -0,0 +1,89 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reconciling {@link #replicas} replicas at once, as a recovery does, one merge after the other against
+ * {@link LwwElementGraph#mergeAll(java.util.Collection)}.
+ * The replicas share {@link #size} vertices, then each adds and removes {@link #divergence} times {@link #size}
+ * vertices drawn from the same range, so the replicas changed many of the same elements.
+ * Every invocation merges into a fresh copy of the shared state.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeAllBenchmark {
+    @Param({"10", "50"})
+    private int replicas;
+    @Param({"10000"})
+    private int size;
+    @Param({"0.01", "0.1"})
+    private double divergence;
+    private LwwElementGraph<Integer> base;
+    private List<LwwElementGraph<Integer>> others;
+    private LwwElementGraph<Integer> target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        base = new LwwElementGraph<>("node0");
+        for (int i = 0; i < size; i++) {
+            base.addVertex(i);
+        }
+        for (int i = 1; i < size; i++) {
+            base.addEdge(Edge.of(Vertex.of(i - 1, base.findVectorClock(i - 1)),
+                Vertex.of(i, base.findVectorClock(i))));
+        }
+        others = new ArrayList<>(replicas);
+        final var random = new Random(42);
+        for (int i = 1; i <= replicas; i++) {
+            final var replica = new LwwElementGraph<Integer>("node" + i).applyDelta(base.state());
+            final int changes = (int) (size * divergence);
+            for (int j = 0; j < changes; j++) {
+                if (random.nextBoolean()) {
+                    replica.addVertex(size + random.nextInt(size));
+                } else {
+                    replica.removeVertex(random.nextInt(size));
+                }
+            }
+            others.add(replica);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyBase() {
+        target = new LwwElementGraph<Integer>("target").applyDelta(base.state());
+    }
+
+    @Benchmark
+    public LwwElementGraph<Integer> mergeEach() {
+        for (LwwElementGraph<Integer> other : others) {
+            target.merge(other);
+        }
+        return target;
+    }
+
+    @Benchmark
+    public LwwElementGraph<Integer> mergeAll() {
+        return target.mergeAll(others);
+    }
+}
@@ -0,0 +1,87 @@
+package com.juliuskrah.crdt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of merging two replicas that share {@link #size} vertices and then diverge.
+ * Each replica adds and removes {@link #divergence} times {@link #size} vertices on its own.
+ * Every invocation merges into a fresh copy of the first replica, so no merge sees already merged state.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int size;
+    @Param({"0.01", "0.1", "1.0"})
+    private double divergence;
+    private LwwElementGraph<Integer> replica1;
+    private LwwElementGraph<Integer> replica2;
+    private GraphDelta<Integer> delta;
+    private LwwElementGraph<Integer> target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        replica1 = new LwwElementGraph<>("node1");
+        for (int i = 0; i < size; i++) {
+            replica1.addVertex(i);
+        }
+        for (int i = 1; i < size; i++) {
+            replica1.addEdge(Edge.of(Vertex.of(i - 1, replica1.findVectorClock(i - 1)),
+                Vertex.of(i, replica1.findVectorClock(i))));
+        }
+        replica2 = copyOf(replica1, "node2");
+        diverge(replica1, new Random(1));
+        diverge(replica2, new Random(2));
+        delta = replica2.deltaSince(replica1.getVectorClock());
+    }
+
+    private static LwwElementGraph<Integer> copyOf(LwwElementGraph<Integer> graph, String nodeId) {
+        var copy = new LwwElementGraph<Integer>(nodeId);
+        return copy.applyDelta(graph.state());
+    }
+
+    private void diverge(LwwElementGraph<Integer> replica, Random random) {
+        final int changes = (int) (size * divergence);
+        for (int i = 0; i < changes; i++) {
+            if (random.nextBoolean()) {
+                replica.addVertex(size + random.nextInt(size));
+            } else {
+                replica.removeVertex(random.nextInt(size));
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyReplica() {
+        target = copyOf(replica1, "node1");
+    }
+
+    @Benchmark
+    public LwwElementGraph<Integer> merge() {
+        return target.merge(replica2);
+    }
+
+    @Benchmark
+    public LwwElementGraph<Integer> applyDelta() {
+        return target.applyDelta(delta);
+    }
+}
@@ -0,0 +1,85 @@
+package com.juliuskrah.crdt;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of {@link LwwElementGraph#merge(LwwElementGraph, ForkJoinPool)} with the number of threads, against the
+ * sequential merge at a {@link #parallelism} of 0. Two replicas share {@link #size} vertices, and each then adds
+ * an edge from every vertex to a random one on its own, so every vertex is reconciled and has its adjacency united.
+ * Every invocation merges into a fresh copy of the first replica, so no merge sees already merged state.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelMergeBenchmark {
+    @Param({"100000", "1000000"})
+    private int size;
+    @Param({"0", "1", "2", "4", "8", "16", "32", "64"})
+    private int parallelism;
+    private ForkJoinPool pool;
+    private LwwElementGraph<Integer> replica1;
+    private LwwElementGraph<Integer> replica2;
+    private LwwElementGraph<Integer> target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = parallelism == 0 ? null : new ForkJoinPool(parallelism);
+        replica1 = new LwwElementGraph<>("node1");
+        replica1.addVertices(IntStream.range(0, size).boxed().collect(Collectors.toList()));
+        replica2 = copyOf(replica1, "node2");
+        diverge(replica1, new Random(1));
+        diverge(replica2, new Random(2));
+    }
+
+    private static LwwElementGraph<Integer> copyOf(LwwElementGraph<Integer> graph, String nodeId) {
+        var copy = new LwwElementGraph<Integer>(nodeId);
+        return copy.applyDelta(graph.state());
+    }
+
+    private void diverge(LwwElementGraph<Integer> replica, Random random) {
+        replica.batch(batch -> {
+            for (int i = 0; i < size; i++) {
+                batch.addEdge(i, random.nextInt(size));
+            }
+        });
+    }
+
+    @Setup(Level.Invocation)
+    public void copyReplica() {
+        target = copyOf(replica1, "node1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public LwwElementGraph<Integer> merge() {
+        return pool == null ? target.merge(replica2) : target.merge(replica2, pool);
+    }
+}
@@ -0,0 +1,106 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Edge churn on a graph whose degrees follow a power law, so a few hubs hold most of the edges.
+ * Endpoints are drawn from a Zipf distribution over the vertices; with {@link #exponent} near 1 the first
+ * vertex is adjacent to a large share of the graph. With hashed adjacency the scores should not depend on the
+ * degree of the vertices an edge touches.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PowerLawBenchmark {
+    private static final int SAMPLES = 1 << 16;
+    @Param({"10000", "100000"})
+    private int size;
+    @Param({"1.1", "1.5"})
+    private double exponent;
+    @Param({"8"})
+    private int edgesPerVertex;
+    private LwwElementGraph<Integer> graph;
+    private Vertex<Integer>[] vertices;
+    private Edge<Integer>[] edges;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        graph = new LwwElementGraph<>("node1");
+        vertices = new Vertex[size];
+        for (int i = 0; i < size; i++) {
+            graph.addVertex(i);
+            vertices[i] = Vertex.of(i, graph.findVectorClock(i));
+        }
+        final var random = new Random(42);
+        final double[] cumulative = zipf(size, exponent);
+        for (int i = 0; i < size * edgesPerVertex; i++) {
+            graph.addEdge(Edge.of(vertices[sample(cumulative, random)], vertices[random.nextInt(size)]));
+        }
+        edges = new Edge[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            edges[i] = Edge.of(vertices[sample(cumulative, random)], vertices[sample(cumulative, random)]);
+        }
+    }
+
+    private static double[] zipf(int size, double exponent) {
+        final double[] cumulative = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, Random random) {
+        final int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    private Edge<Integer> nextEdge() {
+        next = (next + 1) & (SAMPLES - 1);
+        return edges[next];
+    }
+
+    @Benchmark
+    public boolean addDuplicateEdge() {
+        // the edges are re-added over and over, which must not grow the adjacency of a hub
+        return graph.addEdge(nextEdge());
+    }
+
+    @Benchmark
+    public boolean churnEdge() {
+        final var edge = nextEdge();
+        graph.removeEdge(edge);
+        return graph.addEdge(edge);
+    }
+
+    @Benchmark
+    public boolean hubMembership() {
+        return graph.findAdjacentVertices(0).contains(nextEdge().getDestination());
+    }
+}
@@ -0,0 +1,83 @@
+package com.juliuskrah.crdt;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of the state of random elements, {@code containsVertex}, {@code findVectorClock} and
+ * {@code findAdjacentVertices} in turn, mixed with edge adds that change one in {@link #readFraction} of the
+ * elements read. Reads of an unchanged element hit the cache of element states, a change has the next read of its
+ * elements resolve them from the tries again.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadMixBenchmark {
+    private static final int SAMPLES = 1 << 16;
+    @Param({"10000", "1000000"})
+    private int size;
+    @Param({"1.0", "0.95"})
+    private double readFraction;
+    private LwwElementGraph<Integer> graph;
+    private Vertex<Integer>[] vertices;
+    private int[] elements;
+    private boolean[] writes;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        graph = new LwwElementGraph<>("node1");
+        vertices = new Vertex[size];
+        for (int i = 0; i < size; i++) {
+            graph.addVertex(i);
+            vertices[i] = Vertex.of(i, graph.findVectorClock(i));
+        }
+        final var random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            graph.addEdge(Edge.of(vertices[i], vertices[random.nextInt(size)]));
+        }
+        elements = new int[SAMPLES];
+        writes = new boolean[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            elements[i] = random.nextInt(size);
+            writes[i] = random.nextDouble() >= readFraction;
+        }
+    }
+
+    @Benchmark
+    public Object readMix() {
+        next = (next + 1) & (SAMPLES - 1);
+        final int element = elements[next];
+        if (writes[next]) {
+            return graph.addEdge(Edge.of(vertices[element], vertices[elements[(next + 1) & (SAMPLES - 1)]]));
+        }
+        switch (next % 3) {
+            case 0:
+                return graph.containsVertex(element);
+            case 1:
+                return graph.findVectorClock(element);
+            default:
+                final Collection<Vertex<Integer>> adjacentVertices = graph.findAdjacentVertices(element);
+                return adjacentVertices.size();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.juliuskrah.crdt;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a change while a peer streams batches of {@code batchSize} changed elements in, made through a
+ * {@link Replicator} against a graph whose request threads merge every batch inline before their own change.
+ * The distribution is sampled, so the tail shows how long a change waits behind replication: the replicator
+ * applies a batch on its own thread a slice at a time, an inline merge holds up the request that picked it up.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationBenchmark {
+    private static final int ELEMENTS = 1 << 16;
+
+    /**
+     * A peer that adds the same vertices again and again, so every batch changes each of them.
+     */
+    private static final class Peer {
+        private final LwwElementGraph<Integer> graph = new LwwElementGraph<>("node2");
+        private final int batchSize;
+        private VectorClock sent = graph.getVectorClock();
+
+        Peer(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        ReplicationBatch<Integer> nextBatch() {
+            graph.batch(batch -> {
+                for (int i = 0; i < batchSize; i++) {
+                    batch.addVertex(i);
+                }
+            });
+            final var delta = graph.deltaSince(sent);
+            sent = delta.getVectorClock();
+            return ReplicationBatch.of("node2", delta, System.currentTimeMillis());
+        }
+
+        /**
+         * Hands batches to the receiver on a thread of its own until interrupted.
+         */
+        Thread stream(ReplicationTransport<Integer> receiver) {
+            final var feeder = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        receiver.send("node1", nextBatch());
+                    }
+                } catch (Exception e) {
+                    // trial over
+                }
+            }, "replication-benchmark-peer");
+            feeder.setDaemon(true);
+            feeder.start();
+            return feeder;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Replicated {
+        @Param({"0", "10000", "100000"})
+        private int batchSize;
+        private Replicator<Integer> replicator;
+        private Thread feeder;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // batches to the peer are dropped, only the receiving side is measured
+            replicator = Replicator.start("node1", new LwwElementGraph<Integer>("node1"), (peer, batch) -> { },
+                List.of("node2"));
+            if (batchSize > 0) {
+                feeder = new Peer(batchSize).stream((peer, batch) -> replicator.receive(batch));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            if (feeder != null) {
+                feeder.interrupt();
+                feeder.join();
+            }
+            replicator.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Inline {
+        @Param({"0", "10000", "100000"})
+        private int batchSize;
+        private final LwwElementGraph<Integer> graph = new LwwElementGraph<>("node1");
+        private final BlockingQueue<ReplicationBatch<Integer>> inbound = new ArrayBlockingQueue<>(1);
+        private Thread feeder;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if (batchSize > 0) {
+                feeder = new Peer(batchSize).stream((peer, batch) -> inbound.put(batch));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            if (feeder != null) {
+                feeder.interrupt();
+                feeder.join();
+            }
+        }
+    }
+
+    @Benchmark
+    public void update(Replicated state) {
+        final int element = state.next++ & (ELEMENTS - 1);
+        state.replicator.update(graph -> graph.addVertex(element));
+    }
+
+    @Benchmark
+    public void updateInline(Inline state) {
+        final int element = state.next++ & (ELEMENTS - 1);
+        final var batch = state.inbound.poll();
+        if (batch != null) {
+            state.graph.applyDelta(batch.getDelta());
+        }
+        state.graph.addVertex(element);
+    }
+}
@@ -0,0 +1,95 @@
+package com.juliuskrah.crdt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the array backed {@link VectorClock} with the map based {@link MapVectorClock}.
+ * Run with {@code -prof gc} to see the allocation rate of each operation.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorClockBenchmark {
+    /**
+     * Number of nodes that have ticked each clock.
+     */
+    @Param({"2", "8", "32"})
+    private int nodes;
+    private VectorClock clock;
+    private VectorClock concurrentClock;
+    private MapVectorClock mapClock;
+    private MapVectorClock concurrentMapClock;
+
+    @Setup
+    public void setUp() {
+        Map<String, Long> entries = new HashMap<>();
+        Map<String, Long> concurrentEntries = new HashMap<>();
+        for (int i = 0; i < nodes; i++) {
+            // every other entry is ahead on one side, so the clocks are concurrent
+            entries.put("node" + i, (long) i + (i % 2));
+            concurrentEntries.put("node" + i, (long) i + ((i + 1) % 2));
+        }
+        clock = VectorClock.of("node0", entries);
+        concurrentClock = VectorClock.of("node1", concurrentEntries);
+        mapClock = MapVectorClock.of("node0", entries);
+        concurrentMapClock = MapVectorClock.of("node1", concurrentEntries);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return clock.compareTo(concurrentClock);
+    }
+
+    @Benchmark
+    public int compareToMap() {
+        return mapClock.compareTo(concurrentMapClock);
+    }
+
+    @Benchmark
+    public VectorClock merge() {
+        return clock.merge(concurrentClock);
+    }
+
+    @Benchmark
+    public MapVectorClock mergeMap() {
+        return mapClock.merge(concurrentMapClock);
+    }
+
+    @Benchmark
+    public boolean equalsClock() {
+        return clock.equals(concurrentClock);
+    }
+
+    @Benchmark
+    public boolean equalsMap() {
+        return mapClock.equals(concurrentMapClock);
+    }
+
+    @Benchmark
+    public VectorClock increment() {
+        return clock.increment();
+    }
+
+    @Benchmark
+    public MapVectorClock incrementMap() {
+        return mapClock.increment();
+    }
+}
@@ -0,0 +1,63 @@
+package com.juliuskrah.crdt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-operation latency of vertex lookups, adds and removes as the graph grows.
+ * With the element index in place the scores should stay flat across {@link #size}.
+ * @author Julius Krah
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexIndexBenchmark {
+    @Param({"1000", "10000", "100000", "500000"})
+    private int size;
+    private LwwElementGraph<Integer> graph;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new LwwElementGraph<>("node1");
+        for (int i = 0; i < size; i++) {
+            graph.addVertex(i);
+        }
+    }
+
+    private int nextElement() {
+        next = next + 1 == size ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public boolean containsVertex() {
+        return graph.containsVertex(nextElement());
+    }
+
+    @Benchmark
+    public void addVertex() {
+        // re-adding an existing element keeps the graph at a constant size
+        graph.addVertex(nextElement());
+    }
+
+    @Benchmark
+    public void removeVertex() {
+        graph.removeVertex(nextElement());
+    }
+}
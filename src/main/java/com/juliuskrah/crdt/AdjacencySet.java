@@ -0,0 +1,55 @@
+package com.juliuskrah.crdt;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+
+/**
+ * The neighbours of a vertex, keyed by their element.
+ * An element is adjacent at most once, so adding the same edge again is a no-op. Sets are persistent values:
+ * updates return a new set, and leave the old one as it was unless the old set belongs to the edit token of the
+ * writer, which may update it in place, see {@link TrieMap}. Only the latest set of a writer is meant to be used
+ * until its token is retired. The collection itself is read-only.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see TrieAdjacencySet
+ * @see OffHeapAdjacencySet
+ */
+abstract class AdjacencySet<E extends Comparable<E>> extends AbstractCollection<Vertex<E>> {
+
+    /**
+     * Adds the vertex unless its element is already adjacent with the same or a later clock.
+     * @param vertex the neighbour
+     * @param edit the edit token of the writer
+     * @return the set with the vertex, this set when it did not change
+     */
+    abstract AdjacencySet<E> with(Vertex<E> vertex, Object edit);
+
+    /**
+     * @param vertices the neighbours to add
+     * @param edit the edit token of the writer
+     * @return the set with every vertex, this set when it did not change
+     * @see #with(Vertex, Object)
+     */
+    AdjacencySet<E> withAll(Collection<Vertex<E>> vertices, Object edit) {
+        var united = this;
+        for (Vertex<E> vertex : vertices) {
+            united = united.with(vertex, edit);
+        }
+        return united;
+    }
+
+    /**
+     * Removes the neighbour when it is adjacent with the clock of the given vertex.
+     * @param vertex the vertex to remove
+     * @param edit the edit token of the writer
+     * @return the set without the vertex, this set when it did not change
+     */
+    abstract AdjacencySet<E> without(Vertex<E> vertex, Object edit);
+
+    /**
+     * Gives up the storage of a set the writer no longer holds. Sets on the heap are left to the garbage collector.
+     * @param edit the edit token of the writer
+     */
+    void release(Object edit) {
+    }
+}
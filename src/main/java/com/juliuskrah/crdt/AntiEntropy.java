@@ -0,0 +1,224 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Anti-entropy between replicas that do not know how far they diverged, e.g. after one was offline for a while.
+ * Every replica keeps a Merkle tree of the clocks of the changes of its elements, split into 1024 buckets by the
+ * hash of the element and updated as the graph changes. A sync compares the digests of the two trees from the
+ * root down, asking only for the digests below the nodes that differ. Below a bucket that holds many elements it
+ * goes on comparing parts of the bucket, until a part that differs holds a few elements. It then pulls the state
+ * of the peer under those nodes and pushes back only the elements the peer has not seen every change of.
+ * Replicas that agree exchange a single digest; otherwise the digests and the state exchanged follow the number of
+ * elements that differ rather than the size of the graph or of its buckets.
+ * <p>
+ * A sync runs on the thread of the graph, and neither graph may change while it runs. It leaves both replicas with
+ * the same state: the replica that started the sync merges the buckets of the peer, and then the peer merges the
+ * buckets of the replica, which hold everything either replica had. Tombstones one replica purged and the other
+ * did not keep their buckets apart until both compacted, see {@link LwwElementGraph#compact()}.
+ * @param <E> the element to operate on, with a hash code that is the same on every replica
+ * @author Julius Krah
+ */
+@Slf4j
+public final class AntiEntropy<E extends Comparable<E>> implements AntiEntropyPeer<E> {
+    // a round descends two levels of the tree, asking for the four digests under every node that differs
+    private static final int LEVELS_PER_ROUND = 2;
+    // a node this replica holds as few elements below is exchanged rather than split further
+    private static final int LEAF_ENTRIES = 8;
+    private static final VectorClock NOTHING_SEEN = VectorClock.of("");
+    private final LwwElementGraph<E> graph;
+
+    /**
+     * Starts keeping the digests of the graph, which takes time linear in its size once.
+     * @param graph the graph to keep in sync
+     */
+    public AntiEntropy(LwwElementGraph<E> graph) {
+        this.graph = Objects.requireNonNull(graph, "graph must not be null");
+        graph.digests();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] digests(int[] nodes) {
+        final var digests = graph.digests();
+        final long[] values = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] < MerkleDigests.ROOT) {
+                throw new IllegalArgumentException("no such node: " + nodes[i]);
+            }
+            values[i] = digests.digest(nodes[i]);
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public GraphDelta<E> deltaOf(int[] nodes) {
+        for (int node : nodes) {
+            if (!MerkleDigests.isBucketNode(node)) {
+                throw new IllegalArgumentException("not a bucket or below one: " + node);
+            }
+        }
+        return deltaOf(nodes, (element, changes) -> true);
+    }
+
+    private GraphDelta<E> deltaOf(int[] nodes, BiPredicate<E, VectorClock> wanted) {
+        final var digests = graph.digests();
+        final List<E> elements = new ArrayList<>();
+        for (int node : nodes) {
+            digests.forEachBelow(node, (element, changes) -> {
+                if (wanted.test(element, changes)) {
+                    elements.add(element);
+                }
+            });
+        }
+        return graph.deltaOf(elements);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDelta(GraphDelta<E> delta) {
+        graph.applyDelta(delta);
+    }
+
+    /**
+     * Brings this replica and the peer to the same state.
+     * @param peer the other replica, in process or behind a transport
+     * @return what the sync exchanged
+     */
+    public Sync sync(AntiEntropyPeer<E> peer) {
+        final var digests = graph.digests();
+        final List<Integer> settled = new ArrayList<>();
+        int[] nodes = {MerkleDigests.ROOT};
+        int compared = 0;
+        int rounds = 0;
+        while (nodes.length > 0) {
+            final long[] theirs = peer.digests(nodes);
+            compared += nodes.length;
+            rounds++;
+            final List<Integer> differing = new ArrayList<>();
+            for (int i = 0; i < nodes.length; i++) {
+                final long ours = digests.digest(nodes[i]);
+                if (theirs[i] != ours) {
+                    (settles(digests, nodes[i], ours, theirs[i]) ? settled : differing).add(nodes[i]);
+                }
+            }
+            nodes = childrenOf(differing);
+        }
+        return settled.isEmpty() ? new Sync(compared, rounds, 0, 0) : exchange(peer, settled, compared, rounds);
+    }
+
+    /**
+     * Decides to exchange the state below a node that differs rather than compare the digests below it, once the
+     * node is a bucket or below one, and either replica holds nothing below it, or this replica holds so little
+     * that sending it costs less than another round, or the tree ends.
+     */
+    private static boolean settles(MerkleDigests<?> digests, int node, long ours, long theirs) {
+        if (!MerkleDigests.isBucketNode(node)) {
+            return false;
+        }
+        return ours == 0 || theirs == 0 || MerkleDigests.levelOf(node) + LEVELS_PER_ROUND > MerkleDigests.MAX_DEPTH
+            || digests.sizeOf(node) <= LEAF_ENTRIES;
+    }
+
+    /**
+     * @return the nodes {@link #LEVELS_PER_ROUND} levels below the given nodes
+     */
+    private static int[] childrenOf(List<Integer> parents) {
+        final int fanOut = 1 << LEVELS_PER_ROUND;
+        final int[] children = new int[parents.size() * fanOut];
+        for (int i = 0; i < parents.size(); i++) {
+            for (int j = 0; j < fanOut; j++) {
+                children[i * fanOut + j] = parents.get(i) * fanOut + j;
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Pulls the state of the peer below the nodes, then pushes back only the elements the peer has not seen every
+     * change of, which the state it sent tells.
+     */
+    private Sync exchange(AntiEntropyPeer<E> peer, List<Integer> settled, int compared, int rounds) {
+        final int[] nodes = settled.stream().mapToInt(Integer::intValue).toArray();
+        final var pulled = peer.deltaOf(nodes);
+        graph.applyDelta(pulled);
+        final Map<E, VectorClock> seen = new HashMap<>();
+        pulled.getEntries().forEach(entry -> seen.put(entry.getElement(), entry.getChanges()));
+        // taken after the merge, so it holds what only this replica had and what it changed merging
+        final var pushed = deltaOf(nodes,
+            (element, changes) -> !seen.getOrDefault(element, NOTHING_SEEN).dominates(changes));
+        peer.applyDelta(pushed);
+        log.debug("Synced {} nodes, comparing {} digests", nodes.length, compared);
+        return new Sync(compared, rounds, nodes.length, pulled.getEntries().size() + pushed.getEntries().size());
+    }
+
+    /**
+     * What a sync exchanged.
+     * @see AntiEntropy#sync(AntiEntropyPeer)
+     */
+    public static final class Sync {
+        private final int digests;
+        private final int rounds;
+        private final int buckets;
+        private final int entries;
+
+        Sync(int digests, int rounds, int buckets, int entries) {
+            this.digests = digests;
+            this.rounds = rounds;
+            this.buckets = buckets;
+            this.entries = entries;
+        }
+
+        /**
+         * @return the number of digests the peer sent
+         */
+        public int getDigests() {
+            return this.digests;
+        }
+
+        /**
+         * @return the number of requests for digests
+         */
+        public int getRounds() {
+            return this.rounds;
+        }
+
+        /**
+         * @return the number of buckets, or parts of buckets, whose state was exchanged, 0 when the replicas were in
+         *     sync
+         */
+        public int getBuckets() {
+            return this.buckets;
+        }
+
+        /**
+         * @return the number of elements whose state was sent either way
+         */
+        public int getEntries() {
+            return this.entries;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Sync{digests=" + digests + ", rounds=" + rounds + ", buckets=" + buckets + ", entries=" + entries
+                + "}";
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.juliuskrah.crdt;
+
+/**
+ * The replica on the other end of a sync. {@link AntiEntropy} is the peer of a graph in process; a transport
+ * implements the methods as requests to the {@link AntiEntropy} of a remote graph, e.g. carrying deltas as
+ * encoded by {@link GraphCodec}.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see AntiEntropy#sync(AntiEntropyPeer)
+ */
+public interface AntiEntropyPeer<E extends Comparable<E>> {
+
+    /**
+     * @param nodes nodes of the Merkle tree, numbered as in a binary heap: the root is 1 and the children of
+     *     node n are 2n and 2n + 1, through the leaves of the 1024 buckets from 1024 to 2047 and the nodes that
+     *     split the buckets below them
+     * @return the digest of every node, in the order of the nodes
+     */
+    long[] digests(int[] nodes);
+
+    /**
+     * @param nodes leaves of buckets of the Merkle tree, from 1024 to 2047, or nodes below them
+     * @return the state of every element below the nodes
+     */
+    GraphDelta<E> deltaOf(int[] nodes);
+
+    /**
+     * Merges the state of buckets of the other replica.
+     * @param delta the state
+     */
+    void applyDelta(GraphDelta<E> delta);
+}
@@ -0,0 +1,103 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.GraphOperation.Type;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Applies the changes of a batch to the {@linkplain GraphState state} of a graph, all stamped with the clock the
+ * graph ticked to for the batch.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#batch(java.util.function.Consumer)
+ */
+final class BatchCommit<E extends Comparable<E>> {
+    private final GraphState<E> state;
+    private final GraphEdits<E> edits;
+    private final VectorClock clock;
+    private final Dot dot;
+    private final Set<E> changed = new LinkedHashSet<>();
+    // changed elements that are not reconciled yet
+    private final Set<E> unresolved = new HashSet<>();
+
+    BatchCommit(GraphState<E> state, GraphEdits<E> edits, VectorClock clock) {
+        this.state = state;
+        this.edits = edits;
+        this.clock = clock;
+        this.dot = clock.dot();
+    }
+
+    /**
+     * Applies the changes, then reconciles every element they touched once.
+     * @return the elements the batch changed
+     */
+    Set<E> commit(GraphBatch<E> batch) {
+        batch.getChanges().forEach(this::apply);
+        unresolved.forEach(state::updateElements);
+        return changed;
+    }
+
+    private void apply(GraphBatch.Change<E> change) {
+        if (!change.type.isEdge()) {
+            applyVertex(change);
+            return;
+        }
+        final var edge = edgeOf(change);
+        if (edge != null && (change.type == Type.ADD_EDGE ? addEdge(edge) : edits.removeEdge(edge, dot))) {
+            changed.add(edge.getSource().getValue());
+            changed.add(edge.getDestination().getValue());
+        }
+    }
+
+    private void applyVertex(GraphBatch.Change<E> change) {
+        final var vertex = Vertex.of(change.element, clock);
+        final var addGraph = state.addGraph();
+        final var removeGraph = state.removeGraph();
+        if (change.type == Type.ADD_VERTEX) {
+            addGraph.put(vertex);
+            // a remove earlier in the batch has the same clock, the later add wins
+            if (vertex.equals(removeGraph.get(change.element))) {
+                removeGraph.remove(change.element);
+            }
+        } else {
+            addGraph.remove(change.element);
+            state.invalidateConnectivity();
+            removeGraph.put(vertex);
+        }
+        state.changeLog().record(change.element, dot);
+        changed.add(change.element);
+        unresolved.add(change.element);
+    }
+
+    /**
+     * @return the edge of the change between the vertices currently in the graph, null when there is none
+     */
+    private Edge<E> edgeOf(GraphBatch.Change<E> change) {
+        if (change.edge != null) {
+            resolve(change.edge.getSource().getValue());
+            resolve(change.edge.getDestination().getValue());
+            return change.edge;
+        }
+        resolve(change.element);
+        resolve(change.destination);
+        final var sourceClock = state.liveClock(change.element);
+        final var destinationClock = state.liveClock(change.destination);
+        return sourceClock == null || destinationClock == null ? null
+            : Edge.of(Vertex.of(change.element, sourceClock), Vertex.of(change.destination, destinationClock));
+    }
+
+    private boolean addEdge(Edge<E> edge) {
+        if (!edits.addEdge(edge)) {
+            return false;
+        }
+        edits.recordChange(edge, dot);
+        return true;
+    }
+
+    private void resolve(E element) {
+        if (unresolved.remove(element)) {
+            state.updateElements(element);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.juliuskrah.crdt;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the latest change every node made to each element, as a clock of the element's changes,
+ * and indexes those changes per node and counter.
+ * This lets a graph find the elements a replica has not seen yet from that replica's clock alone,
+ * by reading the counters above the replica's entry for every node. Keeping a change per node rather than only
+ * the last change matters once state travels between replicas by different paths: a replica that has seen the
+ * last change of an element may still miss a concurrent change of another node.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class ChangeLog<E> {
+    private static final VectorClock NO_CHANGES = VectorClock.of("");
+    // node ordinal -> counter -> elements whose latest change by that node is at that counter
+    private final Map<Integer, NavigableMap<Long, Set<E>>> changes = new HashMap<>();
+    // element -> clock of its changes, a persistent trie so that snapshots share it
+    private TrieMap<E, VectorClock> changeClocks = TrieMap.empty();
+    private Object edit = new Object();
+    // digests of the change clocks for anti-entropy, null until first asked for
+    private MerkleDigests<E> digests;
+
+    /**
+     * Records a change of the element.
+     * @param element the element
+     * @param dot the dot of the change
+     */
+    void record(E element, Dot dot) {
+        final var current = changesOf(element);
+        final var advanced = current.merge(dot);
+        if (advanced != current) {
+            changeClocks = changeClocks.put(element, advanced, edit);
+            if (digests != null) {
+                digests.update(element, current, advanced);
+            }
+            reindex(element, dot.getNode(), current.counter(dot.getNode()), dot.getCounter());
+        }
+    }
+
+    /**
+     * Records the changes of the element another replica knows of.
+     * @param element the element
+     * @param changeClock the clock of the element's changes on the other replica
+     */
+    void record(E element, VectorClock changeClock) {
+        final var current = changesOf(element);
+        final var advanced = current.merge(changeClock);
+        if (advanced == current) {
+            return;
+        }
+        // a single write of the trie however many nodes advanced
+        changeClocks = changeClocks.put(element, advanced, edit);
+        if (digests != null) {
+            digests.update(element, current, advanced);
+        }
+        for (int i = 0; i < changeClock.size(); i++) {
+            final int node = changeClock.nodeAtIndex(i);
+            final long previous = current.counter(node);
+            if (changeClock.counterAtIndex(i) > previous) {
+                reindex(element, node, previous, changeClock.counterAtIndex(i));
+            }
+        }
+    }
+
+    /**
+     * Forgets every change of the element.
+     * @param element the element
+     */
+    void remove(E element) {
+        final var current = changeClocks.get(element);
+        if (current == null) {
+            return;
+        }
+        changeClocks = changeClocks.remove(element, edit);
+        if (digests != null) {
+            digests.update(element, current, null);
+        }
+        for (int i = 0; i < current.size(); i++) {
+            final var counters = changes.get(current.nodeAtIndex(i));
+            final var changed = counters.get(current.counterAtIndex(i));
+            changed.remove(element);
+            if (changed.isEmpty()) {
+                counters.remove(current.counterAtIndex(i));
+            }
+        }
+    }
+
+    private void reindex(E element, int node, long previous, long counter) {
+        final var counters = changes.computeIfAbsent(node, key -> new TreeMap<>());
+        final var changed = counters.get(previous);
+        if (changed != null) {
+            changed.remove(element);
+            if (changed.isEmpty()) {
+                counters.remove(previous);
+            }
+        }
+        counters.computeIfAbsent(counter, key -> new LinkedHashSet<>()).add(element);
+    }
+
+    /**
+     * @param element the element
+     * @return the latest change of every node to the element, empty when it never changed
+     */
+    VectorClock changesOf(E element) {
+        final var changes = changeClocks.get(element);
+        return changes == null ? NO_CHANGES : changes;
+    }
+
+    /**
+     * Freezes the clocks of the changes of every element, later changes copy the paths of the trie they update.
+     * @return the clock of the changes of every element that changed
+     */
+    TrieMap<E, VectorClock> snapshot() {
+        this.edit = new Object();
+        return changeClocks;
+    }
+
+    /**
+     * Returns the digests of the change clocks, building them on first use and keeping them up to date afterwards.
+     * @return the digests of the change clocks
+     */
+    MerkleDigests<E> digests() {
+        if (digests == null) {
+            final var built = new MerkleDigests<E>(() -> changeClocks);
+            changeClocks.forEach((element, changes) -> built.update(element, null, changes));
+            digests = built;
+        }
+        return digests;
+    }
+
+    /**
+     * @param since the clock of a replica
+     * @return the elements with a change the replica has not seen
+     */
+    Set<E> changedSince(VectorClock since) {
+        Set<E> changed = new LinkedHashSet<>();
+        changes.forEach((node, counters) ->
+            counters.tailMap(since.counter(node), false).values().forEach(changed::addAll)
+        );
+        return changed;
+    }
+}
@@ -0,0 +1,114 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+
+/**
+ * Walks over the entries of {@link VectorClock vector clocks}, which are sorted by node ordinal, so two clocks are
+ * compared, merged or met in a single linear walk. Counters are read through {@link VectorClock#counterAtIndex(int)},
+ * which applies the dot of a clock, so the walks see clocks that share arrays and clocks that copied them alike.
+ * @author Julius Krah
+ */
+final class ClockEntries {
+    static final int EQUAL = 0;
+    static final int GREATER = 1;
+    static final int LESS = 2;
+    // returned by differingIndex when more than one counter differs
+    static final int SEVERAL = -2;
+
+    private ClockEntries() {
+    }
+
+    /**
+     * Insertion sort of the parallel arrays by node ordinal; clocks hold a handful of entries.
+     */
+    static void sortByNode(int[] nodes, long[] counters) {
+        for (int i = 1; i < nodes.length; i++) {
+            int node = nodes[i];
+            long counter = counters[i];
+            int j = i - 1;
+            for (; j >= 0 && nodes[j] > node; j--) {
+                nodes[j + 1] = nodes[j];
+                counters[j + 1] = counters[j];
+            }
+            nodes[j + 1] = node;
+            counters[j + 1] = counter;
+        }
+    }
+
+    private static int nodeAt(VectorClock clock, int index) {
+        return index < clock.size() ? clock.nodeAtIndex(index) : Integer.MAX_VALUE;
+    }
+
+    private static long counterOf(VectorClock clock, int node, int index) {
+        return nodeAt(clock, index) == node ? clock.counterAtIndex(index) : 0L;
+    }
+
+    /**
+     * Computes the signed difference between two clocks for every node either of them has seen, and folds the
+     * signs into a set of flags. Allocates nothing.
+     * @return {@code GREATER} and/or {@code LESS}, or {@code EQUAL} when all entries match
+     */
+    static int diffs(VectorClock clock, VectorClock other) {
+        int diffs = EQUAL;
+        int i = 0;
+        int j = 0;
+        while (i < clock.size() || j < other.size()) {
+            final int node = Math.min(nodeAt(clock, i), nodeAt(other, j));
+            final long diff = counterOf(clock, node, i) - counterOf(other, node, j);
+            diffs |= diff > 0 ? GREATER : diff < 0 ? LESS : EQUAL;
+            i += nodeAt(clock, i) == node ? 1 : 0;
+            j += nodeAt(other, j) == node ? 1 : 0;
+        }
+        return diffs;
+    }
+
+    /**
+     * @return the nodes either clock has an entry for, sorted
+     */
+    static int[] union(VectorClock clock, VectorClock other) {
+        final int[] nodes = new int[clock.size() + other.size()];
+        int size = 0;
+        for (int i = 0, j = 0; i < clock.size() || j < other.size(); size++) {
+            final int node = Math.min(nodeAt(clock, i), nodeAt(other, j));
+            nodes[size] = node;
+            i += nodeAt(clock, i) == node ? 1 : 0;
+            j += nodeAt(other, j) == node ? 1 : 0;
+        }
+        return Arrays.copyOf(nodes, size);
+    }
+
+    /**
+     * @return the nodes both clocks have an entry for, sorted
+     */
+    static int[] intersection(VectorClock clock, VectorClock other) {
+        final int[] nodes = new int[Math.min(clock.size(), other.size())];
+        int size = 0;
+        for (int i = 0, j = 0; i < clock.size() && j < other.size();) {
+            final int node = Math.min(clock.nodeAtIndex(i), other.nodeAtIndex(j));
+            if (clock.nodeAtIndex(i) == other.nodeAtIndex(j)) {
+                nodes[size++] = node;
+            }
+            i += clock.nodeAtIndex(i) == node ? 1 : 0;
+            j += other.nodeAtIndex(j) == node ? 1 : 0;
+        }
+        return Arrays.copyOf(nodes, size);
+    }
+
+    /**
+     * @param counters counters of a clock
+     * @param base counters of a clock with the same nodes
+     * @return the index of the one counter that differs, -1 when none does, {@link #SEVERAL} when more than one does
+     */
+    static int differingIndex(long[] counters, long[] base) {
+        int differing = -1;
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] != base[i]) {
+                if (differing != -1) {
+                    return SEVERAL;
+                }
+                differing = i;
+            }
+        }
+        return differing;
+    }
+}
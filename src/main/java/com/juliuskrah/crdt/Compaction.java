@@ -0,0 +1,91 @@
+package com.juliuskrah.crdt;
+
+/**
+ * The outcome of purging the tombstones of an {@link LwwElementGraph}.
+ * The bytes reclaimed are an estimate of the heap the purged vertices, their adjacency, their logged changes and
+ * their interned ids held, assuming a 64-bit JVM with compressed references. Ids are released only while the
+ * adjacency is kept on the heap, off the heap the adjacency of the neighbours still refers to them. The node ids of
+ * replicas are never released, as clocks anywhere in the process may refer to them, see {@link NodeIds}.
+ * @author Julius Krah
+ * @see LwwElementGraph#compact()
+ */
+public final class Compaction {
+    // a hash map entry, with its share of the table
+    private static final int ENTRY_BYTES = 40;
+    private static final int VERTEX_BYTES = 16;
+    // the clock with its empty node and counter arrays
+    private static final int CLOCK_BYTES = 56;
+    private static final int CLOCK_ENTRY_BYTES = Integer.BYTES + Long.BYTES;
+    // the adjacency set with its empty map
+    private static final int ADJACENCY_BYTES = 72;
+    private final VectorClock stableClock;
+    private int tombstones;
+    private long bytesReclaimed;
+
+    Compaction(VectorClock stableClock) {
+        this.stableClock = stableClock;
+    }
+
+    /**
+     * Counts a vertex purged from one side of the graph.
+     * @param vertex the vertex
+     * @param degree the size of its adjacency set
+     */
+    void purged(Vertex<?> vertex, int degree) {
+        // indexed by clock and by element
+        bytesReclaimed += 2L * ENTRY_BYTES + VERTEX_BYTES + sizeOf(vertex.getVectorClock())
+            + ADJACENCY_BYTES + (long) degree * ENTRY_BYTES;
+    }
+
+    /**
+     * Counts a purged element, with its logged changes.
+     * @param changes the clock of its changes
+     */
+    void purged(VectorClock changes) {
+        tombstones++;
+        // indexed by element, and per node by counter
+        bytesReclaimed += ENTRY_BYTES + sizeOf(changes) + (long) changes.size() * ENTRY_BYTES;
+    }
+
+    /**
+     * Counts the released id of a purged element.
+     */
+    void releasedId() {
+        // indexed by element, and by id in the element table
+        bytesReclaimed += ENTRY_BYTES + Integer.BYTES;
+    }
+
+    private static long sizeOf(VectorClock clock) {
+        return CLOCK_BYTES + (long) clock.size() * CLOCK_ENTRY_BYTES;
+    }
+
+    /**
+     * @return the clock every replica had seen, that the purged tombstones preceded
+     */
+    public VectorClock getStableClock() {
+        return this.stableClock;
+    }
+
+    /**
+     * @return the number of removed elements purged
+     */
+    public int getTombstones() {
+        return this.tombstones;
+    }
+
+    /**
+     * @return the estimated number of heap bytes reclaimed
+     */
+    public long getBytesReclaimed() {
+        return this.bytesReclaimed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Compaction{tombstones=" + tombstones + ", bytesReclaimed=" + bytesReclaimed + ", stableClock="
+            + stableClock + "}";
+    }
+}
@@ -0,0 +1,135 @@
+package com.juliuskrah.crdt;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Purges the tombstones of an {@link LwwElementGraph} once every replica it tracks has seen them, and keeps the
+ * floor of those compactions so that vertices of purged elements which still arrive are dropped.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#compact()
+ */
+final class Compactor<E extends Comparable<E>> {
+    private static final VectorClock NOTHING_SEEN = VectorClock.of("");
+    private final GraphSet<E> addGraph;
+    private final GraphSet<E> removeGraph;
+    private final ChangeLog<E> changeLog;
+    // the id table to release the ids of purged elements to, null when ids must not be reused
+    private final ElementIds<E> ids;
+    private final Predicate<E> live;
+    // clocks the other replicas acknowledged
+    private final ReplicaClocks replicas = new ReplicaClocks();
+    // every purged tombstone preceded this clock
+    private VectorClock floor = NOTHING_SEEN;
+
+    /**
+     * @param addGraph the add side of the graph
+     * @param removeGraph the remove side of the graph
+     * @param changeLog the log of changes of the graph
+     * @param ids the id table of the graph, null when something other than the graph keeps ids of purged elements,
+     *     as adjacency off the heap does
+     * @param live tells whether an element is in the graph
+     */
+    Compactor(GraphSet<E> addGraph, GraphSet<E> removeGraph, ChangeLog<E> changeLog, ElementIds<E> ids,
+            Predicate<E> live) {
+        this.addGraph = addGraph;
+        this.removeGraph = removeGraph;
+        this.changeLog = changeLog;
+        this.ids = ids;
+        this.live = live;
+    }
+
+    /**
+     * @param nodeIds the node ids of the other replicas, empty when there are none
+     * @see LwwElementGraph#trackReplicas(Collection)
+     */
+    void trackReplicas(Collection<String> nodeIds) {
+        replicas.track(nodeIds);
+    }
+
+    void forgetReplica(String nodeId) {
+        replicas.remove(nodeId);
+    }
+
+    void acknowledge(VectorClock clock) {
+        replicas.acknowledge(clock);
+    }
+
+    /**
+     * @param own the clock of the graph
+     * @return the latest clock the graph and every tracked replica have seen
+     */
+    VectorClock stableClock(VectorClock own) {
+        return replicas.stable(own);
+    }
+
+    /**
+     * Purges the removed elements whose vertices and every logged change precede the stable clock.
+     * @param own the clock of the graph
+     * @return the number of tombstones purged and the estimated bytes reclaimed
+     */
+    Compaction compact(VectorClock own) {
+        final var stable = stableClock(own);
+        final var compaction = new Compaction(stable);
+        for (E element : removeGraph.elements()) {
+            if (purgeable(element, stable)) {
+                purge(element, compaction);
+            }
+        }
+        this.floor = this.floor.merge(stable);
+        return compaction;
+    }
+
+    private boolean purgeable(E element, VectorClock stable) {
+        final var added = addGraph.get(element);
+        return !live.test(element) && stable.dominates(removeGraph.get(element).getVectorClock())
+            && (added == null || stable.dominates(added.getVectorClock()))
+            && stable.dominates(changeLog.changesOf(element));
+    }
+
+    private void purge(E element, Compaction compaction) {
+        final var added = addGraph.get(element);
+        if (added != null) {
+            compaction.purged(added, addGraph.adjacentVertices(element).size());
+            addGraph.remove(element);
+        }
+        compaction.purged(removeGraph.get(element), removeGraph.adjacentVertices(element).size());
+        removeGraph.remove(element);
+        compaction.purged(changeLog.changesOf(element));
+        changeLog.remove(element);
+        if (ids != null && ids.release(element)) {
+            compaction.releasedId();
+        }
+    }
+
+    /**
+     * Checks whether the vertices of an element the graph holds no state of precede the last compaction.
+     * The graph has seen every change up to the compaction, so it would hold the element unless it was purged.
+     * @param added the incoming add vertex, null when there is none
+     * @param removed the incoming remove vertex, null when there is none
+     * @return true when the vertices are of a purged element, and are to be dropped
+     */
+    boolean compactedAway(E element, Vertex<E> added, Vertex<E> removed) {
+        return (added != null || removed != null) && !addGraph.contains(element) && !removeGraph.contains(element)
+            && precedesFloor(added) && precedesFloor(removed);
+    }
+
+    private boolean precedesFloor(Vertex<E> vertex) {
+        return vertex == null || floor.dominates(vertex.getVectorClock());
+    }
+
+    /**
+     * @return the clock every purged tombstone preceded
+     */
+    VectorClock getFloor() {
+        return this.floor;
+    }
+
+    /**
+     * @param floor the clock every tombstone purged before the graph was restored preceded
+     */
+    void restoreFloor(VectorClock floor) {
+        this.floor = this.floor.merge(floor);
+    }
+}
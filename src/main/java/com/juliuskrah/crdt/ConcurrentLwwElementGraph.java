@@ -0,0 +1,296 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A thread-safe variant of {@link LwwElementGraph} with the same last-writer-wins semantics.
+ * Writes lock the stripes of the vertices they touch, so writes to different vertices run in parallel,
+ * and the clock of the graph advances atomically. Reads do not lock and see a weakly consistent view,
+ * i.e. they never fail under concurrent writes but may observe a write that is still in progress.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+@Slf4j
+public class ConcurrentLwwElementGraph<E extends Comparable<E>> {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 64;
+    private final ConcurrentMap<E, Vertex<E>> addVertices;
+    private final ConcurrentMap<E, Vertex<E>> removeVertices;
+    // adjacency of every added vertex, keyed by the element of the neighbour
+    private final ConcurrentMap<E, ConcurrentMap<E, Vertex<E>>> adjacency;
+    private final ConcurrentMap<E, VectorClock> elements;
+    private final StripedLocks<E> locks;
+    private final AtomicReference<VectorClock> vectorClock;
+    private final LWWBias bias;
+
+    public ConcurrentLwwElementGraph(String nodeId) {
+        this(nodeId, LWWBias.ADD);
+    }
+
+    public ConcurrentLwwElementGraph(String nodeId, LWWBias bias) {
+        this(nodeId, bias, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param nodeId the node Id
+     * @param bias the bias to apply
+     * @param concurrencyLevel the number of writers expected to run in parallel, rounded up to a power of two
+     *     for the number of lock stripes
+     */
+    public ConcurrentLwwElementGraph(String nodeId, LWWBias bias, int concurrencyLevel) {
+        Objects.requireNonNull(nodeId, "nodeId must not be null");
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+        }
+        this.addVertices = new ConcurrentHashMap<>();
+        this.removeVertices = new ConcurrentHashMap<>();
+        this.adjacency = new ConcurrentHashMap<>();
+        this.elements = new ConcurrentHashMap<>();
+        this.locks = new StripedLocks<>(concurrencyLevel);
+        this.vectorClock = new AtomicReference<>(VectorClock.of(nodeId));
+        this.bias = bias;
+    }
+
+    private VectorClock tick() {
+        return vectorClock.updateAndGet(VectorClock::increment);
+    }
+
+    /**
+     * Resolves the element against its add and remove vertices. Callers hold the stripe of the element.
+     */
+    private void updateElements(E element) {
+        final var added = addVertices.get(element);
+        final var removed = removeVertices.get(element);
+        VectorClock clock = bias.resolve(added == null ? null : added.getVectorClock(),
+            removed == null ? null : removed.getVectorClock());
+        if (clock != null) {
+            elements.put(element, clock);
+        } else {
+            elements.remove(element);
+        }
+    }
+
+    private ConcurrentMap<E, Vertex<E>> adjacentVertices(E element) {
+        return adjacency.computeIfAbsent(element, key -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Add vertex to the graph.
+     * @param element
+     */
+    public void addVertex(E element) {
+        locks.withLock(element, () -> {
+            log.debug("Adding: {}...", element);
+            addVertices.put(element, Vertex.of(element, tick()));
+            updateElements(element);
+        });
+    }
+
+    /**
+     * Remove vertex from the graph.
+     * @param element
+     */
+    public void removeVertex(E element) {
+        locks.withLock(element, () -> {
+            log.debug("Removing: {}...", element);
+            final var clock = tick();
+            addVertices.remove(element);
+            adjacency.remove(element);
+            removeVertices.put(element, Vertex.of(element, clock));
+            updateElements(element);
+        });
+    }
+
+    /**
+     * Add an edge to the graph.
+     * If the vertices exist on this graph, the the call to add edge succeed
+     * @param edge
+     * @return true if the edge was added
+     */
+    public boolean addEdge(Edge<E> edge) {
+        final var vertex1 = edge.getSource();
+        final var vertex2 = edge.getDestination();
+        return locks.withLocks(vertex1.getValue(), vertex2.getValue(), () -> {
+            tick();
+            if (!elements.containsKey(vertex1.getValue()) || !elements.containsKey(vertex2.getValue())) {
+                // one or both vertices do not exist to create an edge
+                return false;
+            }
+            adjacentVertices(vertex1.getValue()).put(vertex2.getValue(), vertex2);
+            adjacentVertices(vertex2.getValue()).put(vertex1.getValue(), vertex1);
+            return true;
+        });
+    }
+
+    /**
+     * Remove an edge from the graph.
+     * @param edge
+     */
+    public void removeEdge(Edge<E> edge) {
+        final var vertex1 = edge.getSource();
+        final var vertex2 = edge.getDestination();
+        locks.withLocks(vertex1.getValue(), vertex2.getValue(), () -> {
+            tick();
+            final var neighbors = adjacency.get(vertex1.getValue());
+            if (neighbors == null || !elements.containsKey(vertex1.getValue())
+                    || !neighbors.remove(vertex2.getValue(), vertex2)) {
+                return false;
+            }
+            adjacentVertices(vertex2.getValue()).remove(vertex1.getValue(), vertex1);
+            return true;
+        });
+    }
+
+    /**
+     * Query for all vertices adjacent to current vertex, without locking.
+     * @param element current vertex
+     * @return a live, unmodifiable view of the adjacent vertices
+     */
+    public Collection<Vertex<E>> findAdjacentVertices(E element) {
+        final var neighbors = adjacency.get(element);
+        if (neighbors == null || !elements.containsKey(element)) {
+            return List.of();
+        }
+        return Collections.unmodifiableCollection(neighbors.values());
+    }
+
+    /**
+     * Search a path between source and destination, without locking.
+     * @param source
+     * @param destination
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     */
+    public Set<E> findAnyPath(E source, E destination) {
+        if (!elements.containsKey(source)) {
+            return Set.of();
+        }
+        Map<E, E> parents = new HashMap<>();
+        Queue<E> queue = new ArrayDeque<>();
+        parents.put(source, source);
+        queue.add(source);
+        while (!queue.isEmpty()) {
+            final E current = queue.poll();
+            if (current.equals(destination)) {
+                return pathTo(parents, destination);
+            }
+            for (Vertex<E> vertex : findAdjacentVertices(current)) {
+                final E next = vertex.getValue();
+                // the adjacency of a live vertex may still hold edges to a vertex removed since
+                if (elements.containsKey(next) && parents.putIfAbsent(next, current) == null) {
+                    queue.add(next);
+                }
+            }
+        }
+        return Set.of();
+    }
+
+    private static <E> Set<E> pathTo(Map<E, E> parents, E destination) {
+        List<E> path = new ArrayList<>();
+        E current = destination;
+        path.add(current);
+        while (!parents.get(current).equals(current)) {
+            current = parents.get(current);
+            path.add(current);
+        }
+        Collections.reverse(path);
+        return new LinkedHashSet<>(path);
+    }
+
+    /**
+     * Merges the state of another replica into this graph.
+     * Each element is merged under its own stripe, so writers of other vertices are not blocked.
+     * @param other the LWW graph to merge with
+     * @return merged graph
+     */
+    public ConcurrentLwwElementGraph<E> merge(ConcurrentLwwElementGraph<E> other) {
+        // read the clock first, so it never covers state that is not merged
+        final var otherClock = other.getVectorClock();
+        Set<E> merged = new HashSet<>(other.addVertices.keySet());
+        merged.addAll(other.removeVertices.keySet());
+        for (E element : merged) {
+            final var neighbors = other.adjacency.get(element);
+            mergeElement(element, other.addVertices.get(element),
+                neighbors == null ? List.of() : new ArrayList<>(neighbors.values()),
+                other.removeVertices.get(element));
+        }
+        vectorClock.accumulateAndGet(otherClock, VectorClock::merge);
+        return this;
+    }
+
+    /**
+     * Merges a delta taken from another replica into this graph.
+     * @param delta the delta to apply
+     * @return merged graph
+     * @see LwwElementGraph#deltaSince(VectorClock)
+     */
+    public ConcurrentLwwElementGraph<E> applyDelta(GraphDelta<E> delta) {
+        for (GraphDelta.Entry<E> entry : delta.getEntries()) {
+            mergeElement(entry.getElement(), entry.getAdded(), entry.getAdjacentVertices(), entry.getRemoved());
+        }
+        vectorClock.accumulateAndGet(delta.getVectorClock(), VectorClock::merge);
+        return this;
+    }
+
+    private void mergeElement(E element, Vertex<E> added, Collection<Vertex<E>> neighbors, Vertex<E> removed) {
+        locks.withLock(element, () -> {
+            if (isNewer(addVertices.get(element), added)) {
+                addVertices.put(element, added);
+                adjacency.put(element, new ConcurrentHashMap<>());
+            }
+            if (added != null && added.equals(addVertices.get(element))) {
+                // same add on both replicas, union the edges
+                final var adjacent = adjacentVertices(element);
+                neighbors.forEach(vertex -> adjacent.put(vertex.getValue(), vertex));
+            }
+            if (isNewer(removeVertices.get(element), removed)) {
+                removeVertices.put(element, removed);
+            }
+            updateElements(element);
+        });
+    }
+
+    private static <E extends Comparable<E>> boolean isNewer(Vertex<E> current, Vertex<E> vertex) {
+        return vertex != null
+            && (current == null || current.getVectorClock().compareTo(vertex.getVectorClock()) < 0);
+    }
+
+    /**
+     * @return the clock of this graph, covering every change it has made or merged
+     */
+    public VectorClock getVectorClock() {
+        return this.vectorClock.get();
+    }
+
+    public VectorClock findVectorClock(E element) {
+        return elements.get(element);
+    }
+
+    public int vertexSize() {
+        return this.elements.size();
+    }
+
+    /**
+     * Checks whether the current graph contains this vertex, without locking.
+     * @param element
+     * @return true if the vertex was ever added or removed
+     */
+    public boolean containsVertex(E element) {
+        return addVertices.containsKey(element) || removeVertices.containsKey(element);
+    }
+}
@@ -0,0 +1,178 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Connected components of the live vertices of a graph, as a union-find over the dense element ids.
+ * Adding an edge or bringing a vertex to life only joins components, which the index follows as it happens. Removing
+ * an edge or a vertex may split a component, which a union-find cannot undo, so such changes mark the index stale
+ * and the next query rebuilds it from the adjacency of every live vertex. A run of changes then costs one rebuild,
+ * and queries between changes that split nothing take near constant time.
+ * <p>
+ * Edges count in either direction, as they do for {@link PathFinder}. A live vertex may still list a neighbour
+ * that is not live, e.g. a removed vertex whose removal did not reach the adjacency of its neighbours; the index
+ * remembers such neighbours, so that the vertices listing one join its component once it is added again.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#isConnected(Comparable, Comparable)
+ */
+final class ConnectivityIndex<E extends Comparable<E>> {
+    private static final int[] NO_IDS = new int[0];
+    private final ElementIds<E> ids;
+    private final Function<E, Collection<Vertex<E>>> adjacency;
+    private final Predicate<E> live;
+    // the parent of every id, an id being its own parent at the root of its component
+    private int[] parents = NO_IDS;
+    // the number of ids below every root
+    private int[] sizes = NO_IDS;
+    // neighbours that are not live, with the live vertices that list them
+    private final Map<E, List<E>> dangling = new HashMap<>();
+    private boolean stale = true;
+
+    /**
+     * @param ids the id table of the graph
+     * @param adjacency resolves the live neighbours of an element
+     * @param live tells whether an element is in the graph
+     */
+    ConnectivityIndex(ElementIds<E> ids, Function<E, Collection<Vertex<E>>> adjacency, Predicate<E> live) {
+        this.ids = ids;
+        this.adjacency = adjacency;
+        this.live = live;
+    }
+
+    /**
+     * Marks the index for a rebuild, after a change that may have split a component.
+     */
+    void invalidate() {
+        stale = true;
+        dangling.clear();
+    }
+
+    /**
+     * Rebuilds the index when it is stale.
+     * @param elements every live element
+     * @param addGraph the add side of the graph, holding the adjacency of the live vertices
+     */
+    void refresh(Iterable<E> elements, GraphSet<E> addGraph) {
+        if (!stale) {
+            return;
+        }
+        parents = new int[ids.size()];
+        sizes = new int[parents.length];
+        for (int id = 0; id < parents.length; id++) {
+            parents[id] = id;
+            sizes[id] = 1;
+        }
+        stale = false;
+        // marking the live ids first and walking the adjacency trie after, rather than looking every vertex and
+        // neighbour up in the tries, which costs a cache miss each
+        final boolean[] alive = new boolean[parents.length];
+        for (E element : elements) {
+            alive[ids.idOf(element)] = true;
+        }
+        addGraph.forEachAdjacency((element, neighbors) -> {
+            final int id = ids.idOf(element);
+            if (id < 0 || !alive[id]) {
+                return;
+            }
+            for (Vertex<E> neighbor : neighbors) {
+                final int neighborId = ids.idOf(neighbor.getValue());
+                if (neighborId >= 0 && alive[neighborId]) {
+                    union(id, neighborId);
+                } else {
+                    dangling.computeIfAbsent(neighbor.getValue(), key -> new ArrayList<>()).add(element);
+                }
+            }
+        });
+    }
+
+    /**
+     * Joins the components of the two live vertices of a new edge.
+     */
+    void union(E first, E second) {
+        if (!stale) {
+            union(ids.idOf(first), ids.idOf(second));
+        }
+    }
+
+    /**
+     * Joins a vertex that just became live to its live neighbours, and to the live vertices listing it.
+     * @param element the element
+     */
+    void revive(E element) {
+        if (stale) {
+            return;
+        }
+        join(element);
+        final var listing = dangling.remove(element);
+        if (listing != null) {
+            for (E neighbor : listing) {
+                if (live.test(neighbor)) {
+                    union(ids.idOf(neighbor), ids.idOf(element));
+                }
+            }
+        }
+    }
+
+    private void join(E element) {
+        final int id = ids.idOf(element);
+        for (Vertex<E> neighbor : adjacency.apply(element)) {
+            if (live.test(neighbor.getValue())) {
+                union(id, ids.idOf(neighbor.getValue()));
+            } else {
+                dangling.computeIfAbsent(neighbor.getValue(), key -> new ArrayList<>()).add(element);
+            }
+        }
+    }
+
+    private void union(int first, int second) {
+        int root1 = find(first);
+        int root2 = find(second);
+        if (root1 == root2) {
+            return;
+        }
+        // the smaller component goes under the larger, keeping paths logarithmic before any halving
+        if (sizes[root1] < sizes[root2]) {
+            final int root = root1;
+            root1 = root2;
+            root2 = root;
+        }
+        parents[root2] = root1;
+        sizes[root1] += sizes[root2];
+    }
+
+    /**
+     * @param id a live id, which may have been interned after the last rebuild
+     * @return the id at the root of the component
+     */
+    int find(int id) {
+        if (id >= parents.length) {
+            grow();
+        }
+        int current = id;
+        while (parents[current] != current) {
+            // path halving: every other id on the path skips its parent
+            parents[current] = parents[parents[current]];
+            current = parents[current];
+        }
+        return current;
+    }
+
+    private void grow() {
+        final int from = parents.length;
+        final int length = Math.max(ids.size(), from * 2);
+        parents = Arrays.copyOf(parents, length);
+        sizes = Arrays.copyOf(sizes, length);
+        for (int id = from; id < length; id++) {
+            parents[id] = id;
+            sizes[id] = 1;
+        }
+    }
+}
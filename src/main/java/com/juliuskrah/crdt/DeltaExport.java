@@ -0,0 +1,51 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports the {@linkplain GraphState state} of a graph, or of some of its elements, as a {@link GraphDelta} for other
+ * replicas to merge.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#deltaSince(VectorClock)
+ */
+final class DeltaExport<E extends Comparable<E>> {
+    private static final VectorClock NOTHING_SEEN = VectorClock.of("");
+    private final GraphState<E> state;
+
+    DeltaExport(GraphState<E> state) {
+        this.state = state;
+    }
+
+    /**
+     * @param since the clock of the replica
+     * @return the elements changed after {@code since}
+     */
+    GraphDelta<E> deltaSince(VectorClock since) {
+        return deltaOf(state.changeLog().changedSince(since));
+    }
+
+    /**
+     * @param changed elements of the graph
+     * @return the state of the elements
+     */
+    GraphDelta<E> deltaOf(Iterable<E> changed) {
+        final var addGraph = state.addGraph();
+        final var removeGraph = state.removeGraph();
+        final var changeLog = state.changeLog();
+        List<GraphDelta.Entry<E>> entries = new ArrayList<>();
+        for (E element : changed) {
+            entries.add(GraphDelta.Entry.of(element, changeLog.changesOf(element), addGraph.get(element),
+                addGraph.adjacentVertices(element), removeGraph.get(element)));
+        }
+        return GraphDelta.of(state.getVectorClock(), entries);
+    }
+
+    /**
+     * @return the whole state of the graph, as the delta since an empty clock
+     */
+    GraphDelta<E> wholeState() {
+        return deltaSince(NOTHING_SEEN);
+    }
+}
@@ -0,0 +1,27 @@
+package com.juliuskrah.crdt;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Durability of the entries of a directory, for the files of a {@link GraphStore}.
+ * @author Julius Krah
+ */
+final class Directories {
+
+    private Directories() {
+    }
+
+    /**
+     * Forces the entries of the directory to disk, so that a file created or renamed in it survives a crash before
+     * anything relies on it.
+     * @param directory the directory
+     */
+    static void force(Path directory) throws IOException {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.juliuskrah.crdt;
+
+import java.util.Objects;
+
+/**
+ * A single event in a {@link VectorClock}: the node that ticked and the counter it ticked to.
+ * @author Julius Krah
+ */
+final class Dot {
+    private final int node;
+    private final long counter;
+
+    private Dot(int node, long counter) {
+        this.node = node;
+        this.counter = counter;
+    }
+
+    static Dot of(int node, long counter) {
+        return new Dot(node, counter);
+    }
+
+    static Dot of(String nodeId, long counter) {
+        return new Dot(NodeIds.ordinal(nodeId), counter);
+    }
+
+    /**
+     * @return the ordinal of the node, see {@link NodeIds}
+     */
+    int getNode() {
+        return this.node;
+    }
+
+    String getNodeId() {
+        return NodeIds.name(this.node);
+    }
+
+    long getCounter() {
+        return this.counter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "(" + getNodeId() + ", " + counter + ")";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var dot = (Dot) o;
+        return node == dot.node && counter == dot.counter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(node, counter);
+    }
+}
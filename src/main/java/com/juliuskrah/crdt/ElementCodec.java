@@ -0,0 +1,55 @@
+package com.juliuskrah.crdt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads elements of a graph for {@link GraphCodec}.
+ * Implementations must write exactly {@link #sizeOf(Comparable)} bytes, so that buffers can be sized up front.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+public interface ElementCodec<E extends Comparable<E>> {
+
+    /**
+     * @param element the element
+     * @return the number of bytes {@link #encode(Comparable, ByteBuffer)} writes for the element
+     */
+    int sizeOf(E element);
+
+    /**
+     * Writes the element at the buffer's position.
+     * @param element the element
+     * @param buffer the buffer to write to
+     */
+    void encode(E element, ByteBuffer buffer);
+
+    /**
+     * Reads an element at the buffer's position.
+     * @param buffer the buffer to read from
+     * @return the element
+     * @throws IllegalArgumentException when the buffer does not hold a well-formed element
+     * @throws java.nio.BufferUnderflowException when the buffer ends within the element
+     */
+    E decode(ByteBuffer buffer);
+
+    /**
+     * @return codec for strings, written as a varint length followed by UTF-8 bytes
+     */
+    static ElementCodec<String> ofString() {
+        return ElementCodecs.StringCodec.INSTANCE;
+    }
+
+    /**
+     * @return codec for longs, written as zig-zag varints
+     */
+    static ElementCodec<Long> ofLong() {
+        return ElementCodecs.LongCodec.INSTANCE;
+    }
+
+    /**
+     * @return codec for integers, written as zig-zag varints
+     */
+    static ElementCodec<Integer> ofInteger() {
+        return ElementCodecs.IntegerCodec.INSTANCE;
+    }
+}
@@ -0,0 +1,96 @@
+package com.juliuskrah.crdt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The built-in {@link ElementCodec}s.
+ * @author Julius Krah
+ */
+final class ElementCodecs {
+
+    private ElementCodecs() {
+    }
+
+    /**
+     * UTF-8 strings.
+     */
+    enum StringCodec implements ElementCodec<String> {
+        INSTANCE;
+
+        @Override
+        public int sizeOf(String element) {
+            final int length = element.getBytes(StandardCharsets.UTF_8).length;
+            return Varints.sizeOfUnsigned(length) + length;
+        }
+
+        @Override
+        public void encode(String element, ByteBuffer buffer) {
+            final byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+            Varints.writeUnsigned(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) {
+            final int length = Varints.readUnsignedInt(buffer);
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("Malformed string: length " + length + " exceeds the "
+                    + buffer.remaining() + " bytes remaining");
+            }
+            if (buffer.hasArray()) {
+                // decode straight from the backing array, no intermediate copy
+                final int offset = buffer.arrayOffset() + buffer.position();
+                buffer.position(buffer.position() + length);
+                return new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+            }
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Zig-zag varint longs.
+     */
+    enum LongCodec implements ElementCodec<Long> {
+        INSTANCE;
+
+        @Override
+        public int sizeOf(Long element) {
+            return Varints.sizeOfSigned(element);
+        }
+
+        @Override
+        public void encode(Long element, ByteBuffer buffer) {
+            Varints.writeSigned(buffer, element);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer) {
+            return Varints.readSigned(buffer);
+        }
+    }
+
+    /**
+     * Zig-zag varint integers.
+     */
+    enum IntegerCodec implements ElementCodec<Integer> {
+        INSTANCE;
+
+        @Override
+        public int sizeOf(Integer element) {
+            return Varints.sizeOfSigned(element);
+        }
+
+        @Override
+        public void encode(Integer element, ByteBuffer buffer) {
+            Varints.writeSigned(buffer, element);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            return Varints.readSignedInt(buffer);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interning table that gives each element a stable, dense int id.
+ * Ids are handed out in order of first appearance, so they can index primitive arrays and bitsets sized by
+ * {@link #size()}. The id of an element purged by compaction is released and handed to the next new element, so
+ * the table follows the elements the graph holds rather than every element it ever held.
+ * Any number of threads read while elements are interned, as queries on a {@link GraphSnapshot} do: the element
+ * of an id is stored before the id is published, and grown tables are published whole. A snapshot reads a
+ * {@linkplain #share() shared} view of the table, to which the graph only appends: releasing an id copies the
+ * table first, and released ids are not reused while the table is shared. Interning new elements is
+ * synchronized, as the partitions of a parallel merge intern the neighbours they keep off the heap.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class ElementIds<E> {
+    static final int NO_ID = -1;
+    private volatile Map<E, Integer> ids;
+    private volatile Object[] elements;
+    private volatile int size;
+    // released ids, reused once no view shares the table
+    private int[] free = new int[0];
+    private int freeCount;
+    private boolean shared;
+
+    ElementIds() {
+        this(new ConcurrentHashMap<>(), new Object[16], 0);
+    }
+
+    private ElementIds(Map<E, Integer> ids, Object[] elements, int size) {
+        this.ids = ids;
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /**
+     * Returns the id of the element, assigning the next free id when it has none yet.
+     * @param element the element
+     * @return its id
+     */
+    int intern(E element) {
+        final var id = ids.get(element);
+        return id != null ? id : register(element);
+    }
+
+    private synchronized int register(E element) {
+        final var id = ids.get(element);
+        if (id != null) {
+            return id;
+        }
+        final int next = shared || freeCount == 0 ? append() : free[--freeCount];
+        elements[next] = element;
+        ids.put(element, next);
+        return next;
+    }
+
+    private int append() {
+        final int next = size;
+        if (next == elements.length) {
+            elements = Arrays.copyOf(elements, next * 2);
+        }
+        size = next + 1;
+        return next;
+    }
+
+    /**
+     * Releases the id of an element the graph no longer holds, for a later element to take.
+     * Nothing may refer to the id afterwards, but the views shared before.
+     * @param element the element
+     * @return true when the element had an id
+     */
+    synchronized boolean release(E element) {
+        if (!ids.containsKey(element)) {
+            return false;
+        }
+        if (shared) {
+            // views keep the table as it is
+            ids = new ConcurrentHashMap<>(ids);
+            elements = elements.clone();
+            shared = false;
+        }
+        final int id = ids.remove(element);
+        elements[id] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(16, freeCount * 2));
+        }
+        free[freeCount++] = id;
+        return true;
+    }
+
+    /**
+     * @return a read-only view of the table as it is, which the ids of later elements do not change
+     */
+    synchronized ElementIds<E> share() {
+        shared = true;
+        return new ElementIds<>(ids, elements, size);
+    }
+
+    /**
+     * @param element the element
+     * @return its id, or {@link #NO_ID} when it has none
+     */
+    int idOf(E element) {
+        return ids.getOrDefault(element, NO_ID);
+    }
+
+    @SuppressWarnings("unchecked")
+    E elementOf(int id) {
+        return (E) elements[id];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,175 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+
+/**
+ * Read cache of the resolved state of elements: whether the graph holds a vertex of the element on either side,
+ * the clock it is live with and the adjacency set of its vertex. A lookup in the tries of the graph takes a probe
+ * per level and per trie, here a lookup that hits is a single probe of a flat, open-addressed table.
+ * <p>
+ * Entries are filled by reads and dropped by every write to the element, so they never go stale. The table grows
+ * up to a maximum capacity; once that is full, a new generation starts: every entry carries the generation it was
+ * filled in, and entries of older generations count as empty, so the whole table is dropped in constant time;
+ * their slots are overwritten as the table fills again.
+ * Like the graph, the cache is not thread-safe, reads change it.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class ElementStates<E extends Comparable<E>> extends OpenAddressing {
+    private static final int INITIAL_CAPACITY = 1 << 6;
+    // the table holds up to a million elements, at most half of its slots are taken to keep runs of probes short
+    private static final int MAX_CAPACITY = 1 << 21;
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private VectorClock[] clocks = new VectorClock[INITIAL_CAPACITY];
+    private Object[] adjacency = new Object[INITIAL_CAPACITY];
+    private boolean[] contained = new boolean[INITIAL_CAPACITY];
+    // generation every slot was filled in, a slot of an older generation is empty
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int generation = 1;
+    private int size;
+
+    /**
+     * Fibonacci hashing, which scatters the runs of consecutive ids that linear probing would otherwise cluster.
+     */
+    private static int slotOf(Object element, int length) {
+        return (element.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(length));
+    }
+
+    @Override
+    int capacity() {
+        return keys.length;
+    }
+
+    @Override
+    boolean taken(int slot) {
+        return generations[slot] == generation;
+    }
+
+    @Override
+    int homeOf(int slot) {
+        return slotOf(keys[slot], keys.length);
+    }
+
+    /**
+     * @param element the element
+     * @return the slot of the element, or -1 when it is not cached
+     */
+    int find(E element) {
+        final int mask = keys.length - 1;
+        for (int slot = slotOf(element, keys.length); taken(slot); slot = (slot + 1) & mask) {
+            if (element.equals(keys[slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Caches the state of an element that is not cached.
+     * @param element the element
+     * @param clock the clock the element is live with, null when it is not live
+     * @param contains whether the graph holds a vertex of the element, live or removed
+     * @param adjacentVertices the adjacency set of the live vertex, null when it is not live
+     * @return the slot of the element
+     */
+    int put(E element, VectorClock clock, boolean contains, AdjacencySet<E> adjacentVertices) {
+        if (2 * (size + 1) > keys.length) {
+            if (keys.length < MAX_CAPACITY) {
+                resize(keys.length * 2);
+            } else {
+                clear();
+            }
+        }
+        final int slot = freeSlot(slotOf(element, keys.length));
+        keys[slot] = element;
+        clocks[slot] = clock;
+        adjacency[slot] = adjacentVertices;
+        contained[slot] = contains;
+        generations[slot] = generation;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Drops the element after it changed.
+     * @param element the element
+     */
+    void invalidate(E element) {
+        if (size == 0) {
+            return;
+        }
+        final int found = find(element);
+        if (found < 0) {
+            return;
+        }
+        size--;
+        final int slot = shiftBack(found);
+        keys[slot] = null;
+        clocks[slot] = null;
+        adjacency[slot] = null;
+        generations[slot] = 0;
+    }
+
+    @Override
+    void move(int from, int to) {
+        keys[to] = keys[from];
+        clocks[to] = clocks[from];
+        adjacency[to] = adjacency[from];
+        contained[to] = contained[from];
+        generations[to] = generations[from];
+    }
+
+    /**
+     * Drops every element, by starting a new generation.
+     */
+    void clear() {
+        size = 0;
+        if (++generation == 0) {
+            // the generations wrapped around, empty the slots for real
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    private void resize(int capacity) {
+        final var oldKeys = keys;
+        final var oldClocks = clocks;
+        final var oldAdjacency = adjacency;
+        final var oldContained = contained;
+        final var oldGenerations = generations;
+        final int oldGeneration = generation;
+        keys = new Object[capacity];
+        clocks = new VectorClock[capacity];
+        adjacency = new Object[capacity];
+        contained = new boolean[capacity];
+        generations = new int[capacity];
+        generation = 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGenerations[i] == oldGeneration) {
+                final int slot = freeSlot(slotOf(oldKeys[i], capacity));
+                keys[slot] = oldKeys[i];
+                clocks[slot] = oldClocks[i];
+                adjacency[slot] = oldAdjacency[i];
+                contained[slot] = oldContained[i];
+                generations[slot] = generation;
+            }
+        }
+    }
+
+    VectorClock clockAt(int slot) {
+        return clocks[slot];
+    }
+
+    boolean containsAt(int slot) {
+        return contained[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    AdjacencySet<E> adjacencyAt(int slot) {
+        return (AdjacencySet<E>) adjacency[slot];
+    }
+
+    int size() {
+        return size;
+    }
+}
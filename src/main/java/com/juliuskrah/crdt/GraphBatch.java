@@ -0,0 +1,99 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.GraphOperation.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Changes collected for a single commit to an {@link LwwElementGraph}.
+ * The graph ticks its clock once for the whole batch and stamps every change with that clock, so a later
+ * change of the same element in the batch overrides an earlier one. Edges may name their vertices by element,
+ * those resolve to the vertices that are in the graph when the edge is committed, including vertices added
+ * earlier in the same batch.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#batch(java.util.function.Consumer)
+ */
+public final class GraphBatch<E extends Comparable<E>> {
+    private final List<Change<E>> changes = new ArrayList<>();
+
+    GraphBatch() {
+    }
+
+    public GraphBatch<E> addVertex(E element) {
+        return add(new Change<>(Type.ADD_VERTEX, Objects.requireNonNull(element, "element must not be null"),
+            null, null));
+    }
+
+    public GraphBatch<E> removeVertex(E element) {
+        return add(new Change<>(Type.REMOVE_VERTEX, Objects.requireNonNull(element, "element must not be null"),
+            null, null));
+    }
+
+    /**
+     * Adds an edge between the vertices of the two elements, if both are in the graph when the edge is committed.
+     * @param source the source element
+     * @param destination the destination element
+     * @return this batch
+     */
+    public GraphBatch<E> addEdge(E source, E destination) {
+        return add(new Change<>(Type.ADD_EDGE, Objects.requireNonNull(source, "source must not be null"),
+            Objects.requireNonNull(destination, "destination must not be null"), null));
+    }
+
+    public GraphBatch<E> addEdge(Edge<E> edge) {
+        return add(new Change<>(Type.ADD_EDGE, null, null, Objects.requireNonNull(edge, "edge must not be null")));
+    }
+
+    /**
+     * Removes the edge between the vertices the two elements have when the edge is committed.
+     * @param source the source element
+     * @param destination the destination element
+     * @return this batch
+     */
+    public GraphBatch<E> removeEdge(E source, E destination) {
+        return add(new Change<>(Type.REMOVE_EDGE, Objects.requireNonNull(source, "source must not be null"),
+            Objects.requireNonNull(destination, "destination must not be null"), null));
+    }
+
+    public GraphBatch<E> removeEdge(Edge<E> edge) {
+        return add(new Change<>(Type.REMOVE_EDGE, null, null, Objects.requireNonNull(edge, "edge must not be null")));
+    }
+
+    private GraphBatch<E> add(Change<E> change) {
+        changes.add(change);
+        return this;
+    }
+
+    List<Change<E>> getChanges() {
+        return this.changes;
+    }
+
+    public int size() {
+        return this.changes.size();
+    }
+
+    public boolean isEmpty() {
+        return this.changes.isEmpty();
+    }
+
+    /**
+     * A change of the batch. Vertex changes carry the element, edge changes either an edge or
+     * the elements of its source and destination.
+     * @param <E> the element to operate on
+     */
+    static final class Change<E extends Comparable<E>> {
+        final Type type;
+        final E element;
+        final E destination;
+        final Edge<E> edge;
+
+        private Change(Type type, E element, E destination, Edge<E> edge) {
+            this.type = type;
+            this.element = element;
+            this.destination = destination;
+            this.edge = edge;
+        }
+    }
+}
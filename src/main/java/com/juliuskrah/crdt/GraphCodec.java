@@ -0,0 +1,466 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact, versioned binary format for {@link GraphDelta}s, {@link GraphOperation}s and whole
+ * {@link LwwElementGraph}s.
+ * <p>
+ * A message starts with a magic number and a format version, followed by a dictionary holding every node id
+ * referenced by the message once. Clocks then refer to node ids by dictionary index, and all indexes, counters and
+ * lengths are written as varints. Elements are written by a pluggable {@link ElementCodec}.
+ * <pre>
+ * delta      = "LWWG":int32 version:byte dictionary clock count:varint entry*
+ * operation  = "LWWO":int32 version:byte dictionary type:byte clock vertex [vertex]
+ * dictionary = count:varint (length:varint utf8-bytes)*
+ * clock      = key:varint count:varint (node:varint counter:varint)*
+ * vertex     = element clock
+ * entry      = element changes:clock flags:byte
+ *              [clock count:varint vertex*]  -- add vertex and adjacency, when flags has 1
+ *              [clock]                       -- remove vertex, when flags has 2
+ * </pre>
+ * The state of a graph is written as its delta since an empty clock.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+public final class GraphCodec<E extends Comparable<E>> {
+    static final int MAGIC = 0x4C575747; // "LWWG"
+    static final int OPERATION_MAGIC = 0x4C57574F; // "LWWO"
+    static final byte VERSION = 2;
+    private static final int HAS_ADDED = 1;
+    private static final int HAS_REMOVED = 2;
+    private final ElementCodec<E> elementCodec;
+
+    private GraphCodec(ElementCodec<E> elementCodec) {
+        this.elementCodec = elementCodec;
+    }
+
+    public static <E extends Comparable<E>> GraphCodec<E> of(ElementCodec<E> elementCodec) {
+        Objects.requireNonNull(elementCodec, "elementCodec must not be null");
+        return new GraphCodec<>(elementCodec);
+    }
+
+    /**
+     * @param graph the graph
+     * @return a heap buffer holding the state of the graph, ready to be read
+     */
+    public ByteBuffer encode(LwwElementGraph<E> graph) {
+        return encode(graph.state());
+    }
+
+    /**
+     * Reads the state of a graph into a new graph.
+     * @param buffer the buffer to read from
+     * @param nodeId the node id of the new graph
+     * @param bias the bias of the new graph
+     * @return the graph
+     * @throws IllegalArgumentException when the buffer does not hold a supported, well-formed message
+     */
+    public LwwElementGraph<E> decode(ByteBuffer buffer, String nodeId, LWWBias bias) {
+        return new LwwElementGraph<E>(nodeId, bias).applyDelta(decodeDelta(buffer));
+    }
+
+    /**
+     * @param delta the delta
+     * @return the number of bytes the delta is encoded to
+     */
+    public int sizeOf(GraphDelta<E> delta) {
+        return new DeltaWriter(delta).size();
+    }
+
+    /**
+     * @param delta the delta
+     * @return a heap buffer of exactly the encoded size, ready to be read
+     */
+    public ByteBuffer encode(GraphDelta<E> delta) {
+        var writer = new DeltaWriter(delta);
+        var buffer = ByteBuffer.allocate(writer.size());
+        writer.write(buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the delta at the buffer's position, e.g. into a direct buffer bound for a channel.
+     * @param delta the delta
+     * @param buffer a buffer with at least {@link #sizeOf(GraphDelta)} bytes remaining
+     */
+    public void encode(GraphDelta<E> delta, ByteBuffer buffer) {
+        new DeltaWriter(delta).write(buffer);
+    }
+
+    /**
+     * Reads a delta at the buffer's position.
+     * @param buffer the buffer to read from
+     * @return the delta
+     * @throws IllegalArgumentException when the buffer does not hold a supported, well-formed message
+     */
+    public GraphDelta<E> decodeDelta(ByteBuffer buffer) {
+        try {
+            return new Reader(buffer, MAGIC).readDelta();
+        } catch (BufferUnderflowException e) {
+            throw truncated(e);
+        }
+    }
+
+    /**
+     * @param operation the operation
+     * @return the number of bytes the operation is encoded to
+     */
+    public int sizeOf(GraphOperation<E> operation) {
+        return new OperationWriter(operation).size();
+    }
+
+    /**
+     * @param operation the operation
+     * @return a heap buffer of exactly the encoded size, ready to be read
+     */
+    public ByteBuffer encode(GraphOperation<E> operation) {
+        var writer = new OperationWriter(operation);
+        var buffer = ByteBuffer.allocate(writer.size());
+        writer.write(buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the operation at the buffer's position.
+     * @param operation the operation
+     * @param buffer a buffer with at least {@link #sizeOf(GraphOperation)} bytes remaining
+     */
+    public void encode(GraphOperation<E> operation, ByteBuffer buffer) {
+        new OperationWriter(operation).write(buffer);
+    }
+
+    /**
+     * Reads an operation at the buffer's position.
+     * @param buffer the buffer to read from
+     * @return the operation
+     * @throws IllegalArgumentException when the buffer does not hold a supported, well-formed message
+     */
+    public GraphOperation<E> decodeOperation(ByteBuffer buffer) {
+        try {
+            return new Reader(buffer, OPERATION_MAGIC).readOperation();
+        } catch (BufferUnderflowException e) {
+            throw truncated(e);
+        }
+    }
+
+    private static IllegalArgumentException truncated(BufferUnderflowException cause) {
+        return new IllegalArgumentException("Malformed graph: the message is truncated", cause);
+    }
+
+    /**
+     * Node ordinals referenced by a message, numbered in order of first reference.
+     */
+    private static final class Dictionary {
+        private int[] indexes = new int[0];
+        private int[] ordinals = new int[8];
+        private int size;
+
+        void add(int ordinal) {
+            if (ordinal >= indexes.length) {
+                final int from = indexes.length;
+                indexes = Arrays.copyOf(indexes, Math.max(ordinal + 1, from * 2));
+                Arrays.fill(indexes, from, indexes.length, -1);
+            }
+            if (indexes[ordinal] < 0) {
+                ordinals = size == ordinals.length ? Arrays.copyOf(ordinals, size * 2) : ordinals;
+                ordinals[size] = ordinal;
+                indexes[ordinal] = size++;
+            }
+        }
+
+        void add(VectorClock clock) {
+            add(NodeIds.ordinal(clock.key()));
+            for (int i = 0; i < clock.size(); i++) {
+                add(clock.nodeAtIndex(i));
+            }
+        }
+
+        int indexOf(int ordinal) {
+            return indexes[ordinal];
+        }
+    }
+
+    /**
+     * Sizes and writes the parts every message shares: header, dictionary, clocks and vertices.
+     */
+    private abstract class Writer {
+        final Dictionary dictionary = new Dictionary();
+
+        abstract int size();
+
+        abstract void write(ByteBuffer buffer);
+
+        int sizeOfHeader() {
+            int size = Integer.BYTES + 1 + Varints.sizeOfUnsigned(dictionary.size);
+            for (int i = 0; i < dictionary.size; i++) {
+                final int length = nodeIdBytes(i).length;
+                size += Varints.sizeOfUnsigned(length) + length;
+            }
+            return size;
+        }
+
+        void writeHeader(int magic, ByteBuffer buffer) {
+            buffer.putInt(magic).put(VERSION);
+            Varints.writeUnsigned(buffer, dictionary.size);
+            for (int i = 0; i < dictionary.size; i++) {
+                final byte[] nodeId = nodeIdBytes(i);
+                Varints.writeUnsigned(buffer, nodeId.length);
+                buffer.put(nodeId);
+            }
+        }
+
+        private byte[] nodeIdBytes(int index) {
+            return NodeIds.name(dictionary.ordinals[index]).getBytes(StandardCharsets.UTF_8);
+        }
+
+        int sizeOf(VectorClock clock) {
+            int size = Varints.sizeOfUnsigned(dictionary.indexOf(NodeIds.ordinal(clock.key())))
+                + Varints.sizeOfUnsigned(clock.size());
+            for (int i = 0; i < clock.size(); i++) {
+                size += Varints.sizeOfUnsigned(dictionary.indexOf(clock.nodeAtIndex(i)))
+                    + Varints.sizeOfUnsigned(clock.counterAtIndex(i));
+            }
+            return size;
+        }
+
+        void write(VectorClock clock, ByteBuffer buffer) {
+            Varints.writeUnsigned(buffer, dictionary.indexOf(NodeIds.ordinal(clock.key())));
+            Varints.writeUnsigned(buffer, clock.size());
+            for (int i = 0; i < clock.size(); i++) {
+                Varints.writeUnsigned(buffer, dictionary.indexOf(clock.nodeAtIndex(i)));
+                Varints.writeUnsigned(buffer, clock.counterAtIndex(i));
+            }
+        }
+
+        int sizeOf(Vertex<E> vertex) {
+            return elementCodec.sizeOf(vertex.getValue()) + sizeOf(vertex.getVectorClock());
+        }
+
+        void write(Vertex<E> vertex, ByteBuffer buffer) {
+            elementCodec.encode(vertex.getValue(), buffer);
+            write(vertex.getVectorClock(), buffer);
+        }
+    }
+
+    /**
+     * Sizes and writes one delta, sharing the dictionary between both passes.
+     */
+    private final class DeltaWriter extends Writer {
+        private final GraphDelta<E> delta;
+
+        DeltaWriter(GraphDelta<E> delta) {
+            this.delta = delta;
+            dictionary.add(delta.getVectorClock());
+            delta.getEntries().forEach(this::collect);
+        }
+
+        private void collect(GraphDelta.Entry<E> entry) {
+            dictionary.add(entry.getChanges());
+            if (entry.getAdded() != null) {
+                dictionary.add(entry.getAdded().getVectorClock());
+                entry.getAdjacentVertices().forEach(vertex -> dictionary.add(vertex.getVectorClock()));
+            }
+            if (entry.getRemoved() != null) {
+                dictionary.add(entry.getRemoved().getVectorClock());
+            }
+        }
+
+        @Override
+        int size() {
+            int size = sizeOfHeader() + sizeOf(delta.getVectorClock()) + Varints.sizeOfUnsigned(delta.size());
+            for (GraphDelta.Entry<E> entry : delta.getEntries()) {
+                size += sizeOf(entry);
+            }
+            return size;
+        }
+
+        private int sizeOf(GraphDelta.Entry<E> entry) {
+            int size = elementCodec.sizeOf(entry.getElement()) + 1 + sizeOf(entry.getChanges());
+            if (entry.getAdded() != null) {
+                size += sizeOf(entry.getAdded().getVectorClock())
+                    + Varints.sizeOfUnsigned(entry.getAdjacentVertices().size());
+                for (Vertex<E> vertex : entry.getAdjacentVertices()) {
+                    size += sizeOf(vertex);
+                }
+            }
+            return size + (entry.getRemoved() == null ? 0 : sizeOf(entry.getRemoved().getVectorClock()));
+        }
+
+        @Override
+        void write(ByteBuffer buffer) {
+            writeHeader(MAGIC, buffer);
+            write(delta.getVectorClock(), buffer);
+            Varints.writeUnsigned(buffer, delta.size());
+            delta.getEntries().forEach(entry -> write(entry, buffer));
+        }
+
+        private void write(GraphDelta.Entry<E> entry, ByteBuffer buffer) {
+            elementCodec.encode(entry.getElement(), buffer);
+            write(entry.getChanges(), buffer);
+            buffer.put((byte) ((entry.getAdded() == null ? 0 : HAS_ADDED)
+                | (entry.getRemoved() == null ? 0 : HAS_REMOVED)));
+            if (entry.getAdded() != null) {
+                write(entry.getAdded().getVectorClock(), buffer);
+                Varints.writeUnsigned(buffer, entry.getAdjacentVertices().size());
+                for (Vertex<E> vertex : entry.getAdjacentVertices()) {
+                    write(vertex, buffer);
+                }
+            }
+            if (entry.getRemoved() != null) {
+                write(entry.getRemoved().getVectorClock(), buffer);
+            }
+        }
+    }
+
+    /**
+     * Sizes and writes one operation.
+     */
+    private final class OperationWriter extends Writer {
+        private final GraphOperation<E> operation;
+
+        OperationWriter(GraphOperation<E> operation) {
+            this.operation = operation;
+            dictionary.add(operation.getVectorClock());
+            dictionary.add(operation.getSource().getVectorClock());
+            if (operation.getDestination() != null) {
+                dictionary.add(operation.getDestination().getVectorClock());
+            }
+        }
+
+        @Override
+        int size() {
+            final var destination = operation.getDestination();
+            return sizeOfHeader() + 1 + sizeOf(operation.getVectorClock()) + sizeOf(operation.getSource())
+                + (destination == null ? 0 : sizeOf(destination));
+        }
+
+        @Override
+        void write(ByteBuffer buffer) {
+            writeHeader(OPERATION_MAGIC, buffer);
+            buffer.put((byte) operation.getType().ordinal());
+            write(operation.getVectorClock(), buffer);
+            write(operation.getSource(), buffer);
+            if (operation.getDestination() != null) {
+                write(operation.getDestination(), buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads one message: checks the header, then reads the dictionary and the body.
+     */
+    private final class Reader {
+        private final ByteBuffer buffer;
+        private final int[] ordinals;
+        // the last clock read, whose arrays the next clock shares when they differ in a single counter
+        private VectorClock previous;
+
+        Reader(ByteBuffer buffer, int expectedMagic) {
+            final int magic = buffer.getInt();
+            final byte version = buffer.get();
+            if (magic != expectedMagic || version != VERSION) {
+                throw new IllegalArgumentException("Unsupported graph format: magic " + Integer.toHexString(magic)
+                    + ", version " + version);
+            }
+            this.buffer = buffer;
+            // each node id takes at least a byte for its length
+            this.ordinals = new int[readLength(1)];
+            for (int i = 0; i < ordinals.length; i++) {
+                final byte[] nodeId = new byte[readLength(1)];
+                buffer.get(nodeId);
+                ordinals[i] = NodeIds.ordinal(new String(nodeId, StandardCharsets.UTF_8));
+            }
+        }
+
+        GraphDelta<E> readDelta() {
+            final VectorClock clock = readClock();
+            final int size = readLength(1);
+            List<GraphDelta.Entry<E>> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(readEntry());
+            }
+            return GraphDelta.of(clock, entries);
+        }
+
+        GraphOperation<E> readOperation() {
+            final var type = readType();
+            final VectorClock clock = readClock();
+            final Vertex<E> source = readVertex();
+            return GraphOperation.of(type, source, type.isEdge() ? readVertex() : null, clock);
+        }
+
+        private GraphDelta.Entry<E> readEntry() {
+            final E element = elementCodec.decode(buffer);
+            final VectorClock changes = readClock();
+            final byte flags = buffer.get();
+            Vertex<E> added = null;
+            List<Vertex<E>> adjacentVertices = new ArrayList<>();
+            if ((flags & HAS_ADDED) != 0) {
+                added = Vertex.of(element, readClock());
+                final int degree = readLength(1);
+                for (int i = 0; i < degree; i++) {
+                    adjacentVertices.add(readVertex());
+                }
+            }
+            final Vertex<E> removed = (flags & HAS_REMOVED) == 0 ? null : Vertex.of(element, readClock());
+            return GraphDelta.Entry.of(element, changes, added, adjacentVertices, removed);
+        }
+
+        private Vertex<E> readVertex() {
+            return Vertex.of(elementCodec.decode(buffer), readClock());
+        }
+
+        private VectorClock readClock() {
+            final String key = NodeIds.name(readOrdinal());
+            // each counter takes at least a byte for its node and a byte for its value
+            final int size = readLength(2);
+            int[] nodes = new int[size];
+            long[] counters = new long[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = readOrdinal();
+                counters[i] = Varints.readUnsigned(buffer);
+            }
+            previous = VectorClock.of(key, nodes, counters).shareWith(previous);
+            return previous;
+        }
+
+        /**
+         * Reads a count or a length, which cannot exceed what the rest of the buffer holds.
+         * @param minBytes the fewest bytes each counted item takes
+         */
+        private int readLength(int minBytes) {
+            final long length = Varints.readUnsigned(buffer);
+            if (length < 0 || length > buffer.remaining() / minBytes) {
+                throw new IllegalArgumentException("Malformed graph: length " + Long.toUnsignedString(length)
+                    + " exceeds the " + buffer.remaining() + " bytes remaining");
+            }
+            return (int) length;
+        }
+
+        private int readOrdinal() {
+            final long index = Varints.readUnsigned(buffer);
+            if (index < 0 || index >= ordinals.length) {
+                throw new IllegalArgumentException("Malformed graph: node id " + Long.toUnsignedString(index)
+                    + " is not in the dictionary of " + ordinals.length);
+            }
+            return ordinals[(int) index];
+        }
+
+        private GraphOperation.Type readType() {
+            final int tag = buffer.get();
+            final var types = GraphOperation.Type.values();
+            if (tag < 0 || tag >= types.length) {
+                throw new IllegalArgumentException("Malformed graph: unknown operation type " + tag);
+            }
+            return types[tag];
+        }
+    }
+}
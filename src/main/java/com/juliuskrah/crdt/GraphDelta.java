@@ -0,0 +1,104 @@
+package com.juliuskrah.crdt;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The part of an {@link LwwElementGraph}'s state that another replica has not seen yet.
+ * Holds, for every element changed since the replica's clock, the element's add vertex with its adjacency
+ * and its remove vertex, together with the clock of the graph the delta was taken from.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#deltaSince(VectorClock)
+ * @see LwwElementGraph#applyDelta(GraphDelta)
+ */
+public final class GraphDelta<E extends Comparable<E>> {
+    private final VectorClock vectorClock;
+    private final List<Entry<E>> entries;
+
+    private GraphDelta(VectorClock vectorClock, List<Entry<E>> entries) {
+        this.vectorClock = vectorClock;
+        this.entries = entries;
+    }
+
+    public static <E extends Comparable<E>> GraphDelta<E> of(VectorClock vectorClock, List<Entry<E>> entries) {
+        return new GraphDelta<>(vectorClock, List.copyOf(entries));
+    }
+
+    /**
+     * @return the clock of the graph when the delta was taken
+     */
+    public VectorClock getVectorClock() {
+        return this.vectorClock;
+    }
+
+    public List<Entry<E>> getEntries() {
+        return this.entries;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * The state of a single element.
+     * @param <E> the element to operate on
+     */
+    public static final class Entry<E extends Comparable<E>> {
+        private final E element;
+        private final VectorClock changes;
+        private final Vertex<E> added;
+        private final List<Vertex<E>> adjacentVertices;
+        private final Vertex<E> removed;
+
+        private Entry(E element, VectorClock changes, Vertex<E> added, List<Vertex<E>> adjacentVertices,
+                Vertex<E> removed) {
+            this.element = element;
+            this.changes = changes;
+            this.added = added;
+            this.adjacentVertices = adjacentVertices;
+            this.removed = removed;
+        }
+
+        static <E extends Comparable<E>> Entry<E> of(E element, VectorClock changes, Vertex<E> added,
+                Collection<Vertex<E>> adjacentVertices, Vertex<E> removed) {
+            return new Entry<>(element, changes, added, List.copyOf(adjacentVertices), removed);
+        }
+
+        public E getElement() {
+            return this.element;
+        }
+
+        /**
+         * @return the latest change of every node to the element
+         */
+        VectorClock getChanges() {
+            return this.changes;
+        }
+
+        /**
+         * @return the element's vertex in the add graph, or null when it has none
+         */
+        public Vertex<E> getAdded() {
+            return this.added;
+        }
+
+        /**
+         * @return the adjacency list of the add vertex
+         */
+        public List<Vertex<E>> getAdjacentVertices() {
+            return this.adjacentVertices;
+        }
+
+        /**
+         * @return the element's vertex in the remove graph, or null when it has none
+         */
+        public Vertex<E> getRemoved() {
+            return this.removed;
+        }
+    }
+}
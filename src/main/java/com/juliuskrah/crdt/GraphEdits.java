@@ -0,0 +1,80 @@
+package com.juliuskrah.crdt;
+
+/**
+ * The changes of vertices and edges that local operations, batches and replayed operations make to the
+ * {@linkplain GraphState state} of a graph, each with the clock or the dot it is given.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class GraphEdits<E extends Comparable<E>> {
+    private final GraphState<E> state;
+    private final GraphSet<E> addGraph;
+    private final GraphSet<E> removeGraph;
+    private final ChangeLog<E> changeLog;
+
+    GraphEdits(GraphState<E> state) {
+        this.state = state;
+        this.addGraph = state.addGraph();
+        this.removeGraph = state.removeGraph();
+        this.changeLog = state.changeLog();
+    }
+
+    void addVertex(E element, VectorClock clock) {
+        addGraph.put(Vertex.of(element, clock));
+        changeLog.record(element, clock.dot());
+        state.updateElements(element);
+    }
+
+    /**
+     * @return true when both vertices of the edge are in the graph, so the edge was added
+     */
+    boolean addEdge(Edge<E> edge) {
+        if (!state.isLive(edge.getSource().getValue()) || !state.isLive(edge.getDestination().getValue())) {
+            // one or both vertices do not exist to create an edge
+            return false;
+        }
+        var vertex1 = edge.getSource();
+        var vertex2 = edge.getDestination();
+        // add vertex2 to vertex1 adjacency set
+        addGraph.addAdjacent(vertex1.getValue(), vertex2);
+        // add vertex1 to vertex2 adjacency set
+        addGraph.addAdjacent(vertex2.getValue(), vertex1);
+        state.joinComponents(vertex1.getValue(), vertex2.getValue());
+        return true;
+    }
+
+    void removeVertex(E element, VectorClock clock) {
+        addGraph.remove(element);
+        state.invalidateConnectivity();
+        removeGraph.put(Vertex.of(element, clock));
+        changeLog.record(element, clock.dot());
+        state.updateElements(element);
+    }
+
+    /**
+     * @return true when the edge was in the add graph, so it was removed and the change recorded
+     */
+    boolean removeEdge(Edge<E> edge, Dot dot) {
+        var vertex1 = edge.getSource();
+        var vertex2 = edge.getDestination();
+        // check if edge exist in addGraph, removing it if so
+        if (state.isLive(vertex1.getValue()) && addGraph.removeAdjacent(vertex1.getValue(), vertex2)) {
+            // remove vertex1 from vertex2 adjacency set
+            addGraph.removeAdjacent(vertex2.getValue(), vertex1);
+            state.invalidateConnectivity();
+            recordChange(edge, dot);
+            return true;
+        } else if (state.isLive(vertex1.getValue()) || state.isLive(vertex2.getValue())) {
+            // remove vertex2 from vertex1 adjacency set
+            removeGraph.removeAdjacent(vertex1.getValue(), vertex2);
+            // remove vertex1 from vertex2 adjacency set
+            removeGraph.removeAdjacent(vertex2.getValue(), vertex1);
+        }
+        return false;
+    }
+
+    void recordChange(Edge<E> edge, Dot dot) {
+        changeLog.record(edge.getSource().getValue(), dot);
+        changeLog.record(edge.getDestination().getValue(), dot);
+    }
+}
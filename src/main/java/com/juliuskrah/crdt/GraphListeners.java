@@ -0,0 +1,42 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The {@link GraphOperationListener listeners} of an {@link LwwElementGraph}, and the dispatch of its operations and
+ * deltas to them.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class GraphListeners<E extends Comparable<E>> {
+    private final List<GraphOperationListener<E>> listeners = new ArrayList<>();
+
+    void add(GraphOperationListener<E> listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener must not be null"));
+    }
+
+    void remove(GraphOperationListener<E> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return true when nothing listens, so operations need not be built for the listeners
+     */
+    boolean isEmpty() {
+        return listeners.isEmpty();
+    }
+
+    void onOperation(GraphOperation<E> operation) {
+        for (GraphOperationListener<E> listener : listeners) {
+            listener.onOperation(operation);
+        }
+    }
+
+    void onDelta(GraphDelta<E> delta) {
+        for (GraphOperationListener<E> listener : listeners) {
+            listener.onDelta(delta);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Merges the state of other replicas, whole or as deltas, into the {@linkplain GraphState state} of a graph, last
+ * writer wins.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#merge(LwwElementGraph)
+ */
+@Slf4j
+final class GraphMerger<E extends Comparable<E>> {
+    // partitions of a parallel merge for every thread of the pool, so threads that finish early can steal work
+    private static final int PARTITIONS_PER_THREAD = 4;
+    private final GraphState<E> state;
+    private final GraphListeners<E> listeners;
+
+    GraphMerger(GraphState<E> state, GraphListeners<E> listeners) {
+        this.state = state;
+        this.listeners = listeners;
+    }
+
+    /**
+     * @see LwwElementGraph#merge(LwwElementGraph)
+     */
+    void merge(GraphState<E> other) {
+        final long start = state.now();
+        final var changed = other.changeLog().changedSince(state.getVectorClock());
+        for (E element : changed) {
+            commitElement(resolveElement(other, element));
+        }
+        completeMerge(other, changed, start);
+    }
+
+    /**
+     * @see LwwElementGraph#merge(LwwElementGraph, ForkJoinPool)
+     */
+    void merge(GraphState<E> other, ForkJoinPool pool) {
+        final long start = state.now();
+        final var changed = other.changeLog().changedSince(state.getVectorClock());
+        final var elements = new ArrayList<>(changed);
+        final var merges = new ArrayList<ElementMerge<E>>(Collections.nCopies(elements.size(), null));
+        final var partitions = ParallelMerge.partition(elements, pool.getParallelism() * PARTITIONS_PER_THREAD);
+        pool.invoke(new ParallelMerge<>(this, other, elements, partitions, merges, 0, partitions.length));
+        merges.forEach(this::commitElement);
+        log.debug("Merged {} elements in {} partitions", elements.size(), partitions.length);
+        completeMerge(other, changed, start);
+    }
+
+    /**
+     * @see LwwElementGraph#mergeAll(Collection)
+     */
+    void mergeAll(Collection<GraphState<E>> others) {
+        final long start = state.now();
+        final var changedBy = new LinkedHashMap<E, List<GraphState<E>>>();
+        final List<Set<E>> changes = new ArrayList<>(others.size());
+        for (GraphState<E> other : others) {
+            final var changed = other.changeLog().changedSince(state.getVectorClock());
+            changes.add(changed);
+            for (E element : changed) {
+                changedBy.computeIfAbsent(element, key -> new ArrayList<>(1)).add(other);
+            }
+        }
+        changedBy.forEach((element, changers) -> commitElement(changers.size() == 1
+            ? resolveElement(changers.get(0), element)
+            : resolveElement(element, changers)));
+        int i = 0;
+        for (GraphState<E> other : others) {
+            advancePast(other, changes.get(i++));
+        }
+        state.metrics().onMerge(changedBy.size(), state.getVectorClock().size(), state.now() - start);
+        log.debug("Merged {} elements of {} replicas", changedBy.size(), others.size());
+    }
+
+    private void completeMerge(GraphState<E> other, Set<E> changed, long start) {
+        advancePast(other, changed);
+        state.metrics().onMerge(changed.size(), state.getVectorClock().size(), state.now() - start);
+    }
+
+    /**
+     * Advances the clock past everything a merged replica has seen, and hands its delta to the listeners.
+     */
+    private void advancePast(GraphState<E> other, Set<E> changed) {
+        state.advance(other.getVectorClock());
+        if (!listeners.isEmpty()) {
+            listeners.onDelta(new DeltaExport<>(other).deltaOf(changed));
+        }
+    }
+
+    /**
+     * @see LwwElementGraph#applyEntries(List, VectorClock)
+     */
+    void applyEntries(List<GraphDelta.Entry<E>> entries, VectorClock seen) {
+        for (GraphDelta.Entry<E> entry : entries) {
+            commitElement(resolveElement(entry.getElement(), entry.getChanges(), entry.getAdded(),
+                entry.getAdjacentVertices(), entry.getRemoved(), seen));
+        }
+    }
+
+    /**
+     * @see LwwElementGraph#completeDelta(GraphDelta, long)
+     */
+    void completeDelta(GraphDelta<E> delta, long start) {
+        state.advance(delta.getVectorClock());
+        state.metrics().onMerge(delta.getEntries().size(), state.getVectorClock().size(), state.now() - start);
+        listeners.onDelta(delta);
+    }
+
+    ElementMerge<E> resolveElement(GraphState<E> other, E element) {
+        final var otherAdded = other.addGraph();
+        return resolveElement(element, other.changeLog().changesOf(element), otherAdded.get(element),
+            otherAdded.adjacentVertices(element), other.removeGraph().get(element), other.getVectorClock());
+    }
+
+    /**
+     * Merges the add and remove vertex of an element from another replica, last writer wins.
+     * The element is reconciled only when either vertex advanced. When this replica keeps state of the element the
+     * other replica lacks although it has seen every change this replica logged for it, e.g. an edge the other
+     * removed, the merged state is logged as a change of this replica, so the other replica gets it on its next
+     * merge as it would from a merge of the whole state.
+     * Resolving reads the state of the element only, and commits of other elements do not change it.
+     * @param seen the clock of the other replica
+     * @return the merge to commit, null when the element was compacted away
+     * @see #commitElement(ElementMerge)
+     */
+    private ElementMerge<E> resolveElement(E element, VectorClock changes, Vertex<E> added,
+            Collection<Vertex<E>> adjacentVertices, Vertex<E> removed, VectorClock seen) {
+        if (state.compactor().compactedAway(element, added, removed)) {
+            return null;
+        }
+        final var addMerge = state.addGraph().resolve(element, added, adjacentVertices);
+        final var removeMerge = state.removeGraph().resolve(element, removed, List.of());
+        final boolean diverged = seen.dominates(state.changeLog().changesOf(element).merge(changes))
+            && (GraphSet.differs(addMerge, added, adjacentVertices)
+                || GraphSet.differs(removeMerge, removed, List.of()));
+        return new ElementMerge<>(element, changes, addMerge, removeMerge, diverged);
+    }
+
+    /**
+     * Merges the add and remove vertices of an element from several replicas at once, as
+     * {@link #resolveElement(Comparable, VectorClock, Vertex, Collection, Vertex, VectorClock)} does from one.
+     * The incoming vertices are reduced first, keeping the vertex with the latest clock and uniting the adjacency of
+     * the replicas that hold it, as merges one after the other would, so this replica's state is resolved once.
+     * @param changedBy the replicas that changed the element
+     * @return the merge to commit, null when the element was compacted away from this replica
+     */
+    private ElementMerge<E> resolveElement(E element, List<GraphState<E>> changedBy) {
+        final var reduction = new Reduction<>(element, changedBy.size());
+        for (GraphState<E> other : changedBy) {
+            final var otherAdded = other.addGraph().get(element);
+            final var otherRemoved = other.removeGraph().get(element);
+            if (!state.compactor().compactedAway(element, otherAdded, otherRemoved)) {
+                reduction.add(other, otherAdded, otherRemoved);
+            }
+        }
+        if (reduction.isEmpty()) {
+            return null;
+        }
+        final var addMerge = state.addGraph().resolve(element, reduction.added(), reduction.adjacentVertices());
+        final var removeMerge = state.removeGraph().resolve(element, reduction.removed(), List.of());
+        final boolean diverged = divergesFromAny(reduction, addMerge, removeMerge);
+        return new ElementMerge<>(element, reduction.changes(), addMerge, removeMerge, diverged);
+    }
+
+    /**
+     * @return whether any of the reduced replicas has seen every change of the element and still lacks the state
+     *     the merge keeps
+     */
+    private boolean divergesFromAny(Reduction<E> reduction, GraphSet.Merge<E> addMerge,
+            GraphSet.Merge<E> removeMerge) {
+        final E element = reduction.element();
+        final var allChanges = state.changeLog().changesOf(element).merge(reduction.changes());
+        for (GraphState<E> other : reduction.merged()) {
+            if (!other.getVectorClock().dominates(allChanges)) {
+                continue;
+            }
+            if (GraphSet.differs(addMerge, other.addGraph().get(element), other.addGraph().adjacentVertices(element))
+                    || GraphSet.differs(removeMerge, other.removeGraph().get(element), List.of())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void commitElement(ElementMerge<E> merge) {
+        if (merge == null) {
+            return;
+        }
+        state.addGraph().install(merge.added);
+        state.removeGraph().install(merge.removed);
+        if (merge.added.isChanged()) {
+            // the adjacency may have lost neighbours to a later vertex
+            state.invalidateConnectivity();
+        }
+        // both sides merge, no short circuit
+        if (merge.added.isChanged() | merge.removed.isChanged()) {
+            state.updateElements(merge.element);
+        }
+        state.changeLog().record(merge.element, merge.changes);
+        if (merge.diverged) {
+            state.changeLog().record(merge.element, state.tick().dot());
+        }
+    }
+
+    /**
+     * The resolved merge of an element from another replica, to commit.
+     */
+    static final class ElementMerge<E extends Comparable<E>> {
+        private final E element;
+        private final VectorClock changes;
+        private final GraphSet.Merge<E> added;
+        private final GraphSet.Merge<E> removed;
+        // this replica keeps state of the element the other replica lacks
+        private final boolean diverged;
+
+        ElementMerge(E element, VectorClock changes, GraphSet.Merge<E> added, GraphSet.Merge<E> removed,
+                boolean diverged) {
+            this.element = element;
+            this.changes = changes;
+            this.added = added;
+            this.removed = removed;
+            this.diverged = diverged;
+        }
+    }
+
+    /**
+     * The vertices of an element from several replicas, reduced as merges one after the other would: the add and
+     * remove vertex with the latest clock, the adjacency of every replica holding the latest add vertex, and the
+     * clock of the changes of them all.
+     */
+    static final class Reduction<E extends Comparable<E>> {
+        private final E element;
+        // the replicas reduced so far
+        private final List<GraphState<E>> merged;
+        private final List<Collection<Vertex<E>>> adjacencies = new ArrayList<>(1);
+        private VectorClock changes;
+        private Vertex<E> added;
+        private Vertex<E> removed;
+
+        Reduction(E element, int replicas) {
+            this.element = element;
+            this.merged = new ArrayList<>(replicas);
+        }
+
+        void add(GraphState<E> other, Vertex<E> otherAdded, Vertex<E> otherRemoved) {
+            merged.add(other);
+            final var otherChanges = other.changeLog().changesOf(element);
+            changes = changes == null ? otherChanges : changes.merge(otherChanges);
+            if (isLater(otherAdded, added)) {
+                added = otherAdded;
+                adjacencies.clear();
+            }
+            if (otherAdded != null && otherAdded.equals(added)) {
+                adjacencies.add(other.addGraph().adjacentVertices(element));
+            }
+            if (isLater(otherRemoved, removed)) {
+                removed = otherRemoved;
+            }
+        }
+
+        private boolean isLater(Vertex<E> vertex, Vertex<E> latest) {
+            return vertex != null && (latest == null || latest.getVectorClock().compareTo(vertex.getVectorClock()) < 0);
+        }
+
+        boolean isEmpty() {
+            return merged.isEmpty();
+        }
+
+        E element() {
+            return element;
+        }
+
+        List<GraphState<E>> merged() {
+            return merged;
+        }
+
+        VectorClock changes() {
+            return changes;
+        }
+
+        Vertex<E> added() {
+            return added;
+        }
+
+        Vertex<E> removed() {
+            return removed;
+        }
+
+        /**
+         * @return the adjacency of the replicas holding the latest add vertex, united
+         */
+        Collection<Vertex<E>> adjacentVertices() {
+            if (adjacencies.size() == 1) {
+                return adjacencies.get(0);
+            }
+            // adjacency keeps the latest clock of every neighbour, so adding the sets in any order unites them
+            final List<Vertex<E>> united = new ArrayList<>();
+            adjacencies.forEach(united::addAll);
+            return united;
+        }
+    }
+
+    /**
+     * Resolves a range of the partitions of a parallel merge, splitting it in halves down to a single partition.
+     */
+    static final class ParallelMerge<E extends Comparable<E>> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final GraphMerger<E> merger;
+        private final GraphState<E> other;
+        private final List<E> elements;
+        private final int[][] partitions;
+        // the outcome for every element, at the element's position
+        private final List<ElementMerge<E>> merges;
+        private final int from;
+        private final int to;
+
+        ParallelMerge(GraphMerger<E> merger, GraphState<E> other, List<E> elements, int[][] partitions,
+                List<ElementMerge<E>> merges, int from, int to) {
+            this.merger = merger;
+            this.other = other;
+            this.elements = elements;
+            this.partitions = partitions;
+            this.merges = merges;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Splits the positions of the elements into partitions by the hash of the element.
+         * @param count the minimum number of partitions, rounded up to a power of two
+         */
+        static <E> int[][] partition(List<E> elements, int count) {
+            final int mask = Integer.highestOneBit(Math.max(1, count * 2 - 1)) - 1;
+            final int[] partitionOf = new int[elements.size()];
+            final int[] sizes = new int[mask + 1];
+            for (int i = 0; i < partitionOf.length; i++) {
+                final int hash = elements.get(i).hashCode();
+                partitionOf[i] = (hash ^ (hash >>> 16)) & mask;
+                sizes[partitionOf[i]]++;
+            }
+            final int[][] partitions = new int[sizes.length][];
+            for (int i = 0; i < partitions.length; i++) {
+                partitions[i] = new int[sizes[i]];
+                sizes[i] = 0;
+            }
+            for (int i = 0; i < partitionOf.length; i++) {
+                partitions[partitionOf[i]][sizes[partitionOf[i]]++] = i;
+            }
+            return partitions;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new ParallelMerge<>(merger, other, elements, partitions, merges, from, middle),
+                    new ParallelMerge<>(merger, other, elements, partitions, merges, middle, to));
+                return;
+            }
+            for (int position : partitions[from]) {
+                merges.set(position, merger.resolveElement(other, elements.get(position)));
+            }
+        }
+    }
+}
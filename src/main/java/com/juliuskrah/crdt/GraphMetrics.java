@@ -0,0 +1,77 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.GraphOperation.Type;
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+
+/**
+ * Receives measurements of the work an {@link LwwElementGraph} does, to count and time it in a monitoring system,
+ * e.g. as counters and latency histograms per operation type. Every method does nothing by default, and the graph
+ * reads no clock while it reports to {@link #NONE}, so metrics cost nothing until they are set.
+ * <p>
+ * Methods run on the thread that did the work and are on the hot path of the graph: they should only update
+ * counters or histograms. Queries on a {@link GraphSnapshot} report from the threads that run them, so metrics of
+ * a graph whose snapshots are queried concurrently must be thread-safe.
+ * @author Julius Krah
+ * @see LwwElementGraph#setMetrics(GraphMetrics)
+ */
+public interface GraphMetrics {
+    /**
+     * Metrics that measure nothing, the default of every graph.
+     */
+    GraphMetrics NONE = new GraphMetrics() {
+    };
+
+    /**
+     * Called after a local mutation or an applied operation.
+     * @param type the type of the operation
+     * @param nanos how long the graph took to apply it
+     */
+    default void onOperation(Type type, long nanos) {
+        // not measured by default
+    }
+
+    /**
+     * Called after a batch of local changes was committed.
+     * @param changes the number of changes in the batch
+     * @param nanos how long the graph took to commit it
+     */
+    default void onBatch(int changes, long nanos) {
+        // not measured by default
+    }
+
+    /**
+     * Called after the state of another replica, or a delta of it, was merged.
+     * @param elements the number of elements the merge visited
+     * @param clockSize the number of nodes in the clock of the graph after the merge, which only merges grow
+     * @param nanos how long the merge took
+     */
+    default void onMerge(int elements, int clockSize, long nanos) {
+        // not measured by default
+    }
+
+    /**
+     * Called when an element with both an add and a remove vertex is resolved last-writer-wins.
+     * @param bias the bias of the graph, deciding between vertices with the same clock
+     * @param added whether the element stays in the graph
+     */
+    default void onConflict(LWWBias bias, boolean added) {
+        // not measured by default
+    }
+
+    /**
+     * Called after a path search.
+     * @param visited the number of vertices the searches from both ends visited
+     */
+    default void onSearch(int visited) {
+        // not measured by default
+    }
+
+    /**
+     * Called after tombstones were purged.
+     * @param compaction the number of tombstones purged and the bytes reclaimed
+     * @param tombstones the number of remove vertices the graph still holds
+     */
+    default void onCompaction(Compaction compaction, int tombstones) {
+        // not measured by default
+    }
+}
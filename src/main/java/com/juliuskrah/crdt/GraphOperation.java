@@ -0,0 +1,112 @@
+package com.juliuskrah.crdt;
+
+import java.util.Objects;
+
+/**
+ * A single mutation of an {@link LwwElementGraph}, stamped with the clock the graph ticked to for it.
+ * Operations are what the graph reports to its {@link GraphOperationListener}s, and they can be applied to
+ * a graph again, e.g. when replaying a log or on another replica.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#apply(GraphOperation)
+ */
+public final class GraphOperation<E extends Comparable<E>> {
+    private final Type type;
+    private final Vertex<E> source;
+    private final Vertex<E> destination;
+    private final VectorClock vectorClock;
+
+    private GraphOperation(Type type, Vertex<E> source, Vertex<E> destination, VectorClock vectorClock) {
+        this.type = type;
+        this.source = source;
+        this.destination = destination;
+        this.vectorClock = vectorClock;
+    }
+
+    /**
+     * @param type the type of operation
+     * @param source the vertex, or the source of the edge
+     * @param destination the destination of the edge, null for vertex operations
+     * @param vectorClock the clock of the operation
+     * @return the operation
+     */
+    public static <E extends Comparable<E>> GraphOperation<E> of(Type type, Vertex<E> source, Vertex<E> destination,
+            VectorClock vectorClock) {
+        Objects.requireNonNull(type, "type must not be null");
+        if (type.isEdge() == (destination == null)) {
+            throw new IllegalArgumentException(type + " operation with destination " + destination);
+        }
+        return new GraphOperation<>(type, source, destination, vectorClock);
+    }
+
+    public static <E extends Comparable<E>> GraphOperation<E> addVertex(E element, VectorClock vectorClock) {
+        return of(Type.ADD_VERTEX, Vertex.of(element, vectorClock), null, vectorClock);
+    }
+
+    public static <E extends Comparable<E>> GraphOperation<E> removeVertex(E element, VectorClock vectorClock) {
+        return of(Type.REMOVE_VERTEX, Vertex.of(element, vectorClock), null, vectorClock);
+    }
+
+    public static <E extends Comparable<E>> GraphOperation<E> addEdge(Edge<E> edge, VectorClock vectorClock) {
+        return of(Type.ADD_EDGE, edge.getSource(), edge.getDestination(), vectorClock);
+    }
+
+    public static <E extends Comparable<E>> GraphOperation<E> removeEdge(Edge<E> edge, VectorClock vectorClock) {
+        return of(Type.REMOVE_EDGE, edge.getSource(), edge.getDestination(), vectorClock);
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the vertex of a vertex operation, or the source of an edge operation
+     */
+    public Vertex<E> getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return the destination of an edge operation, null for vertex operations
+     */
+    public Vertex<E> getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * @return the edge of an edge operation
+     */
+    public Edge<E> getEdge() {
+        return Edge.of(source, destination);
+    }
+
+    public VectorClock getVectorClock() {
+        return this.vectorClock;
+    }
+
+    /**
+     * The kinds of mutation.
+     */
+    public enum Type {
+        /**
+         * {@link LwwElementGraph#addVertex(Comparable)}.
+         */
+        ADD_VERTEX,
+        /**
+         * {@link LwwElementGraph#removeVertex(Comparable)}.
+         */
+        REMOVE_VERTEX,
+        /**
+         * {@link LwwElementGraph#addEdge(Edge)}.
+         */
+        ADD_EDGE,
+        /**
+         * {@link LwwElementGraph#removeEdge(Edge)}.
+         */
+        REMOVE_EDGE;
+
+        boolean isEdge() {
+            return this == ADD_EDGE || this == REMOVE_EDGE;
+        }
+    }
+}
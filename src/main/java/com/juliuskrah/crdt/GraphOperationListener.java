@@ -0,0 +1,26 @@
+package com.juliuskrah.crdt;
+
+/**
+ * Receives every change made to an {@link LwwElementGraph}, after the graph has applied it.
+ * Listeners run on the thread that changed the graph and should hand off any slow work.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#addOperationListener(GraphOperationListener)
+ */
+@FunctionalInterface
+public interface GraphOperationListener<E extends Comparable<E>> {
+
+    /**
+     * Called after a local mutation or an applied operation.
+     * @param operation the operation
+     */
+    void onOperation(GraphOperation<E> operation);
+
+    /**
+     * Called after state from another replica was merged or applied, or a batch of local changes was committed.
+     * @param delta the state that was merged or committed
+     */
+    default void onDelta(GraphDelta<E> delta) {
+        // not interested by default
+    }
+}
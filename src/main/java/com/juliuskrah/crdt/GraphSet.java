@@ -0,0 +1,269 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * One side, add or remove, of an {@link LwwElementGraph}.
+ * Every element maps to its vertex and to the adjacency set of that vertex, as in an LWW element set;
+ * an element has at most one vertex in the set, the one with the latest clock.
+ * Both maps are persistent tries, so {@link #snapshot()} freezes the set in constant time while updates go on
+ * copying only the paths they change.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class GraphSet<E extends Comparable<E>> {
+    private TrieMap<E, Vertex<E>> vertices;
+    // element -> adjacency set of its vertex, absent while the vertex has no neighbours yet
+    private TrieMap<E, AdjacencySet<E>> adjacency;
+    // nodes of the tries created under this token are updated in place
+    private Object edit = new Object();
+    // the adjacency of a vertex without neighbours, on the heap or off it
+    private final AdjacencySet<E> noNeighbors;
+    // told of every element whose vertex or adjacency set is replaced
+    private final Consumer<? super E> changed;
+
+    /**
+     * @param noNeighbors the empty adjacency set of the storage to keep adjacency in
+     * @param changed called with every element whose vertex or adjacency set the set replaces
+     */
+    GraphSet(AdjacencySet<E> noNeighbors, Consumer<? super E> changed) {
+        this(TrieMap.empty(), TrieMap.empty(), noNeighbors, changed);
+    }
+
+    private GraphSet(TrieMap<E, Vertex<E>> vertices, TrieMap<E, AdjacencySet<E>> adjacency,
+            AdjacencySet<E> noNeighbors, Consumer<? super E> changed) {
+        this.vertices = vertices;
+        this.adjacency = adjacency;
+        this.noNeighbors = noNeighbors;
+        this.changed = changed;
+    }
+
+    Vertex<E> get(E element) {
+        return vertices.get(element);
+    }
+
+    /**
+     * @param element the element
+     * @return the clock of the element's vertex, or null when it has none
+     */
+    VectorClock clockOf(E element) {
+        var vertex = vertices.get(element);
+        return vertex == null ? null : vertex.getVectorClock();
+    }
+
+    boolean contains(E element) {
+        return vertices.containsKey(element);
+    }
+
+    /**
+     * Replaces the vertex currently held for the element, carrying its adjacency set over.
+     * @param vertex the new vertex
+     */
+    void put(Vertex<E> vertex) {
+        vertices = vertices.put(vertex.getValue(), vertex, edit);
+        changed.accept(vertex.getValue());
+    }
+
+    /**
+     * @param element the element
+     * @return the removed vertex, or null when the element had none
+     */
+    Vertex<E> remove(E element) {
+        var vertex = vertices.get(element);
+        if (vertex != null) {
+            vertices = vertices.remove(element, edit);
+            final var neighbors = adjacency.get(element);
+            if (neighbors != null) {
+                neighbors.release(edit);
+                adjacency = adjacency.remove(element, edit);
+            }
+            changed.accept(element);
+        }
+        return vertex;
+    }
+
+    /**
+     * Adjacency set of the element's vertex.
+     * @param element the element
+     * @return the adjacency set, empty when the element has no vertex
+     */
+    AdjacencySet<E> adjacentVertices(E element) {
+        var neighbors = adjacency.get(element);
+        return neighbors == null ? noNeighbors : neighbors;
+    }
+
+    /**
+     * Adds a neighbour to the element's vertex, unless the element has no vertex.
+     * @param element the element
+     * @param neighbor the neighbour
+     * @return true when the set changed
+     * @see AdjacencySet#with(Vertex, Object)
+     */
+    boolean addAdjacent(E element, Vertex<E> neighbor) {
+        if (!vertices.containsKey(element)) {
+            return false;
+        }
+        var neighbors = adjacentVertices(element);
+        return setAdjacent(element, neighbors, neighbors.with(neighbor, edit));
+    }
+
+    /**
+     * Removes a neighbour from the element's vertex.
+     * @param element the element
+     * @param neighbor the neighbour
+     * @return true when the set changed
+     * @see AdjacencySet#without(Vertex, Object)
+     */
+    boolean removeAdjacent(E element, Vertex<E> neighbor) {
+        var neighbors = adjacentVertices(element);
+        return setAdjacent(element, neighbors, neighbors.without(neighbor, edit));
+    }
+
+    private boolean setAdjacent(E element, AdjacencySet<E> current, AdjacencySet<E> updated) {
+        if (updated == current) {
+            return false;
+        }
+        adjacency = adjacency.put(element, updated, edit);
+        changed.accept(element);
+        return true;
+    }
+
+    /**
+     * Keeps whichever of the current and the given vertex for the element has the later clock.
+     * When both carry the same clock they are the same vertex, and the adjacency sets are united.
+     * @param vertex the incoming vertex, may be null
+     * @param adjacentVertices the adjacency of the incoming vertex
+     * @return true when the incoming vertex replaced the current one or added to its adjacency
+     */
+    boolean merge(Vertex<E> vertex, Collection<Vertex<E>> adjacentVertices) {
+        if (vertex == null) {
+            return false;
+        }
+        var merge = resolve(vertex.getValue(), vertex, adjacentVertices);
+        install(merge);
+        return merge.changed;
+    }
+
+    /**
+     * Decides a merge without changing which vertices the set holds, see {@link #merge(Vertex, Collection)}.
+     * Only the trie of the adjacency set of the element's own vertex is written to, so merges of different elements
+     * may be resolved concurrently as long as none is installed meanwhile.
+     * @param element the element
+     * @param vertex the incoming vertex of the element, may be null
+     * @param adjacentVertices the adjacency of the incoming vertex
+     * @return the outcome, to {@link #install(Merge)}
+     */
+    Merge<E> resolve(E element, Vertex<E> vertex, Collection<Vertex<E>> adjacentVertices) {
+        var current = vertices.get(element);
+        if (vertex == null) {
+            return new Merge<>(current, current == null ? null : adjacentVertices(element), false, false);
+        }
+        if (current == null || current.getVectorClock().compareTo(vertex.getVectorClock()) < 0) {
+            return new Merge<>(vertex, noNeighbors.withAll(adjacentVertices, edit), true, true);
+        }
+        var neighbors = adjacentVertices(element);
+        if (!current.equals(vertex)) {
+            return new Merge<>(current, neighbors, false, false);
+        }
+        var united = neighbors.withAll(adjacentVertices, edit);
+        return new Merge<>(current, united, false, united != neighbors);
+    }
+
+    /**
+     * Holds the vertex a resolved merge decided for, with its adjacency set.
+     * @param merge the outcome of {@link #resolve(Comparable, Vertex, Collection)}
+     */
+    void install(Merge<E> merge) {
+        if (merge.changed) {
+            final var element = merge.vertex.getValue();
+            if (merge.replaced) {
+                vertices = vertices.put(element, merge.vertex, edit);
+                final var previous = adjacency.get(element);
+                if (previous != null) {
+                    previous.release(edit);
+                }
+            }
+            adjacency = adjacency.put(element, merge.adjacentVertices, edit);
+            changed.accept(element);
+        }
+    }
+
+    /**
+     * Checks whether a merge leaves more of an element than another replica has: either another vertex for the
+     * element, or the same vertex with neighbours the other replica lacks.
+     * @param merge the outcome of the merge with the other replica's vertex
+     * @param vertex the vertex of the other replica, may be null
+     * @param adjacentVertices the adjacency of that vertex
+     * @return true when the other replica lacks some of this set's state of the element
+     */
+    static <E extends Comparable<E>> boolean differs(Merge<E> merge, Vertex<E> vertex,
+            Collection<Vertex<E>> adjacentVertices) {
+        if (merge.vertex == null || !merge.vertex.equals(vertex)) {
+            return merge.vertex != null;
+        }
+        return merge.adjacentVertices.size() != adjacentVertices.size()
+            || !merge.adjacentVertices.containsAll(adjacentVertices);
+    }
+
+    /**
+     * Visits the adjacency sets in the order of the trie, skipping vertices without neighbours.
+     * @param action takes every element with neighbours and its adjacency set
+     */
+    void forEachAdjacency(BiConsumer<? super E, ? super AdjacencySet<E>> action) {
+        adjacency.forEach(action);
+    }
+
+    /**
+     * @return a copy of the elements that have a vertex in the set
+     */
+    List<E> elements() {
+        final List<E> elements = new ArrayList<>(vertices.size());
+        vertices.forEach((element, vertex) -> elements.add(element));
+        return elements;
+    }
+
+    /**
+     * Freezes the current state of the set. Later updates of either set copy the paths they change, so neither sees
+     * the updates of the other.
+     * @return a set holding the current vertices and adjacency
+     */
+    GraphSet<E> snapshot() {
+        this.edit = new Object();
+        // a snapshot is never written to
+        return new GraphSet<>(vertices, adjacency, noNeighbors, element -> { });
+    }
+
+    int size() {
+        return vertices.size();
+    }
+
+    /**
+     * The outcome of merging an incoming vertex into the set: the vertex the set holds for the element afterwards,
+     * with its adjacency set.
+     * @param <E> the element to operate on
+     */
+    static final class Merge<E extends Comparable<E>> {
+        private final Vertex<E> vertex;
+        private final AdjacencySet<E> adjacentVertices;
+        private final boolean replaced;
+        private final boolean changed;
+
+        private Merge(Vertex<E> vertex, AdjacencySet<E> adjacentVertices, boolean replaced, boolean changed) {
+            this.vertex = vertex;
+            this.adjacentVertices = adjacentVertices;
+            this.replaced = replaced;
+            this.changed = changed;
+        }
+
+        /**
+         * @return true when the incoming vertex replaced the current one or added to its adjacency
+         */
+        boolean isChanged() {
+            return changed;
+        }
+    }
+}
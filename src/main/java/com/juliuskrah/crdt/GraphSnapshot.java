@@ -0,0 +1,182 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.Traversal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A frozen, read-only state of an {@link LwwElementGraph}.
+ * The snapshot shares the persistent tries of the graph as they were when it was taken; the graph copies the paths
+ * it changes afterwards, so queries on the snapshot never see later changes and need no lock, on any thread.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#snapshot()
+ */
+public final class GraphSnapshot<E extends Comparable<E>> {
+    private final VectorClock vectorClock;
+    private final TrieMap<E, VectorClock> elements;
+    private final GraphSet<E> addGraph;
+    private final GraphSet<E> removeGraph;
+    private final TrieMap<E, VectorClock> changeClocks;
+    // shared with the graph, ids it interns later are never live in the snapshot
+    private final ElementIds<E> ids;
+    private final PathFinder<E> pathFinder;
+    // the metrics of the graph when the snapshot was taken
+    private final GraphMetrics metrics;
+
+    GraphSnapshot(VectorClock vectorClock, TrieMap<E, VectorClock> elements, GraphSet<E> addGraph,
+            GraphSet<E> removeGraph, TrieMap<E, VectorClock> changeClocks, ElementIds<E> ids, GraphMetrics metrics) {
+        this.vectorClock = vectorClock;
+        this.elements = elements;
+        this.addGraph = addGraph;
+        this.removeGraph = removeGraph;
+        this.changeClocks = changeClocks;
+        this.ids = ids;
+        this.pathFinder = new PathFinder<>(ids, this::findAdjacentVertices, elements::containsKey);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the clock of the graph when the snapshot was taken
+     */
+    public VectorClock getVectorClock() {
+        return this.vectorClock;
+    }
+
+    public VectorClock findVectorClock(E element) {
+        return elements.get(element);
+    }
+
+    public int vertexSize() {
+        return this.elements.size();
+    }
+
+    /**
+     * Checks whether the snapshot contains this vertex.
+     * @param element
+     * @return true when the element has an add or a remove vertex
+     * @see LwwElementGraph#containsVertex(Comparable)
+     */
+    public boolean containsVertex(E element) {
+        return addGraph.contains(element) || removeGraph.contains(element);
+    }
+
+    /**
+     * Query for all vertices adjacent to current vertex.
+     * @param element current vertex
+     * @return an unmodifiable collection of all adjacent vertices
+     */
+    public Collection<Vertex<E>> findAdjacentVertices(E element) {
+        if (elements.containsKey(element) && addGraph.contains(element)) {
+            return addGraph.adjacentVertices(element);
+        }
+        return List.of();
+    }
+
+    /**
+     * Search any path between source and destination.
+     * @param source
+     * @param destination
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     * @see LwwElementGraph#findAnyPath(Comparable, Comparable)
+     */
+    public Set<E> findAnyPath(E source, E destination) {
+        return new LinkedHashSet<>(findShortestPath(source, destination));
+    }
+
+    /**
+     * Search a shortest path between source and destination.
+     * @param source
+     * @param destination
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     * @see LwwElementGraph#findShortestPath(Comparable, Comparable)
+     */
+    public List<E> findShortestPath(E source, E destination) {
+        return findShortestPath(source, destination, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search a shortest path between source and destination, giving up past a number of hops or visited vertices.
+     * @param source
+     * @param destination
+     * @param maxHops the most edges the path may have
+     * @param budget the most vertices the search may visit
+     * @return the vertices of the path in order from source to destination, empty when there is none within the
+     *     limits
+     * @see LwwElementGraph#findShortestPath(Comparable, Comparable, int, int)
+     */
+    public List<E> findShortestPath(E source, E destination, int maxHops, int budget) {
+        return pathFinder.findShortestPath(source, destination, maxHops, budget, metrics);
+    }
+
+    /**
+     * Streams the vertices reachable from source, breadth first.
+     * @param source the vertex to start from
+     * @return a lazy stream of the reachable vertices, source first, empty when source is not in the snapshot
+     * @see #reachableFrom(Comparable, Traversal)
+     */
+    public Stream<E> reachableFrom(E source) {
+        return reachableFrom(source, Traversal.BREADTH_FIRST);
+    }
+
+    /**
+     * Streams the vertices reachable from source. Unlike on the graph, the stream may be consumed while the graph
+     * changes.
+     * @param source the vertex to start from
+     * @param order the order to visit the vertices in
+     * @return a lazy stream of the reachable vertices, source first, empty when source is not in the snapshot
+     * @see LwwElementGraph#reachableFrom(Comparable, Traversal)
+     */
+    public Stream<E> reachableFrom(E source, Traversal order) {
+        return StreamSupport.stream(new TraversalSpliterator<>(ids, this::findAdjacentVertices, elements::containsKey,
+            source, order == Traversal.DEPTH_FIRST), false);
+    }
+
+    /**
+     * Collects the state a replica has not seen yet, as of the snapshot.
+     * The snapshot does not keep the index of changes by counter, so every element that ever changed is visited;
+     * on the graph the cost is proportional to the delta instead.
+     * @param since the clock of the replica
+     * @return the elements changed after {@code since}
+     * @see LwwElementGraph#deltaSince(VectorClock)
+     */
+    public GraphDelta<E> deltaSince(VectorClock since) {
+        final List<GraphDelta.Entry<E>> entries = new ArrayList<>();
+        changeClocks.forEach((element, changes) -> {
+            if (!since.dominates(changes)) {
+                entries.add(GraphDelta.Entry.of(element, changes, addGraph.get(element),
+                    addGraph.adjacentVertices(element), removeGraph.get(element)));
+            }
+        });
+        return GraphDelta.of(this.vectorClock, entries);
+    }
+
+    /**
+     * Collects the state of the given elements, e.g. those the graph found changed when the snapshot was taken.
+     * @param changed elements of the snapshot, elements it has no changes of are skipped
+     * @return the state of the elements, with the clock of the snapshot
+     */
+    GraphDelta<E> deltaOf(Collection<E> changed) {
+        final List<GraphDelta.Entry<E>> entries = new ArrayList<>(changed.size());
+        for (E element : changed) {
+            final var changes = changeClocks.get(element);
+            if (changes != null) {
+                entries.add(GraphDelta.Entry.of(element, changes, addGraph.get(element),
+                    addGraph.adjacentVertices(element), removeGraph.get(element)));
+            }
+        }
+        return GraphDelta.of(this.vectorClock, entries);
+    }
+
+    /**
+     * @return the whole state of the snapshot, as the delta since an empty clock
+     */
+    GraphDelta<E> state() {
+        return deltaSince(VectorClock.of(""));
+    }
+}
@@ -0,0 +1,267 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import com.juliuskrah.crdt.LwwElementGraph.Storage;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The state of a replica of an {@link LwwElementGraph}: its add and remove sides, the elements they leave live, the
+ * dense ids and connected components of those elements, the log of their changes, the compaction of their
+ * tombstones and the clock of the replica.
+ * Operations, batches, merges and replays update it in place, and {@link #snapshot()} freezes it.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class GraphState<E extends Comparable<E>> {
+    private final GraphSet<E> addGraph;
+    private final GraphSet<E> removeGraph;
+    // temporary object to track state, a persistent trie so that snapshots share it
+    private TrieMap<E, VectorClock> elements = TrieMap.empty();
+    // nodes of the elements trie created under this token are updated in place
+    private Object edit = new Object();
+    // read cache of the resolved state of elements, dropped element by element as they change
+    private final ElementStates<E> states = new ElementStates<>();
+    // dense ids of every element that has been live, used by traversals
+    private final ElementIds<E> ids = new ElementIds<>();
+    // connected components, built on the first query and rebuilt on the first query after a split
+    private final ConnectivityIndex<E> connectivity;
+    // latest change of every node to every element, for delta replication
+    private final ChangeLog<E> changeLog = new ChangeLog<>();
+    // purges tombstones once the replicas it tracks have seen them
+    private final Compactor<E> compactor;
+    private final LWWBias bias;
+    // the memory of the adjacency when it is kept off the heap, null otherwise
+    private final OffHeapArena arena;
+    private GraphMetrics metrics = GraphMetrics.NONE;
+    private VectorClock vectorClock;
+
+    /**
+     * @param nodeId the node Id
+     * @param bias the bias to apply
+     * @param storage where to keep the adjacency of the vertices
+     */
+    GraphState(String nodeId, LWWBias bias, Storage storage) {
+        this.arena = storage == Storage.OFF_HEAP ? new OffHeapArena() : null;
+        final AdjacencySet<E> noNeighbors = arena == null ? TrieAdjacencySet.empty()
+            : OffHeapAdjacencySet.empty(arena, ids);
+        this.addGraph = new GraphSet<>(noNeighbors, states::invalidate);
+        this.removeGraph = new GraphSet<>(noNeighbors, states::invalidate);
+        this.connectivity = new ConnectivityIndex<>(ids, this::adjacencyOf, this::isLive);
+        // off the heap, the adjacency of the neighbours of a purged element refers to its id
+        this.compactor = new Compactor<>(addGraph, removeGraph, changeLog, arena == null ? ids : null, this::isLive);
+        this.vectorClock = VectorClock.of(nodeId);
+        this.bias = bias;
+    }
+
+    VectorClock getVectorClock() {
+        return this.vectorClock;
+    }
+
+    /**
+     * Increments the clock of this replica for a change of its own.
+     * @return the incremented clock
+     */
+    VectorClock tick() {
+        this.vectorClock = this.vectorClock.increment();
+        return this.vectorClock;
+    }
+
+    /**
+     * Advances the clock past everything a replica has seen, and acknowledges its clock.
+     * @param seen the clock of the replica
+     */
+    void advance(VectorClock seen) {
+        this.vectorClock = this.vectorClock.merge(seen);
+        compactor.acknowledge(seen);
+    }
+
+    boolean isLive(E element) {
+        return elements.containsKey(element);
+    }
+
+    /**
+     * @return the clock the element is in the graph with, null when it is not in the graph
+     */
+    VectorClock liveClock(E element) {
+        return elements.get(element);
+    }
+
+    int size() {
+        return elements.size();
+    }
+
+    /**
+     * Updates the set by checking the elements in addSet against the elements in the removeSet.
+     * Keeps any elements that appear in both add and remove sets
+     * but have a higher vectorClock in addSet
+     * @param element
+     * @see LWWBias#resolve(VectorClock, VectorClock)
+     */
+    void updateElements(E element) {
+        final var addTime = addGraph.clockOf(element);
+        final var removeTime = removeGraph.clockOf(element);
+        VectorClock clock = bias.resolve(addTime, removeTime);
+        if (addTime != null && removeTime != null) {
+            metrics.onConflict(bias, clock != null);
+        }
+        final boolean wasLive = elements.containsKey(element);
+        states.invalidate(element);
+        if (clock != null) {
+            putElement(element, clock);
+            if (!wasLive) {
+                connectivity.revive(element);
+            }
+        } else {
+            elements = elements.remove(element, edit);
+            if (wasLive) {
+                connectivity.invalidate();
+            }
+        }
+    }
+
+    private void putElement(E element, VectorClock clock) {
+        elements = elements.put(element, clock, edit);
+        ids.intern(element);
+    }
+
+    /**
+     * Looks the state of the element up in the cache, resolving it from the tries on a miss.
+     * @param element the element
+     * @return the slot of the element's state
+     */
+    private int stateOf(E element) {
+        final int slot = states.find(element);
+        if (slot >= 0) {
+            return slot;
+        }
+        final var clock = elements.get(element);
+        // an element with vertices that is not live has a remove vertex, and a live one an add vertex
+        return states.put(element, clock, clock != null || removeGraph.contains(element),
+            clock == null ? null : addGraph.adjacentVertices(element));
+    }
+
+    /**
+     * @return an unmodifiable collection of all adjacent vertices, valid until the graph next changes
+     */
+    Collection<Vertex<E>> findAdjacentVertices(E element) {
+        final var adjacentVertices = states.adjacencyAt(stateOf(element));
+        return adjacentVertices == null ? List.of() : adjacentVertices;
+    }
+
+    VectorClock findVectorClock(E element) {
+        return states.clockAt(stateOf(element));
+    }
+
+    boolean containsVertex(E element) {
+        return states.containsAt(stateOf(element));
+    }
+
+    /**
+     * Adjacency for traversals, read from the tries so that a traversal does not fill the cache of element states
+     * with every vertex it visits.
+     */
+    Collection<Vertex<E>> adjacencyOf(E element) {
+        if (elements.containsKey(element) && addGraph.contains(element)) {
+            return addGraph.adjacentVertices(element);
+        }
+        return List.of();
+    }
+
+    /**
+     * @see LwwElementGraph#isConnected(Comparable, Comparable)
+     */
+    boolean isConnected(E source, E destination) {
+        if (!elements.containsKey(source) || !elements.containsKey(destination)) {
+            return false;
+        }
+        final var index = connectivity();
+        return index.find(ids.idOf(source)) == index.find(ids.idOf(destination));
+    }
+
+    /**
+     * @see LwwElementGraph#componentOf(Comparable)
+     */
+    E componentOf(E element) {
+        if (!elements.containsKey(element)) {
+            return null;
+        }
+        return ids.elementOf(connectivity().find(ids.idOf(element)));
+    }
+
+    private ConnectivityIndex<E> connectivity() {
+        final var live = this.elements;
+        connectivity.refresh(live::keyIterator, addGraph);
+        return connectivity;
+    }
+
+    /**
+     * Joins the components of the two live vertices of a new edge.
+     */
+    void joinComponents(E first, E second) {
+        connectivity.union(first, second);
+    }
+
+    /**
+     * Marks the connected components for a rebuild, after a change that may have split one.
+     */
+    void invalidateConnectivity() {
+        connectivity.invalidate();
+    }
+
+    /**
+     * @see LwwElementGraph#snapshot()
+     */
+    GraphSnapshot<E> snapshot() {
+        this.edit = new Object();
+        final var snapshot = new GraphSnapshot<>(this.vectorClock, this.elements, addGraph.snapshot(),
+            removeGraph.snapshot(), changeLog.snapshot(), ids.share(), metrics);
+        if (arena != null) {
+            // adjacency the snapshot reads stays allocated until it is garbage collected
+            arena.pin(snapshot);
+        }
+        return snapshot;
+    }
+
+    GraphSet<E> addGraph() {
+        return addGraph;
+    }
+
+    GraphSet<E> removeGraph() {
+        return removeGraph;
+    }
+
+    ElementIds<E> ids() {
+        return ids;
+    }
+
+    ChangeLog<E> changeLog() {
+        return changeLog;
+    }
+
+    Compactor<E> compactor() {
+        return compactor;
+    }
+
+    GraphMetrics metrics() {
+        return metrics;
+    }
+
+    void setMetrics(GraphMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the current time in nanoseconds, 0 when nothing is measured so the clock is not read
+     */
+    long now() {
+        return metrics == GraphMetrics.NONE ? 0 : System.nanoTime();
+    }
+
+    /**
+     * @return the bytes of memory off the heap the adjacency takes, 0 when it is kept on the heap
+     */
+    long getOffHeapBytes() {
+        return arena == null ? 0 : arena.allocatedBytes();
+    }
+}
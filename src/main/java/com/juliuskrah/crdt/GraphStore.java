@@ -0,0 +1,230 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Crash-safe persistence for an {@link LwwElementGraph}.
+ * <p>
+ * Every change of the graph is appended, with its clock, to a segmented write-ahead log. A background thread
+ * commits the log at a fixed interval, so one fsync covers all changes of that interval. Every so many changes the
+ * graph's compacted state is written to a memory mapped snapshot and the log segments it covers are deleted.
+ * Opening a store maps the latest snapshot and replays only the log records after it.
+ * <p>
+ * Like the graph itself, a store is meant to be used from one thread at a time.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+@Slf4j
+public final class GraphStore<E extends Comparable<E>> implements Closeable {
+    private final Path directory;
+    private final GraphCodec<E> codec;
+    private final Options options;
+    private final LwwElementGraph<E> graph;
+    private final OperationLog operationLog;
+    private final ScheduledExecutorService committer;
+    private final GraphOperationListener<E> listener;
+    private long changesSinceSnapshot;
+
+    private GraphStore(Path directory, GraphCodec<E> codec, Options options, LwwElementGraph<E> graph,
+            OperationLog operationLog) {
+        this.directory = directory;
+        this.codec = codec;
+        this.options = options;
+        this.graph = graph;
+        this.operationLog = operationLog;
+        this.listener = new LogAppender();
+        this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "graph-store-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long interval = options.commitInterval.toNanos();
+        committer.scheduleWithFixedDelay(this::commit, interval, interval, TimeUnit.NANOSECONDS);
+        graph.addOperationListener(listener);
+    }
+
+    public static <E extends Comparable<E>> GraphStore<E> open(Path directory, String nodeId, LWWBias bias,
+            ElementCodec<E> elementCodec) throws IOException {
+        return open(directory, nodeId, bias, elementCodec, Options.defaults());
+    }
+
+    /**
+     * Restores the graph kept in the directory, or starts an empty one.
+     * @param directory the directory of the snapshots and the log, created when missing
+     * @param nodeId the node Id of the graph
+     * @param bias the bias of the graph
+     * @param elementCodec writes and reads the elements
+     * @param options the store options
+     * @return the store
+     */
+    public static <E extends Comparable<E>> GraphStore<E> open(Path directory, String nodeId, LWWBias bias,
+            ElementCodec<E> elementCodec, Options options) throws IOException {
+        Files.createDirectories(directory);
+        var codec = GraphCodec.of(elementCodec);
+        var graph = new LwwElementGraph<E>(nodeId, bias);
+        var snapshot = SnapshotFile.latest(directory);
+        final long snapshotSequence = snapshot.isPresent() ? SnapshotFile.load(snapshot.get(), codec, graph) : 0L;
+        final long lastSequence = OperationLog.replay(directory, snapshotSequence, (sequence, type, payload) -> {
+            if (type == OperationLog.DELTA) {
+                graph.applyDelta(codec.decodeDelta(payload));
+            } else {
+                graph.apply(codec.decodeOperation(payload));
+            }
+        });
+        log.debug("Restored {} from snapshot {} and log up to {}", directory, snapshotSequence, lastSequence);
+        var operationLog = OperationLog.open(directory, options.segmentSize, lastSequence + 1);
+        return new GraphStore<>(directory, codec, options, graph, operationLog);
+    }
+
+    public LwwElementGraph<E> getGraph() {
+        return this.graph;
+    }
+
+    /**
+     * Purges the tombstones every replica has seen, see {@link LwwElementGraph#compact()}, writes the compacted
+     * state of the graph and deletes the snapshots and log segments it replaces.
+     */
+    public void snapshot() throws IOException {
+        final long sequence = operationLog.lastSequence();
+        operationLog.roll();
+        graph.compact();
+        SnapshotFile.write(directory, sequence, graph.state(), graph.getCompactionFloor(), codec,
+            options.snapshotChunkSize);
+        // the snapshot is durably in place, so the files it replaces can go
+        SnapshotFile.deleteBefore(directory, sequence);
+        operationLog.deleteSegmentsBefore(sequence);
+        changesSinceSnapshot = 0;
+    }
+
+    /**
+     * Forces every change so far to disk without waiting for the next group commit.
+     */
+    public void sync() throws IOException {
+        operationLog.commit();
+    }
+
+    private void commit() {
+        try {
+            operationLog.commit();
+        } catch (IOException e) {
+            log.error("Failed to commit the operation log in {}", directory, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        graph.removeOperationListener(listener);
+        committer.shutdown();
+        try {
+            // let a commit in flight finish before the log closes under it
+            committer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        operationLog.close();
+    }
+
+    /**
+     * Appends the changes of the graph to the log.
+     */
+    private final class LogAppender implements GraphOperationListener<E> {
+
+        @Override
+        public void onOperation(GraphOperation<E> operation) {
+            append(OperationLog.OPERATION, codec.encode(operation));
+        }
+
+        @Override
+        public void onDelta(GraphDelta<E> delta) {
+            if (!delta.isEmpty()) {
+                append(OperationLog.DELTA, codec.encode(delta));
+            }
+        }
+
+        private void append(byte type, ByteBuffer payload) {
+            try {
+                operationLog.append(type, payload);
+                if (options.snapshotEvery > 0 && ++changesSinceSnapshot >= options.snapshotEvery) {
+                    snapshot();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Tuning of a {@link GraphStore}.
+     */
+    public static final class Options {
+        private static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+        private static final Duration DEFAULT_COMMIT_INTERVAL = Duration.ofMillis(10);
+        private static final long DEFAULT_SNAPSHOT_EVERY = 1_000_000L;
+        private static final int DEFAULT_SNAPSHOT_CHUNK_SIZE = 1 << 16;
+        private final long segmentSize;
+        private final Duration commitInterval;
+        private final long snapshotEvery;
+        private final int snapshotChunkSize;
+
+        private Options(long segmentSize, Duration commitInterval, long snapshotEvery, int snapshotChunkSize) {
+            this.segmentSize = segmentSize;
+            this.commitInterval = commitInterval;
+            this.snapshotEvery = snapshotEvery;
+            this.snapshotChunkSize = snapshotChunkSize;
+        }
+
+        /**
+         * @return 64 MiB segments, a commit every 10 ms and a snapshot every million changes
+         */
+        public static Options defaults() {
+            return new Options(DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL, DEFAULT_SNAPSHOT_EVERY,
+                DEFAULT_SNAPSHOT_CHUNK_SIZE);
+        }
+
+        /**
+         * @param segmentSize the size in bytes after which a log segment is rolled
+         * @return options with the segment size
+         */
+        public Options withSegmentSize(long segmentSize) {
+            return new Options(segmentSize, commitInterval, snapshotEvery, snapshotChunkSize);
+        }
+
+        /**
+         * @param commitInterval the time between two group commits
+         * @return options with the commit interval
+         */
+        public Options withCommitInterval(Duration commitInterval) {
+            Objects.requireNonNull(commitInterval, "commitInterval must not be null");
+            return new Options(segmentSize, commitInterval, snapshotEvery, snapshotChunkSize);
+        }
+
+        /**
+         * @param snapshotEvery the number of changes after which a snapshot is written, 0 to only snapshot on demand
+         * @return options with the snapshot frequency
+         */
+        public Options withSnapshotEvery(long snapshotEvery) {
+            return new Options(segmentSize, commitInterval, snapshotEvery, snapshotChunkSize);
+        }
+
+        /**
+         * @param snapshotChunkSize the number of elements per mapped snapshot chunk
+         * @return options with the snapshot chunk size
+         */
+        public Options withSnapshotChunkSize(int snapshotChunkSize) {
+            return new Options(segmentSize, commitInterval, snapshotEvery, snapshotChunkSize);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.juliuskrah.crdt;
+
+/**
+ * Open-addressed map from long keys to non-negative ints, in two parallel primitive arrays, so neither keys nor
+ * values are boxed. Every key may be stored, a slot is empty when it holds no value.
+ * @author Julius Krah
+ */
+final class LongIntMap extends OpenAddressing {
+    static final int NO_VALUE = -1;
+    private static final int INITIAL_CAPACITY = 1 << 4;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    // value + 1 of the key in the same slot, 0 for an empty slot
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Fibonacci hashing, which scatters the runs of consecutive keys that linear probing would otherwise cluster.
+     */
+    private static int slotOf(long key, int length) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - Integer.numberOfTrailingZeros(length)));
+    }
+
+    @Override
+    int capacity() {
+        return keys.length;
+    }
+
+    @Override
+    boolean taken(int slot) {
+        return values[slot] != 0;
+    }
+
+    @Override
+    int homeOf(int slot) {
+        return slotOf(keys[slot], keys.length);
+    }
+
+    @Override
+    void move(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+    }
+
+    private int find(long key) {
+        final int mask = keys.length - 1;
+        for (int slot = slotOf(key, keys.length); taken(slot); slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or {@link #NO_VALUE} when the map has none
+     */
+    int get(long key) {
+        final int slot = find(key);
+        return slot < 0 ? NO_VALUE : values[slot] - 1;
+    }
+
+    /**
+     * @param key the key
+     * @param value the value of the key, not negative
+     */
+    void put(long key, int value) {
+        int slot = find(key);
+        if (slot < 0) {
+            // at most half of the slots are taken to keep runs of probes short
+            if (2 * (size + 1) > keys.length) {
+                resize(keys.length * 2);
+            }
+            slot = freeSlot(slotOf(key, keys.length));
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value + 1;
+    }
+
+    /**
+     * @param key the key
+     * @return the value the key had, or {@link #NO_VALUE} when the map had none
+     */
+    int remove(long key) {
+        final int slot = find(key);
+        if (slot < 0) {
+            return NO_VALUE;
+        }
+        final int value = values[slot] - 1;
+        size--;
+        values[shiftBack(slot)] = 0;
+        return value;
+    }
+
+    private void resize(int capacity) {
+        final var oldKeys = keys;
+        final var oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                final int slot = freeSlot(slotOf(oldKeys[i], capacity));
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
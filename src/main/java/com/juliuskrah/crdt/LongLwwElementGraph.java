@@ -0,0 +1,321 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A {@link LwwElementGraph} of long elements, with the same semantics for adding and removing vertices and edges,
+ * merging replicas and searching paths, kept in primitive arrays rather than tries of objects.
+ * <p>
+ * Every element the graph knows of gets a dense slot, found in an open-addressed map from the long element. The
+ * element sits at that slot in an array, its add, remove and live clocks and its latest changes in the parallel
+ * arrays of {@link SlotVertices}, and its neighbours in {@link SlotAdjacency}, as the slots of the neighbours next
+ * to their clocks. The heap then holds no object per element or per edge other than the clocks, so a vertex takes a
+ * fraction of the memory it takes in the generic graph and lookups follow no pointers.
+ * <p>
+ * The graph keeps the state and the change of every element only, it has no deltas, snapshots, batches, listeners
+ * or compaction; it merges with other replicas of its own kind. Like the generic graph, it is not thread-safe.
+ * @author Julius Krah
+ * @see LwwElementGraph
+ */
+public class LongLwwElementGraph {
+    private static final int INITIAL_CAPACITY = 1 << 4;
+    private static final long[] NO_ELEMENTS = new long[0];
+    // slot of every element with a vertex, a change or a neighbour in the graph
+    private final LongIntMap slots = new LongIntMap();
+    private long[] elements = new long[INITIAL_CAPACITY];
+    private final SlotVertices vertices;
+    private final SlotAdjacency adjacency = new SlotAdjacency(INITIAL_CAPACITY);
+    private final SlotPathFinder pathFinder;
+    private int slotCount;
+    private VectorClock vectorClock;
+
+    public LongLwwElementGraph(String nodeId) {
+        this(nodeId, LWWBias.ADD);
+    }
+
+    /**
+     * @param nodeId the node Id
+     * @param bias the bias to apply
+     */
+    public LongLwwElementGraph(String nodeId, LWWBias bias) {
+        Objects.requireNonNull(nodeId, "nodeId must not be null");
+        this.vectorClock = VectorClock.of(nodeId);
+        this.vertices = new SlotVertices(INITIAL_CAPACITY, bias);
+        this.pathFinder = new SlotPathFinder(adjacency, vertices::isLive);
+    }
+
+    private int slotOf(long element) {
+        return slots.get(element);
+    }
+
+    private int intern(long element) {
+        final int slot = slots.get(element);
+        if (slot != LongIntMap.NO_VALUE) {
+            return slot;
+        }
+        if (slotCount == elements.length) {
+            grow(elements.length * 2);
+        }
+        elements[slotCount] = element;
+        slots.put(element, slotCount);
+        return slotCount++;
+    }
+
+    private void grow(int capacity) {
+        elements = Arrays.copyOf(elements, capacity);
+        vertices.grow(capacity);
+        adjacency.grow(capacity);
+    }
+
+    /**
+     * Add vertex to the graph.
+     * We take the current vector clock and increment it, the vertex keeps the neighbours it has.
+     * @param element
+     */
+    public void addVertex(long element) {
+        this.vectorClock = this.vectorClock.increment();
+        final int slot = intern(element);
+        vertices.add(slot, this.vectorClock);
+        vertices.record(slot, this.vectorClock.dot());
+    }
+
+    /**
+     * Remove vertex from the graph, together with its neighbours.
+     * We take the current vector clock and increment it.
+     * @param element
+     */
+    public void removeVertex(long element) {
+        this.vectorClock = this.vectorClock.increment();
+        final int slot = intern(element);
+        adjacency.clear(slot);
+        vertices.remove(slot, this.vectorClock);
+        vertices.record(slot, this.vectorClock.dot());
+    }
+
+    /**
+     * Add an edge between the vertices the elements are in the graph with.
+     * @param source
+     * @param destination
+     * @return true when both elements are in the graph, so the edge was added
+     * @see LwwElementGraph#addEdge(Edge)
+     */
+    public boolean addEdge(long source, long destination) {
+        this.vectorClock = this.vectorClock.increment();
+        final int sourceSlot = slotOf(source);
+        final int destinationSlot = slotOf(destination);
+        if (!vertices.isLive(sourceSlot) || !vertices.isLive(destinationSlot)) {
+            // one or both vertices do not exist to create an edge
+            return false;
+        }
+        adjacency.add(sourceSlot, destinationSlot, vertices.liveClock(destinationSlot));
+        adjacency.add(destinationSlot, sourceSlot, vertices.liveClock(sourceSlot));
+        final var dot = this.vectorClock.dot();
+        vertices.record(sourceSlot, dot);
+        vertices.record(destinationSlot, dot);
+        return true;
+    }
+
+    /**
+     * Remove the edge between the vertices the elements are in the graph with.
+     * @param source
+     * @param destination
+     * @see LwwElementGraph#removeEdge(Edge)
+     */
+    public void removeEdge(long source, long destination) {
+        this.vectorClock = this.vectorClock.increment();
+        final int sourceSlot = slotOf(source);
+        final int destinationSlot = slotOf(destination);
+        if (vertices.isLive(sourceSlot) && vertices.isLive(destinationSlot)
+                && adjacency.remove(sourceSlot, destinationSlot, vertices.liveClock(destinationSlot))) {
+            adjacency.remove(destinationSlot, sourceSlot, vertices.liveClock(sourceSlot));
+            final var dot = this.vectorClock.dot();
+            vertices.record(sourceSlot, dot);
+            vertices.record(destinationSlot, dot);
+        }
+    }
+
+    /**
+     * Query for all vertices adjacent to current vertex.
+     * @param element current vertex
+     * @return the neighbours of the element, empty when it is not in the graph
+     * @see #forEachAdjacentVertex(long, ObjLongConsumer)
+     */
+    public long[] findAdjacentVertices(long element) {
+        final int slot = slotOf(element);
+        if (!vertices.isLive(slot)) {
+            return NO_ELEMENTS;
+        }
+        final long[] adjacentVertices = new long[adjacency.degree(slot)];
+        for (int position = 0; position < adjacentVertices.length; position++) {
+            adjacentVertices[position] = elements[adjacency.neighborAt(slot, position)];
+        }
+        return adjacentVertices;
+    }
+
+    /**
+     * Visits the vertices adjacent to current vertex, without allocating.
+     * @param element current vertex
+     * @param action takes the clock and the element of every neighbour
+     */
+    public void forEachAdjacentVertex(long element, ObjLongConsumer<VectorClock> action) {
+        final int slot = slotOf(element);
+        if (vertices.isLive(slot)) {
+            for (int position = 0; position < adjacency.degree(slot); position++) {
+                action.accept(adjacency.clockAt(slot, position), elements[adjacency.neighborAt(slot, position)]);
+            }
+        }
+    }
+
+    /**
+     * Search any path between source and destination.
+     * @param source
+     * @param destination
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     * @see #findShortestPath(long, long)
+     */
+    public long[] findAnyPath(long source, long destination) {
+        return findShortestPath(source, destination);
+    }
+
+    /**
+     * Search a shortest path between source and destination.
+     * @param source
+     * @param destination
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     * @see #findShortestPath(long, long, int, int)
+     */
+    public long[] findShortestPath(long source, long destination) {
+        return findShortestPath(source, destination, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search a shortest path between source and destination, giving up past a number of hops or visited vertices.
+     * The search runs from both ends at once over the slots of the elements, as
+     * {@link LwwElementGraph#findShortestPath(Comparable, Comparable, int, int)} does over dense ids.
+     * @param source
+     * @param destination
+     * @param maxHops the most edges the path may have
+     * @param budget the most vertices the search may visit, bounding the latency of a query
+     * @return the vertices of the path in order from source to destination, empty when there is none within the
+     *     limits
+     * @see SlotPathFinder
+     */
+    public long[] findShortestPath(long source, long destination, int maxHops, int budget) {
+        final int sourceSlot = slotOf(source);
+        final int destinationSlot = slotOf(destination);
+        if (!vertices.isLive(sourceSlot) || !vertices.isLive(destinationSlot)) {
+            return NO_ELEMENTS;
+        }
+        if (sourceSlot == destinationSlot) {
+            return new long[] {source};
+        }
+        final int[] path = pathFinder.findShortestPath(sourceSlot, destinationSlot, maxHops, budget);
+        final long[] pathElements = new long[path.length];
+        for (int position = 0; position < path.length; position++) {
+            pathElements[position] = elements[path[position]];
+        }
+        return pathElements;
+    }
+
+    /**
+     * Merges the state of another replica into this graph, reaching the state
+     * {@link LwwElementGraph#merge(LwwElementGraph)} reaches: only the elements the other replica changed after the
+     * clock of this graph are visited, the later of the add and of the remove vertices wins, and the adjacency of the
+     * same vertex on both replicas is united. The clock of this graph advances past everything the other replica has
+     * seen.
+     * @param other the LWW graph to merge with
+     * @return merged graph
+     */
+    public LongLwwElementGraph merge(LongLwwElementGraph other) {
+        final var since = this.vectorClock;
+        for (int slot = 0; slot < other.slotCount; slot++) {
+            final var otherChanges = other.vertices.changesAt(slot);
+            if (otherChanges != null && !since.dominates(otherChanges)) {
+                mergeElement(other, slot, otherChanges);
+            }
+        }
+        this.vectorClock = this.vectorClock.merge(other.vectorClock);
+        return this;
+    }
+
+    /**
+     * Merges the add and remove vertex of an element from another replica, last writer wins. When this replica
+     * keeps state of the element the other replica lacks although it has seen every change of the element, the
+     * merged state is logged as a change of this replica, so the other replica gets it on its next merge.
+     * @param from the slot of the element in the other replica
+     */
+    private void mergeElement(LongLwwElementGraph other, int from, VectorClock otherChanges) {
+        final int slot = intern(other.elements[from]);
+        mergeAdded(slot, other, from);
+        vertices.mergeRemoved(slot, other.vertices.removedAt(from));
+        vertices.record(slot, otherChanges);
+        if (divergesFrom(slot, other, from)) {
+            this.vectorClock = this.vectorClock.increment();
+            vertices.record(slot, this.vectorClock.dot());
+        }
+    }
+
+    /**
+     * Keeps the later add vertex, with the adjacency of the replica it came from, and unites the adjacency of the
+     * same vertex on both replicas.
+     */
+    private void mergeAdded(int slot, LongLwwElementGraph other, int from) {
+        final int outcome = vertices.mergeAdded(slot, other.vertices.addedAt(from));
+        if (outcome > 0) {
+            adjacency.clear(slot);
+        }
+        if (outcome >= 0) {
+            adjacency.unite(slot, other.adjacency, from, neighbor -> intern(other.elements[neighbor]));
+        }
+    }
+
+    /**
+     * Checks whether the other replica has seen every change of the element and still lacks state this replica
+     * keeps of it: an add vertex other than its own, neighbours or later clocks of neighbours, or a later remove
+     * vertex.
+     * @see GraphSet#differs(GraphSet.Merge, Vertex, java.util.Collection)
+     */
+    private boolean divergesFrom(int slot, LongLwwElementGraph other, int from) {
+        if (!other.vectorClock.dominates(vertices.changesAt(slot))) {
+            return false;
+        }
+        final var added = vertices.addedAt(slot);
+        if (added != null && (!added.equals(other.vertices.addedAt(from))
+                || adjacency.differs(slot, other.adjacency, from, neighbor -> slotOf(other.elements[neighbor])))) {
+            return true;
+        }
+        final var removed = vertices.removedAt(slot);
+        return removed != null && !removed.equals(other.vertices.removedAt(from));
+    }
+
+    /**
+     * @return the clock of this graph, covering every change it has made or merged
+     */
+    public VectorClock getVectorClock() {
+        return this.vectorClock;
+    }
+
+    /**
+     * @param element the element
+     * @return the clock the element is in the graph with, null when it is not in the graph
+     */
+    public VectorClock findVectorClock(long element) {
+        return vertices.liveClock(slotOf(element));
+    }
+
+    public int vertexSize() {
+        return vertices.size();
+    }
+
+    /**
+     * Checks whether the current graph contains this vertex, live or removed.
+     * @param element
+     * @return
+     */
+    public boolean containsVertex(long element) {
+        return vertices.contains(slotOf(element));
+    }
+}
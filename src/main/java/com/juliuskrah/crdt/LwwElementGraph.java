@@ -1,16 +1,16 @@
 package com.juliuskrah.crdt;
 
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import com.juliuskrah.crdt.GraphOperation.Type;
+import java.util.Collection;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,150 +20,38 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class LwwElementGraph<E extends Comparable<E>> {
-    private final Map<Vertex<E>, List<Vertex<E>>> addGraph;
-    private final Map<Vertex<E>, List<Vertex<E>>> removeGraph;
-    // temporary object to track state
-    private final Map<E, VectorClock> elements;
-    private final LWWBias bias;
-    private VectorClock vectorClock;
+    private final GraphState<E> state;
+    private final GraphEdits<E> edits;
+    private final GraphListeners<E> listeners = new GraphListeners<>();
+    private final DeltaExport<E> exporter;
+    private final GraphMerger<E> merger;
+    private final OperationReplay<E> replay;
+    private final PathFinder<E> pathFinder;
 
     public LwwElementGraph(String nodeId) {
         this(nodeId, LWWBias.ADD);
     }
 
     /**
-     * LinkedHashMap keeps the order of insertion. This compliments the VectorClock.
      * @param nodeId the node Id
      * @param bias the bias to apply
      */
     public LwwElementGraph(String nodeId, LWWBias bias) {
-        Objects.requireNonNull(nodeId, "nodeId must not be null");
-        this.elements = new LinkedHashMap<>();
-        this.addGraph = new LinkedHashMap<>();
-        this.removeGraph = new LinkedHashMap<>();
-        this.vectorClock = VectorClock.of(nodeId);
-        this.bias = bias;
-    }
-
-    private void prepareAddVertex(E element) {
-        this.vectorClock = this.vectorClock.increment();
-        this.doAddVertex(element, this.vectorClock);
-    }
-
-    private void doAddVertex(E element, VectorClock clock) {
-        log.info("Adding: {}...", element);
-        var vertex = Vertex.of(element, clock);
-        addGraph.computeIfAbsent(vertex, v -> new ArrayList<>());
-        updateElements(element, clock);
-    }
-
-    private boolean prepareAddEdge(Edge<E> edge) {
-        this.vectorClock = this.vectorClock.increment();
-        return this.doAddAddEdge(edge);
-    }
-
-    private boolean doAddAddEdge(Edge<E> edge) {
-        if (!elements.containsKey(edge.getSource().getValue())
-                || !elements.containsKey(edge.getDestination().getValue())) {
-            // one or both vertices do not exist to create an edge
-            return false;
-        }
-        var vertex1 = edge.getSource();
-        var vertex2 = edge.getDestination();
-        // add vertex2 to vertex1 adjacency list
-        addGraph.computeIfPresent(vertex1, (k, v) -> {
-            v.add(vertex2);
-            return v;
-        });
-        // add vertex1 to vertex2 adjacency list
-        addGraph.computeIfPresent(vertex2, (k, v) -> {
-            v.add(vertex1);
-            return v;
-        });
-        return true;
-    }
-
-    private void prepareRemoveVertex(E element) {
-        this.vectorClock = this.vectorClock.increment();
-        doRemoveVertex(element);
-    }
-
-    private void doRemoveVertex(E element) {
-        log.info("Removing: {}...", element);
-        var vertex = Vertex.of(element, this.vectorClock);
-        keys(addGraph, element).findFirst().ifPresent(addGraph::remove);
-        removeGraph.computeIfAbsent(vertex, v -> new ArrayList<>());
-        updateElements(element, this.vectorClock);
-    }
-
-    private void prepareRemoveEdge(Edge<E> edge) {
-        this.vectorClock = this.vectorClock.increment();
-        doRemoveEdge(edge);
-    }
-
-    private void doRemoveEdge(Edge<E> edge) {
-        var vertex1 = edge.getSource();
-        var vertex2 = edge.getDestination();
-        // check if edge exist in addGraph
-        var neighbors = findAdjacentVertices(vertex1.getValue());
-        if (neighbors.contains(vertex2)) {
-            // remove vertex2 from vertex1 adjacency list
-            addGraph.computeIfPresent(vertex1, (k, v) -> {
-                v.remove(vertex2);
-                return v;
-            });
-            // remove vertex1 from vertex2 adjacency list
-            addGraph.computeIfPresent(vertex2, (k, v) -> {
-                v.remove(vertex1);
-                return v;
-            });
-        } else if (elements.containsKey(edge.getSource().getValue())
-                || elements.containsKey(edge.getDestination().getValue())) {
-            // remove vertex2 from vertex1 adjacency list
-            removeGraph.computeIfPresent(vertex1, (k, v) -> {
-                v.remove(vertex2);
-                return v;
-            });
-            // remove vertex1 from vertex2 adjacency list
-            removeGraph.computeIfPresent(vertex2, (k, v) -> {
-                v.remove(vertex1);
-                return v;
-            });
-        }
-    }
-
-    private Stream<Vertex<E>> keys(Map<Vertex<E>, List<Vertex<E>>> map, E value) {
-        return map.entrySet().stream().filter(entry -> value.equals(entry.getKey().getValue())).map(Map.Entry::getKey);
-    }
-
-    private int getIndex(E element) {
-        return new ArrayList<E>(elements.keySet()).indexOf(element);
+        this(nodeId, bias, Storage.HEAP);
     }
 
     /**
-     * Updates the set by checking the elements in addSet against the elements in the removeSet.
-     * Keeps any elements that appear in both add and remove sets
-     * but have a higher vectorClock in addSet
-     * @param element
-     * @see #doAdd(Object)
-     * @see #doRemove(Object)
-     */
-    private void updateElements(E element, VectorClock clock) {
-        VectorClock removeTime = keys(removeGraph, element).findFirst().map(Vertex::getVectorClock).orElse(null);
-        VectorClock addTime = keys(addGraph, element).findFirst().map(Vertex::getVectorClock).orElse(null);
-        // element is in both addGraph and removeGraph
-        if (removeTime != null && addTime != null) {
-            if (removeTime.compareTo(addTime) < 0 //
-                    || (removeTime.compareTo(addTime) == 0 && bias == LWWBias.ADD)) {
-                elements.put(element, addTime.merge(removeTime));
-            } else {
-                elements.remove(element);
-            }
-        } else if (addTime != null) {
-            elements.put(element, clock);
-        } else {
-            elements.remove(element);
-        }
+     * @param nodeId the node Id
+     * @param bias the bias to apply
+     * @param storage where to keep the adjacency of the vertices
+     */
+    public LwwElementGraph(String nodeId, LWWBias bias, Storage storage) {
+        this.state = new GraphState<>(Objects.requireNonNull(nodeId, "nodeId must not be null"), bias, storage);
+        this.edits = new GraphEdits<>(state);
+        this.exporter = new DeltaExport<>(state);
+        this.merger = new GraphMerger<>(state, listeners);
+        this.replay = new OperationReplay<>(state, edits, listeners);
+        this.pathFinder = new PathFinder<>(state.ids(), state::adjacencyOf, state::isLive);
     }
 
     /**
@@ -172,7 +60,13 @@ public class LwwElementGraph<E extends Comparable<E>> {
      * @param element
      */
     public void addVertex(E element) {
-        prepareAddVertex(element);
+        final long start = now();
+        final var clock = state.tick();
+        edits.addVertex(element, clock);
+        if (!listeners.isEmpty()) {
+            listeners.onOperation(GraphOperation.addVertex(element, clock));
+        }
+        state.metrics().onOperation(Type.ADD_VERTEX, now() - start);
     }
 
     /**
@@ -181,7 +75,13 @@ public class LwwElementGraph<E extends Comparable<E>> {
      * @param element
      */
     public void removeVertex(E element) {
-        prepareRemoveVertex(element);
+        final long start = now();
+        final var clock = state.tick();
+        edits.removeVertex(element, clock);
+        if (!listeners.isEmpty()) {
+            listeners.onOperation(GraphOperation.removeVertex(element, clock));
+        }
+        state.metrics().onOperation(Type.REMOVE_VERTEX, now() - start);
     }
 
     /**
@@ -191,7 +91,17 @@ public class LwwElementGraph<E extends Comparable<E>> {
      * @return
      */
     public boolean addEdge(Edge<E> edge) {
-        return prepareAddEdge(edge);
+        final long start = now();
+        final var clock = state.tick();
+        final boolean added = edits.addEdge(edge);
+        if (added) {
+            edits.recordChange(edge, clock.dot());
+        }
+        if (added && !listeners.isEmpty()) {
+            listeners.onOperation(GraphOperation.addEdge(edge, clock));
+        }
+        state.metrics().onOperation(Type.ADD_EDGE, now() - start);
+        return added;
     }
 
     /**
@@ -201,84 +111,402 @@ public class LwwElementGraph<E extends Comparable<E>> {
      * @param edge
      */
     public void removeEdge(Edge<E> edge) {
-        prepareRemoveEdge(edge);
+        final long start = now();
+        final var clock = state.tick();
+        edits.removeEdge(edge, clock.dot());
+        if (!listeners.isEmpty()) {
+            listeners.onOperation(GraphOperation.removeEdge(edge, clock));
+        }
+        state.metrics().onOperation(Type.REMOVE_EDGE, now() - start);
+    }
+
+    /**
+     * Applies a batch of changes as a single commit.
+     * The clock ticks once for the whole batch, changes are not logged one by one, and every element the batch
+     * touched is reconciled once. Listeners receive the batch as a single delta.
+     * @param changes collects the changes of the batch
+     * @see GraphBatch
+     */
+    public void batch(Consumer<GraphBatch<E>> changes) {
+        final var batch = new GraphBatch<E>();
+        changes.accept(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        final long start = now();
+        final var changed = new BatchCommit<>(state, edits, state.tick()).commit(batch);
+        log.debug("Committed a batch of {} changes", batch.size());
+        state.metrics().onBatch(batch.size(), now() - start);
+        if (!listeners.isEmpty()) {
+            listeners.onDelta(exporter.deltaOf(changed));
+        }
+    }
+
+    /**
+     * Add vertices to the graph in a single batch.
+     * @param values the elements to add
+     * @see #batch(Consumer)
+     */
+    public void addVertices(Collection<E> values) {
+        batch(batch -> values.forEach(batch::addVertex));
     }
 
     /**
      * Query for all vertices adjacent to current vertex.
      * @param element current vertex
-     * @return all adjacent vertices
+     * @return an unmodifiable collection of all adjacent vertices, valid until the graph next changes
+     * @see #snapshot()
      */
-    public List<Vertex<E>> findAdjacentVertices(E element) {
-        if (Objects.nonNull(elements.get(element))) {
-            var vertex = Vertex.of(element, elements.get(element));
-            return addGraph.get(vertex);
-        }
-        return List.of();
+    public Collection<Vertex<E>> findAdjacentVertices(E element) {
+        return state.findAdjacentVertices(element);
     }
 
     /**
      * Search any path between source and destination.
      * @param source
      * @param destination
-     * @return first path found
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     * @see #findShortestPath(Comparable, Comparable)
      */
     public Set<E> findAnyPath(E source, E destination) {
-        boolean[] visited = new boolean[elements.size()];
-        Set<E> paths = new LinkedHashSet<>(); // insertion order is maintained
-        paths.add(source);
-
-        // Create a queue for BFS
-        Deque<E> queue = new LinkedList<>();
-
-        // Mark the current node as visited and enqueue it
-        visited[getIndex(source)] = true;
-        queue.add(source);
-
-        // 'i' will be used to get all adjacent vertices of a vertex
-        Iterator<E> iterator;
-        while (!queue.isEmpty()) {
-            source = queue.poll();
-            E currentNode = null;
-            iterator = findAdjacentVertices(source).stream().map(Vertex::getValue).iterator();
-            while (iterator.hasNext()) {
-                currentNode = iterator.next();
-                if (currentNode == destination) {
-                    paths.add(destination);
-                    return paths;
-                }
-                if (!visited[getIndex(currentNode)]) {
-                    visited[getIndex(currentNode)] = true;
-                    queue.add(currentNode);
-                }
-            }
-            paths.add(currentNode);
-        }
-        return paths;
+        return new LinkedHashSet<>(findShortestPath(source, destination));
+    }
+
+    /**
+     * Search a shortest path between source and destination.
+     * @param source
+     * @param destination
+     * @return the vertices of the path in order from source to destination, empty when there is none
+     * @see #findShortestPath(Comparable, Comparable, int, int)
+     */
+    public List<E> findShortestPath(E source, E destination) {
+        return findShortestPath(source, destination, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search a shortest path between source and destination, giving up past a number of hops or visited vertices.
+     * The search runs from both ends at once over dense element ids, with int arrays as queues and parent links,
+     * so it visits far fewer vertices than a search from source alone on wide graphs.
+     * @param source
+     * @param destination
+     * @param maxHops the most edges the path may have
+     * @param budget the most vertices the search may visit, bounding the latency of a query
+     * @return the vertices of the path in order from source to destination, empty when there is none within the
+     *     limits
+     */
+    public List<E> findShortestPath(E source, E destination, int maxHops, int budget) {
+        return pathFinder.findShortestPath(source, destination, maxHops, budget, state.metrics());
+    }
+
+    /**
+     * Streams the vertices reachable from source, breadth first.
+     * @param source the vertex to start from
+     * @return a lazy stream of the reachable vertices, source first, empty when source is not in the graph
+     * @see #reachableFrom(Comparable, Traversal)
+     */
+    public Stream<E> reachableFrom(E source) {
+        return reachableFrom(source, Traversal.BREADTH_FIRST);
+    }
+
+    /**
+     * Streams the vertices reachable from source.
+     * The traversal advances only as far as the stream is consumed, so short-circuiting operations stop it early and
+     * no result is held in memory. A parallel stream hands batches of traversed vertices to other threads while the
+     * traversal stays on one. The graph must not change while the stream is consumed.
+     * @param source the vertex to start from
+     * @param order the order to visit the vertices in
+     * @return a lazy stream of the reachable vertices, source first, empty when source is not in the graph
+     */
+    public Stream<E> reachableFrom(E source, Traversal order) {
+        return StreamSupport.stream(new TraversalSpliterator<>(state.ids(), state::adjacencyOf, state::isLive, source,
+            order == Traversal.DEPTH_FIRST), false);
+    }
+
+    /**
+     * Checks whether a path joins two vertices, in near constant time.
+     * The first query builds an index of the connected components, which later changes keep up to date: new edges
+     * and vertices join components as they are added, while removals and merges, which may split components,
+     * have the next query rebuild the index in time linear in the size of the graph.
+     * @param source a vertex
+     * @param destination another vertex
+     * @return true when both vertices are in the graph and a path of vertices in the graph joins them, each vertex
+     *     of the path listing the next one as adjacent or listed by it
+     */
+    public boolean isConnected(E source, E destination) {
+        return state.isConnected(source, destination);
+    }
+
+    /**
+     * Names the connected component of a vertex by one of its vertices.
+     * @param element a vertex
+     * @return the vertex that stands for every vertex connected to the given one until the graph next changes, null
+     *     when the element is not in the graph
+     * @see #isConnected(Comparable, Comparable)
+     */
+    public E componentOf(E element) {
+        return state.componentOf(element);
     }
 
     /**
+     * Freezes the current state of this graph for reads. The snapshot shares the persistent tries that hold the
+     * state, so taking it is constant time, and later changes of this graph copy only the paths they update.
+     * Queries on the snapshot may run on any thread while this graph goes on changing, they see the graph as it
+     * was when the snapshot was taken.
+     * @return a read-only view of the current state
+     */
+    public GraphSnapshot<E> snapshot() {
+        return state.snapshot();
+    }
+
+    /**
+     * Merges the state of another replica into this graph.
+     * Only the elements the other replica changed after the clock of this graph are visited, and only those whose
+     * add or remove vertex advanced are reconciled, so the cost follows how far the replicas diverged rather than
+     * the size of the graph. Adjacency of the same vertex on both replicas is united.
+     * Removing an edge leaves no tombstone, so an edge one replica removed comes back when the other replica still
+     * holds it: the merged adjacency is the union of both, as a merge of the whole state would give.
+     * The clock of this graph advances past everything the other replica has seen.
      * @param other the LWW graph to merge with
      * @return merged graph
      */
     public LwwElementGraph<E> merge(LwwElementGraph<E> other) {
-        this.addGraph.putAll(other.addGraph);
-        this.removeGraph.putAll(other.removeGraph);
-        this.addGraph.forEach((vertex, adjacentVertices) -> 
-            updateElements(vertex.getValue(), vertex.getVectorClock())
-        );
-        this.removeGraph.forEach((vertex, adjacentVertices) -> 
-            updateElements(vertex.getValue(), vertex.getVectorClock())
-        );
+        merger.merge(other.state);
+        return this;
+    }
+
+    /**
+     * Merges the state of another replica into this graph, resolving the elements on a fork/join pool.
+     * The elements the other replica changed are partitioned by hash, and each partition resolves the add and remove
+     * winners and the adjacency unions of its elements in parallel. The outcomes are committed in the order a
+     * sequential merge visits the elements, so the merged state, clock and change log are identical to those of
+     * {@link #merge(LwwElementGraph)}. Neither graph may change while the merge runs.
+     * @param other the LWW graph to merge with
+     * @param pool the pool to resolve the partitions on
+     * @return merged graph
+     */
+    public LwwElementGraph<E> merge(LwwElementGraph<E> other, ForkJoinPool pool) {
+        merger.merge(other.state, pool);
+        return this;
+    }
+
+    /**
+     * Merges the state of several replicas into this graph in one pass, reaching the state that merging them one
+     * after the other reaches. The elements every replica changed after the clock of this graph are
+     * grouped, and each element is resolved once against all the replicas that changed it: among their add and
+     * remove vertices the ones with the latest clocks win, the adjacency of every replica holding the winning add
+     * vertex is united, and the outcome is merged into this graph with a single write. The cost follows the number
+     * of changed entries across the replicas, however many replicas changed the same element.
+     * Since the adjacency is united, an edge that one replica removed comes back when this graph or another of the
+     * replicas still holds it, just as {@link #merge(LwwElementGraph)} brings it back.
+     * When this graph keeps state of an element that a replica lacks although it has seen every change of the
+     * element, the merged state is logged as one change of this replica, where merges one after the other may log
+     * one for each replica.
+     * @param others the LWW graphs to merge with
+     * @return merged graph
+     * @see #merge(LwwElementGraph)
+     */
+    public LwwElementGraph<E> mergeAll(Collection<LwwElementGraph<E>> others) {
+        merger.mergeAll(others.stream().map(other -> other.state).collect(Collectors.toList()));
+        return this;
+    }
+
+    /**
+     * Collects the state a replica has not seen yet.
+     * Only the elements changed after {@code since} are visited, so the cost is proportional to the delta.
+     * @param since the clock of the replica, e.g. its {@link #getVectorClock()}
+     * @return the elements changed after {@code since}
+     */
+    public GraphDelta<E> deltaSince(VectorClock since) {
+        return exporter.deltaSince(since);
+    }
+
+    /**
+     * @param changed elements of this graph
+     * @return the state of the elements
+     */
+    GraphDelta<E> deltaOf(Iterable<E> changed) {
+        return exporter.deltaOf(changed);
+    }
+
+    /**
+     * @param since the clock of a replica
+     * @return the elements with a change the replica has not seen
+     */
+    Set<E> changedSince(VectorClock since) {
+        return state.changeLog().changedSince(since);
+    }
+
+    /**
+     * @return the digests of the changes of every element, kept up to date from the first call on
+     * @see AntiEntropy
+     */
+    MerkleDigests<E> digests() {
+        return state.changeLog().digests();
+    }
+
+    /**
+     * @return the whole state of this graph, as the delta since an empty clock
+     */
+    GraphDelta<E> state() {
+        return exporter.wholeState();
+    }
+
+    /**
+     * Merges a delta taken from another replica into this graph.
+     * Only the elements in the delta are visited.
+     * @param delta the delta to apply
+     * @return merged graph
+     * @see #deltaSince(VectorClock)
+     */
+    public LwwElementGraph<E> applyDelta(GraphDelta<E> delta) {
+        final long start = now();
+        merger.applyEntries(delta.getEntries(), delta.getVectorClock());
+        merger.completeDelta(delta, start);
         return this;
     }
 
+    /**
+     * Merges entries of a delta without advancing the clock of this graph, so a large delta can be applied in
+     * slices with other changes in between. The delta is applied once {@link #completeDelta(GraphDelta, long)}
+     * ran after its last slice.
+     * @param entries entries of the delta
+     * @param seen the clock of the delta
+     */
+    void applyEntries(List<GraphDelta.Entry<E>> entries, VectorClock seen) {
+        merger.applyEntries(entries, seen);
+    }
+
+    /**
+     * Advances the clock of this graph past a delta whose entries were all applied.
+     * @param delta the delta
+     * @param start when applying the delta started, from {@link #now()}
+     */
+    void completeDelta(GraphDelta<E> delta, long start) {
+        merger.completeDelta(delta, start);
+    }
+
+    /**
+     * Applies an operation recorded by this or another replica, keeping the operation's clock.
+     * Vertices are merged last-writer-wins, so operations may arrive more than once or out of order.
+     * @param operation the operation
+     * @see GraphOperationListener
+     */
+    public void apply(GraphOperation<E> operation) {
+        replay.apply(operation);
+    }
+
+    /**
+     * Tracks the replicas this graph exchanges state with, so that {@link #compact()} can tell which tombstones every
+     * replica has seen. Until replicas are tracked, nothing is stable and no tombstone is purged.
+     * Merges with a tracked replica, deltas and operations from it acknowledge its clock.
+     * @param nodeIds the node ids of the other replicas, empty when there are none
+     */
+    public void trackReplicas(Collection<String> nodeIds) {
+        state.compactor().trackReplicas(nodeIds);
+    }
+
+    /**
+     * Stops waiting for a replica that left for good, so it no longer holds back compaction.
+     * @param nodeId the node id of the replica
+     */
+    public void forgetReplica(String nodeId) {
+        state.compactor().forgetReplica(nodeId);
+    }
+
+    /**
+     * Records that a tracked replica has seen everything up to its clock, e.g. after it merged this graph.
+     * @param clock the clock of the replica
+     */
+    public void acknowledge(VectorClock clock) {
+        state.compactor().acknowledge(clock);
+    }
+
+    /**
+     * @return the latest clock this graph and every tracked replica have seen
+     */
+    public VectorClock getStableClock() {
+        return state.compactor().stableClock(state.getVectorClock());
+    }
+
+    /**
+     * Purges the tombstones every tracked replica has seen: removed elements whose add and remove vertex and every
+     * logged change precede the {@linkplain #getStableClock() stable clock}. No replica can then send a change the
+     * tombstone would have to win against. Vertices of purged elements that still arrive, e.g. in the whole state
+     * of a replica that did not compact, precede the stable clock and are dropped rather than bring the element
+     * back. Neighbours keep their adjacency to the purged vertices. On the heap, the ids of the purged elements are
+     * released for new elements to take.
+     * @return the number of tombstones purged and the estimated bytes reclaimed
+     */
+    public Compaction compact() {
+        final var compaction = state.compactor().compact(state.getVectorClock());
+        log.info("Purged {} tombstones, reclaiming about {} bytes", compaction.getTombstones(),
+            compaction.getBytesReclaimed());
+        state.metrics().onCompaction(compaction, state.removeGraph().size());
+        return compaction;
+    }
+
+    /**
+     * @return the clock every purged tombstone preceded
+     */
+    VectorClock getCompactionFloor() {
+        return state.compactor().getFloor();
+    }
+
+    /**
+     * Restores the floor of the compactions a graph went through, once its state is restored.
+     * @param compactionFloor the clock every purged tombstone preceded
+     */
+    void restoreCompactionFloor(VectorClock compactionFloor) {
+        state.compactor().restoreFloor(compactionFloor);
+    }
+
+    /**
+     * @return the current time in nanoseconds, 0 when nothing is measured so the clock is not read
+     */
+    long now() {
+        return state.now();
+    }
+
+    /**
+     * Reports the work of this graph, and of the snapshots taken afterwards, to the given metrics.
+     * @param metrics the metrics, {@link GraphMetrics#NONE} to measure nothing
+     */
+    public void setMetrics(GraphMetrics metrics) {
+        state.setMetrics(Objects.requireNonNull(metrics, "metrics must not be null"));
+    }
+
+    /**
+     * Registers a listener for every subsequent change of this graph.
+     * @param listener the listener
+     */
+    public void addOperationListener(GraphOperationListener<E> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOperationListener(GraphOperationListener<E> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the clock of this graph, covering every change it has made or merged
+     */
+    public VectorClock getVectorClock() {
+        return state.getVectorClock();
+    }
+
     public VectorClock findVectorClock(E element) {
-        return elements.get(element);
+        return state.findVectorClock(element);
     }
 
     public int vertexSize() {
-        return this.elements.size();
+        return state.size();
+    }
+
+    /**
+     * @return the bytes of memory off the heap the adjacency of this graph takes, 0 when it is kept on the heap
+     */
+    long getOffHeapBytes() {
+        return state.getOffHeapBytes();
     }
 
     /**
@@ -287,8 +515,39 @@ public class LwwElementGraph<E extends Comparable<E>> {
      * @return
      */
     public boolean containsVertex(E element) {
-        var vertex = keys(addGraph, element).findFirst().or(() -> keys(removeGraph, element).findFirst()).orElse(null);
-        return vertex != null;
+        return state.containsVertex(element);
+    }
+
+    /**
+     * The order of a traversal.
+     * @see #reachableFrom(Comparable, Traversal)
+     */
+    public enum Traversal {
+        /**
+         * Every vertex before the vertices further from the source.
+         */
+        BREADTH_FIRST,
+        /**
+         * Every vertex reachable through a neighbour before the next neighbour.
+         */
+        DEPTH_FIRST
+    }
+
+    /**
+     * Where a graph keeps the adjacency of its vertices.
+     * @see #LwwElementGraph(String, LWWBias, Storage)
+     */
+    public enum Storage {
+        /**
+         * In persistent tries on the heap, with a vertex object for every neighbour.
+         */
+        HEAP,
+        /**
+         * In blocks of direct memory, with the neighbours of a vertex as records of primitives. The heap then holds
+         * no object per edge, so its footprint and the work of the garbage collector follow the number of vertices
+         * rather than edges, at the cost of decoding neighbours on every read and of updates linear in the degree.
+         */
+        OFF_HEAP
     }
 
     /**
@@ -303,7 +562,22 @@ public class LwwElementGraph<E extends Comparable<E>> {
         /**
          * To REMOVE.
          */
-        REMOVE
+        REMOVE;
+
+        /**
+         * Decides whether an element is in the graph from the times it was last added and removed.
+         * @param addTime the clock of the element's add vertex, null when it has none
+         * @param removeTime the clock of the element's remove vertex, null when it has none
+         * @return the clock the element is in the graph with, or null when it is not in the graph
+         */
+        VectorClock resolve(VectorClock addTime, VectorClock removeTime) {
+            if (addTime == null || removeTime == null) {
+                return addTime;
+            }
+            // element is in both addGraph and removeGraph
+            final int order = removeTime.compareTo(addTime);
+            return order < 0 || (order == 0 && this == ADD) ? addTime.merge(removeTime) : null;
+        }
     }
 
 }
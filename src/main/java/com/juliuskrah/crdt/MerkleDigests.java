@@ -0,0 +1,144 @@
+package com.juliuskrah.crdt;
+
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Merkle tree over the clocks of the changes of every element of a graph, with the elements split into buckets by
+ * the lowest bits of their hash. A leaf digests the elements of a bucket, every other node the two nodes below it.
+ * Digests are sums of the hashes of the entries below a node, so a changed entry updates the nodes on its path by
+ * the difference of its hashes, in time logarithmic in the number of buckets, rather than rehashing the bucket.
+ * <p>
+ * Nodes are numbered as in a binary heap: the root is 1, the children of node n are 2n and 2n + 1, and the leaf of
+ * bucket b is {@link #BUCKETS} + b. The tree goes on below the leaves, down to {@link #MAX_DEPTH}, splitting the
+ * elements of a bucket by the next bits of their hash, lowest first; those nodes are not kept but digested from the
+ * elements below them on demand, so a bucket holding many elements can still be compared part by part.
+ * The hash of an entry depends on the hash code of the element and on the names of the nodes in its clock, not on
+ * their ordinals, so replicas in different processes agree on the digests of the same state as long as the
+ * elements hash alike everywhere, as strings and numbers do.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see AntiEntropy
+ */
+final class MerkleDigests<E> {
+    static final int ROOT = 1;
+    // two levels of the trie of the change clocks, so a bucket is one of its subtrees
+    static final int DEPTH = 10;
+    static final int BUCKETS = 1 << DEPTH;
+    // the deepest level of nodes, the last whose numbers are ints
+    static final int MAX_DEPTH = Integer.SIZE - 2;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private final long[] tree = new long[2 * BUCKETS];
+    // the clock of the changes of every element, read for the nodes below the leaves
+    private final Supplier<TrieMap<E, VectorClock>> changeClocks;
+
+    /**
+     * @param changeClocks reads the current clock of the changes of every element
+     */
+    MerkleDigests(Supplier<TrieMap<E, VectorClock>> changeClocks) {
+        this.changeClocks = changeClocks;
+    }
+
+    /**
+     * @param element the element
+     * @return the bucket of the element
+     */
+    static int bucketOf(Object element) {
+        return TrieMap.hash(element) & (BUCKETS - 1);
+    }
+
+    /**
+     * @param node a node of the tree
+     * @return the level of the node, 0 for the root and {@link #DEPTH} for the leaves of the buckets
+     */
+    static int levelOf(int node) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(node);
+    }
+
+    /**
+     * @param node a node of the tree
+     * @return whether the node is the leaf of a bucket or below one
+     */
+    static boolean isBucketNode(int node) {
+        return node >= BUCKETS;
+    }
+
+    /**
+     * @param node the leaf of a bucket or a node below it
+     * @return the lowest bits every element hashes to below the node, as many as the level of the node
+     */
+    private static int hashBitsOf(int node) {
+        final int below = levelOf(node) - DEPTH;
+        final int bucket = (node >>> below) & (BUCKETS - 1);
+        // the path below the leaf takes the next bit of the hash first
+        return below == 0 ? bucket : bucket | (Integer.reverse(node) >>> (Integer.SIZE - below)) << DEPTH;
+    }
+
+    /**
+     * Replaces the entry of an element.
+     * @param element the element
+     * @param previous the clock of its changes before, null or empty when it had none
+     * @param current the clock of its changes now, null or empty when it has none
+     */
+    void update(Object element, VectorClock previous, VectorClock current) {
+        final long difference = hash(element, current) - hash(element, previous);
+        for (int node = BUCKETS + bucketOf(element); node >= ROOT; node >>>= 1) {
+            tree[node] += difference;
+        }
+    }
+
+    /**
+     * @param node a node of the tree
+     * @return the digest of the entries below the node
+     */
+    long digest(int node) {
+        if (node < tree.length) {
+            return tree[node];
+        }
+        final long[] digest = new long[1];
+        forEachBelow(node, (element, changes) -> digest[0] += hash(element, changes));
+        return digest[0];
+    }
+
+    /**
+     * @param node the leaf of a bucket or a node below it
+     * @return the number of elements below the node
+     */
+    int sizeOf(int node) {
+        final int[] size = new int[1];
+        forEachBelow(node, (element, changes) -> size[0]++);
+        return size[0];
+    }
+
+    /**
+     * @param node the leaf of a bucket or a node below it
+     * @param action the action for every element below the node, with the clock of its changes
+     */
+    void forEachBelow(int node, BiConsumer<? super E, ? super VectorClock> action) {
+        changeClocks.get().forEachWithHash(hashBitsOf(node), levelOf(node), action);
+    }
+
+    private static long hash(Object element, VectorClock clock) {
+        if (clock == null || clock.size() == 0) {
+            return 0;
+        }
+        // a sum over the entries, which clocks of different processes may keep in different orders
+        long hash = element.hashCode();
+        for (int i = 0; i < clock.size(); i++) {
+            if (clock.counterAtIndex(i) != 0) {
+                hash += mix(NodeIds.name(clock.nodeAtIndex(i)).hashCode() * GOLDEN_GAMMA + clock.counterAtIndex(i));
+            }
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of SplitMix64, spreading every bit of the input over the output.
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
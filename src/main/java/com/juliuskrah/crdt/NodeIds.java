@@ -0,0 +1,63 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide registry that interns node ids to small ordinals.
+ * {@link VectorClock} keeps its entries sorted by ordinal, so two clocks can be compared and merged
+ * with a single linear walk and without hashing strings.
+ * <p>
+ * Ordinals are never released: any clock in the process, including those of other graphs, may hold one, so the
+ * registry grows with the number of distinct node ids the process ever sees, up to {@link #MAX_NODES}. Replicas
+ * that come and go should therefore reuse their node ids, e.g. one per host, rather than pick a new one every time
+ * they start.
+ * @author Julius Krah
+ */
+final class NodeIds {
+    /**
+     * The most node ids the registry holds.
+     */
+    static final int MAX_NODES = 1 << 16;
+    private static final Map<String, Integer> ORDINALS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[16];
+    private static int size;
+
+    private NodeIds() {
+    }
+
+    /**
+     * @param nodeId the node id
+     * @return the ordinal of the node id, registering it on first use
+     * @throws IllegalStateException when the node id is new and the registry holds {@link #MAX_NODES} already
+     */
+    static int ordinal(String nodeId) {
+        Integer ordinal = ORDINALS.get(nodeId);
+        return ordinal != null ? ordinal : register(nodeId);
+    }
+
+    private static synchronized int register(String nodeId) {
+        Integer ordinal = ORDINALS.get(nodeId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (size == MAX_NODES) {
+            throw new IllegalStateException("Too many node ids, at most " + MAX_NODES + " are registered");
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = nodeId;
+        ORDINALS.put(nodeId, size);
+        return size++;
+    }
+
+    /**
+     * @param ordinal a registered ordinal
+     * @return the node id it was registered for
+     */
+    static String name(int ordinal) {
+        return names[ordinal];
+    }
+}
@@ -0,0 +1,241 @@
+package com.juliuskrah.crdt;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Adjacency set outside the heap, in a block of an {@link OffHeapArena}: a record per neighbour, with the id of its
+ * element and its clock inline. The heap holds this handle only, no object per neighbour; vertices are decoded as
+ * they are read. Membership scans the records, so updates take time linear in the degree, as in a compressed row of
+ * a sparse matrix. A block belonging to the edit token of the writer grows and shrinks in place, any other block is
+ * copied first.
+ * <pre>
+ * block  = size:int used:int record*
+ * record = element:int key:int count:int (node:int counter:long)*
+ * </pre>
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class OffHeapAdjacencySet<E extends Comparable<E>> extends AdjacencySet<E> {
+    private static final int SIZE = 0;
+    private static final int USED = 4;
+    private static final int HEADER_BYTES = 8;
+    private static final int KEY = 4;
+    private static final int COUNT = 8;
+    private static final int RECORD_BYTES = 12;
+    private static final int ENTRY_BYTES = Integer.BYTES + Long.BYTES;
+    private final OffHeapArena arena;
+    private final ElementIds<E> ids;
+    private final long address;
+    private final int capacity;
+    // the token of the writer that may update the block in place
+    private final Object edit;
+
+    private OffHeapAdjacencySet(OffHeapArena arena, ElementIds<E> ids, long address, int capacity, Object edit) {
+        this.arena = arena;
+        this.ids = ids;
+        this.address = address;
+        this.capacity = capacity;
+        this.edit = edit;
+    }
+
+    /**
+     * @param arena the memory to keep the neighbours in
+     * @param ids the id table of the graph, to intern the elements of the neighbours
+     * @return a set without neighbours, and without a block
+     */
+    static <E extends Comparable<E>> OffHeapAdjacencySet<E> empty(OffHeapArena arena, ElementIds<E> ids) {
+        return new OffHeapAdjacencySet<>(arena, ids, OffHeapArena.NO_BLOCK, 0, null);
+    }
+
+    private int used() {
+        return address == OffHeapArena.NO_BLOCK ? 0 : arena.getInt(address, USED);
+    }
+
+    private int recordBytes(int at) {
+        return RECORD_BYTES + ENTRY_BYTES * arena.getInt(address, at + COUNT);
+    }
+
+    /**
+     * @return the index of the record of the element, -1 when it is not adjacent
+     */
+    private int find(int id) {
+        final int end = HEADER_BYTES + used();
+        for (int at = HEADER_BYTES; at < end; at += recordBytes(at)) {
+            if (arena.getInt(address, at) == id) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private VectorClock clockAt(int at) {
+        final int count = arena.getInt(address, at + COUNT);
+        final int[] nodes = new int[count];
+        final long[] counters = new long[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = arena.getInt(address, at + RECORD_BYTES + i * ENTRY_BYTES);
+            counters[i] = arena.getLong(address, at + RECORD_BYTES + i * ENTRY_BYTES + Integer.BYTES);
+        }
+        return VectorClock.of(NodeIds.name(arena.getInt(address, at + KEY)), nodes, counters);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    AdjacencySet<E> with(Vertex<E> vertex, Object edit) {
+        final int id = ids.intern(vertex.getValue());
+        final int at = find(id);
+        if (at < 0) {
+            return append(id, vertex.getVectorClock(), edit);
+        }
+        if (clockAt(at).compareTo(vertex.getVectorClock()) >= 0) {
+            return this;
+        }
+        return removeAt(at, edit).append(id, vertex.getVectorClock(), edit);
+    }
+
+    private OffHeapAdjacencySet<E> append(int id, VectorClock clock, Object edit) {
+        final int size = size();
+        final int used = used();
+        final int bytes = RECORD_BYTES + ENTRY_BYTES * clock.size();
+        // this block is freed once copied to a larger one
+        final var target = editable(HEADER_BYTES + used + bytes, edit);
+        final int at = HEADER_BYTES + used;
+        arena.putInt(target.address, at, id);
+        arena.putInt(target.address, at + KEY, NodeIds.ordinal(clock.key()));
+        arena.putInt(target.address, at + COUNT, clock.size());
+        for (int i = 0; i < clock.size(); i++) {
+            arena.putInt(target.address, at + RECORD_BYTES + i * ENTRY_BYTES, clock.nodeAtIndex(i));
+            arena.putLong(target.address, at + RECORD_BYTES + i * ENTRY_BYTES + Integer.BYTES, clock.counterAtIndex(i));
+        }
+        arena.putInt(target.address, SIZE, size + 1);
+        arena.putInt(target.address, USED, used + bytes);
+        return target;
+    }
+
+    /**
+     * @param bytes the bytes the block must hold
+     * @return a set on a block the writer may update, holding the records of this set
+     */
+    private OffHeapAdjacencySet<E> editable(int bytes, Object edit) {
+        if (address != OffHeapArena.NO_BLOCK && this.edit == edit && bytes <= capacity) {
+            return new OffHeapAdjacencySet<>(arena, ids, address, capacity, edit);
+        }
+        final int used = used();
+        // double on growth, so a vertex gaining edges one by one is copied a logarithmic number of times
+        final int grown = OffHeapArena.capacityOf(Math.max(bytes, 2 * (HEADER_BYTES + used)));
+        final long block = arena.allocate(grown);
+        if (address == OffHeapArena.NO_BLOCK) {
+            arena.putInt(block, SIZE, 0);
+            arena.putInt(block, USED, 0);
+        } else {
+            arena.copy(address, 0, block, 0, HEADER_BYTES + used);
+            release(edit);
+        }
+        return new OffHeapAdjacencySet<>(arena, ids, block, grown, edit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    AdjacencySet<E> without(Vertex<E> vertex, Object edit) {
+        final int id = ids.idOf(vertex.getValue());
+        final int at = id == ElementIds.NO_ID ? -1 : find(id);
+        if (at < 0 || !clockAt(at).equals(vertex.getVectorClock())) {
+            return this;
+        }
+        return removeAt(at, edit);
+    }
+
+    private OffHeapAdjacencySet<E> removeAt(int at, Object edit) {
+        final int size = size();
+        final int used = used();
+        final int bytes = recordBytes(at);
+        if (size == 1) {
+            release(edit);
+            return empty(arena, ids);
+        }
+        final int tail = HEADER_BYTES + used - at - bytes;
+        final OffHeapAdjacencySet<E> target;
+        if (this.edit == edit) {
+            target = new OffHeapAdjacencySet<>(arena, ids, address, capacity, edit);
+            arena.moveDown(address, at + bytes, at, tail);
+        } else {
+            final int shrunk = OffHeapArena.capacityOf(HEADER_BYTES + used - bytes);
+            target = new OffHeapAdjacencySet<>(arena, ids, arena.allocate(shrunk), shrunk, edit);
+            arena.copy(address, 0, target.address, 0, at);
+            arena.copy(address, at + bytes, target.address, at, tail);
+            release(edit);
+        }
+        arena.putInt(target.address, SIZE, size - 1);
+        arena.putInt(target.address, USED, used - bytes);
+        return target;
+    }
+
+    /**
+     * Frees the block when it belongs to the writer, retires it when a snapshot may read it.
+     */
+    @Override
+    void release(Object edit) {
+        if (address == OffHeapArena.NO_BLOCK) {
+            return;
+        }
+        if (this.edit == edit) {
+            arena.free(address, capacity);
+        } else {
+            arena.retire(address, capacity);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        if (!(o instanceof Vertex)) {
+            return false;
+        }
+        final var vertex = (Vertex<E>) o;
+        final int id = ids.idOf(vertex.getValue());
+        final int at = id == ElementIds.NO_ID ? -1 : find(id);
+        return at >= 0 && clockAt(at).equals(vertex.getVectorClock());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Vertex<E>> iterator() {
+        final int end = HEADER_BYTES + used();
+        return new Iterator<>() {
+            private int at = HEADER_BYTES;
+
+            @Override
+            public boolean hasNext() {
+                return at < end;
+            }
+
+            @Override
+            public Vertex<E> next() {
+                if (at >= end) {
+                    throw new NoSuchElementException();
+                }
+                final var vertex = Vertex.of(ids.elementOf(arena.getInt(address, at)), clockAt(at));
+                at += recordBytes(at);
+                return vertex;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return address == OffHeapArena.NO_BLOCK ? 0 : arena.getInt(address, SIZE);
+    }
+}
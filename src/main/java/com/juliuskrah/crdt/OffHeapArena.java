@@ -0,0 +1,219 @@
+package com.juliuskrah.crdt;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Memory outside the Java heap for the adjacency of a graph, carved out of direct buffers of 1 MiB.
+ * Blocks come in power of two sizes of at least 64 bytes and are recycled per size, so a graph that keeps changing
+ * reuses its memory rather than reserving more; a block larger than a chunk gets a chunk of its own. A block is
+ * addressed by a long holding the index of its chunk in the high half and its offset in the low half, so the heap
+ * holds no object per block.
+ * <p>
+ * A block the writer no longer needs is freed at once when it belongs to the current edit token, as nothing else
+ * reads it. A block frozen by a {@link GraphSnapshot} may still be read through that snapshot, so it is retired
+ * instead, and freed once every snapshot taken before it was replaced is garbage collected.
+ * <p>
+ * Allocation is synchronized, as the partitions of a parallel merge allocate concurrently. Reads and writes of
+ * blocks are not: a block is written by one thread only, and read by others once published, e.g. in a snapshot.
+ * @author Julius Krah
+ * @see OffHeapAdjacencySet
+ */
+final class OffHeapArena {
+    static final long NO_BLOCK = -1;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int MIN_BLOCK_SHIFT = 6;
+    private static final Cleaner CLEANER = Cleaner.create();
+    private volatile ByteBuffer[] chunks = new ByteBuffer[8];
+    private int chunkCount;
+    // the next free byte of the last chunk blocks are carved from
+    private int carveChunk = -1;
+    private int carveOffset = CHUNK_BYTES;
+    // addresses of the free blocks, as a stack per size class
+    private final long[][] free = new long[Integer.SIZE][];
+    private final int[] freeCount = new int[Integer.SIZE];
+    // blocks replaced while snapshots may read them: the epoch they were replaced in, their address and size class
+    private final ArrayDeque<long[]> retired = new ArrayDeque<>();
+    // epoch of every snapshot that is still reachable, with how many there are
+    private final TreeMap<Long, Integer> pinned = new TreeMap<>();
+    // the number of snapshots taken
+    private long epoch;
+    private long allocatedBytes;
+    private long reservedBytes;
+
+    /**
+     * @param bytes the bytes a block must hold
+     * @return the size of the block holding them
+     */
+    static int capacityOf(int bytes) {
+        return 1 << sizeClass(bytes);
+    }
+
+    private static int sizeClass(int bytes) {
+        return Math.max(MIN_BLOCK_SHIFT, Integer.SIZE - Integer.numberOfLeadingZeros(bytes - 1));
+    }
+
+    /**
+     * @param bytes the bytes the block must hold, see {@link #capacityOf(int)}
+     * @return the address of the block
+     */
+    synchronized long allocate(int bytes) {
+        final int sizeClass = sizeClass(bytes);
+        final int capacity = 1 << sizeClass;
+        allocatedBytes += capacity;
+        if (freeCount[sizeClass] > 0) {
+            return free[sizeClass][--freeCount[sizeClass]];
+        }
+        if (capacity > CHUNK_BYTES) {
+            return address(addChunk(capacity), 0);
+        }
+        if (carveOffset + capacity > CHUNK_BYTES) {
+            carveRemainder();
+            carveChunk = addChunk(CHUNK_BYTES);
+            carveOffset = 0;
+        }
+        final long address = address(carveChunk, carveOffset);
+        carveOffset += capacity;
+        return address;
+    }
+
+    /**
+     * Frees what is left of the chunk blocks are carved from, in the largest blocks that fit.
+     */
+    private void carveRemainder() {
+        while (carveChunk >= 0 && CHUNK_BYTES - carveOffset >= 1 << MIN_BLOCK_SHIFT) {
+            final int sizeClass = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(CHUNK_BYTES - carveOffset);
+            push(sizeClass, address(carveChunk, carveOffset));
+            carveOffset += 1 << sizeClass;
+        }
+    }
+
+    private int addChunk(int bytes) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount] = ByteBuffer.allocateDirect(bytes);
+        reservedBytes += bytes;
+        return chunkCount++;
+    }
+
+    private static long address(int chunk, int offset) {
+        return (long) chunk << Integer.SIZE | offset;
+    }
+
+    private void push(int sizeClass, long address) {
+        if (free[sizeClass] == null) {
+            free[sizeClass] = new long[16];
+        } else if (freeCount[sizeClass] == free[sizeClass].length) {
+            free[sizeClass] = Arrays.copyOf(free[sizeClass], freeCount[sizeClass] * 2);
+        }
+        free[sizeClass][freeCount[sizeClass]++] = address;
+    }
+
+    /**
+     * Frees a block nothing reads any more.
+     * @param address the address of the block
+     * @param capacity the size of the block
+     */
+    synchronized void free(long address, int capacity) {
+        allocatedBytes -= capacity;
+        push(sizeClass(capacity), address);
+    }
+
+    /**
+     * Frees a block a snapshot may still read, once no such snapshot is left.
+     * @param address the address of the block
+     * @param capacity the size of the block
+     */
+    synchronized void retire(long address, int capacity) {
+        if (pinned.isEmpty()) {
+            free(address, capacity);
+        } else {
+            retired.add(new long[] {epoch, address, capacity});
+        }
+    }
+
+    /**
+     * Keeps every block the snapshot reads until it is garbage collected.
+     * @param snapshot the snapshot, taken after every block it reads was written
+     */
+    void pin(Object snapshot) {
+        final long pinnedEpoch;
+        synchronized (this) {
+            pinnedEpoch = epoch++;
+            pinned.merge(pinnedEpoch, 1, Integer::sum);
+        }
+        CLEANER.register(snapshot, () -> unpin(pinnedEpoch));
+    }
+
+    private synchronized void unpin(long pinnedEpoch) {
+        pinned.computeIfPresent(pinnedEpoch, (key, count) -> count == 1 ? null : count - 1);
+        // a block replaced in an epoch is read by the snapshots of earlier epochs only
+        final long oldest = pinned.isEmpty() ? Long.MAX_VALUE : pinned.firstKey();
+        while (!retired.isEmpty() && retired.peek()[0] <= oldest) {
+            final long[] block = retired.poll();
+            free(block[1], (int) block[2]);
+        }
+    }
+
+    /**
+     * @return the bytes of the blocks in use
+     */
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the bytes of direct memory the chunks reserve
+     */
+    synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks[(int) (address >>> Integer.SIZE)];
+    }
+
+    int getInt(long address, int index) {
+        return chunk(address).getInt((int) address + index);
+    }
+
+    long getLong(long address, int index) {
+        return chunk(address).getLong((int) address + index);
+    }
+
+    void putInt(long address, int index, int value) {
+        chunk(address).putInt((int) address + index, value);
+    }
+
+    void putLong(long address, int index, long value) {
+        chunk(address).putLong((int) address + index, value);
+    }
+
+    /**
+     * Copies bytes from one block to another.
+     */
+    void copy(long from, int fromIndex, long to, int toIndex, int bytes) {
+        final var source = chunk(from).duplicate();
+        source.limit((int) from + fromIndex + bytes).position((int) from + fromIndex);
+        final var target = chunk(to).duplicate();
+        target.position((int) to + toIndex);
+        target.put(source);
+    }
+
+    /**
+     * Moves bytes of a block towards its start, over bytes that are no longer needed.
+     * @param fromIndex the index of the first byte to move
+     * @param toIndex the index to move it to, below fromIndex
+     * @param bytes the number of bytes to move, a multiple of 4
+     */
+    void moveDown(long address, int fromIndex, int toIndex, int bytes) {
+        // ascending, so every byte is read before it is overwritten
+        for (int i = 0; i < bytes; i += Integer.BYTES) {
+            putInt(address, toIndex + i, getInt(address, fromIndex + i));
+        }
+    }
+}
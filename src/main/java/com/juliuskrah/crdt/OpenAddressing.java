@@ -0,0 +1,60 @@
+package com.juliuskrah.crdt;
+
+/**
+ * Linear probing over a table of a power of two slots, which the subclass keeps in parallel arrays.
+ * The subclass tells which slots are taken and where the key of a slot hashes to, and moves entries between slots;
+ * the probes and the deletion, which shifts the entries of a run back rather than leave tombstones, live here.
+ * @author Julius Krah
+ */
+abstract class OpenAddressing {
+
+    /**
+     * @return the number of slots, a power of two
+     */
+    abstract int capacity();
+
+    abstract boolean taken(int slot);
+
+    /**
+     * @param slot a taken slot
+     * @return the slot the key of the entry hashes to
+     */
+    abstract int homeOf(int slot);
+
+    /**
+     * Copies the entry of a slot to another slot, leaving the first as it is.
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * @param home the slot a key hashes to
+     * @return the first slot of the run from the home slot that is not taken
+     */
+    final int freeSlot(int home) {
+        final int mask = capacity() - 1;
+        int slot = home;
+        while (taken(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Shifts the entries of the run after an emptied slot back, so that no entry is left behind an empty slot.
+     * @param slot the slot of the entry to delete
+     * @return the slot left over at the end of the run, for the subclass to empty
+     */
+    final int shiftBack(int slot) {
+        final int mask = capacity() - 1;
+        int empty = slot;
+        for (int next = (empty + 1) & mask; taken(next); next = (next + 1) & mask) {
+            final int home = homeOf(next);
+            // move the entry unless its home lies cyclically after the empty slot, up to the entry itself
+            if (empty <= next ? home <= empty || home > next : home <= empty && home > next) {
+                move(next, empty);
+                empty = next;
+            }
+        }
+        return empty;
+    }
+}
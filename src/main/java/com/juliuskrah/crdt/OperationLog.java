@@ -0,0 +1,234 @@
+package com.juliuskrah.crdt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Segmented, append-only write-ahead log of encoded graph changes.
+ * <p>
+ * Records are numbered by a sequence and framed as {@code length:int32 crc:int32 sequence:int64 type:byte payload}.
+ * Appends go to an in-memory buffer; {@link #commit()} writes the buffer out and forces it to disk, so that a single
+ * fsync covers every record appended since the previous commit. A segment is closed once it outgrows the segment
+ * size and the next one is named after the sequence of its first record.
+ * @author Julius Krah
+ */
+final class OperationLog implements Closeable {
+    static final byte OPERATION = 1;
+    static final byte DELTA = 2;
+    private static final String SUFFIX = ".wal";
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private final Path directory;
+    private final long segmentSize;
+    private final ByteBuffer pending;
+    private FileChannel segment;
+    private long nextSequence;
+
+    private OperationLog(Path directory, long segmentSize, long nextSequence) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.pending = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.nextSequence = nextSequence;
+    }
+
+    /**
+     * Opens a new segment for writing; existing segments are never appended to.
+     * @param directory the directory of the log
+     * @param segmentSize the size after which a segment is rolled
+     * @param nextSequence the sequence of the first record to append
+     * @return the log
+     * @throws IOException when the segment of {@code nextSequence} exists and holds records
+     */
+    static OperationLog open(Path directory, long segmentSize, long nextSequence) throws IOException {
+        var log = new OperationLog(directory, segmentSize, nextSequence);
+        log.segment = log.openSegment();
+        return log;
+    }
+
+    /**
+     * Creates the segment named after the next sequence and forces the directory, so that records committed to the
+     * segment are not lost with its directory entry. A segment of that name left behind without an intact record,
+     * e.g. by a log closed before its first append, is replaced; one with records is never overwritten.
+     */
+    private FileChannel openSegment() throws IOException {
+        var path = directory.resolve(String.format("%020d%s", nextSequence, SUFFIX));
+        if (Files.exists(path)) {
+            if (replaySegment(path, nextSequence - 1, (sequence, type, payload) -> { }) >= nextSequence) {
+                throw new IOException("Segment " + path + " already holds records from " + nextSequence);
+            }
+            Files.delete(path);
+        }
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        Directories.force(directory);
+        return channel;
+    }
+
+    /**
+     * Appends a record. It becomes durable with the next {@link #commit()}.
+     * @param type the type of the record
+     * @param payload the payload, from its position to its limit
+     * @return the sequence of the record
+     */
+    synchronized long append(byte type, ByteBuffer payload) throws IOException {
+        final long sequence = nextSequence++;
+        final int length = payload.remaining();
+        if (pending.remaining() < HEADER_SIZE + length) {
+            flush();
+        }
+        var target = HEADER_SIZE + length > pending.capacity() ? ByteBuffer.allocate(HEADER_SIZE + length) : pending;
+        target.putInt(length).putInt(checksum(sequence, type, payload)).putLong(sequence).put(type)
+            .put(payload.duplicate());
+        if (target != pending) {
+            // records larger than the buffer are written on their own
+            write(target.flip());
+        }
+        return sequence;
+    }
+
+    private void flush() throws IOException {
+        write(pending.flip());
+        pending.clear();
+        if (segment.size() >= segmentSize) {
+            roll();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+    }
+
+    /**
+     * Writes out every appended record and forces it to disk.
+     */
+    synchronized void commit() throws IOException {
+        flush();
+        segment.force(false);
+    }
+
+    /**
+     * Commits and continues in a new segment, so that the records so far can be deleted as a whole.
+     * A segment without records is kept, since the next one would take its name.
+     */
+    synchronized void roll() throws IOException {
+        write(pending.flip());
+        pending.clear();
+        segment.force(false);
+        if (segment.size() == 0) {
+            return;
+        }
+        segment.close();
+        segment = openSegment();
+    }
+
+    /**
+     * @return the sequence of the last appended record, 0 when none was ever appended
+     */
+    synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Deletes the closed segments that only hold records up to the sequence.
+     * @param sequence the last sequence that is no longer needed
+     */
+    synchronized void deleteSegmentsBefore(long sequence) throws IOException {
+        var segments = segments(directory);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequence(segments.get(i + 1)) <= sequence + 1) {
+                Files.delete(segments.get(i));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment.isOpen()) {
+            commit();
+            segment.close();
+        }
+    }
+
+    /**
+     * Reads every intact record after a sequence, in order.
+     * Reading a segment stops at the first torn or corrupt record, as left behind by a crash.
+     * @param directory the directory of the log
+     * @param afterSequence records up to this sequence are skipped
+     * @param consumer receives the records
+     * @return the sequence of the last intact record, or {@code afterSequence} when there is none after it
+     */
+    static long replay(Path directory, long afterSequence, RecordConsumer consumer) throws IOException {
+        long last = afterSequence;
+        for (Path segment : segments(directory)) {
+            last = Math.max(last, replaySegment(segment, afterSequence, consumer));
+        }
+        return last;
+    }
+
+    private static long replaySegment(Path segment, long afterSequence, RecordConsumer consumer)
+            throws IOException {
+        long last = afterSequence;
+        try (var channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_SIZE) {
+                final int length = buffer.getInt();
+                final int crc = buffer.getInt();
+                final long sequence = buffer.getLong();
+                final byte type = buffer.get();
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+                var payload = buffer.slice().limit(length);
+                if (checksum(sequence, type, payload) != crc) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                if (sequence > afterSequence) {
+                    consumer.accept(sequence, type, payload);
+                    last = sequence;
+                }
+            }
+        }
+        return last;
+    }
+
+    private static int checksum(long sequence, byte type, ByteBuffer payload) {
+        var crc = new CRC32();
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            crc.update((int) (sequence >>> shift));
+        }
+        crc.update(type);
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Receives replayed records.
+     */
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long sequence, byte type, ByteBuffer payload);
+    }
+}
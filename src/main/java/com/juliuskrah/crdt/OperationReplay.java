@@ -0,0 +1,71 @@
+package com.juliuskrah.crdt;
+
+import java.util.List;
+
+/**
+ * Replays the operations a graph or another replica recorded into the {@linkplain GraphState state} of a graph,
+ * keeping the clock of every operation.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#apply(GraphOperation)
+ */
+final class OperationReplay<E extends Comparable<E>> {
+    private final GraphState<E> state;
+    private final GraphEdits<E> edits;
+    private final GraphListeners<E> listeners;
+
+    OperationReplay(GraphState<E> state, GraphEdits<E> edits, GraphListeners<E> listeners) {
+        this.state = state;
+        this.edits = edits;
+        this.listeners = listeners;
+    }
+
+    /**
+     * Vertices are merged last-writer-wins, so operations may arrive more than once or out of order.
+     * @param operation the operation
+     */
+    void apply(GraphOperation<E> operation) {
+        final long start = state.now();
+        final var dot = operation.getVectorClock().dot();
+        switch (operation.getType()) {
+            case ADD_VERTEX:
+                applyAddVertex(operation.getSource(), dot);
+                break;
+            case REMOVE_VERTEX:
+                applyRemoveVertex(operation.getSource(), dot);
+                break;
+            case ADD_EDGE:
+                if (edits.addEdge(operation.getEdge())) {
+                    edits.recordChange(operation.getEdge(), dot);
+                }
+                break;
+            default:
+                edits.removeEdge(operation.getEdge(), dot);
+        }
+        state.advance(operation.getVectorClock());
+        state.metrics().onOperation(operation.getType(), state.now() - start);
+        listeners.onOperation(operation);
+    }
+
+    private void applyAddVertex(Vertex<E> vertex, Dot dot) {
+        if (!state.compactor().compactedAway(vertex.getValue(), vertex, null)
+                && state.addGraph().merge(vertex, List.of())) {
+            state.changeLog().record(vertex.getValue(), dot);
+            state.updateElements(vertex.getValue());
+        }
+    }
+
+    private void applyRemoveVertex(Vertex<E> vertex, Dot dot) {
+        if (!state.compactor().compactedAway(vertex.getValue(), null, vertex)
+                && state.removeGraph().merge(vertex, List.of())) {
+            var addTime = state.addGraph().clockOf(vertex.getValue());
+            if (addTime != null && addTime.compareTo(vertex.getVectorClock()) < 0) {
+                // as a local remove does, drop the add vertex the remove supersedes
+                state.addGraph().remove(vertex.getValue());
+                state.invalidateConnectivity();
+            }
+            state.changeLog().record(vertex.getValue(), dot);
+            state.updateElements(vertex.getValue());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Path queries over the dense element ids of a graph.
+ * Traversal state lives in primitive, open-addressed maps and queues of ids, so a search neither boxes the elements
+ * it visits nor allocates for the ones it does not.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class PathFinder<E extends Comparable<E>> {
+    private static final int INITIAL_QUEUE = 16;
+    private final ElementIds<E> ids;
+    private final Function<E, Collection<Vertex<E>>> adjacency;
+    private final Predicate<E> live;
+
+    /**
+     * @param ids the id table of the graph
+     * @param adjacency resolves the live neighbours of an element
+     * @param live tells whether an element is in the graph
+     */
+    PathFinder(ElementIds<E> ids, Function<E, Collection<Vertex<E>>> adjacency, Predicate<E> live) {
+        this.ids = ids;
+        this.adjacency = adjacency;
+        this.live = live;
+    }
+
+    /**
+     * Bidirectional breadth first search, from source and from destination at once.
+     * Each step expands a whole level of whichever side has the smaller frontier, so on wide graphs both searches
+     * stay around the square root of the vertices a one-sided search would visit. Edges are undirected, so the
+     * search from destination follows the same adjacency. The first vertex both searches reach joins a shortest
+     * path, rebuilt from the parent of every visited id.
+     * @param source the first vertex of the path
+     * @param destination the last vertex of the path
+     * @param maxHops the most edges the path may have
+     * @param budget the most vertices the search may visit before it gives up
+     * @param metrics receives the number of vertices visited
+     * @return the elements of a shortest path from source to destination, empty when there is none within the limits
+     * @see LwwElementGraph#findShortestPath(Comparable, Comparable, int, int)
+     */
+    List<E> findShortestPath(E source, E destination, int maxHops, int budget, GraphMetrics metrics) {
+        final int sourceId = ids.idOf(source);
+        final int destinationId = ids.idOf(destination);
+        if (sourceId == ElementIds.NO_ID || destinationId == ElementIds.NO_ID || !live.test(source)
+                || !live.test(destination)) {
+            return List.of();
+        }
+        if (sourceId == destinationId) {
+            return List.of(source);
+        }
+        final var forward = new Search(sourceId);
+        final var backward = new Search(destinationId);
+        final var path = search(forward, backward, maxHops, budget);
+        metrics.onSearch(forward.tail + backward.tail);
+        return path;
+    }
+
+    private List<E> search(Search forward, Search backward, int maxHops, int budget) {
+        int visited = 0;
+        while (forward.depth + backward.depth < maxHops && forward.hasFrontier() && backward.hasFrontier()) {
+            final var side = forward.frontier() <= backward.frontier() ? forward : backward;
+            final int meeting = side.expand(side == forward ? backward : forward, budget - visited);
+            if (meeting >= 0) {
+                return pathThrough(meeting, forward, backward);
+            }
+            if (meeting == Search.EXHAUSTED) {
+                return List.of();
+            }
+            visited += side.frontier();
+        }
+        return List.of();
+    }
+
+    private List<E> pathThrough(int meeting, Search forward, Search backward) {
+        List<E> path = new ArrayList<>();
+        forward.walkBack(meeting, path);
+        Collections.reverse(path);
+        final int next = backward.parents.get(meeting);
+        if (next != meeting) {
+            backward.walkBack(next, path);
+        }
+        return path;
+    }
+
+    /**
+     * One side of a bidirectional search. Visited ids form a queue, of which the last level is the frontier.
+     * Parent links are kept in a map of the visited ids only and the queue grows as it fills, so a search allocates
+     * in proportion to the vertices it visits rather than to every id the graph ever interned.
+     */
+    private final class Search {
+        static final int NO_MEETING = -1;
+        static final int EXHAUSTED = -2;
+        // the id each visited id was reached from, the start is its own parent
+        private final LongIntMap parents = new LongIntMap();
+        private int[] queue = new int[INITIAL_QUEUE];
+        private int head;
+        private int tail;
+        private int depth;
+
+        Search(int start) {
+            parents.put(start, start);
+            queue[tail++] = start;
+        }
+
+        boolean hasFrontier() {
+            return head < tail;
+        }
+
+        int frontier() {
+            return tail - head;
+        }
+
+        boolean visited(int id) {
+            return parents.get(id) != LongIntMap.NO_VALUE;
+        }
+
+        /**
+         * Visits the live neighbours of the frontier, which become the next frontier.
+         * @param other the search from the other end
+         * @param budget the most vertices this level may visit
+         * @return the first id the other search visited too, or {@link #NO_MEETING}, or {@link #EXHAUSTED} when
+         *     the level visits more vertices than the budget allows
+         */
+        int expand(Search other, int budget) {
+            final int end = tail;
+            depth++;
+            for (; head < end; head++) {
+                final int meeting = visitNeighbors(queue[head], other, budget - (tail - end));
+                if (meeting != NO_MEETING) {
+                    return meeting;
+                }
+            }
+            return NO_MEETING;
+        }
+
+        private int visitNeighbors(int from, Search other, int budget) {
+            int left = budget;
+            for (Vertex<E> neighbor : adjacency.apply(ids.elementOf(from))) {
+                final int id = ids.idOf(neighbor.getValue());
+                // ids interned after a snapshot are never live in it
+                if (id == ElementIds.NO_ID || visited(id) || !live.test(neighbor.getValue())) {
+                    continue;
+                }
+                parents.put(id, from);
+                if (other.visited(id)) {
+                    return id;
+                }
+                if (left-- <= 0) {
+                    return EXHAUSTED;
+                }
+                enqueue(id);
+            }
+            return NO_MEETING;
+        }
+
+        private void enqueue(int id) {
+            if (tail == queue.length) {
+                queue = Arrays.copyOf(queue, tail * 2);
+            }
+            queue[tail++] = id;
+        }
+
+        /**
+         * Adds the elements from the id back to the start of this search.
+         */
+        void walkBack(int from, List<E> path) {
+            int id = from;
+            path.add(ids.elementOf(id));
+            for (int parent = parents.get(id); parent != id; parent = parents.get(id)) {
+                id = parent;
+                path.add(ids.elementOf(id));
+            }
+        }
+    }
+}
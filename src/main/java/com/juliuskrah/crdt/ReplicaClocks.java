@@ -0,0 +1,57 @@
+package com.juliuskrah.crdt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The latest clock every known replica acknowledged, from which a graph tells which of its changes are causally
+ * stable: seen by every replica, so that no replica can still send state that precedes them.
+ * A replica that has not acknowledged anything yet holds back the stable clock, as does a graph that does not
+ * track its replicas at all.
+ * @author Julius Krah
+ */
+final class ReplicaClocks {
+    private static final VectorClock NOTHING_SEEN = VectorClock.of("");
+    private final Map<String, VectorClock> acknowledged = new HashMap<>();
+    private boolean tracking;
+
+    /**
+     * Starts tracking, adding the replicas which have acknowledged nothing yet.
+     * @param nodeIds the node ids of the replicas, empty for a graph without other replicas
+     */
+    void track(Iterable<String> nodeIds) {
+        nodeIds.forEach(nodeId -> acknowledged.putIfAbsent(nodeId, NOTHING_SEEN));
+        tracking = true;
+    }
+
+    /**
+     * Stops waiting for a replica that left for good.
+     * @param nodeId the node id of the replica
+     */
+    void remove(String nodeId) {
+        acknowledged.remove(nodeId);
+    }
+
+    /**
+     * Advances the clock of a known replica. Clocks of replicas that are not known are ignored.
+     * @param clock the clock of the replica, owned by its node
+     */
+    void acknowledge(VectorClock clock) {
+        acknowledged.computeIfPresent(clock.key(), (nodeId, current) -> current.merge(clock));
+    }
+
+    /**
+     * @param own the clock of the graph
+     * @return the latest clock every known replica and the graph have seen, empty when replicas are not tracked
+     */
+    VectorClock stable(VectorClock own) {
+        if (!tracking) {
+            return NOTHING_SEEN;
+        }
+        var stable = own;
+        for (VectorClock clock : acknowledged.values()) {
+            stable = stable.meet(clock);
+        }
+        return stable;
+    }
+}
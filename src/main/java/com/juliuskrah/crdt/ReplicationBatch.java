@@ -0,0 +1,50 @@
+package com.juliuskrah.crdt;
+
+import java.util.Objects;
+
+/**
+ * The state a {@link Replicator} sends to a peer at once: the delta of every element that changed since the
+ * previous batch to that peer, with the replicator it came from and the time of the oldest change it carries.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see ReplicationTransport
+ */
+public final class ReplicationBatch<E extends Comparable<E>> {
+    private final String origin;
+    private final GraphDelta<E> delta;
+    private final long changedAt;
+
+    private ReplicationBatch(String origin, GraphDelta<E> delta, long changedAt) {
+        this.origin = origin;
+        this.delta = delta;
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * @param origin the name of the replicator that sent the batch
+     * @param delta the state of the changed elements
+     * @param changedAt the time of the oldest change in the batch, in milliseconds since the epoch
+     * @return the batch
+     */
+    public static <E extends Comparable<E>> ReplicationBatch<E> of(String origin, GraphDelta<E> delta,
+            long changedAt) {
+        Objects.requireNonNull(origin, "origin must not be null");
+        Objects.requireNonNull(delta, "delta must not be null");
+        return new ReplicationBatch<>(origin, delta, changedAt);
+    }
+
+    public String getOrigin() {
+        return this.origin;
+    }
+
+    public GraphDelta<E> getDelta() {
+        return this.delta;
+    }
+
+    /**
+     * @return the time of the oldest change in the batch, in milliseconds since the epoch
+     */
+    public long getChangedAt() {
+        return this.changedAt;
+    }
+}
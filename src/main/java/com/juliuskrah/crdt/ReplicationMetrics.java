@@ -0,0 +1,45 @@
+package com.juliuskrah.crdt;
+
+/**
+ * Receives measurements of the work a {@link Replicator} does, e.g. to export the replication lag of every peer.
+ * Every method does nothing by default. Methods run on the threads of the replicator, the sender of a peer or the
+ * applier, so metrics must be thread-safe.
+ * @author Julius Krah
+ * @see Replicator#setMetrics(ReplicationMetrics)
+ */
+public interface ReplicationMetrics {
+    /**
+     * Metrics that measure nothing, the default of every replicator.
+     */
+    ReplicationMetrics NONE = new ReplicationMetrics() {
+    };
+
+    /**
+     * Called after a batch was delivered to a peer.
+     * @param peer the name of the peer
+     * @param entries the number of elements in the batch
+     * @param nanos how long the transport took to deliver it, including the time the peer held it back
+     */
+    default void onSend(String peer, int entries, long nanos) {
+        // not measured by default
+    }
+
+    /**
+     * Called after a batch could not be delivered to a peer, before it is sent again.
+     * @param peer the name of the peer
+     */
+    default void onSendFailure(String peer) {
+        // not measured by default
+    }
+
+    /**
+     * Called after a batch from a peer was applied to the graph.
+     * @param origin the name of the peer the batch came from
+     * @param entries the number of elements in the batch
+     * @param lagMillis the time from the oldest change in the batch, on the peer, until it was applied here
+     * @param queued the number of batches still waiting to be applied
+     */
+    default void onApply(String origin, int entries, long lagMillis, int queued) {
+        // not measured by default
+    }
+}
@@ -0,0 +1,32 @@
+package com.juliuskrah.crdt;
+
+import java.io.IOException;
+
+/**
+ * Carries the batches of a {@link Replicator} to its peers. An in-process transport hands every batch to the
+ * {@link Replicator#receive(ReplicationBatch)} of the peer; a network transport sends it, e.g. with the delta
+ * encoded by {@link GraphCodec}, and calls {@code receive} on the other end.
+ * <p>
+ * Batches to a peer are sent one at a time from the same thread and must be received in the order they were sent.
+ * Sending should block while the peer cannot take more, so a slow peer holds back its sender rather than the
+ * replicas writing to the graph.
+ * <p>
+ * The transport need not be reliable: a batch is delivered once the peer acknowledges it with a batch of its own,
+ * and the replicator sends the elements of a batch again when no acknowledgement comes, whether or not {@code send}
+ * returned.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see Replicator
+ */
+@FunctionalInterface
+public interface ReplicationTransport<E extends Comparable<E>> {
+
+    /**
+     * Hands a batch to a peer, blocking while the peer cannot take it.
+     * @param peer the name of the peer
+     * @param batch the batch
+     * @throws IOException if the batch could not be delivered, it is sent again later
+     * @throws InterruptedException if the replicator closed while the batch was sent
+     */
+    void send(String peer, ReplicationBatch<E> batch) throws IOException, InterruptedException;
+}
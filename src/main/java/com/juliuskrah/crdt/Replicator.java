@@ -0,0 +1,527 @@
+package com.juliuskrah.crdt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Replicates an {@link LwwElementGraph} to its peers in the background, so threads that change the graph never
+ * wait for a peer or for a merge of the state of one.
+ * <p>
+ * Every peer has a sender thread. Once the graph changes, the sender waits for the linger time, then takes a
+ * snapshot of the graph and sends the delta of every element changed since everything the peer is known to have
+ * seen: what it acknowledged and what was sent to it since. Changes of an element made while a batch is on its way
+ * are coalesced into the element's state in the next batch, so at most one batch is outstanding per peer however
+ * fast the graph changes, and a slow or unreachable peer costs only the size of its next batch.
+ * <p>
+ * A batch counts as delivered once the peer acknowledged it, not once the transport returned: every batch carries
+ * the clock of its sender, and a peer that applied a batch answers with a batch of its own, empty when it has
+ * nothing to send. Batches that fail, and batches the peer has not acknowledged within the acknowledgement timeout,
+ * e.g. because the transport lost them or the peer could not apply them, are sent again. Merges are idempotent, so
+ * a batch that arrives twice is harmless.
+ * <p>
+ * Batches from the peers queue up to the inbound capacity, then {@link #receive(ReplicationBatch)} blocks, which
+ * holds back the senders of the peers. A single applier thread applies the batches in the order they arrived,
+ * a slice of elements at a time, so a large batch delays a change of the graph by one slice at most.
+ * <p>
+ * The graph is not thread-safe: once replicated it must only be used through {@link #update(Consumer)},
+ * {@link #query(Function)} and {@link #snapshot()}, which hold the lock of the replicator.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+@Slf4j
+public final class Replicator<E extends Comparable<E>> implements Closeable {
+    private final String name;
+    private final LwwElementGraph<E> graph;
+    private final ReplicationTransport<E> transport;
+    private final Options options;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BlockingQueue<ReplicationBatch<E>> inbound;
+    private final Map<String, Peer> peers;
+    private final Thread applier;
+    private final GraphOperationListener<E> listener;
+    private volatile ReplicationMetrics metrics = ReplicationMetrics.NONE;
+    private volatile boolean closed;
+
+    private Replicator(String name, LwwElementGraph<E> graph, ReplicationTransport<E> transport,
+            Collection<String> peers, Options options) {
+        this.name = name;
+        this.graph = graph;
+        this.transport = transport;
+        this.options = options;
+        this.inbound = new ArrayBlockingQueue<>(options.inboundCapacity);
+        this.peers = new LinkedHashMap<>();
+        for (String peer : peers) {
+            this.peers.put(peer, new Peer(peer));
+        }
+        this.applier = daemon(this::applyBatches, "replicator-" + name + "-apply");
+        this.listener = new ChangeSignal();
+    }
+
+    /**
+     * Starts replicating the graph, with the default options.
+     * @param name the name of this replicator, under which its peers know it
+     * @param graph the graph, which from now on must only be used through the replicator
+     * @param transport the transport to the peers
+     * @param peers the names of the peers
+     * @return the running replicator
+     */
+    public static <E extends Comparable<E>> Replicator<E> start(String name, LwwElementGraph<E> graph,
+            ReplicationTransport<E> transport, Collection<String> peers) {
+        return start(name, graph, transport, peers, Options.defaults());
+    }
+
+    /**
+     * Starts replicating the graph. The first batch to every peer holds the whole state of the graph.
+     * @param name the name of this replicator, under which its peers know it
+     * @param graph the graph, which from now on must only be used through the replicator
+     * @param transport the transport to the peers
+     * @param peers the names of the peers
+     * @param options the tuning of the replicator
+     * @return the running replicator
+     */
+    public static <E extends Comparable<E>> Replicator<E> start(String name, LwwElementGraph<E> graph,
+            ReplicationTransport<E> transport, Collection<String> peers, Options options) {
+        Objects.requireNonNull(name, "name must not be null");
+        Objects.requireNonNull(graph, "graph must not be null");
+        Objects.requireNonNull(transport, "transport must not be null");
+        Objects.requireNonNull(options, "options must not be null");
+        if (peers.contains(name)) {
+            throw new IllegalArgumentException("a replicator is not its own peer: " + name);
+        }
+        final var replicator = new Replicator<>(name, graph, transport, peers, options);
+        graph.addOperationListener(replicator.listener);
+        replicator.applier.start();
+        replicator.peers.values().forEach(peer -> peer.sender.start());
+        return replicator;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        final var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Changes the graph under the lock of the replicator.
+     * @param changes the changes, which should not block
+     */
+    public void update(Consumer<LwwElementGraph<E>> changes) {
+        lock.lock();
+        try {
+            changes.accept(graph);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the graph under the lock of the replicator, prefer a {@link #snapshot()} for longer queries.
+     * @param query the query
+     * @return the result of the query
+     */
+    public <T> T query(Function<LwwElementGraph<E>, T> query) {
+        lock.lock();
+        try {
+            return query.apply(graph);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the graph, to query on any thread without the lock
+     */
+    public GraphSnapshot<E> snapshot() {
+        return query(LwwElementGraph::snapshot);
+    }
+
+    /**
+     * Queues a batch from a peer, to be applied in the order batches are received.
+     * Blocks while the inbound capacity is taken.
+     * @param batch the batch
+     * @throws InterruptedException if interrupted while waiting for the applier to catch up
+     */
+    public void receive(ReplicationBatch<E> batch) throws InterruptedException {
+        Objects.requireNonNull(batch, "batch must not be null");
+        if (closed) {
+            throw new IllegalStateException("replicator " + name + " is closed");
+        }
+        inbound.put(batch);
+    }
+
+    /**
+     * Reports the work of this replicator to the given metrics.
+     * @param metrics the metrics, {@link ReplicationMetrics#NONE} to measure nothing
+     */
+    public void setMetrics(ReplicationMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics must not be null");
+    }
+
+    /**
+     * Stops the senders and applies the batches already received. Changes made since the last batch to a peer
+     * are not sent.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            graph.removeOperationListener(listener);
+            peers.values().forEach(peer -> peer.changed.signal());
+        } finally {
+            lock.unlock();
+        }
+        peers.values().forEach(peer -> peer.sender.interrupt());
+        applier.interrupt();
+        try {
+            for (Peer peer : peers.values()) {
+                peer.sender.join(TimeUnit.MINUTES.toMillis(1));
+            }
+            applier.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyBatches() {
+        try {
+            while (!closed) {
+                apply(inbound.take());
+            }
+        } catch (InterruptedException e) {
+            // closing, apply what was received before
+        }
+        for (var batch = inbound.poll(); batch != null; batch = inbound.poll()) {
+            apply(batch);
+        }
+    }
+
+    private void apply(ReplicationBatch<E> batch) {
+        final var delta = batch.getDelta();
+        final var entries = delta.getEntries();
+        final var origin = peers.get(batch.getOrigin());
+        try {
+            int from = 0;
+            long start = 0;
+            do {
+                final int to = Math.min(entries.size(), from + options.applySliceSize);
+                lock.lock();
+                try {
+                    if (from == 0) {
+                        start = graph.now();
+                    }
+                    graph.applyEntries(entries.subList(from, to), delta.getVectorClock());
+                    if (to == entries.size()) {
+                        graph.completeDelta(delta, start);
+                        if (origin != null) {
+                            origin.received(delta);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                from = to;
+            } while (from < entries.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to apply a batch of {} elements from {}", entries.size(), batch.getOrigin(), e);
+            return;
+        }
+        metrics.onApply(batch.getOrigin(), entries.size(), System.currentTimeMillis() - batch.getChangedAt(),
+            inbound.size());
+    }
+
+    /**
+     * Wakes the sender of every peer when the graph changes. Runs under the lock, on the thread that changed the
+     * graph.
+     */
+    private final class ChangeSignal implements GraphOperationListener<E> {
+
+        @Override
+        public void onOperation(GraphOperation<E> operation) {
+            changed();
+        }
+
+        @Override
+        public void onDelta(GraphDelta<E> delta) {
+            if (!delta.isEmpty()) {
+                changed();
+            }
+        }
+
+        private void changed() {
+            long now = 0;
+            for (Peer peer : peers.values()) {
+                if (!peer.pending) {
+                    if (now == 0) {
+                        now = System.currentTimeMillis();
+                    }
+                    peer.pending = true;
+                    peer.changedAt = now;
+                    peer.changed.signal();
+                }
+            }
+        }
+    }
+
+    /**
+     * A peer and its sender. Apart from the sender thread, the fields are guarded by the lock of the replicator.
+     */
+    private final class Peer {
+        private final String peerName;
+        private final Condition changed = lock.newCondition();
+        private final Thread sender;
+        // everything the peer is known to have seen, from the clocks of the batches received from it
+        private VectorClock seen = VectorClock.of("");
+        // the clock of the batches sent to the peer it has not acknowledged yet, null when there are none
+        private VectorClock unacknowledged;
+        // when the last unacknowledged batch was sent, from System.nanoTime()
+        private long sentAt;
+        // whether a batch from the peer waits for an acknowledgement
+        private boolean acknowledgementDue;
+        // whether the graph changed since the last batch was taken
+        private boolean pending = true;
+        // time of the oldest change not yet sent, in milliseconds since the epoch
+        private long changedAt = System.currentTimeMillis();
+
+        Peer(String peerName) {
+            this.peerName = peerName;
+            this.sender = daemon(this::sendBatches, "replicator-" + name + "-" + peerName);
+        }
+
+        private void sendBatches() {
+            try {
+                while (awaitChange()) {
+                    sendBatch();
+                }
+            } catch (InterruptedException e) {
+                // closing
+            }
+        }
+
+        private boolean awaitChange() throws InterruptedException {
+            lock.lock();
+            try {
+                while (!pending && !closed) {
+                    awaitSignal();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!closed && !options.linger.isZero()) {
+                // let more changes coalesce into the batch
+                Thread.sleep(options.linger.toMillis());
+            }
+            return !closed;
+        }
+
+        /**
+         * Waits for a change, and while batches are unacknowledged no longer than their acknowledgement timeout.
+         */
+        private void awaitSignal() throws InterruptedException {
+            if (unacknowledged == null) {
+                changed.await();
+            } else if (changed.awaitNanos(sentAt + options.ackTimeout.toNanos() - System.nanoTime()) <= 0
+                    && unacknowledged != null) {
+                log.debug("{} did not acknowledge the batches sent, sending them again", peerName);
+                resend();
+            }
+        }
+
+        private void sendBatch() throws InterruptedException {
+            final Set<E> changedElements;
+            final GraphSnapshot<E> snapshot;
+            final long oldestChange;
+            final boolean acknowledging;
+            lock.lock();
+            try {
+                changedElements = graph.changedSince(unacknowledged == null ? seen : seen.merge(unacknowledged));
+                snapshot = graph.snapshot();
+                oldestChange = changedAt;
+                acknowledging = acknowledgementDue;
+                pending = false;
+                acknowledgementDue = false;
+            } finally {
+                lock.unlock();
+            }
+            if (changedElements.isEmpty() && !acknowledging) {
+                return;
+            }
+            // the entries are read from the snapshot, without holding up changes of the graph
+            final var delta = snapshot.deltaOf(changedElements);
+            final long start = System.nanoTime();
+            try {
+                transport.send(peerName, ReplicationBatch.of(name, delta, oldestChange));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to send {} elements to {}, retrying in {}", delta.size(), peerName,
+                    options.retryDelay, e);
+                metrics.onSendFailure(peerName);
+                retryLater(oldestChange, acknowledging);
+                return;
+            }
+            metrics.onSend(peerName, delta.size(), System.nanoTime() - start);
+            if (!delta.isEmpty()) {
+                sent(delta.getVectorClock());
+            }
+        }
+
+        /**
+         * Awaits the acknowledgement of a batch the transport took, so the next batch leaves out its elements.
+         */
+        private void sent(VectorClock clock) {
+            lock.lock();
+            try {
+                unacknowledged = unacknowledged == null ? clock : unacknowledged.merge(clock);
+                sentAt = System.nanoTime();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Takes a batch from the peer, applied in full, as the acknowledgement of everything its clock covers, and
+         * has the sender acknowledge it in turn unless it is an acknowledgement itself.
+         */
+        private void received(GraphDelta<E> delta) {
+            seen = seen.merge(delta.getVectorClock());
+            if (unacknowledged != null && seen.dominates(unacknowledged)) {
+                unacknowledged = null;
+            }
+            if (!delta.isEmpty()) {
+                acknowledgementDue = true;
+                markPending(System.currentTimeMillis());
+            }
+        }
+
+        /**
+         * Gives up on the acknowledgement of the batches sent, so the next batch holds their elements again.
+         */
+        private void resend() {
+            unacknowledged = null;
+            markPending(System.currentTimeMillis());
+        }
+
+        private void markPending(long oldestChange) {
+            if (!pending || oldestChange < changedAt) {
+                changedAt = oldestChange;
+            }
+            pending = true;
+            changed.signal();
+        }
+
+        private void retryLater(long oldestChange, boolean acknowledging) throws InterruptedException {
+            lock.lock();
+            try {
+                acknowledgementDue |= acknowledging;
+                markPending(oldestChange);
+            } finally {
+                lock.unlock();
+            }
+            Thread.sleep(options.retryDelay.toMillis());
+        }
+    }
+
+    /**
+     * Tuning of a {@link Replicator}.
+     */
+    public static final class Options {
+        private static final int DEFAULT_INBOUND_CAPACITY = 16;
+        private static final int DEFAULT_APPLY_SLICE_SIZE = 1024;
+        private static final Duration DEFAULT_LINGER = Duration.ofMillis(1);
+        private static final Duration DEFAULT_RETRY_DELAY = Duration.ofMillis(100);
+        private static final Duration DEFAULT_ACK_TIMEOUT = Duration.ofSeconds(5);
+        private final int inboundCapacity;
+        private final int applySliceSize;
+        private final Duration linger;
+        private final Duration retryDelay;
+        private final Duration ackTimeout;
+
+        private Options(int inboundCapacity, int applySliceSize, Duration linger, Duration retryDelay,
+                Duration ackTimeout) {
+            this.inboundCapacity = inboundCapacity;
+            this.applySliceSize = applySliceSize;
+            this.linger = linger;
+            this.retryDelay = retryDelay;
+            this.ackTimeout = ackTimeout;
+        }
+
+        /**
+         * @return 16 inbound batches, slices of 1024 elements, a linger of 1 ms, a retry every 100 ms and an
+         *     acknowledgement timeout of 5 s
+         */
+        public static Options defaults() {
+            return new Options(DEFAULT_INBOUND_CAPACITY, DEFAULT_APPLY_SLICE_SIZE, DEFAULT_LINGER,
+                DEFAULT_RETRY_DELAY, DEFAULT_ACK_TIMEOUT);
+        }
+
+        /**
+         * @param inboundCapacity the number of received batches that may wait for the applier
+         * @return options with the inbound capacity
+         */
+        public Options withInboundCapacity(int inboundCapacity) {
+            if (inboundCapacity < 1) {
+                throw new IllegalArgumentException("inboundCapacity must be positive: " + inboundCapacity);
+            }
+            return new Options(inboundCapacity, applySliceSize, linger, retryDelay, ackTimeout);
+        }
+
+        /**
+         * @param applySliceSize the number of elements of a batch applied under the lock at once
+         * @return options with the slice size
+         */
+        public Options withApplySliceSize(int applySliceSize) {
+            if (applySliceSize < 1) {
+                throw new IllegalArgumentException("applySliceSize must be positive: " + applySliceSize);
+            }
+            return new Options(inboundCapacity, applySliceSize, linger, retryDelay, ackTimeout);
+        }
+
+        /**
+         * @param linger the time a sender waits after a change for more changes to send with it
+         * @return options with the linger time
+         */
+        public Options withLinger(Duration linger) {
+            Objects.requireNonNull(linger, "linger must not be null");
+            return new Options(inboundCapacity, applySliceSize, linger, retryDelay, ackTimeout);
+        }
+
+        /**
+         * @param retryDelay the time before a batch that failed is sent again
+         * @return options with the retry delay
+         */
+        public Options withRetryDelay(Duration retryDelay) {
+            Objects.requireNonNull(retryDelay, "retryDelay must not be null");
+            return new Options(inboundCapacity, applySliceSize, linger, retryDelay, ackTimeout);
+        }
+
+        /**
+         * @param ackTimeout the time a sender waits for a peer to acknowledge a batch before it sends its elements
+         *     again
+         * @return options with the acknowledgement timeout
+         */
+        public Options withAckTimeout(Duration ackTimeout) {
+            Objects.requireNonNull(ackTimeout, "ackTimeout must not be null");
+            if (ackTimeout.isNegative() || ackTimeout.isZero()) {
+                throw new IllegalArgumentException("ackTimeout must be positive: " + ackTimeout);
+            }
+            return new Options(inboundCapacity, applySliceSize, linger, retryDelay, ackTimeout);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The adjacency of the add vertices of a {@link LongLwwElementGraph}, by the slots of the elements: the slots of the
+ * neighbours of every slot, next to the clocks they were added with. An open-addressed map keyed by both slots of an
+ * edge holds the position of the neighbour, so adding or removing an edge takes constant time whatever the degree.
+ * @author Julius Krah
+ */
+final class SlotAdjacency {
+    // position of every neighbour in the adjacency of a slot, keyed by both slots
+    private final LongIntMap positions = new LongIntMap();
+    // slots of the neighbours and the clocks they were added with, null until the first one
+    private int[][] neighbors;
+    private VectorClock[][] neighborClocks;
+    private int[] degrees;
+
+    /**
+     * @param capacity the number of slots to start with
+     */
+    SlotAdjacency(int capacity) {
+        this.neighbors = new int[capacity][];
+        this.neighborClocks = new VectorClock[capacity][];
+        this.degrees = new int[capacity];
+    }
+
+    private static long edgeKey(int slot, int neighbor) {
+        return ((long) slot << Integer.SIZE) | (neighbor & 0xFFFFFFFFL);
+    }
+
+    void grow(int capacity) {
+        neighbors = Arrays.copyOf(neighbors, capacity);
+        neighborClocks = Arrays.copyOf(neighborClocks, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+    }
+
+    int degree(int slot) {
+        return degrees[slot];
+    }
+
+    /**
+     * @param position a position below the {@linkplain #degree(int) degree} of the slot
+     * @return the slot of the neighbour at the position
+     */
+    int neighborAt(int slot, int position) {
+        return neighbors[slot][position];
+    }
+
+    /**
+     * @param position a position below the {@linkplain #degree(int) degree} of the slot
+     * @return the clock the neighbour at the position was added with
+     */
+    VectorClock clockAt(int slot, int position) {
+        return neighborClocks[slot][position];
+    }
+
+    /**
+     * Keeps the latest clock of the neighbour in the adjacency of the slot.
+     * @return true when the adjacency changed
+     */
+    boolean add(int slot, int neighbor, VectorClock clock) {
+        final long key = edgeKey(slot, neighbor);
+        final int position = positions.get(key);
+        if (position != LongIntMap.NO_VALUE) {
+            if (neighborClocks[slot][position].compareTo(clock) >= 0) {
+                return false;
+            }
+            neighborClocks[slot][position] = clock;
+            return true;
+        }
+        final int degree = degrees[slot];
+        if (neighbors[slot] == null) {
+            neighbors[slot] = new int[2];
+            neighborClocks[slot] = new VectorClock[2];
+        } else if (degree == neighbors[slot].length) {
+            neighbors[slot] = Arrays.copyOf(neighbors[slot], degree * 2);
+            neighborClocks[slot] = Arrays.copyOf(neighborClocks[slot], degree * 2);
+        }
+        neighbors[slot][degree] = neighbor;
+        neighborClocks[slot][degree] = clock;
+        positions.put(key, degree);
+        degrees[slot] = degree + 1;
+        return true;
+    }
+
+    /**
+     * Removes the neighbour from the adjacency of the slot when it was added with exactly the clock, moving the last
+     * neighbour into its position.
+     * @return true when the adjacency changed
+     */
+    boolean remove(int slot, int neighbor, VectorClock clock) {
+        final long key = edgeKey(slot, neighbor);
+        final int position = positions.get(key);
+        if (position == LongIntMap.NO_VALUE || !neighborClocks[slot][position].equals(clock)) {
+            return false;
+        }
+        final int last = --degrees[slot];
+        if (position != last) {
+            neighbors[slot][position] = neighbors[slot][last];
+            neighborClocks[slot][position] = neighborClocks[slot][last];
+            positions.put(edgeKey(slot, neighbors[slot][position]), position);
+        }
+        neighborClocks[slot][last] = null;
+        positions.remove(key);
+        return true;
+    }
+
+    void clear(int slot) {
+        for (int position = 0; position < degrees[slot]; position++) {
+            positions.remove(edgeKey(slot, neighbors[slot][position]));
+        }
+        neighbors[slot] = null;
+        neighborClocks[slot] = null;
+        degrees[slot] = 0;
+    }
+
+    /**
+     * Adds the neighbours of a slot of another replica to the adjacency of the slot, keeping the latest clock of each.
+     * @param from the slot in the other replica
+     * @param slotOf maps the slots of the other replica to the slots of this one
+     */
+    void unite(int slot, SlotAdjacency other, int from, IntUnaryOperator slotOf) {
+        for (int position = 0; position < other.degrees[from]; position++) {
+            add(slot, slotOf.applyAsInt(other.neighbors[from][position]), other.neighborClocks[from][position]);
+        }
+    }
+
+    /**
+     * Checks whether the adjacency of the slot has neighbours or later clocks of neighbours the adjacency of a slot
+     * of another replica lacks, once the other was {@linkplain #unite(int, SlotAdjacency, int, IntUnaryOperator)
+     * united} into it.
+     * @param from the slot in the other replica
+     * @param slotOf maps the slots of the other replica to the slots of this one
+     */
+    boolean differs(int slot, SlotAdjacency other, int from, IntUnaryOperator slotOf) {
+        if (degrees[slot] != other.degrees[from]) {
+            return true;
+        }
+        for (int position = 0; position < other.degrees[from]; position++) {
+            // every neighbour of the other replica was united into this adjacency
+            final int at = positions.get(edgeKey(slot, slotOf.applyAsInt(other.neighbors[from][position])));
+            if (!neighborClocks[slot][at].equals(other.neighborClocks[from][position])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Path queries over the slots of a {@link LongLwwElementGraph}, as {@link PathFinder} runs them over the dense ids
+ * of a {@link LwwElementGraph}. Traversal state lives in primitive, open-addressed maps and queues of slots, so a
+ * search allocates in proportion to the vertices it visits rather than to every slot of the graph.
+ * @author Julius Krah
+ */
+final class SlotPathFinder {
+    private static final int INITIAL_QUEUE = 16;
+    private final SlotAdjacency adjacency;
+    private final IntPredicate live;
+
+    /**
+     * @param adjacency the adjacency of the graph
+     * @param live tells whether the element of a slot is in the graph
+     */
+    SlotPathFinder(SlotAdjacency adjacency, IntPredicate live) {
+        this.adjacency = adjacency;
+        this.live = live;
+    }
+
+    /**
+     * Bidirectional breadth first search, from source and from destination at once, expanding a whole level of
+     * whichever side has the smaller frontier.
+     * @param source the slot of the first vertex of the path, live
+     * @param destination the slot of the last vertex of the path, live and other than the source
+     * @param maxHops the most edges the path may have
+     * @param budget the most vertices the search may visit before it gives up
+     * @return the slots of a shortest path from source to destination, empty when there is none within the limits
+     * @see PathFinder#findShortestPath(Comparable, Comparable, int, int, GraphMetrics)
+     */
+    int[] findShortestPath(int source, int destination, int maxHops, int budget) {
+        final var forward = new Search(source);
+        final var backward = new Search(destination);
+        int visited = 0;
+        while (forward.depth + backward.depth < maxHops && forward.hasFrontier() && backward.hasFrontier()) {
+            final var side = forward.frontier() <= backward.frontier() ? forward : backward;
+            final int meeting = side.expand(side == forward ? backward : forward, budget - visited);
+            if (meeting >= 0) {
+                return pathThrough(meeting, forward, backward);
+            }
+            if (meeting == Search.EXHAUSTED) {
+                break;
+            }
+            visited += side.frontier();
+        }
+        return new int[0];
+    }
+
+    private static int[] pathThrough(int meeting, Search forward, Search backward) {
+        final int meetingAt = forward.distanceTo(meeting);
+        final int[] path = new int[meetingAt + 1 + backward.distanceTo(meeting)];
+        forward.walkBack(meeting, path, meetingAt, -1);
+        if (path.length > meetingAt + 1) {
+            backward.walkBack(backward.parents.get(meeting), path, meetingAt + 1, 1);
+        }
+        return path;
+    }
+
+    /**
+     * One side of a bidirectional search. Visited slots form a queue, of which the last level is the frontier.
+     * Parent links are kept in a map of the visited slots only and the queue grows as it fills.
+     */
+    private final class Search {
+        static final int NO_MEETING = -1;
+        static final int EXHAUSTED = -2;
+        // the slot each visited slot was reached from, the start is its own parent
+        private final LongIntMap parents = new LongIntMap();
+        private int[] queue = new int[INITIAL_QUEUE];
+        private int head;
+        private int tail;
+        private int depth;
+
+        Search(int start) {
+            parents.put(start, start);
+            queue[tail++] = start;
+        }
+
+        boolean hasFrontier() {
+            return head < tail;
+        }
+
+        int frontier() {
+            return tail - head;
+        }
+
+        boolean visited(int slot) {
+            return parents.get(slot) != LongIntMap.NO_VALUE;
+        }
+
+        /**
+         * Visits the live neighbours of the frontier, which become the next frontier.
+         * @param other the search from the other end
+         * @param budget the most vertices this level may visit
+         * @return the first slot the other search visited too, or {@link #NO_MEETING}, or {@link #EXHAUSTED} when
+         *     the level visits more vertices than the budget allows
+         */
+        int expand(Search other, int budget) {
+            final int end = tail;
+            depth++;
+            for (; head < end; head++) {
+                final int meeting = visitNeighbors(queue[head], other, budget - (tail - end));
+                if (meeting != NO_MEETING) {
+                    return meeting;
+                }
+            }
+            return NO_MEETING;
+        }
+
+        private int visitNeighbors(int from, Search other, int budget) {
+            int left = budget;
+            for (int position = 0; position < adjacency.degree(from); position++) {
+                final int slot = adjacency.neighborAt(from, position);
+                if (visited(slot) || !live.test(slot)) {
+                    continue;
+                }
+                parents.put(slot, from);
+                if (other.visited(slot)) {
+                    return slot;
+                }
+                if (left-- <= 0) {
+                    return EXHAUSTED;
+                }
+                enqueue(slot);
+            }
+            return NO_MEETING;
+        }
+
+        private void enqueue(int slot) {
+            if (tail == queue.length) {
+                queue = Arrays.copyOf(queue, tail * 2);
+            }
+            queue[tail++] = slot;
+        }
+
+        /**
+         * @return the number of edges from the visited slot back to the start of this search
+         */
+        int distanceTo(int slot) {
+            int distance = 0;
+            for (int at = slot; parents.get(at) != at; at = parents.get(at)) {
+                distance++;
+            }
+            return distance;
+        }
+
+        /**
+         * Writes the slots from the visited slot back to the start of this search into the path, from the position
+         * on, a step apart.
+         */
+        void walkBack(int slot, int[] path, int position, int step) {
+            int at = slot;
+            int to = position;
+            path[to] = at;
+            while (parents.get(at) != at) {
+                at = parents.get(at);
+                to += step;
+                path[to] = at;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.util.Arrays;
+
+/**
+ * The vertices of a {@link LongLwwElementGraph}, by the slots of the elements: the clocks of the add and remove
+ * vertex of every slot, the clock the element is live with and the latest change of every node to it, in parallel
+ * arrays.
+ * @author Julius Krah
+ */
+final class SlotVertices {
+    private static final VectorClock NO_CHANGES = VectorClock.of("");
+    private final LWWBias bias;
+    // clocks of the add and remove vertices, null when the element has none
+    private VectorClock[] added;
+    private VectorClock[] removed;
+    // clock the element is in the graph with, null when it is not live
+    private VectorClock[] live;
+    // latest change of every node to the element, null when it has none
+    private VectorClock[] changes;
+    private int size;
+
+    /**
+     * @param capacity the number of slots to start with
+     * @param bias decides between an add and a remove vertex
+     */
+    SlotVertices(int capacity, LWWBias bias) {
+        this.bias = bias;
+        this.added = new VectorClock[capacity];
+        this.removed = new VectorClock[capacity];
+        this.live = new VectorClock[capacity];
+        this.changes = new VectorClock[capacity];
+    }
+
+    void grow(int capacity) {
+        added = Arrays.copyOf(added, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        live = Arrays.copyOf(live, capacity);
+        changes = Arrays.copyOf(changes, capacity);
+    }
+
+    /**
+     * @param slot a slot, or {@link LongIntMap#NO_VALUE}
+     * @return the clock the element of the slot is in the graph with, null when it is not in the graph
+     */
+    VectorClock liveClock(int slot) {
+        return slot == LongIntMap.NO_VALUE ? null : live[slot];
+    }
+
+    /**
+     * @param slot a slot, or {@link LongIntMap#NO_VALUE}
+     */
+    boolean isLive(int slot) {
+        return liveClock(slot) != null;
+    }
+
+    /**
+     * @param slot a slot, or {@link LongIntMap#NO_VALUE}
+     * @return whether the element of the slot has a vertex, live or removed
+     */
+    boolean contains(int slot) {
+        return slot != LongIntMap.NO_VALUE && (added[slot] != null || removed[slot] != null);
+    }
+
+    VectorClock addedAt(int slot) {
+        return added[slot];
+    }
+
+    VectorClock removedAt(int slot) {
+        return removed[slot];
+    }
+
+    VectorClock changesAt(int slot) {
+        return changes[slot];
+    }
+
+    /**
+     * @return the number of live vertices
+     */
+    int size() {
+        return size;
+    }
+
+    void add(int slot, VectorClock clock) {
+        added[slot] = clock;
+        update(slot);
+    }
+
+    void remove(int slot, VectorClock clock) {
+        added[slot] = null;
+        removed[slot] = clock;
+        update(slot);
+    }
+
+    void record(int slot, VectorClock change) {
+        changes[slot] = changes[slot] == null ? change : changes[slot].merge(change);
+    }
+
+    void record(int slot, Dot dot) {
+        changes[slot] = (changes[slot] == null ? NO_CHANGES : changes[slot]).merge(dot);
+    }
+
+    /**
+     * Keeps the later of the add vertex of the slot and an incoming one.
+     * @param incoming the clock of the incoming add vertex, null when there is none
+     * @return a positive number when the incoming vertex won, 0 when it is the same vertex, a negative number when
+     *     there is none or it lost
+     */
+    int mergeAdded(int slot, VectorClock incoming) {
+        if (incoming == null) {
+            return -1;
+        }
+        if (added[slot] == null || added[slot].compareTo(incoming) < 0) {
+            added[slot] = incoming;
+            update(slot);
+            return 1;
+        }
+        return added[slot].equals(incoming) ? 0 : -1;
+    }
+
+    /**
+     * Keeps the later of the remove vertex of the slot and an incoming one.
+     * @param incoming the clock of the incoming remove vertex, null when there is none
+     */
+    void mergeRemoved(int slot, VectorClock incoming) {
+        if (incoming != null && (removed[slot] == null || removed[slot].compareTo(incoming) < 0)) {
+            removed[slot] = incoming;
+            update(slot);
+        }
+    }
+
+    /**
+     * Decides whether the element is live from the clocks of its add and remove vertices.
+     * @see LWWBias#resolve(VectorClock, VectorClock)
+     */
+    private void update(int slot) {
+        final var clock = bias.resolve(added[slot], removed[slot]);
+        if ((clock != null) != (live[slot] != null)) {
+            size += clock != null ? 1 : -1;
+        }
+        live[slot] = clock;
+    }
+}
@@ -0,0 +1,152 @@
+package com.juliuskrah.crdt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compacted snapshot of a graph's state, written and read through memory mapped buffers.
+ * <p>
+ * The state is split into chunks of a bounded number of elements, each encoded by {@link GraphCodec} as a delta
+ * since an empty clock, so that no single mapping has to span a multi gigabyte file:
+ * {@code magic:int32 version:byte sequence:int64 count:int32 length:int32 floor (length:int32 delta)*}.
+ * The floor is a delta without entries whose clock is the compaction floor of the graph, see
+ * {@link LwwElementGraph#compact()}.
+ * The file is named after the sequence of the last log record it covers.
+ * @author Julius Krah
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x4C575753; // "LWWS"
+    private static final byte VERSION = 2;
+    private static final String SUFFIX = ".snapshot";
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the state to a temporary file and moves it in place once it is on disk, then forces the directory so
+     * that the move itself is on disk too.
+     * @param directory the directory of the snapshots
+     * @param sequence the last log record the state covers
+     * @param state the state of the graph
+     * @param compactionFloor the compaction floor of the graph
+     * @param codec the codec of the graph
+     * @param chunkSize the number of elements per chunk
+     * @return the snapshot file
+     */
+    static <E extends Comparable<E>> Path write(Path directory, long sequence, GraphDelta<E> state,
+            VectorClock compactionFloor, GraphCodec<E> codec, int chunkSize) throws IOException {
+        List<GraphDelta<E>> chunks = new ArrayList<>();
+        var entries = state.getEntries();
+        for (int from = 0; from == 0 || from < entries.size(); from += chunkSize) {
+            chunks.add(GraphDelta.of(state.getVectorClock(),
+                entries.subList(from, Math.min(entries.size(), from + chunkSize))));
+        }
+        var temporary = directory.resolve(String.format("%020d%s.tmp", sequence, SUFFIX));
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION).putLong(sequence).putInt(chunks.size());
+            header.force();
+            long position = write(channel, HEADER_SIZE, GraphDelta.of(compactionFloor, List.of()), codec);
+            for (GraphDelta<E> chunk : chunks) {
+                position = write(channel, position, chunk, codec);
+            }
+        }
+        var snapshot = directory.resolve(String.format("%020d%s", sequence, SUFFIX));
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Directories.force(directory);
+        return snapshot;
+    }
+
+    /**
+     * @return the position after the delta
+     */
+    private static <E extends Comparable<E>> long write(FileChannel channel, long position, GraphDelta<E> delta,
+            GraphCodec<E> codec) throws IOException {
+        final int size = codec.sizeOf(delta);
+        var buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Integer.BYTES + (long) size);
+        buffer.putInt(size);
+        codec.encode(delta, buffer);
+        buffer.force();
+        return position + Integer.BYTES + size;
+    }
+
+    /**
+     * Maps the snapshot and applies its state to the graph.
+     * @param snapshot the snapshot file
+     * @param codec the codec of the graph
+     * @param graph the graph to restore into
+     * @return the last log record the snapshot covers
+     */
+    static <E extends Comparable<E>> long load(Path snapshot, GraphCodec<E> codec, LwwElementGraph<E> graph)
+            throws IOException {
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.get() != VERSION) {
+                throw new IOException("Not a supported snapshot: " + snapshot);
+            }
+            final long sequence = header.getLong();
+            final int count = header.getInt();
+            var length = ByteBuffer.allocate(Integer.BYTES);
+            final int floorSize = readLength(channel, length, HEADER_SIZE);
+            final var floor = codec.decodeDelta(channel.map(FileChannel.MapMode.READ_ONLY,
+                HEADER_SIZE + Integer.BYTES, floorSize));
+            long position = HEADER_SIZE + Integer.BYTES + (long) floorSize;
+            for (int i = 0; i < count; i++) {
+                final int size = readLength(channel, length, position);
+                var chunk = channel.map(FileChannel.MapMode.READ_ONLY, position + Integer.BYTES, size);
+                graph.applyDelta(codec.decodeDelta(chunk));
+                position += Integer.BYTES + (long) size;
+            }
+            // only once the state is in, or the floor would drop the elements of later chunks
+            graph.restoreCompactionFloor(floor.getVectorClock());
+            return sequence;
+        }
+    }
+
+    private static int readLength(FileChannel channel, ByteBuffer length, long position) throws IOException {
+        channel.read(length.clear(), position);
+        return length.flip().getInt();
+    }
+
+    /**
+     * @param directory the directory of the snapshots
+     * @return the snapshot covering the most log records
+     */
+    static Optional<Path> latest(Path directory) throws IOException {
+        var snapshots = snapshots(directory);
+        return snapshots.isEmpty() ? Optional.empty() : Optional.of(snapshots.get(snapshots.size() - 1));
+    }
+
+    /**
+     * Deletes the snapshots older than the sequence.
+     * @param directory the directory of the snapshots
+     * @param sequence the sequence of the snapshot to keep
+     */
+    static void deleteBefore(Path directory, long sequence) throws IOException {
+        for (Path snapshot : snapshots(directory)) {
+            var name = snapshot.getFileName().toString();
+            if (Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) < sequence) {
+                Files.delete(snapshot);
+            }
+        }
+    }
+
+    private static List<Path> snapshots(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.juliuskrah.crdt;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A fixed number of locks, each guarding the elements that hash to its stripe.
+ * @param <E> the element the stripes are chosen by
+ * @author Julius Krah
+ */
+final class StripedLocks<E> {
+    private final ReentrantLock[] locks;
+
+    /**
+     * @param concurrencyLevel the number of writers expected to run in parallel, rounded up to a power of two for
+     *     the number of stripes
+     */
+    StripedLocks(int concurrencyLevel) {
+        this.locks = new ReentrantLock[Integer.highestOneBit(concurrencyLevel * 2 - 1)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private int stripe(E element) {
+        final int hash = element.hashCode();
+        return (hash ^ (hash >>> 16)) & (locks.length - 1);
+    }
+
+    void withLock(E element, Runnable action) {
+        final var lock = locks[stripe(element)];
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Locks the stripes of both elements, always the lower stripe first so edge writers cannot deadlock.
+     */
+    boolean withLocks(E first, E second, BooleanSupplier action) {
+        final int stripe1 = stripe(first);
+        final int stripe2 = stripe(second);
+        final var lower = locks[Math.min(stripe1, stripe2)];
+        final var upper = locks[Math.max(stripe1, stripe2)];
+        lower.lock();
+        try {
+            upper.lock();
+            try {
+                return action.getAsBoolean();
+            } finally {
+                upper.unlock();
+            }
+        } finally {
+            lower.unlock();
+        }
+    }
+}
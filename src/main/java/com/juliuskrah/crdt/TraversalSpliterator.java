@@ -0,0 +1,121 @@
+package com.juliuskrah.crdt;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lazy breadth or depth first traversal of the vertices reachable from a source, over the dense element ids of a
+ * graph. A vertex is expanded only when it is emitted, so a consumer that stops early never pays for the rest of
+ * the graph. Splitting hands batches of emitted elements to other threads while the traversal itself stays on one.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ * @see LwwElementGraph#reachableFrom(Comparable, LwwElementGraph.Traversal)
+ */
+final class TraversalSpliterator<E extends Comparable<E>> extends Spliterators.AbstractSpliterator<E> {
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+    private static final int INITIAL_PENDING = 16;
+    private final ElementIds<E> ids;
+    private final Function<E, Collection<Vertex<E>>> adjacency;
+    private final Predicate<E> live;
+    private final boolean depthFirst;
+    private final BitSet visited = new BitSet();
+    // the queue of a breadth first traversal, the stack of a depth first one
+    private int[] pending;
+    private int head;
+    private int tail;
+
+    /**
+     * @param ids the id table of the graph
+     * @param adjacency resolves the live neighbours of an element
+     * @param live tells whether an element is in the graph
+     * @param source the vertex to start from, nothing is traversed when it is not in the graph
+     * @param depthFirst true to go depth first, false to go breadth first
+     */
+    TraversalSpliterator(ElementIds<E> ids, Function<E, Collection<Vertex<E>>> adjacency, Predicate<E> live,
+            E source, boolean depthFirst) {
+        super(Long.MAX_VALUE, CHARACTERISTICS);
+        this.ids = ids;
+        this.adjacency = adjacency;
+        this.live = live;
+        this.depthFirst = depthFirst;
+        final int sourceId = ids.idOf(source);
+        if (sourceId == ElementIds.NO_ID || !live.test(source)) {
+            this.pending = new int[0];
+            return;
+        }
+        // the queue or stack grows as it fills, so a traversal stopped early allocates for what it visited only
+        this.pending = new int[INITIAL_PENDING];
+        this.pending[tail++] = sourceId;
+        if (!depthFirst) {
+            visited.set(sourceId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        final int id = depthFirst ? pop() : poll();
+        if (id == ElementIds.NO_ID) {
+            return false;
+        }
+        final E element = ids.elementOf(id);
+        for (Vertex<E> neighbor : adjacency.apply(element)) {
+            final int neighborId = ids.idOf(neighbor.getValue());
+            if (neighborId != ElementIds.NO_ID && !visited.get(neighborId) && live.test(neighbor.getValue())) {
+                push(neighborId);
+            }
+        }
+        action.accept(element);
+        return true;
+    }
+
+    private int poll() {
+        return head < tail ? pending[head++] : ElementIds.NO_ID;
+    }
+
+    /**
+     * A vertex may be stacked more than once depth first, it is visited when it is first popped.
+     */
+    private int pop() {
+        while (tail > 0) {
+            final int id = pending[--tail];
+            if (!visited.get(id)) {
+                visited.set(id);
+                return id;
+            }
+        }
+        return ElementIds.NO_ID;
+    }
+
+    private void push(int id) {
+        if (!depthFirst) {
+            visited.set(id);
+        }
+        if (tail == pending.length) {
+            grow();
+        }
+        pending[tail++] = id;
+    }
+
+    /**
+     * Makes room at the tail, first by dropping the ids a breadth first traversal already polled.
+     */
+    private void grow() {
+        if (head > 0) {
+            System.arraycopy(pending, head, pending, 0, tail - head);
+            tail -= head;
+            head = 0;
+        }
+        if (tail * 2 > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.juliuskrah.crdt;
+
+import java.util.Iterator;
+
+/**
+ * Adjacency set on the heap, in a {@link TrieMap} from the element of every neighbour to its vertex.
+ * Add, remove and membership take time logarithmic in the degree of the vertex, with a base of 32, and updates
+ * share structure with the old set. Iteration follows the hashes of the elements.
+ * @param <E> the element to operate on
+ * @author Julius Krah
+ */
+final class TrieAdjacencySet<E extends Comparable<E>> extends AdjacencySet<E> {
+    private static final TrieAdjacencySet<?> EMPTY = new TrieAdjacencySet<String>(TrieMap.empty());
+    private final TrieMap<E, Vertex<E>> neighbors;
+
+    private TrieAdjacencySet(TrieMap<E, Vertex<E>> neighbors) {
+        this.neighbors = neighbors;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E extends Comparable<E>> TrieAdjacencySet<E> empty() {
+        return (TrieAdjacencySet<E>) EMPTY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    AdjacencySet<E> with(Vertex<E> vertex, Object edit) {
+        var current = neighbors.get(vertex.getValue());
+        if (current != null && current.getVectorClock().compareTo(vertex.getVectorClock()) >= 0) {
+            return this;
+        }
+        return new TrieAdjacencySet<>(neighbors.put(vertex.getValue(), vertex, edit));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    AdjacencySet<E> without(Vertex<E> vertex, Object edit) {
+        if (!vertex.equals(neighbors.get(vertex.getValue()))) {
+            return this;
+        }
+        return new TrieAdjacencySet<>(neighbors.remove(vertex.getValue(), edit));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Vertex && o.equals(neighbors.get(((Vertex<?>) o).getValue()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Vertex<E>> iterator() {
+        return neighbors.valueIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return neighbors.size();
+    }
+}
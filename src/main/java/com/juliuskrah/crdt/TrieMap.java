@@ -0,0 +1,494 @@
+package com.juliuskrah.crdt;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent hash array mapped trie. Every update returns a new map sharing all untouched nodes with the old one.
+ * <p>
+ * Updates carry an edit token. Nodes created under a token are updated in place by later updates under the same
+ * token, so a writer that holds on to its token allocates about as little as with a mutable map. Taking a snapshot
+ * means switching to a new token: every node of the map then belongs to a retired token, is never written again,
+ * and is copied on its next update instead. Until its token is retired, a map may change under any update made
+ * with that token, so only the latest map of a writer is meant to be used.
+ * <p>
+ * Keys and values must not be null. Iteration follows the hashes of the keys.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author Julius Krah
+ */
+final class TrieMap<K, V> {
+    private static final TrieMap<?, ?> EMPTY = new TrieMap<>(null, 0);
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private final Node root;
+    private final int size;
+
+    private TrieMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> TrieMap<K, V> empty() {
+        return (TrieMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param key the key
+     * @return the hash the trie places the key by, its lowest bits deciding the slot at the root
+     */
+    static int hash(Object key) {
+        final int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or null when it has none
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return root == null ? null : (V) root.find(key, hash(key), 0);
+    }
+
+    boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key the key
+     * @param value the value
+     * @param edit the edit token of the writer
+     * @return the map with the key set to the value
+     */
+    TrieMap<K, V> put(K key, V value, Object edit) {
+        final var added = new boolean[1];
+        final var node = root == null ? new BitmapNode(edit, 0, new Object[2]) : root;
+        final var updated = node.put(edit, 0, hash(key), key, value, added);
+        return updated == root && !added[0] ? this : new TrieMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key the key
+     * @param edit the edit token of the writer
+     * @return the map without the key
+     */
+    TrieMap<K, V> remove(Object key, Object edit) {
+        if (root == null) {
+            return this;
+        }
+        final var removed = new boolean[1];
+        final var updated = root.remove(edit, 0, hash(key), key, removed);
+        return removed[0] ? new TrieMap<>(updated, size - 1) : this;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    /**
+     * Visits the entries whose keys hash to the given lowest bits, walking only the subtree those bits lead to.
+     * @param bits the lowest bits of the hashes
+     * @param count the number of bits, below 32
+     * @param action the action for every such entry
+     */
+    @SuppressWarnings("unchecked")
+    void forEachWithHash(int bits, int count, BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEachWithHash(bits, count, 0, (BiConsumer<Object, Object>) action);
+        }
+    }
+
+    private static boolean endsWith(int hash, int bits, int count) {
+        return ((hash ^ bits) & ((1 << count) - 1)) == 0;
+    }
+
+    Iterator<K> keyIterator() {
+        return new EntryIterator<>(root, 0);
+    }
+
+    Iterator<V> valueIterator() {
+        return new EntryIterator<>(root, 1);
+    }
+
+    private abstract static class Node {
+        // the token of the writer that may update this node in place
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        abstract Object find(Object key, int hash, int shift);
+
+        /**
+         * @param added set when the key was not in the node before
+         * @return the updated node, this node when it was updated in place or did not change
+         */
+        abstract Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @param removed set when the key was in the node
+         * @return the updated node, null when it is empty
+         */
+        abstract Node remove(Object edit, int shift, int hash, Object key, boolean[] removed);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+
+        abstract void forEachWithHash(int bits, int count, int shift, BiConsumer<Object, Object> action);
+
+        /**
+         * @return the key, value or child node pairs of the node, a null key marking a child node
+         */
+        abstract Object[] slots();
+    }
+
+    /**
+     * A node with up to 32 slots, one per 5 bits of the hash at its depth, of which the bitmap holds the used ones.
+     */
+    private static final class BitmapNode extends Node {
+        private int bitmap;
+        private Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            final int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            final int index = index(bit);
+            final Object slotKey = array[2 * index];
+            final Object slotValue = array[2 * index + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(key, hash, shift + BITS);
+            }
+            return key.equals(slotKey) ? slotValue : null;
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added) {
+            final int bit = bit(hash, shift);
+            final int index = index(bit);
+            if ((bitmap & bit) != 0) {
+                final Object slotKey = array[2 * index];
+                final Object slotValue = array[2 * index + 1];
+                if (slotKey == null) {
+                    final var child = ((Node) slotValue).put(edit, shift + BITS, hash, key, value, added);
+                    return child == slotValue ? this : set(edit, 2 * index + 1, child);
+                }
+                if (key.equals(slotKey)) {
+                    return value == slotValue ? this : set(edit, 2 * index + 1, value);
+                }
+                added[0] = true;
+                final var child = pair(edit, shift + BITS, slotKey, slotValue, hash, key, value);
+                final var node = editable(edit);
+                node.array[2 * index] = null;
+                node.array[2 * index + 1] = child;
+                return node;
+            }
+            added[0] = true;
+            final int count = Integer.bitCount(bitmap);
+            final var node = this.edit == edit && 2 * count < array.length ? this
+                : new BitmapNode(edit, bitmap, copyOf(2 * (count + Math.max(1, count / 2))));
+            System.arraycopy(node.array, 2 * index, node.array, 2 * (index + 1), 2 * (count - index));
+            node.array[2 * index] = key;
+            node.array[2 * index + 1] = value;
+            node.bitmap |= bit;
+            return node;
+        }
+
+        private static Node pair(Object edit, int shift, Object key1, Object value1, int hash2, Object key2,
+                Object value2) {
+            final int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(edit, hash1, new Object[] {key1, value1, key2, value2});
+            }
+            final var added = new boolean[1];
+            return new BitmapNode(edit, 0, new Object[4]).put(edit, shift, hash1, key1, value1, added)
+                .put(edit, shift, hash2, key2, value2, added);
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, Object key, boolean[] removed) {
+            final int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            final int index = index(bit);
+            final Object slotKey = array[2 * index];
+            final Object slotValue = array[2 * index + 1];
+            if (slotKey == null) {
+                final var child = ((Node) slotValue).remove(edit, shift + BITS, hash, key, removed);
+                if (child == slotValue) {
+                    return this;
+                }
+                return child != null ? set(edit, 2 * index + 1, child) : without(edit, bit, index);
+            }
+            if (!key.equals(slotKey)) {
+                return this;
+            }
+            removed[0] = true;
+            return without(edit, bit, index);
+        }
+
+        private Node without(Object edit, int bit, int index) {
+            if (bitmap == bit) {
+                return null;
+            }
+            final int count = Integer.bitCount(bitmap);
+            final var node = editable(edit);
+            System.arraycopy(node.array, 2 * (index + 1), node.array, 2 * index, 2 * (count - index - 1));
+            node.array[2 * count - 2] = null;
+            node.array[2 * count - 1] = null;
+            node.bitmap ^= bit;
+            return node;
+        }
+
+        private BitmapNode set(Object edit, int slot, Object value) {
+            final var node = editable(edit);
+            node.array[slot] = value;
+            return node;
+        }
+
+        private BitmapNode editable(Object edit) {
+            return this.edit == edit ? this : new BitmapNode(edit, bitmap, copyOf(array.length));
+        }
+
+        private Object[] copyOf(int length) {
+            final var copy = new Object[length];
+            System.arraycopy(array, 0, copy, 0, 2 * Integer.bitCount(bitmap));
+            return copy;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < 2 * Integer.bitCount(bitmap); i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        @Override
+        void forEachWithHash(int bits, int count, int shift, BiConsumer<Object, Object> action) {
+            if (shift >= count) {
+                forEach(action);
+                return;
+            }
+            if (count - shift >= BITS) {
+                final int bit = bit(bits, shift);
+                if ((bitmap & bit) != 0) {
+                    forEachWithHashAt(index(bit), bits, count, shift, action);
+                }
+                return;
+            }
+            // the bits end inside this level, so every slot they share their lowest bits with
+            final int fixed = (1 << (count - shift)) - 1;
+            for (int rest = bitmap; rest != 0; rest &= rest - 1) {
+                final int slot = Integer.numberOfTrailingZeros(rest);
+                if (((slot ^ (bits >>> shift)) & fixed) == 0) {
+                    forEachWithHashAt(index(1 << slot), bits, count, shift, action);
+                }
+            }
+        }
+
+        private void forEachWithHashAt(int index, int bits, int count, int shift, BiConsumer<Object, Object> action) {
+            final Object slotKey = array[2 * index];
+            if (slotKey == null) {
+                ((Node) array[2 * index + 1]).forEachWithHash(bits, count, shift + BITS, action);
+            } else if (endsWith(hash(slotKey), bits, count)) {
+                action.accept(slotKey, array[2 * index + 1]);
+            }
+        }
+
+        @Override
+        Object[] slots() {
+            return array;
+        }
+    }
+
+    /**
+     * The keys whose hashes are equal in every bit.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private Object[] array;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            super(edit);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            final int index = indexOf(key);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // nest this node under a bitmap node, at the slot its hash takes at this depth
+                final var node = new BitmapNode(edit, BitmapNode.bit(this.hash, shift), new Object[] {null, this});
+                return node.put(edit, shift, hash, key, value, added);
+            }
+            final int index = indexOf(key);
+            if (index >= 0) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                final var node = this.edit == edit ? this : new CollisionNode(edit, hash, array.clone());
+                node.array[index + 1] = value;
+                return node;
+            }
+            added[0] = true;
+            final var grown = Arrays.copyOf(array, array.length + 2);
+            grown[array.length] = key;
+            grown[array.length + 1] = value;
+            if (this.edit == edit) {
+                this.array = grown;
+                return this;
+            }
+            return new CollisionNode(edit, hash, grown);
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, Object key, boolean[] removed) {
+            final int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            removed[0] = true;
+            if (array.length == 2) {
+                return null;
+            }
+            final var shrunk = new Object[array.length - 2];
+            System.arraycopy(array, 0, shrunk, 0, index);
+            System.arraycopy(array, index + 2, shrunk, index, array.length - index - 2);
+            if (this.edit == edit) {
+                this.array = shrunk;
+                return this;
+            }
+            return new CollisionNode(edit, hash, shrunk);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+
+        @Override
+        void forEachWithHash(int bits, int count, int shift, BiConsumer<Object, Object> action) {
+            if (endsWith(hash, bits, count)) {
+                forEach(action);
+            }
+        }
+
+        @Override
+        Object[] slots() {
+            return array;
+        }
+    }
+
+    /**
+     * Walks the trie depth first, yielding the key or the value of every pair.
+     */
+    private static final class EntryIterator<T> implements Iterator<T> {
+        // the slots of the nodes on the way down, and the next pair to look at in each
+        private final Deque<Object[]> nodes = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private final int offset;
+        private Object[] next;
+        private int nextIndex;
+
+        EntryIterator(Node root, int offset) {
+            this.offset = offset;
+            if (root != null) {
+                nodes.push(root.slots());
+                positions.push(0);
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (!nodes.isEmpty()) {
+                final var slots = nodes.peek();
+                final int position = positions.pop();
+                if (position >= slots.length || slots[position + 1] == null) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(position + 2);
+                if (slots[position] == null) {
+                    nodes.push(((Node) slots[position + 1]).slots());
+                    positions.push(0);
+                } else {
+                    next = slots;
+                    nextIndex = position;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final var element = (T) next[nextIndex + offset];
+            advance();
+            return element;
+        }
+    }
+}
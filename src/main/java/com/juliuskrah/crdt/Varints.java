@@ -0,0 +1,93 @@
+package com.juliuskrah.crdt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable length encoding of unsigned and zig-zag encoded signed integers.
+ * Small values, such as dictionary indexes and clock counters, take a single byte.
+ * @author Julius Krah
+ */
+final class Varints {
+    private static final int PAYLOAD_BITS = 7;
+    private static final long PAYLOAD_MASK = 0x7FL;
+    private static final int CONTINUATION = 0x80;
+    private static final int MAX_SHIFT = 63;
+
+    private Varints() {
+    }
+
+    static void writeUnsigned(ByteBuffer buffer, long value) {
+        long remaining = value;
+        while ((remaining & ~PAYLOAD_MASK) != 0L) {
+            buffer.put((byte) ((remaining & PAYLOAD_MASK) | CONTINUATION));
+            remaining >>>= PAYLOAD_BITS;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the varint does not fit in 64 bits
+     * @throws java.nio.BufferUnderflowException when the buffer ends within the varint
+     */
+    static long readUnsigned(ByteBuffer buffer) {
+        long value = 0L;
+        for (int shift = 0; shift <= MAX_SHIFT; shift += PAYLOAD_BITS) {
+            final byte b = buffer.get();
+            // the tenth byte holds the top bit only, and ends the varint
+            if (shift == MAX_SHIFT && (b & ~1) != 0) {
+                break;
+            }
+            value |= (b & PAYLOAD_MASK) << shift;
+            if ((b & CONTINUATION) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint: more than 64 bits");
+    }
+
+    /**
+     * @throws IllegalArgumentException when the varint is not a non-negative int
+     */
+    static int readUnsignedInt(ByteBuffer buffer) {
+        final long value = readUnsigned(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Malformed varint: " + Long.toUnsignedString(value)
+                + " does not fit in an int");
+        }
+        return (int) value;
+    }
+
+    static int sizeOfUnsigned(long value) {
+        // one byte per started group of 7 bits, at least one byte
+        final int bits = Long.SIZE - Long.numberOfLeadingZeros(value | 1L);
+        return (bits + PAYLOAD_BITS - 1) / PAYLOAD_BITS;
+    }
+
+    static void writeSigned(ByteBuffer buffer, long value) {
+        writeUnsigned(buffer, zigZag(value));
+    }
+
+    static long readSigned(ByteBuffer buffer) {
+        final long value = readUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the varint is not an int
+     */
+    static int readSignedInt(ByteBuffer buffer) {
+        final long value = readSigned(buffer);
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Malformed varint: " + value + " does not fit in an int");
+        }
+        return (int) value;
+    }
+
+    static int sizeOfSigned(long value) {
+        return sizeOfUnsigned(zigZag(value));
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> MAX_SHIFT);
+    }
+}
@@ -1,30 +1,48 @@
 package com.juliuskrah.crdt;
 
-import static java.util.stream.Collectors.toMap;
-import static java.util.stream.Collectors.toSet;
-
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Stream;
+import java.util.StringJoiner;
 
 /**
  * A vector clock used for tracking the time an object was created.
+ * Entries are kept as node ordinals (see {@link NodeIds}) sorted in ascending order, with the counters in a
+ * parallel {@code long[]}. Comparison, equality and dominance checks walk both clocks once and allocate nothing.
+ * <p>
+ * The arrays are never written once a clock holds them, so clocks share them: a clock advanced in a single entry,
+ * as by {@link #increment()}, keeps the arrays of the clock it advanced from and holds the advanced entry as a dot
+ * of its own. Every vertex a graph stamps between two merges thus shares the version vector of the graph and adds
+ * one dot, rather than copying an entry for every replica that ever touched the graph. The dot overrides the
+ * shared counter of its node, and every operation reads counters through it, so shared and copied clocks compare,
+ * merge, hash and equal alike.
  * @author Julius Krah
  */
 public final class VectorClock implements Comparable<VectorClock> {
+    private static final int[] NO_NODES = new int[0];
+    private static final long[] NO_COUNTERS = new long[0];
+    private static final int NO_DOT = -1;
     private final String key;
-    private final Map<String, Long> entries;
+    // entries, possibly shared with other clocks and never written
+    private final int[] nodes;
+    private final long[] counters;
+    // the index of the entry this clock advanced past the shared counters, NO_DOT when there is none
+    private final int dotIndex;
+    private final long dotCounter;
+
+    private VectorClock(String key, int[] nodes, long[] counters) {
+        this(key, nodes, counters, NO_DOT, 0L);
+    }
 
-    private VectorClock(String key, Map<String, Long> entries) {
+    private VectorClock(String key, int[] nodes, long[] counters, int dotIndex, long dotCounter) {
         this.key = key;
-        this.entries = entries;
+        this.nodes = nodes;
+        this.counters = counters;
+        this.dotIndex = dotIndex;
+        this.dotCounter = dotCounter;
     }
 
     private VectorClock(String key) {
-        this(key, Map.of());
+        this(key, NO_NODES, NO_COUNTERS);
     }
 
     public static VectorClock of(String key) {
@@ -32,30 +50,157 @@ public final class VectorClock implements Comparable<VectorClock> {
     }
 
     public static VectorClock of(String key, Map<String, Long> entries) {
-        return new VectorClock(key, entries);
+        int[] nodes = new int[entries.size()];
+        long[] counters = new long[entries.size()];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            nodes[i] = NodeIds.ordinal(entry.getKey());
+            counters[i++] = entry.getValue();
+        }
+        ClockEntries.sortByNode(nodes, counters);
+        return new VectorClock(key, nodes, counters);
+    }
+
+    /**
+     * @param key the node that owns the clock
+     * @param nodes node ordinals, see {@link NodeIds}; sorted in place together with counters
+     * @param counters the counter of every node
+     * @return the clock
+     */
+    static VectorClock of(String key, int[] nodes, long[] counters) {
+        ClockEntries.sortByNode(nodes, counters);
+        return new VectorClock(key, nodes, counters);
     }
 
     /**
      * increments the logical clock in the vector by 1.
+     * The entries of other nodes are carried over unchanged.
      * @return incremented VectorClock
      */
     public VectorClock increment() {
-        final long counter = entries.getOrDefault(key, 1L) + 1L;
-        // The internal state of the map must remain unchanged
-        return new VectorClock(key, Collections.unmodifiableMap(Map.of(key, counter)));
+        final int node = NodeIds.ordinal(key);
+        final int index = Arrays.binarySearch(nodes, node);
+        // a node's first tick starts from 2, as it always has
+        return withCounter(index, node, index >= 0 ? counterAtIndex(index) + 1 : 2L);
+    }
+
+    /**
+     * @param dot an event
+     * @return this clock advanced to cover the event, or this clock when it covers the event already
+     */
+    VectorClock merge(Dot dot) {
+        final int index = Arrays.binarySearch(nodes, dot.getNode());
+        if (index >= 0 && counterAtIndex(index) >= dot.getCounter()) {
+            return this;
+        }
+        return withCounter(index, dot.getNode(), dot.getCounter());
+    }
+
+    /**
+     * @param index the result of a binary search for the node
+     * @return this clock with the counter of the node set, sharing the arrays of this clock when it has no dot in
+     *     another entry
+     */
+    private VectorClock withCounter(int index, int node, long counter) {
+        if (index >= 0 && (dotIndex == NO_DOT || dotIndex == index)) {
+            return new VectorClock(key, nodes, counters, index, counter);
+        }
+        final long[] current = ownCounters();
+        if (index >= 0) {
+            current[index] = counter;
+            return new VectorClock(key, nodes, current);
+        }
+        final int insertAt = -index - 1;
+        int[] grownNodes = new int[nodes.length + 1];
+        long[] grownCounters = new long[nodes.length + 1];
+        System.arraycopy(nodes, 0, grownNodes, 0, insertAt);
+        System.arraycopy(current, 0, grownCounters, 0, insertAt);
+        grownNodes[insertAt] = node;
+        grownCounters[insertAt] = counter;
+        System.arraycopy(nodes, insertAt, grownNodes, insertAt + 1, nodes.length - insertAt);
+        System.arraycopy(current, insertAt, grownCounters, insertAt + 1, nodes.length - insertAt);
+        return new VectorClock(key, grownNodes, grownCounters);
+    }
+
+    /**
+     * @return a copy of the counters of this clock, with its dot applied
+     */
+    private long[] ownCounters() {
+        final long[] copy = counters.clone();
+        if (dotIndex != NO_DOT) {
+            copy[dotIndex] = dotCounter;
+        }
+        return copy;
+    }
+
+    /**
+     * Shares the arrays of another clock when this clock differs from it in one counter at most, as the clocks a
+     * replica stamps between two merges do.
+     * @param base a clock with the same nodes, e.g. the previous clock read from a message
+     * @return a clock equal to this clock, owned by the same node
+     */
+    VectorClock shareWith(VectorClock base) {
+        if (base == null || dotIndex != NO_DOT || !Arrays.equals(nodes, base.nodes)) {
+            return this;
+        }
+        final int differing = ClockEntries.differingIndex(counters, base.counters);
+        return differing == ClockEntries.SEVERAL ? this : withDotOver(base, differing);
+    }
+
+    /**
+     * @param differing the index of the only counter this clock differs from the base in, NO_DOT when none
+     * @return this clock sharing the arrays of the base, the differing counter as its dot
+     */
+    private VectorClock withDotOver(VectorClock base, int differing) {
+        final long counter = differing == NO_DOT ? 0L : counters[differing];
+        return new VectorClock(key, base.nodes, base.counters, differing, counter);
+    }
+
+    /**
+     * @return the node that owns this clock
+     */
+    String key() {
+        return this.key;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @param index an entry index below {@link #size()}
+     * @return the node ordinal of the entry
+     */
+    int nodeAtIndex(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * @param index an entry index below {@link #size()}
+     * @return the counter of the entry
+     */
+    long counterAtIndex(int index) {
+        return index == dotIndex ? dotCounter : counters[index];
+    }
+
+    /**
+     * @param node a node ordinal, see {@link NodeIds}
+     * @return the counter of the node, 0 when it never ticked this clock
+     */
+    long counter(int node) {
+        final int index = Arrays.binarySearch(nodes, node);
+        return index >= 0 ? counterAtIndex(index) : 0L;
     }
 
     /**
-     * Computes the difference between {@linkplain this} clock and {@linkplain other} clock.
-     * @param other another Vector clock to {@link #compareTo(VectorClock)}
-     * @return all differences
+     * @return the latest event of the node that owns this clock
      */
-    private Set<Long> calculateDiffs(VectorClock other) {
-        Set<String> allKeys = new HashSet<>(entries.keySet());
-        allKeys.addAll(other.entries.keySet());
-        return allKeys.stream().map(existingKey ->
-            entries.getOrDefault(existingKey, 0L) - other.entries.getOrDefault(key, 0L)
-        ).collect(toSet());
+    Dot dot() {
+        final int node = NodeIds.ordinal(key);
+        return Dot.of(node, counter(node));
     }
 
     /**
@@ -64,9 +209,39 @@ public final class VectorClock implements Comparable<VectorClock> {
      * @return merged clocks
      */
     public VectorClock merge(VectorClock other) {
-        Map<String, Long> merged = Stream.concat(entries.entrySet().stream(), other.entries.entrySet().stream())
-            .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, Math::max));
-        return new VectorClock(this.key, merged);
+        if (dominates(other)) {
+            // keeps sharing the arrays of this clock
+            return this;
+        }
+        final int[] mergedNodes = ClockEntries.union(this, other);
+        final long[] mergedCounters = new long[mergedNodes.length];
+        for (int k = 0; k < mergedNodes.length; k++) {
+            mergedCounters[k] = Math.max(counter(mergedNodes[k]), other.counter(mergedNodes[k]));
+        }
+        return new VectorClock(this.key, mergedNodes, mergedCounters);
+    }
+
+    /**
+     * Takes the minimum of every entry, the latest clock both clocks have seen.
+     * @param other another clock
+     * @return the clock dominated by both, owned by the node of this clock
+     */
+    VectorClock meet(VectorClock other) {
+        final int[] metNodes = ClockEntries.intersection(this, other);
+        final long[] metCounters = new long[metNodes.length];
+        for (int k = 0; k < metNodes.length; k++) {
+            metCounters[k] = Math.min(counter(metNodes[k]), other.counter(metNodes[k]));
+        }
+        return new VectorClock(this.key, metNodes, metCounters);
+    }
+
+    /**
+     * Checks whether every entry of this clock is at least the matching entry of other.
+     * @param other another clock
+     * @return true when this clock has seen everything other has
+     */
+    public boolean dominates(VectorClock other) {
+        return (ClockEntries.diffs(this, other) & ClockEntries.LESS) == 0;
     }
 
     /**
@@ -74,16 +249,23 @@ public final class VectorClock implements Comparable<VectorClock> {
      */
     @Override
     public int compareTo(VectorClock other) {
-        final Set<Long> diffs = calculateDiffs(other);
-        final boolean isGreater = diffs.stream().anyMatch(diff -> diff > 0);
-        final boolean isLess = diffs.stream().anyMatch(diff -> diff < 0);
-        if (isGreater && isLess) {
-            return this.key.compareTo(other.key);
+        final int diffs = ClockEntries.diffs(this, other);
+        if (diffs == ClockEntries.LESS || diffs == ClockEntries.GREATER) {
+            return diffs == ClockEntries.LESS ? -1 : 1;
         }
-        if (isLess) {
-            return -1;
+        // Concurrent or equal clocks are ordered by the number of events they have seen, then by their node id.
+        // A clock that happened before another has seen fewer events, so the order stays transitive, which a
+        // merge of last writer wins needs to reach the same result in any order.
+        final int order = Long.compare(events(), other.events());
+        return order != 0 ? order : key.compareTo(other.key);
+    }
+
+    private long events() {
+        long events = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            events += counterAtIndex(i);
         }
-        return isGreater ? 1 : key.compareTo(other.key);
+        return events;
     }
 
     /**
@@ -91,7 +273,11 @@ public final class VectorClock implements Comparable<VectorClock> {
      */
     @Override
     public String toString() {
-        return Objects.toString(entries, "entries");
+        var joiner = new StringJoiner(", ", "{", "}");
+        for (int i = 0; i < nodes.length; i++) {
+            joiner.add(NodeIds.name(nodes[i]) + "=" + counterAtIndex(i));
+        }
+        return joiner.toString();
     }
 
     /**
@@ -99,7 +285,13 @@ public final class VectorClock implements Comparable<VectorClock> {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(entries);
+        int hash = 1;
+        for (int i = 0; i < nodes.length; i++) {
+            // absent and zero entries are equal, so zeros must not contribute
+            final long counter = counterAtIndex(i);
+            hash += counter == 0L ? 0 : 31 * nodes[i] + Long.hashCode(counter);
+        }
+        return hash;
     }
 
     /**
@@ -114,6 +306,6 @@ public final class VectorClock implements Comparable<VectorClock> {
             return false;
         }
         VectorClock that = (VectorClock) o;
-        return calculateDiffs(that).stream().allMatch(diff -> diff == 0);
+        return ClockEntries.diffs(this, that) == ClockEntries.EQUAL;
     }
 }
@@ -40,7 +40,7 @@ public final class Vertex<E extends Comparable<E>> {
         }
         var vertex = (Vertex<?>) o;
 
-        return Objects.equals(vectorClock, vertex.vectorClock);
+        return Objects.equals(vectorClock, vertex.vectorClock) && Objects.equals(value, vertex.value);
     }
 
     /**
@@ -48,6 +48,6 @@ public final class Vertex<E extends Comparable<E>> {
      */
     @Override
     public int hashCode() {
-        return vectorClock.hashCode();
+        return 31 * vectorClock.hashCode() + Objects.hashCode(value);
     }
 }
@@ -0,0 +1,173 @@
+package com.juliuskrah.crdt;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AntiEntropyTest {
+    private static final int SIZE = 5_000;
+
+    /**
+     * Two replicas of a path of {@link #SIZE} vertices, merged both ways.
+     */
+    private static LwwElementGraph<Integer>[] pathReplicas() {
+        final var elementGraph1 = new LwwElementGraph<Integer>("node1");
+        final var elementGraph2 = new LwwElementGraph<Integer>("node2");
+        elementGraph1.batch(batch -> {
+            for (int i = 0; i < SIZE; i++) {
+                batch.addVertex(i);
+            }
+            for (int i = 1; i < SIZE; i++) {
+                batch.addEdge(i - 1, i);
+            }
+        });
+        elementGraph2.merge(elementGraph1);
+        elementGraph1.merge(elementGraph2);
+        @SuppressWarnings("unchecked")
+        final LwwElementGraph<Integer>[] replicas = new LwwElementGraph[] {elementGraph1, elementGraph2};
+        return replicas;
+    }
+
+    private static Edge<Integer> edgeOf(LwwElementGraph<Integer> elementGraph, int source, int destination) {
+        return Edge.of(Vertex.of(source, elementGraph.findVectorClock(source)),
+            Vertex.of(destination, elementGraph.findVectorClock(destination)));
+    }
+
+    private static void diverge(LwwElementGraph<Integer> elementGraph1, LwwElementGraph<Integer> elementGraph2) {
+        elementGraph1.addVertex(SIZE);
+        elementGraph1.addEdge(edgeOf(elementGraph1, SIZE, 0));
+        elementGraph1.removeVertex(7);
+        elementGraph2.addVertex(SIZE + 1);
+        elementGraph2.removeEdge(edgeOf(elementGraph2, 100, 101));
+        elementGraph2.removeVertex(11);
+        elementGraph2.addVertex(7);
+    }
+
+    private static void assertSameState(LwwElementGraph<Integer> expected, LwwElementGraph<Integer> actual) {
+        for (int i = 0; i < SIZE + 2; i++) {
+            assertEquals(expected.findVectorClock(i), actual.findVectorClock(i), "clock of " + i);
+            assertEquals(expected.containsVertex(i), actual.containsVertex(i), "vertex " + i);
+            assertEquals(expected.findAdjacentVertices(i).stream().collect(toSet()),
+                actual.findAdjacentVertices(i).stream().collect(toSet()), "adjacency of " + i);
+        }
+        assertEquals(expected.digests().digest(MerkleDigests.ROOT), actual.digests().digest(MerkleDigests.ROOT));
+    }
+
+    @Test
+    @DisplayName("exchange a single digest between replicas in sync")
+    void testInSync() {
+        final var replicas = pathReplicas();
+        final var sync = new AntiEntropy<>(replicas[0]).sync(new AntiEntropy<>(replicas[1]));
+        assertEquals(1, sync.getDigests());
+        assertEquals(0, sync.getBuckets());
+        assertEquals(0, sync.getEntries());
+    }
+
+    @Test
+    @DisplayName("exchange only the buckets that differ, leaving both replicas with the same state")
+    void testDiverged() {
+        final var replicas = pathReplicas();
+        // digests kept up to date while the graph changes, and built from the changed graph
+        final var antiEntropy1 = new AntiEntropy<>(replicas[0]);
+        diverge(replicas[0], replicas[1]);
+        final var antiEntropy2 = new AntiEntropy<>(replicas[1]);
+
+        final var expected = pathReplicas()[0];
+        final var other = new LwwElementGraph<Integer>("other");
+        diverge(expected, other);
+        expected.merge(replicas[1]);
+
+        final var sync = antiEntropy1.sync(antiEntropy2);
+        // seven elements changed, in as many buckets at most
+        assertTrue(sync.getBuckets() <= 7, sync.toString());
+        assertTrue(sync.getDigests() <= 1 + sync.getBuckets() * 4 * MerkleDigests.DEPTH / 2, sync.toString());
+        assertTrue(sync.getEntries() < SIZE / 20, sync.toString());
+        assertSameState(replicas[0], replicas[1]);
+        assertEquals(expected.findVectorClock(7), replicas[1].findVectorClock(7));
+        assertEquals(expected.findVectorClock(11), replicas[1].findVectorClock(11));
+
+        assertEquals(0, antiEntropy2.sync(antiEntropy1).getBuckets());
+    }
+
+    @Test
+    @DisplayName("sync through a loopback transport, sending a fraction of the state")
+    void testLoopback() {
+        final var replicas = pathReplicas();
+        diverge(replicas[0], replicas[1]);
+        final var codec = GraphCodec.of(ElementCodec.ofInteger());
+        final var remote = new AntiEntropy<>(replicas[1]);
+        final long[] bytes = new long[1];
+        final var transport = new AntiEntropyPeer<Integer>() {
+            @Override
+            public long[] digests(int[] nodes) {
+                bytes[0] += (long) nodes.length * (Integer.BYTES + Long.BYTES);
+                return remote.digests(nodes);
+            }
+
+            @Override
+            public GraphDelta<Integer> deltaOf(int[] nodes) {
+                bytes[0] += (long) nodes.length * Integer.BYTES;
+                return transfer(remote.deltaOf(nodes));
+            }
+
+            @Override
+            public void applyDelta(GraphDelta<Integer> delta) {
+                remote.applyDelta(transfer(delta));
+            }
+
+            private GraphDelta<Integer> transfer(GraphDelta<Integer> delta) {
+                final ByteBuffer buffer = codec.encode(delta);
+                bytes[0] += buffer.remaining();
+                return codec.decodeDelta(buffer);
+            }
+        };
+        new AntiEntropy<>(replicas[0]).sync(transport);
+        assertSameState(replicas[0], replicas[1]);
+        assertTrue(bytes[0] < codec.encode(replicas[1]).remaining() / 10, bytes[0] + " bytes");
+    }
+
+    @Test
+    @DisplayName("reject nodes outside the tree")
+    void testNoSuchNode() {
+        final var antiEntropy = new AntiEntropy<>(new LwwElementGraph<String>("node1"));
+        assertArrayEquals(new long[] {0, 0}, antiEntropy.digests(new int[] {MerkleDigests.ROOT, 2047}));
+        assertArrayEquals(new long[] {0}, antiEntropy.digests(new int[] {2048}));
+        assertThrows(IllegalArgumentException.class, () -> antiEntropy.digests(new int[] {0}));
+        assertThrows(IllegalArgumentException.class, () -> antiEntropy.digests(new int[] {-1}));
+        assertThrows(IllegalArgumentException.class, () -> antiEntropy.deltaOf(new int[] {1023}));
+    }
+
+    @Test
+    @DisplayName("split full buckets and send only what differs, however large the graph")
+    void testLargeGraph() {
+        final int size = 100_000;
+        final var elementGraph1 = new LwwElementGraph<Integer>("node1");
+        final var elementGraph2 = new LwwElementGraph<Integer>("node2");
+        elementGraph1.batch(batch -> {
+            for (int i = 0; i < size; i++) {
+                batch.addVertex(i);
+            }
+        });
+        elementGraph2.merge(elementGraph1);
+        elementGraph1.addVertex(size);
+        elementGraph1.addVertex(size + 1);
+        elementGraph2.removeVertex(5);
+
+        final var sync = new AntiEntropy<>(elementGraph1).sync(new AntiEntropy<>(elementGraph2));
+        // about a hundred elements a bucket, of which three changed
+        assertTrue(sync.getEntries() <= 3 * 2 * 8, sync.toString());
+        for (int i : new int[] {5, size, size + 1}) {
+            assertEquals(elementGraph1.findVectorClock(i), elementGraph2.findVectorClock(i), "clock of " + i);
+            assertEquals(elementGraph1.containsVertex(i), elementGraph2.containsVertex(i), "vertex " + i);
+        }
+        assertEquals(elementGraph1.digests().digest(MerkleDigests.ROOT),
+            elementGraph2.digests().digest(MerkleDigests.ROOT));
+    }
+}
@@ -0,0 +1,285 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests for {@link ConcurrentLwwElementGraph}.
+ */
+class ConcurrentLwwElementGraphTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 2_000;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void init() {
+        executor = Executors.newFixedThreadPool(THREADS * 2);
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Runs the writers together with readers that traverse the graph until every writer is done.
+     */
+    private void runConcurrently(List<Callable<Void>> writers, Runnable reader) throws Exception {
+        final var start = new CountDownLatch(1);
+        final var done = new AtomicBoolean();
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            readers.add(executor.submit(() -> {
+                start.await();
+                while (!done.get()) {
+                    reader.run();
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        for (Callable<Void> writer : writers) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return writer.call();
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        done.set(true);
+        for (Future<?> future : readers) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static long counterOf(ConcurrentLwwElementGraph<?> elementGraph) {
+        return elementGraph.getVectorClock().dot().getCounter();
+    }
+
+    private static Edge<String> edgeOf(ConcurrentLwwElementGraph<String> elementGraph, String source,
+            String destination) {
+        return Edge.of(
+            Vertex.of(source, elementGraph.findVectorClock(source)),
+            Vertex.of(destination, elementGraph.findVectorClock(destination))
+        );
+    }
+
+    @Test
+    @DisplayName("add vertices from many threads without losing a write or a clock tick")
+    void testConcurrentAddVertex() throws Exception {
+        final var elementGraph = new ConcurrentLwwElementGraph<String>("node 1");
+        List<Callable<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            writers.add(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    elementGraph.addVertex("vertex-" + thread + "-" + i);
+                }
+                return null;
+            });
+        }
+        runConcurrently(writers, () -> elementGraph.containsVertex("vertex-0-0"));
+
+        assertEquals(THREADS * OPERATIONS, elementGraph.vertexSize());
+        // the first tick of a clock yields 2
+        assertEquals(THREADS * OPERATIONS + 1, counterOf(elementGraph));
+    }
+
+    @Test
+    @DisplayName("the last add or remove of a contended vertex wins")
+    void testConcurrentAddRemoveVertex() throws Exception {
+        final var elementGraph = new ConcurrentLwwElementGraph<String>("node 1", LWWBias.REMOVE);
+        final var elements = List.of("julius", "james", "zumar", "alice", "freda");
+        List<Callable<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final var random = new Random(t);
+            writers.add(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    var element = elements.get(random.nextInt(elements.size()));
+                    if (random.nextBoolean()) {
+                        elementGraph.addVertex(element);
+                    } else {
+                        elementGraph.removeVertex(element);
+                    }
+                }
+                return null;
+            });
+        }
+        runConcurrently(writers, () -> elementGraph.findAnyPath("julius", "freda"));
+
+        assertEquals(THREADS * OPERATIONS + 1, counterOf(elementGraph));
+        for (String element : elements) {
+            assertTrue(elementGraph.containsVertex(element));
+            // one more write of each kind settles the vertex deterministically
+            elementGraph.addVertex(element);
+            assertTrue(elementGraph.findVectorClock(element) != null);
+            elementGraph.removeVertex(element);
+            assertNull(elementGraph.findVectorClock(element));
+        }
+        assertEquals(0, elementGraph.vertexSize());
+    }
+
+    @Test
+    @DisplayName("add and remove edges from many threads and keep them symmetric")
+    void testConcurrentEdges() throws Exception {
+        final var elementGraph = new ConcurrentLwwElementGraph<String>("node 1");
+        final int vertices = 32;
+        for (int i = 0; i < vertices; i++) {
+            elementGraph.addVertex("vertex-" + i);
+        }
+        List<Callable<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final var random = new Random(t);
+            writers.add(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    var edge = edgeOf(elementGraph, "vertex-" + random.nextInt(vertices),
+                        "vertex-" + random.nextInt(vertices));
+                    if (random.nextBoolean()) {
+                        assertTrue(elementGraph.addEdge(edge));
+                    } else {
+                        elementGraph.removeEdge(edge);
+                    }
+                }
+                return null;
+            });
+        }
+        runConcurrently(writers, () -> {
+            elementGraph.findAnyPath("vertex-0", "vertex-" + (vertices - 1));
+            elementGraph.findAdjacentVertices("vertex-0").forEach(Vertex::getValue);
+        });
+
+        assertEquals(vertices + THREADS * OPERATIONS + 1, counterOf(elementGraph));
+        for (int i = 0; i < vertices; i++) {
+            var element = "vertex-" + i;
+            for (Vertex<String> vertex : elementGraph.findAdjacentVertices(element)) {
+                assertTrue(elementGraph.findAdjacentVertices(vertex.getValue()).stream()
+                    .anyMatch(neighbor -> neighbor.getValue().equals(element)));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("find a path in order from source to destination")
+    void testFindAnyPath() {
+        final var elementGraph = new ConcurrentLwwElementGraph<String>("node 1");
+        elementGraph.addVertex("julius");
+        elementGraph.addVertex("james");
+        elementGraph.addVertex("alice");
+        elementGraph.addVertex("freda");
+        elementGraph.addEdge(edgeOf(elementGraph, "julius", "alice"));
+        elementGraph.addEdge(edgeOf(elementGraph, "alice", "freda"));
+        assertFalse(elementGraph.addEdge(Edge.of(
+            Vertex.of("kwame", VectorClock.of("node 1")),
+            Vertex.of("james", elementGraph.findVectorClock("james"))
+        )));
+
+        assertIterableEquals(List.of("julius", "alice", "freda"), elementGraph.findAnyPath("julius", "freda"));
+        assertTrue(elementGraph.findAnyPath("julius", "james").isEmpty());
+        elementGraph.removeEdge(edgeOf(elementGraph, "alice", "freda"));
+        assertTrue(elementGraph.findAnyPath("julius", "freda").isEmpty());
+    }
+
+    @Test
+    @DisplayName("find no path through, to or from a removed vertex")
+    void testFindAnyPathSkipsRemovedVertices() {
+        final var elementGraph = new ConcurrentLwwElementGraph<String>("node 1");
+        elementGraph.addVertex("julius");
+        elementGraph.addVertex("alice");
+        elementGraph.addVertex("freda");
+        elementGraph.addEdge(edgeOf(elementGraph, "julius", "alice"));
+        elementGraph.addEdge(edgeOf(elementGraph, "alice", "freda"));
+
+        // julius and freda keep their edges to alice after alice is removed
+        elementGraph.removeVertex("alice");
+        assertTrue(elementGraph.findAnyPath("julius", "freda").isEmpty());
+        assertTrue(elementGraph.findAnyPath("julius", "alice").isEmpty());
+        assertTrue(elementGraph.findAnyPath("alice", "alice").isEmpty());
+        elementGraph.removeVertex("julius");
+        assertTrue(elementGraph.findAnyPath("julius", "julius").isEmpty());
+    }
+
+    @Test
+    @DisplayName("merge replicas written concurrently and converge")
+    void testConcurrentMerge() throws Exception {
+        final var elementGraph1 = new ConcurrentLwwElementGraph<String>("node1");
+        final var elementGraph2 = new ConcurrentLwwElementGraph<String>("node2");
+        List<Callable<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final var random = new Random(t);
+            final var elementGraph = t % 2 == 0 ? elementGraph1 : elementGraph2;
+            writers.add(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    var element = "vertex-" + random.nextInt(64);
+                    if (random.nextInt(3) > 0) {
+                        elementGraph.addVertex(element);
+                    } else {
+                        elementGraph.removeVertex(element);
+                    }
+                }
+                return null;
+            });
+        }
+        runConcurrently(writers, () -> elementGraph1.merge(elementGraph2));
+
+        elementGraph1.merge(elementGraph2);
+        elementGraph2.merge(elementGraph1);
+        assertEquals(elementGraph1.vertexSize(), elementGraph2.vertexSize());
+        for (int i = 0; i < 64; i++) {
+            assertEquals(elementGraph1.findVectorClock("vertex-" + i), elementGraph2.findVectorClock("vertex-" + i));
+        }
+        assertEquals(elementGraph1.getVectorClock(), elementGraph2.getVectorClock());
+    }
+
+    @Test
+    @DisplayName("apply a delta of a single threaded graph like LwwElementGraph does")
+    void testApplyDelta() {
+        var source = new LwwElementGraph<String>("node1");
+        source.addVertex("julius");
+        source.addVertex("james");
+        source.addVertex("zumar");
+        source.addEdge(Edge.of(
+            Vertex.of("julius", source.findVectorClock("julius")),
+            Vertex.of("james", source.findVectorClock("james"))
+        ));
+        source.removeVertex("zumar");
+
+        final var elementGraph = new ConcurrentLwwElementGraph<String>("node2");
+        elementGraph.addVertex("zumar");
+        elementGraph.applyDelta(source.deltaSince(elementGraph.getVectorClock()));
+        var expected = new LwwElementGraph<String>("node3");
+        expected.addVertex("zumar");
+        expected.applyDelta(source.deltaSince(expected.getVectorClock()));
+
+        assertEquals(expected.vertexSize(), elementGraph.vertexSize());
+        for (String element : List.of("julius", "james")) {
+            assertEquals(expected.findVectorClock(element), elementGraph.findVectorClock(element));
+        }
+        // the remove of zumar is concurrent with the local add but has seen more events
+        assertNull(elementGraph.findVectorClock("zumar"));
+        assertNull(expected.findVectorClock("zumar"));
+        assertIterableEquals(List.of("julius", "james"), elementGraph.findAnyPath("julius", "james"));
+    }
+}
@@ -0,0 +1,430 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Behaviour every graph of long elements shares, whether generic or specialized. Each implementation runs the suite
+ * through a {@link Replica} of its own.
+ */
+abstract class ElementGraphContract {
+    static final int GRID = 5;
+
+    /**
+     * The operations of a graph of long elements, with edges between the vertices the elements are in the graph
+     * with.
+     */
+    interface Replica {
+        void addVertex(long element);
+
+        void removeVertex(long element);
+
+        boolean addEdge(long source, long destination);
+
+        void removeEdge(long source, long destination);
+
+        boolean containsVertex(long element);
+
+        VectorClock findVectorClock(long element);
+
+        /**
+         * @return the clock of every neighbour of the element
+         */
+        Map<Long, VectorClock> findAdjacentVertices(long element);
+
+        List<Long> findShortestPath(long source, long destination, int maxHops, int budget);
+
+        int vertexSize();
+
+        VectorClock getVectorClock();
+
+        /**
+         * @param other a replica of the same implementation
+         */
+        void merge(Replica other);
+    }
+
+    /**
+     * @return an empty replica of the implementation under test
+     */
+    abstract Replica replica(String nodeId, LWWBias bias);
+
+    Replica replica(String nodeId) {
+        return replica(nodeId, LWWBias.ADD);
+    }
+
+    static final class GenericReplica implements Replica {
+        // a clock no vertex has, for edges to elements that are not in the graph
+        private static final VectorClock NOT_LIVE = VectorClock.of("not live");
+        private final LwwElementGraph<Long> graph;
+
+        GenericReplica(String nodeId, LWWBias bias) {
+            this.graph = new LwwElementGraph<>(nodeId, bias);
+        }
+
+        private Vertex<Long> vertexOf(long element) {
+            final var clock = graph.findVectorClock(element);
+            return Vertex.of(element, clock == null ? NOT_LIVE : clock);
+        }
+
+        @Override
+        public void addVertex(long element) {
+            graph.addVertex(element);
+        }
+
+        @Override
+        public void removeVertex(long element) {
+            graph.removeVertex(element);
+        }
+
+        @Override
+        public boolean addEdge(long source, long destination) {
+            return graph.addEdge(Edge.of(vertexOf(source), vertexOf(destination)));
+        }
+
+        @Override
+        public void removeEdge(long source, long destination) {
+            graph.removeEdge(Edge.of(vertexOf(source), vertexOf(destination)));
+        }
+
+        @Override
+        public boolean containsVertex(long element) {
+            return graph.containsVertex(element);
+        }
+
+        @Override
+        public VectorClock findVectorClock(long element) {
+            return graph.findVectorClock(element);
+        }
+
+        @Override
+        public Map<Long, VectorClock> findAdjacentVertices(long element) {
+            final Map<Long, VectorClock> adjacentVertices = new HashMap<>();
+            graph.findAdjacentVertices(element)
+                .forEach(vertex -> adjacentVertices.put(vertex.getValue(), vertex.getVectorClock()));
+            return adjacentVertices;
+        }
+
+        @Override
+        public List<Long> findShortestPath(long source, long destination, int maxHops, int budget) {
+            return graph.findShortestPath(source, destination, maxHops, budget);
+        }
+
+        @Override
+        public int vertexSize() {
+            return graph.vertexSize();
+        }
+
+        @Override
+        public VectorClock getVectorClock() {
+            return graph.getVectorClock();
+        }
+
+        @Override
+        public void merge(Replica other) {
+            graph.merge(((GenericReplica) other).graph);
+        }
+    }
+
+    static final class LongReplica implements Replica {
+        private final LongLwwElementGraph graph;
+
+        LongReplica(String nodeId, LWWBias bias) {
+            this.graph = new LongLwwElementGraph(nodeId, bias);
+        }
+
+        @Override
+        public void addVertex(long element) {
+            graph.addVertex(element);
+        }
+
+        @Override
+        public void removeVertex(long element) {
+            graph.removeVertex(element);
+        }
+
+        @Override
+        public boolean addEdge(long source, long destination) {
+            return graph.addEdge(source, destination);
+        }
+
+        @Override
+        public void removeEdge(long source, long destination) {
+            graph.removeEdge(source, destination);
+        }
+
+        @Override
+        public boolean containsVertex(long element) {
+            return graph.containsVertex(element);
+        }
+
+        @Override
+        public VectorClock findVectorClock(long element) {
+            return graph.findVectorClock(element);
+        }
+
+        @Override
+        public Map<Long, VectorClock> findAdjacentVertices(long element) {
+            final Map<Long, VectorClock> adjacentVertices = new HashMap<>();
+            graph.forEachAdjacentVertex(element, (clock, neighbor) -> adjacentVertices.put(neighbor, clock));
+            return adjacentVertices;
+        }
+
+        @Override
+        public List<Long> findShortestPath(long source, long destination, int maxHops, int budget) {
+            final List<Long> path = new ArrayList<>();
+            for (long element : graph.findShortestPath(source, destination, maxHops, budget)) {
+                path.add(element);
+            }
+            return path;
+        }
+
+        @Override
+        public int vertexSize() {
+            return graph.vertexSize();
+        }
+
+        @Override
+        public VectorClock getVectorClock() {
+            return graph.getVectorClock();
+        }
+
+        @Override
+        public void merge(Replica other) {
+            graph.merge(((LongReplica) other).graph);
+        }
+    }
+
+    static List<Long> shortestPath(Replica replica, long source, long destination) {
+        return replica.findShortestPath(source, destination, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks that the path runs along edges of live vertices from source to destination. An edge may be in the
+     * adjacency of one end only, as a vertex removed and added again lost its neighbours while they kept it.
+     */
+    static void assertPath(Replica replica, long source, long destination, List<Long> path) {
+        assertEquals(source, (long) path.get(0));
+        assertEquals(destination, (long) path.get(path.size() - 1));
+        for (int i = 0; i < path.size(); i++) {
+            assertTrue(replica.findVectorClock(path.get(i)) != null, "dead vertex " + path.get(i));
+            if (i > 0) {
+                assertTrue(replica.findAdjacentVertices(path.get(i - 1)).containsKey(path.get(i))
+                    || replica.findAdjacentVertices(path.get(i)).containsKey(path.get(i - 1)),
+                    "no edge " + path.get(i - 1) + " " + path.get(i));
+            }
+        }
+    }
+
+    /**
+     * Connects the vertices of a grid, the vertex at row r and column c being r * GRID + c.
+     */
+    static void grid(Replica replica) {
+        for (long element = 0; element < GRID * GRID; element++) {
+            replica.addVertex(element);
+        }
+        for (int row = 0; row < GRID; row++) {
+            for (int column = 0; column < GRID; column++) {
+                final long element = row * GRID + column;
+                if (column + 1 < GRID) {
+                    replica.addEdge(element, element + 1);
+                }
+                if (row + 1 < GRID) {
+                    replica.addEdge(element, element + GRID);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("add and remove vertices")
+    void testAddAndRemoveVertex() {
+        final var replica = replica("node1");
+        replica.addVertex(1);
+        replica.addVertex(2);
+        replica.addVertex(3);
+        assertEquals(3, replica.vertexSize());
+        assertTrue(replica.containsVertex(2));
+        final var clock = replica.findVectorClock(2);
+        assertTrue(replica.getVectorClock().dominates(clock));
+
+        replica.removeVertex(2);
+        assertEquals(2, replica.vertexSize());
+        assertNull(replica.findVectorClock(2));
+        // the removed vertex stays in the graph, with the clock it was removed with
+        assertTrue(replica.containsVertex(2));
+        assertFalse(replica.containsVertex(9));
+        assertNull(replica.findVectorClock(9));
+
+        replica.addVertex(2);
+        assertEquals(3, replica.vertexSize());
+        assertTrue(replica.findVectorClock(2).compareTo(clock) > 0);
+    }
+
+    @Test
+    @DisplayName("add and remove edges between live vertices, ticking the clock on every call")
+    void testAddAndRemoveEdge() {
+        final var replica = replica("node1");
+        replica.addVertex(1);
+        replica.addVertex(2);
+        assertTrue(replica.addEdge(1, 2));
+        assertEquals(Map.of(2L, replica.findVectorClock(2)), replica.findAdjacentVertices(1));
+        assertEquals(Map.of(1L, replica.findVectorClock(1)), replica.findAdjacentVertices(2));
+
+        var clock = replica.getVectorClock();
+        assertFalse(replica.addEdge(1, 9));
+        assertTrue(replica.getVectorClock().compareTo(clock) > 0);
+        assertEquals(Set.of(2L), replica.findAdjacentVertices(1).keySet());
+        assertEquals(Map.of(), replica.findAdjacentVertices(9));
+
+        clock = replica.getVectorClock();
+        replica.removeEdge(1, 9);
+        assertTrue(replica.getVectorClock().compareTo(clock) > 0);
+        replica.removeEdge(2, 1);
+        assertEquals(Map.of(), replica.findAdjacentVertices(1));
+        assertEquals(Map.of(), replica.findAdjacentVertices(2));
+    }
+
+    @Test
+    @DisplayName("drop the edges of a removed vertex, and keep those of a vertex added again")
+    void testRemoveVertexDropsEdges() {
+        final var replica = replica("node1");
+        for (long element = 1; element <= 4; element++) {
+            replica.addVertex(element);
+        }
+        replica.addEdge(1, 2);
+        replica.addEdge(1, 3);
+        replica.addEdge(4, 2);
+        final var clock = replica.findVectorClock(4);
+
+        replica.addVertex(4);
+        assertNotEquals(clock, replica.findVectorClock(4));
+        // the vertex keeps its neighbours, which keep the clock they were connected with
+        assertEquals(Map.of(2L, replica.findVectorClock(2)), replica.findAdjacentVertices(4));
+        assertEquals(clock, replica.findAdjacentVertices(2).get(4L));
+
+        replica.removeVertex(1);
+        assertEquals(Map.of(), replica.findAdjacentVertices(1));
+        replica.addVertex(1);
+        assertEquals(Map.of(), replica.findAdjacentVertices(1));
+        assertFalse(replica.addEdge(1, 5));
+        assertTrue(replica.addEdge(1, 3));
+        assertEquals(Set.of(3L), replica.findAdjacentVertices(1).keySet());
+    }
+
+    @Test
+    @DisplayName("find a shortest path along live vertices, within the limits")
+    void testFindShortestPath() {
+        final var replica = replica("node1");
+        grid(replica);
+        final long last = GRID * GRID - 1;
+        var path = shortestPath(replica, 0, last);
+        assertEquals(2 * (GRID - 1) + 1, path.size());
+        assertPath(replica, 0, last, path);
+
+        // a wall across the middle row, with a gap at the end
+        for (int column = 0; column < GRID - 1; column++) {
+            replica.removeVertex(2 * GRID + column);
+        }
+        path = shortestPath(replica, 0, 4 * GRID);
+        assertEquals(2 * (GRID - 1) + 4 + 1, path.size());
+        assertPath(replica, 0, 4 * GRID, path);
+
+        assertEquals(List.of(), replica.findShortestPath(0, 4 * GRID, 2 * (GRID - 1) + 3, Integer.MAX_VALUE));
+        assertEquals(List.of(), replica.findShortestPath(0, 4 * GRID, Integer.MAX_VALUE, 1));
+        assertEquals(List.of(7L), shortestPath(replica, 7, 7));
+        assertEquals(List.of(), shortestPath(replica, 0, 2 * GRID));
+        assertEquals(List.of(), shortestPath(replica, 0, 99));
+    }
+
+    @Test
+    @DisplayName("converge after concurrent changes merge both ways")
+    void testMergeConverges() {
+        final var replica1 = replica("node1");
+        final var replica2 = replica("node2");
+        grid(replica1);
+        replica2.merge(replica1);
+        replica1.removeVertex(12);
+        replica1.addEdge(0, 24);
+        replica2.removeVertex(0);
+        replica2.addVertex(12);
+        replica2.addVertex(30);
+        replica2.addEdge(30, 24);
+
+        replica1.merge(replica2);
+        replica2.merge(replica1);
+        for (long element = 0; element <= 30; element++) {
+            assertEquals(replica1.findVectorClock(element), replica2.findVectorClock(element), "element " + element);
+            assertEquals(replica1.findAdjacentVertices(element), replica2.findAdjacentVertices(element),
+                "element " + element);
+        }
+        assertEquals(replica1.vertexSize(), replica2.vertexSize());
+        assertEquals(GRID * GRID, replica1.vertexSize());
+        // the later remove wins over the add, the later add over the remove
+        assertNull(replica1.findVectorClock(0));
+        assertTrue(replica1.findVectorClock(12) != null);
+        assertTrue(replica1.getVectorClock().dominates(replica2.getVectorClock()));
+    }
+
+    @Test
+    @DisplayName("bring an edge a replica removed back from a replica that kept it")
+    void testMergeUnitesAdjacency() {
+        final var replica1 = replica("node1");
+        final var replica2 = replica("node2");
+        replica1.addVertex(1);
+        replica1.addVertex(2);
+        replica1.addEdge(1, 2);
+        replica2.merge(replica1);
+        replica1.removeEdge(1, 2);
+
+        // replica 2 changed nothing since, so it has nothing to merge
+        replica1.merge(replica2);
+        assertEquals(Map.of(), replica1.findAdjacentVertices(1));
+        // the same vertex on both replicas, the adjacency is united, as a merge of the whole state would
+        replica2.merge(replica1);
+        assertEquals(Set.of(2L), replica2.findAdjacentVertices(1).keySet());
+        replica1.merge(replica2);
+        assertEquals(Set.of(2L), replica1.findAdjacentVertices(1).keySet());
+        assertEquals(Set.of(1L), replica1.findAdjacentVertices(2).keySet());
+    }
+
+    @Test
+    @DisplayName("resolve concurrent adds and removes of a vertex the same way on both replicas, whatever the bias")
+    void testConcurrentAddAndRemove() {
+        for (LWWBias bias : LWWBias.values()) {
+            final var replica1 = replica("node1", bias);
+            final var replica2 = replica("node2", bias);
+            replica1.addVertex(1);
+            replica1.addVertex(2);
+            replica2.merge(replica1);
+            replica2.removeVertex(1);
+            replica2.removeVertex(2);
+            replica2.removeVertex(2);
+            replica1.addVertex(2);
+            replica1.addVertex(1);
+            replica1.addVertex(1);
+            replica1.merge(replica2);
+            replica2.merge(replica1);
+            // the clocks are concurrent, the one with more events wins: the remove of 2 and the add of 1
+            for (long element = 1; element <= 2; element++) {
+                assertEquals(replica1.findVectorClock(element), replica2.findVectorClock(element), bias.name());
+            }
+            assertTrue(replica2.findVectorClock(1) != null, bias.name());
+            assertNull(replica2.findVectorClock(2), bias.name());
+            assertEquals(1, replica2.vertexSize(), bias.name());
+        }
+    }
+}
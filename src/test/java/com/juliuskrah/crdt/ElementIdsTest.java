@@ -0,0 +1,48 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ElementIdsTest {
+
+    @Test
+    @DisplayName("hand the id of a released element to the next new element")
+    void testReuseReleasedIds() {
+        final var ids = new ElementIds<String>();
+        final int julius = ids.intern("julius");
+        final int james = ids.intern("james");
+        assertEquals(julius, ids.intern("julius"));
+
+        assertTrue(ids.release("julius"));
+        assertFalse(ids.release("julius"));
+        assertEquals(ElementIds.NO_ID, ids.idOf("julius"));
+        assertNull(ids.elementOf(julius));
+        assertEquals(julius, ids.intern("zumar"));
+        assertEquals("zumar", ids.elementOf(julius));
+        assertEquals(james, ids.idOf("james"));
+        assertEquals(2, ids.size());
+    }
+
+    @Test
+    @DisplayName("keep shared views as they were when ids are released and interned")
+    void testSharedViews() {
+        final var ids = new ElementIds<String>();
+        final int julius = ids.intern("julius");
+        final var view = ids.share();
+
+        // while the view shares the table, new elements take new ids
+        assertTrue(ids.release("julius"));
+        ids.share();
+        final int zumar = ids.intern("zumar");
+        assertEquals(julius + 1, zumar);
+        assertEquals(julius, view.idOf("julius"));
+        assertEquals("julius", view.elementOf(julius));
+        assertEquals(1, view.size());
+        assertEquals(ElementIds.NO_ID, ids.idOf("julius"));
+    }
+}
@@ -0,0 +1,134 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+class ElementStatesTest {
+
+    /**
+     * A key whose hash is shared by other keys, so that runs of probes grow long.
+     */
+    private static final class Key implements Comparable<Key> {
+        private final int value;
+        private final int hash;
+
+        Key(int value) {
+            this(value, value / 2);
+        }
+
+        Key(int value, int hash) {
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            return Integer.compare(value, o.value);
+        }
+    }
+
+    private static void assertSameStates(Map<Key, VectorClock> expected, ElementStates<Key> actual, int keys) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < keys; i++) {
+            final var key = new Key(i);
+            final int slot = actual.find(key);
+            if (expected.containsKey(key)) {
+                assertTrue(slot >= 0, "lost " + i);
+                assertEquals(expected.get(key), actual.clockAt(slot));
+                assertEquals(i % 2 == 0, actual.containsAt(slot));
+            } else {
+                assertEquals(-1, slot, "kept " + i);
+            }
+        }
+    }
+
+    @RepeatedTest(10)
+    @DisplayName("find what was put until it is invalidated, like a hash map")
+    void testAgainstHashMap(RepetitionInfo repetition) {
+        final int keys = 500;
+        final var random = new Random(repetition.getCurrentRepetition());
+        final List<VectorClock> clocks = new ArrayList<>();
+        var clock = VectorClock.of("node1");
+        for (int i = 0; i < keys; i++) {
+            clock = clock.increment();
+            clocks.add(clock);
+        }
+        final Map<Key, VectorClock> expected = new HashMap<>();
+        final var actual = new ElementStates<Key>();
+        for (int i = 0; i < 20_000; i++) {
+            final int value = random.nextInt(keys);
+            final var key = new Key(value);
+            if (expected.containsKey(key)) {
+                actual.invalidate(key);
+                expected.remove(key);
+            } else {
+                actual.put(key, clocks.get(value), value % 2 == 0, null);
+                expected.put(key, clocks.get(value));
+            }
+            if (i % 100 == 0) {
+                assertSameStates(expected, actual, keys);
+            }
+        }
+        assertSameStates(expected, actual, keys);
+    }
+
+    @Test
+    @DisplayName("keep the rest of a run that wraps around the end of the table when an entry is invalidated")
+    void testWrappedRuns() {
+        final var clock = VectorClock.of("node1").increment();
+        final var random = new Random(42);
+        // every hash once, so that some runs start near the end of the smallest table
+        for (int hash = 0; hash < 64; hash++) {
+            final var actual = new ElementStates<Key>();
+            final List<Key> keys = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                keys.add(new Key(i, hash));
+                actual.put(keys.get(i), clock, true, null);
+            }
+            Collections.shuffle(keys, random);
+            while (!keys.isEmpty()) {
+                actual.invalidate(keys.remove(keys.size() - 1));
+                for (Key key : keys) {
+                    assertTrue(actual.find(key) >= 0, "lost " + key.value + " of hash " + hash);
+                }
+            }
+            assertEquals(0, actual.size());
+        }
+    }
+
+    @Test
+    @DisplayName("drop every state at once and fill the table again")
+    void testClear() {
+        final var actual = new ElementStates<Key>();
+        final var clock = VectorClock.of("node1").increment();
+        for (int i = 0; i < 100; i++) {
+            actual.put(new Key(i), clock, i % 2 == 0, null);
+        }
+        actual.clear();
+        assertSameStates(Map.of(), actual, 100);
+        actual.put(new Key(7), clock, false, null);
+        assertSameStates(Map.of(new Key(7), clock), actual, 100);
+    }
+}
@@ -0,0 +1,139 @@
+package com.juliuskrah.crdt;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class GraphCodecTest {
+
+    private LwwElementGraph<String> sampleGraph() {
+        final var elementGraph = new LwwElementGraph<String>("node1");
+        elementGraph.addVertex("julius");
+        elementGraph.addVertex("james");
+        elementGraph.addVertex("alice");
+        elementGraph.addEdge(Edge.of(
+            Vertex.of("julius", elementGraph.findVectorClock("julius")),
+            Vertex.of("james", elementGraph.findVectorClock("james"))
+        ));
+        elementGraph.removeVertex("alice");
+        return elementGraph;
+    }
+
+    @Test
+    @DisplayName("write and read back the state of a graph")
+    void testGraphRoundTrip() {
+        final var codec = GraphCodec.of(ElementCodec.ofString());
+        final var elementGraph = sampleGraph();
+
+        final var decoded = codec.decode(codec.encode(elementGraph), "node2", LWWBias.ADD);
+        assertEquals(elementGraph.vertexSize(), decoded.vertexSize());
+        assertEquals(elementGraph.findVectorClock("julius"), decoded.findVectorClock("julius"));
+        assertNull(decoded.findVectorClock("alice"));
+        assertIterableEquals(
+            List.of("james"),
+            decoded.findAdjacentVertices("julius").stream().map(Vertex::getValue).collect(toList())
+        );
+        assertEquals(elementGraph.getVectorClock(), decoded.getVectorClock());
+    }
+
+    @Test
+    @DisplayName("write a delta into a direct buffer of exactly its size")
+    void testDeltaIntoDirectBuffer() {
+        final var codec = GraphCodec.of(ElementCodec.ofString());
+        final var delta = sampleGraph().deltaSince(VectorClock.of("node2"));
+        final var buffer = ByteBuffer.allocateDirect(codec.sizeOf(delta));
+        codec.encode(delta, buffer);
+        assertEquals(0, buffer.remaining());
+
+        final var decoded = codec.decodeDelta(buffer.flip());
+        assertEquals(delta.size(), decoded.size());
+        assertEquals(delta.getVectorClock(), decoded.getVectorClock());
+        for (int i = 0; i < delta.size(); i++) {
+            assertEquals(delta.getEntries().get(i).getElement(), decoded.getEntries().get(i).getElement());
+            assertEquals(delta.getEntries().get(i).getChanges(), decoded.getEntries().get(i).getChanges());
+        }
+    }
+
+    @Test
+    @DisplayName("encode long elements as varints")
+    void testLongElements() {
+        final var codec = GraphCodec.of(ElementCodec.ofLong());
+        final var elementGraph = new LwwElementGraph<Long>("node1");
+        elementGraph.addVertex(Long.MIN_VALUE);
+        elementGraph.addVertex(-1L);
+        elementGraph.addVertex(Long.MAX_VALUE);
+
+        final var decoded = codec.decode(codec.encode(elementGraph), "node1", LWWBias.ADD);
+        assertEquals(3, decoded.vertexSize());
+        assertEquals(elementGraph.findVectorClock(Long.MIN_VALUE), decoded.findVectorClock(Long.MIN_VALUE));
+    }
+
+    @Test
+    @DisplayName("reject buffers of an unknown format version")
+    void testRejectUnknownVersion() {
+        final var codec = GraphCodec.of(ElementCodec.ofString());
+        final var buffer = codec.encode(sampleGraph());
+        buffer.put(Integer.BYTES, (byte) (GraphCodec.VERSION + 1));
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeDelta(buffer));
+    }
+
+    @Test
+    @DisplayName("reject buffers whose lengths, node ids or operation types are out of bounds")
+    void testRejectMalformedBuffers() {
+        final var codec = GraphCodec.of(ElementCodec.ofString());
+        // a dictionary longer than the buffer
+        final var tooLong = header(GraphCodec.MAGIC);
+        Varints.writeUnsigned(tooLong, 1L << 40);
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeDelta(tooLong.flip()));
+        // a clock keyed by a node id missing from the empty dictionary
+        final var unknownNode = header(GraphCodec.MAGIC);
+        Varints.writeUnsigned(unknownNode, 0);
+        Varints.writeUnsigned(unknownNode, 3);
+        Varints.writeUnsigned(unknownNode, 0);
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeDelta(unknownNode.flip()));
+        // an operation of an unknown type
+        final var unknownType = header(GraphCodec.OPERATION_MAGIC);
+        Varints.writeUnsigned(unknownType, 0);
+        unknownType.put((byte) GraphOperation.Type.values().length);
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeOperation(unknownType.flip()));
+        // a varint with bits beyond 64 in its tenth byte
+        final var overflow = header(GraphCodec.MAGIC);
+        for (int i = 0; i < 9; i++) {
+            overflow.put((byte) 0x80);
+        }
+        overflow.put((byte) 0x02);
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeDelta(overflow.flip()));
+    }
+
+    @Test
+    @DisplayName("reject truncated buffers and oversized elements")
+    void testRejectTruncatedBuffers() {
+        final var codec = GraphCodec.of(ElementCodec.ofString());
+        final var encoded = codec.encode(sampleGraph());
+        for (int length = 0; length < encoded.limit(); length++) {
+            final var truncated = encoded.duplicate().limit(length);
+            assertThrows(IllegalArgumentException.class, () -> codec.decodeDelta(truncated));
+        }
+        // a string longer than the direct buffer holding it
+        final var direct = ByteBuffer.allocateDirect(8);
+        Varints.writeUnsigned(direct, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> ElementCodec.ofString().decode(direct.flip()));
+        // an integer element that does not fit in an int
+        final var wide = ByteBuffer.allocate(16);
+        Varints.writeSigned(wide, 1L << 40);
+        assertThrows(IllegalArgumentException.class, () -> ElementCodec.ofInteger().decode(wide.flip()));
+    }
+
+    private static ByteBuffer header(int magic) {
+        return ByteBuffer.allocate(64).putInt(magic).put(GraphCodec.VERSION);
+    }
+}
@@ -0,0 +1,154 @@
+package com.juliuskrah.crdt;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GraphStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private GraphStore<String> open() throws IOException {
+        return GraphStore.open(directory, "node1", LWWBias.ADD, ElementCodec.ofString(),
+            GraphStore.Options.defaults().withSnapshotEvery(0));
+    }
+
+    private static void addFriends(LwwElementGraph<String> elementGraph) {
+        elementGraph.addVertex("julius");
+        elementGraph.addVertex("james");
+        elementGraph.addVertex("alice");
+        elementGraph.addEdge(Edge.of(
+            Vertex.of("julius", elementGraph.findVectorClock("julius")),
+            Vertex.of("james", elementGraph.findVectorClock("james"))
+        ));
+        elementGraph.removeVertex("alice");
+    }
+
+    @Test
+    @DisplayName("replay the operation log on restart")
+    void testReplayLog() throws IOException {
+        try (var store = open()) {
+            addFriends(store.getGraph());
+        }
+        try (var store = open()) {
+            final var elementGraph = store.getGraph();
+            assertEquals(2, elementGraph.vertexSize());
+            assertNull(elementGraph.findVectorClock("alice"));
+            assertIterableEquals(
+                List.of("james"),
+                elementGraph.findAdjacentVertices("julius").stream().map(Vertex::getValue).collect(toList())
+            );
+            // the local clock carries on where it left off
+            elementGraph.addVertex("freda");
+            assertTrue(elementGraph.findVectorClock("freda").compareTo(elementGraph.findVectorClock("james")) > 0);
+        }
+    }
+
+    @Test
+    @DisplayName("restore from a snapshot plus the log tail")
+    void testSnapshotAndTail() throws IOException {
+        try (var store = open()) {
+            addFriends(store.getGraph());
+            store.snapshot();
+            store.getGraph().addVertex("zumar");
+            var replica = new LwwElementGraph<String>("node2");
+            replica.addVertex("kwame");
+            store.getGraph().merge(replica);
+        }
+        assertEquals(1, files(".snapshot").size());
+        try (var store = open()) {
+            final var elementGraph = store.getGraph();
+            assertEquals(4, elementGraph.vertexSize());
+            assertTrue(elementGraph.containsVertex("zumar"));
+            assertTrue(elementGraph.containsVertex("kwame"));
+        }
+    }
+
+    @Test
+    @DisplayName("keep purged tombstones out after a restart")
+    void testSnapshotCompactionFloor() throws IOException {
+        var replica = new LwwElementGraph<String>("node2");
+        try (var store = open()) {
+            final var elementGraph = store.getGraph();
+            elementGraph.trackReplicas(List.of("node2"));
+            addFriends(elementGraph);
+            replica.merge(elementGraph);
+            elementGraph.merge(replica);
+            store.snapshot();
+            assertFalse(elementGraph.containsVertex("alice"));
+        }
+        try (var store = open()) {
+            final var elementGraph = store.getGraph();
+            elementGraph.applyDelta(replica.state());
+            assertEquals(2, elementGraph.vertexSize());
+            assertFalse(elementGraph.containsVertex("alice"));
+        }
+    }
+
+    @Test
+    @DisplayName("ignore a record torn by a crash")
+    void testTornRecord() throws IOException {
+        try (var store = open()) {
+            addFriends(store.getGraph());
+        }
+        var segment = files(".wal").get(0);
+        try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try (var store = open()) {
+            // the removal of alice was the last record
+            assertEquals(3, store.getGraph().vertexSize());
+        }
+    }
+
+    @Test
+    @DisplayName("reopen a store closed before any change and snapshot it twice in a row")
+    void testEmptySegments() throws IOException {
+        try (var store = open()) {
+            store.snapshot();
+            store.snapshot();
+        }
+        try (var store = open()) {
+            addFriends(store.getGraph());
+        }
+        try (var store = open()) {
+            assertEquals(2, store.getGraph().vertexSize());
+        }
+    }
+
+    @Test
+    @DisplayName("never overwrite a log segment that holds records")
+    void testKeepSegmentWithRecords() throws IOException {
+        try (var log = OperationLog.open(directory, 1 << 20, 1)) {
+            log.append(OperationLog.DELTA, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        }
+        assertThrows(IOException.class, () -> OperationLog.open(directory, 1 << 20, 1));
+        assertEquals(1, OperationLog.replay(directory, 0, (sequence, type, payload) -> { }));
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+
+class LongIntMapTest {
+    private static final long[] KEYS = {0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE};
+
+    private static long keyOf(Random random) {
+        // runs of consecutive keys around a few far apart ones
+        return KEYS[random.nextInt(KEYS.length)] + random.nextInt(200);
+    }
+
+    private static void assertSameEntries(Map<Long, Integer> expected, LongIntMap actual) {
+        assertEquals(expected.size(), actual.size());
+        for (long base : KEYS) {
+            for (int i = 0; i < 200; i++) {
+                assertEquals((int) expected.getOrDefault(base + i, LongIntMap.NO_VALUE), actual.get(base + i),
+                    "key " + (base + i));
+            }
+        }
+    }
+
+    @RepeatedTest(10)
+    @DisplayName("get what was put until it is removed, like a hash map")
+    void testAgainstHashMap(RepetitionInfo repetition) {
+        final var random = new Random(repetition.getCurrentRepetition());
+        final Map<Long, Integer> expected = new HashMap<>();
+        final var actual = new LongIntMap();
+        for (int i = 0; i < 20_000; i++) {
+            final long key = keyOf(random);
+            if (random.nextInt(3) == 0) {
+                assertEquals((int) expected.getOrDefault(key, LongIntMap.NO_VALUE), actual.remove(key));
+                expected.remove(key);
+            } else {
+                final int value = random.nextInt(Integer.MAX_VALUE);
+                actual.put(key, value);
+                expected.put(key, value);
+            }
+            if (i % 100 == 0) {
+                assertSameEntries(expected, actual);
+            }
+        }
+        assertSameEntries(expected, actual);
+    }
+}
@@ -0,0 +1,117 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+class LongLwwElementGraphTest extends ElementGraphContract {
+    private static final int REPETITIONS = 50;
+    private static final int REPLICAS = 3;
+    private static final int ELEMENTS = 12;
+
+    @Override
+    Replica replica(String nodeId, LWWBias bias) {
+        return new LongReplica(nodeId, bias);
+    }
+
+    private static boolean change(Replica replica, int operation, long source, long destination) {
+        switch (operation) {
+            case 0:
+                replica.addVertex(source);
+                return true;
+            case 1:
+                replica.removeVertex(source);
+                return true;
+            case 2:
+            case 3:
+                return replica.addEdge(source, destination);
+            default:
+                replica.removeEdge(source, destination);
+                return true;
+        }
+    }
+
+    private static void assertSameState(Replica expected, Replica actual, Random random, String message) {
+        assertEquals(expected.getVectorClock(), actual.getVectorClock(), message);
+        assertEquals(expected.vertexSize(), actual.vertexSize(), message);
+        for (long element = 0; element < ELEMENTS; element++) {
+            assertEquals(expected.containsVertex(element), actual.containsVertex(element), message + " " + element);
+            assertEquals(expected.findVectorClock(element), actual.findVectorClock(element), message + " " + element);
+            assertEquals(expected.findAdjacentVertices(element), actual.findAdjacentVertices(element),
+                message + " " + element);
+        }
+        for (int i = 0; i < ELEMENTS; i++) {
+            final long source = random.nextInt(ELEMENTS);
+            final long destination = random.nextInt(ELEMENTS);
+            final var path = shortestPath(actual, source, destination);
+            // the graphs visit neighbours in another order, so where an edge is in the adjacency of one end only the
+            // searches may meet at another vertex, and only whether there is a path must match
+            assertEquals(shortestPath(expected, source, destination).isEmpty(), path.isEmpty(), message);
+            if (!path.isEmpty()) {
+                assertPath(actual, source, destination, path);
+            }
+        }
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("reach the state the generic graph reaches through the same changes and merges")
+    void testSameAsGeneric(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var random = new Random(seed);
+        final List<Replica> generic = new ArrayList<>();
+        final List<Replica> specialized = new ArrayList<>();
+        for (int i = 0; i < REPLICAS; i++) {
+            final var bias = LWWBias.values()[(int) seed % 2];
+            generic.add(new GenericReplica("node" + i, bias));
+            specialized.add(new LongReplica("node" + i, bias));
+        }
+        for (int step = 0; step < 500; step++) {
+            final int target = random.nextInt(REPLICAS);
+            final int operation = random.nextInt(7);
+            if (operation == 6) {
+                final int other = random.nextInt(REPLICAS);
+                generic.get(target).merge(generic.get(other));
+                specialized.get(target).merge(specialized.get(other));
+            } else {
+                final long source = random.nextInt(ELEMENTS);
+                final long destination = random.nextInt(ELEMENTS);
+                assertEquals(change(generic.get(target), operation, source, destination),
+                    change(specialized.get(target), operation, source, destination), "seed " + seed);
+            }
+            if (step % 25 == 0) {
+                for (int i = 0; i < REPLICAS; i++) {
+                    assertSameState(generic.get(i), specialized.get(i), random, "seed " + seed + " step " + step);
+                }
+            }
+        }
+        for (int i = 0; i < REPLICAS; i++) {
+            assertSameState(generic.get(i), specialized.get(i), random, "seed " + seed);
+        }
+    }
+
+    @Test
+    @DisplayName("hand out neighbours and paths as arrays of elements")
+    void testPrimitiveResults() {
+        final var elementGraph = new LongLwwElementGraph("node1");
+        final long first = Long.MIN_VALUE;
+        final long last = Long.MAX_VALUE;
+        for (long element : new long[] {first, -1, 0, 1, last}) {
+            elementGraph.addVertex(element);
+        }
+        elementGraph.addEdge(first, 0);
+        elementGraph.addEdge(0, last);
+        assertArrayEquals(new long[] {first, last}, elementGraph.findAdjacentVertices(0));
+        assertArrayEquals(new long[] {first, 0, last}, elementGraph.findShortestPath(first, last));
+        assertArrayEquals(new long[] {first, 0, last}, elementGraph.findAnyPath(first, last));
+        assertArrayEquals(new long[0], elementGraph.findAdjacentVertices(1));
+    }
+}
@@ -0,0 +1,11 @@
+package com.juliuskrah.crdt;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+
+class LwwElementGraphContractTest extends ElementGraphContract {
+
+    @Override
+    Replica replica(String nodeId, LWWBias bias) {
+        return new GenericReplica(nodeId, bias);
+    }
+}
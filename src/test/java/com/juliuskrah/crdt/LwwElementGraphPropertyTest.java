@@ -0,0 +1,386 @@
+package com.juliuskrah.crdt;
+
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import com.juliuskrah.crdt.LwwElementGraph.Storage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+
+/**
+ * Randomized tests of the merge laws. Every repetition runs on its own seed, printed in the failure message,
+ * so a failing case can be replayed.
+ */
+class LwwElementGraphPropertyTest {
+    private static final int REPETITIONS = 50;
+    private static final int ELEMENTS = 12;
+
+    private static String elementOf(Random random) {
+        return "vertex-" + random.nextInt(ELEMENTS);
+    }
+
+    /**
+     * Applies random local changes, single and batched, to the graph.
+     */
+    private static void mutate(LwwElementGraph<String> elementGraph, Random random, int changes) {
+        for (int i = 0; i < changes; i++) {
+            final var source = elementOf(random);
+            final var destination = elementOf(random);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    elementGraph.addVertex(source);
+                    break;
+                case 2:
+                    elementGraph.removeVertex(source);
+                    break;
+                case 3:
+                    elementGraph.batch(batch -> batch.addVertex(source).addEdge(source, destination));
+                    break;
+                default:
+                    elementGraph.batch(batch -> batch.removeEdge(source, destination));
+            }
+        }
+    }
+
+    private static LwwElementGraph<String> copyOf(LwwElementGraph<String> elementGraph, String nodeId) {
+        return new LwwElementGraph<String>(nodeId).applyDelta(elementGraph.state());
+    }
+
+    /**
+     * @return the clock and the neighbours of every element in the graph. A removed element's add vertex is not
+     * compared, a local remove drops it while a merge keeps whichever add vertex the replica last saw.
+     */
+    private static Map<String, String> describe(LwwElementGraph<String> elementGraph) {
+        return describe(elementGraph.state(), elementGraph::findVectorClock, elementGraph::findAdjacentVertices);
+    }
+
+    private static Map<String, String> describe(GraphSnapshot<String> snapshot) {
+        return describe(snapshot.state(), snapshot::findVectorClock, snapshot::findAdjacentVertices);
+    }
+
+    private static Map<String, String> describe(GraphDelta<String> delta, Function<String, VectorClock> clocks,
+            Function<String, Collection<Vertex<String>>> adjacency) {
+        Map<String, String> state = new TreeMap<>();
+        for (GraphDelta.Entry<String> entry : delta.getEntries()) {
+            var clock = clocks.apply(entry.getElement());
+            if (clock != null) {
+                var adjacentVertices = adjacency.apply(entry.getElement()).stream()
+                    .map(vertex -> vertex.getValue() + vertex.getVectorClock())
+                    .collect(toCollection(TreeSet::new));
+                state.put(entry.getElement(), clock + " " + adjacentVertices);
+            }
+        }
+        return state;
+    }
+
+    private static List<LwwElementGraph<String>> replicas(Random random, int count) {
+        return replicas(random, count, Storage.HEAP);
+    }
+
+    private static List<LwwElementGraph<String>> replicas(Random random, int count, Storage storage) {
+        List<LwwElementGraph<String>> replicas = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var elementGraph = new LwwElementGraph<String>("node" + i, LWWBias.ADD, storage);
+            mutate(elementGraph, random, 20 + random.nextInt(20));
+            replicas.add(elementGraph);
+        }
+        return replicas;
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("replicas that merge in any order converge")
+    void testConvergence(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var random = new Random(seed);
+        final var replicas = replicas(random, 3);
+        // gossip between random pairs while the replicas keep changing
+        for (int round = 0; round < 10; round++) {
+            var target = replicas.get(random.nextInt(replicas.size()));
+            target.merge(replicas.get(random.nextInt(replicas.size())));
+            mutate(target, random, random.nextInt(5));
+        }
+        // a merge may log united state for the replicas that lack it, so gossip until nothing changes
+        List<VectorClock> clocks;
+        int passes = 0;
+        do {
+            clocks = replicas.stream().map(LwwElementGraph::getVectorClock).collect(toList());
+            for (LwwElementGraph<String> target : replicas) {
+                replicas.forEach(target::merge);
+            }
+            passes++;
+        } while (!clocks.equals(replicas.stream().map(LwwElementGraph::getVectorClock).collect(toList())));
+        assertTrue(passes <= 3, "seed " + seed + " took " + passes + " passes");
+
+        final var expected = describe(replicas.get(0));
+        for (LwwElementGraph<String> elementGraph : replicas) {
+            assertEquals(expected, describe(elementGraph), "seed " + seed);
+            assertEquals(replicas.get(0).getVectorClock(), elementGraph.getVectorClock(), "seed " + seed);
+        }
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("merge is commutative")
+    void testCommutativity(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var replicas = replicas(new Random(seed), 2);
+        final var elementGraph1 = replicas.get(0);
+        final var elementGraph2 = replicas.get(1);
+
+        final var merged1 = copyOf(elementGraph1, "copy").merge(elementGraph2);
+        final var merged2 = copyOf(elementGraph2, "copy").merge(elementGraph1);
+        assertEquals(describe(merged1), describe(merged2), "seed " + seed);
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("merge is idempotent")
+    void testIdempotence(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var replicas = replicas(new Random(seed), 2);
+        final var elementGraph = replicas.get(0).merge(replicas.get(1));
+
+        final var merged = describe(elementGraph);
+        elementGraph.merge(replicas.get(1)).merge(elementGraph);
+        assertEquals(merged, describe(elementGraph), "seed " + seed);
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("incremental merges back and forth match a merge of the whole state")
+    void testIncrementalMerge(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var random = new Random(seed);
+        final var replicas = replicas(random, 2);
+        final var elementGraph1 = replicas.get(0);
+        final var elementGraph2 = replicas.get(1);
+        // the replicas share some history before they diverge again
+        elementGraph1.merge(elementGraph2);
+        mutate(elementGraph1, random, 10);
+        mutate(elementGraph2, random, 10);
+
+        final var whole = copyOf(elementGraph1, "copy").applyDelta(elementGraph2.state());
+        // edges removed on one replica come back from the other, which logs them again on its merge
+        elementGraph1.merge(elementGraph2);
+        elementGraph2.merge(elementGraph1);
+        assertEquals(describe(whole), describe(elementGraph1.merge(elementGraph2)), "seed " + seed);
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("a parallel merge encodes to the same bytes as a sequential merge")
+    void testParallelMerge(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var random = new Random(seed);
+        final var replicas = replicas(random, 3);
+        replicas.get(0).merge(replicas.get(2));
+        mutate(replicas.get(0), random, 10);
+        final var codec = GraphCodec.of(ElementCodec.ofString());
+        final var pool = new ForkJoinPool(4);
+        try {
+            final var sequential = copyOf(replicas.get(0), "copy").merge(replicas.get(1)).merge(replicas.get(2));
+            final var parallel = copyOf(replicas.get(0), "copy").merge(replicas.get(1), pool)
+                .merge(replicas.get(2), pool);
+            assertEquals(codec.encode(sequential), codec.encode(parallel), "seed " + seed);
+            assertEquals(sequential.getVectorClock(), parallel.getVectorClock(), "seed " + seed);
+            assertEquals(describe(sequential), describe(parallel), "seed " + seed);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("a merge of many replicas in one pass matches merges one after the other in any order")
+    void testMergeAll(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var random = new Random(seed);
+        final var replicas = replicas(random, 6);
+        // some replicas share history, so they hold the same vertices with different adjacency
+        for (int round = 0; round < 6; round++) {
+            final var target = replicas.get(random.nextInt(replicas.size()));
+            target.merge(replicas.get(random.nextInt(replicas.size())));
+            mutate(target, random, random.nextInt(5));
+        }
+        final var others = new ArrayList<>(replicas.subList(1, replicas.size()));
+
+        final var mergedAll = copyOf(replicas.get(0), "copy").mergeAll(others);
+        for (int order = 0; order < 3; order++) {
+            Collections.shuffle(others, random);
+            final var folded = copyOf(replicas.get(0), "copy");
+            others.forEach(folded::merge);
+            assertEquals(describe(folded), describe(mergedAll), "seed " + seed);
+        }
+        // every replica merged gets the state it lacks back
+        for (LwwElementGraph<String> other : others) {
+            assertEquals(describe(mergedAll), describe(other.merge(mergedAll)), "seed " + seed);
+        }
+    }
+
+    /**
+     * Gossips between random pairs of replicas that keep changing, then until all have seen everything.
+     */
+    private static void gossip(List<LwwElementGraph<String>> replicas, Random random, boolean compact) {
+        for (int round = 0; round < 10; round++) {
+            var target = replicas.get(random.nextInt(replicas.size()));
+            target.merge(replicas.get(random.nextInt(replicas.size())));
+            mutate(target, random, random.nextInt(5));
+            if (compact) {
+                target.compact();
+            }
+        }
+        for (int pass = 0; pass < 3; pass++) {
+            for (LwwElementGraph<String> target : replicas) {
+                replicas.forEach(target::merge);
+            }
+        }
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("compacted replicas converge to the state of replicas that keep their tombstones")
+    void testCompaction(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var kept = replicas(new Random(seed), 3);
+        final var compacted = replicas(new Random(seed), 3);
+        for (LwwElementGraph<String> elementGraph : compacted) {
+            elementGraph.trackReplicas(List.of("node0", "node1", "node2"));
+            elementGraph.forgetReplica(elementGraph.getVectorClock().key());
+        }
+        gossip(kept, new Random(seed), false);
+        gossip(compacted, new Random(seed), true);
+        compacted.forEach(LwwElementGraph::compact);
+        // re-adding a purged element starts with no neighbours, as after a local remove, so only the vertices of
+        // the replicas that kept their tombstones are compared
+        final var expected = describe(compacted.get(0));
+        for (int i = 0; i < kept.size(); i++) {
+            assertEquals(vertices(kept.get(i)), vertices(compacted.get(i)), "seed " + seed);
+            assertEquals(expected, describe(compacted.get(i)), "seed " + seed);
+        }
+    }
+
+    /**
+     * @return the clock of every element in the graph
+     */
+    private static Map<String, VectorClock> vertices(LwwElementGraph<String> elementGraph) {
+        Map<String, VectorClock> vertices = new TreeMap<>();
+        for (int i = 0; i < ELEMENTS; i++) {
+            var clock = elementGraph.findVectorClock("vertex-" + i);
+            if (clock != null) {
+                vertices.put("vertex-" + i, clock);
+            }
+        }
+        return vertices;
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("adjacency off the heap behaves as on the heap, and a snapshot of it holds still")
+    void testOffHeapStorage(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var onHeap = replicas(new Random(seed), 3, Storage.HEAP);
+        final var offHeap = replicas(new Random(seed), 3, Storage.OFF_HEAP);
+        final var expected = describe(onHeap.get(0));
+        final var snapshot = offHeap.get(0).snapshot();
+        final var random = new Random(seed);
+        // parallel merges allocate off the heap from several threads
+        final var pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 10; round++) {
+                final int target = random.nextInt(onHeap.size());
+                final int source = random.nextInt(onHeap.size());
+                final long changes = random.nextLong();
+                onHeap.get(target).merge(onHeap.get(source));
+                offHeap.get(target).merge(offHeap.get(source), pool);
+                mutate(onHeap.get(target), new Random(changes), 5);
+                mutate(offHeap.get(target), new Random(changes), 5);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < onHeap.size(); i++) {
+            assertEquals(describe(onHeap.get(i)), describe(offHeap.get(i)), "seed " + seed);
+            assertEquals(onHeap.get(i).getVectorClock(), offHeap.get(i).getVectorClock(), "seed " + seed);
+        }
+        assertEquals(expected, describe(snapshot), "seed " + seed);
+    }
+
+    /**
+     * @return the vertices joined to the source by a path of live vertices, each listing the next or listed by it
+     */
+    private static Set<String> componentOf(LwwElementGraph<String> elementGraph, String source) {
+        final Map<String, Set<String>> edges = new TreeMap<>();
+        for (String element : vertices(elementGraph).keySet()) {
+            for (Vertex<String> neighbor : elementGraph.findAdjacentVertices(element)) {
+                if (elementGraph.findVectorClock(neighbor.getValue()) != null) {
+                    edges.computeIfAbsent(element, key -> new HashSet<>()).add(neighbor.getValue());
+                    edges.computeIfAbsent(neighbor.getValue(), key -> new HashSet<>()).add(element);
+                }
+            }
+        }
+        final Set<String> component = new HashSet<>(List.of(source));
+        final var queue = new ArrayDeque<>(component);
+        while (!queue.isEmpty()) {
+            for (String neighbor : edges.getOrDefault(queue.poll(), Set.of())) {
+                if (component.add(neighbor)) {
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return component;
+    }
+
+    private static void assertConnectivity(LwwElementGraph<String> elementGraph, long seed) {
+        final var live = vertices(elementGraph).keySet();
+        for (int i = 0; i < ELEMENTS; i++) {
+            final var source = "vertex-" + i;
+            final var component = live.contains(source) ? componentOf(elementGraph, source) : Set.of();
+            for (int j = 0; j < ELEMENTS; j++) {
+                final var destination = "vertex-" + j;
+                assertEquals(component.contains(destination), elementGraph.isConnected(source, destination),
+                    "seed " + seed + ", " + source + " to " + destination);
+                if (component.contains(destination)) {
+                    assertEquals(elementGraph.componentOf(source), elementGraph.componentOf(destination),
+                        "seed " + seed);
+                }
+            }
+        }
+    }
+
+    @RepeatedTest(REPETITIONS)
+    @DisplayName("connectivity index agrees with a search after every change and merge")
+    void testConnectivity(RepetitionInfo repetition) {
+        final long seed = repetition.getCurrentRepetition();
+        final var random = new Random(seed);
+        final var replicas = replicas(random, 3);
+        for (int round = 0; round < 10; round++) {
+            final var target = replicas.get(random.nextInt(replicas.size()));
+            target.merge(replicas.get(random.nextInt(replicas.size())));
+            assertConnectivity(target, seed);
+            for (int i = 0; i < 5; i++) {
+                final var source = elementOf(random);
+                final var destination = elementOf(random);
+                if (random.nextBoolean() && target.findVectorClock(source) != null
+                        && target.findVectorClock(destination) != null) {
+                    target.addEdge(Edge.of(Vertex.of(source, target.findVectorClock(source)),
+                        Vertex.of(destination, target.findVectorClock(destination))));
+                } else {
+                    mutate(target, random, 1);
+                }
+                assertConnectivity(target, seed);
+            }
+        }
+    }
+}
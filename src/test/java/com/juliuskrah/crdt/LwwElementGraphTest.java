@@ -1,14 +1,22 @@
 package com.juliuskrah.crdt;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.juliuskrah.crdt.GraphOperation.Type;
 import com.juliuskrah.crdt.LwwElementGraph.LWWBias;
+import com.juliuskrah.crdt.LwwElementGraph.Traversal;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -118,6 +126,39 @@ class LwwElementGraphTest {
         assertFalse(elementGraph.containsVertex("james"));
     }
 
+    @Test
+    @DisplayName("look vertices up by element as they are added, removed and added again")
+    void testVertexIndexLookups() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertex("julius");
+        elementGraph.addVertex("james");
+        final var firstClock = elementGraph.findVectorClock("julius");
+        elementGraph.addEdge(Edge.of(Vertex.of("julius", firstClock),
+            Vertex.of("james", elementGraph.findVectorClock("james"))));
+
+        // adding again replaces the entry of the element, keeping its neighbours
+        elementGraph.addVertex("julius");
+        assertEquals(2, elementGraph.vertexSize());
+        assertTrue(elementGraph.findVectorClock("julius").compareTo(firstClock) > 0);
+        assertEquals(Set.of("james"),
+            elementGraph.findAdjacentVertices("julius").stream().map(Vertex::getValue).collect(toSet()));
+
+        // a removed element keeps its entry as a tombstone, without a clock or neighbours
+        elementGraph.removeVertex("julius");
+        elementGraph.removeVertex("julius");
+        assertEquals(1, elementGraph.vertexSize());
+        assertTrue(elementGraph.containsVertex("julius"));
+        assertNull(elementGraph.findVectorClock("julius"));
+        assertTrue(elementGraph.findAdjacentVertices("julius").isEmpty());
+
+        elementGraph.addVertex("julius");
+        assertEquals(2, elementGraph.vertexSize());
+        assertTrue(elementGraph.findVectorClock("julius") != null);
+        assertTrue(elementGraph.findAdjacentVertices("julius").isEmpty());
+        assertFalse(elementGraph.containsVertex("zumar"));
+        assertNull(elementGraph.findVectorClock("zumar"));
+    }
+
     @Test
     @DisplayName("query for all vertices connected to a vertex")
     void testQueryVertices() {
@@ -141,12 +182,33 @@ class LwwElementGraphTest {
         elementGraph.addEdge(juliusJamesEdge);
 
         var verticesOfJulius = elementGraph.findAdjacentVertices("julius");
-        assertIterableEquals(
-            List.of("alice", "james"),
-            verticesOfJulius.stream().map(Vertex::getValue).collect(toList())
+        assertEquals(
+            Set.of("alice", "james"),
+            verticesOfJulius.stream().map(Vertex::getValue).collect(toSet())
         );
     }
 
+    @Test
+    @DisplayName("add the same edge twice and keep a single edge")
+    void testAddDuplicateEdge() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertex("julius");
+        elementGraph.addVertex("james");
+        var edge = Edge.of(
+            Vertex.of("julius", elementGraph.findVectorClock("julius")),
+            Vertex.of("james", elementGraph.findVectorClock("james"))
+        );
+        assertTrue(elementGraph.addEdge(edge));
+        assertTrue(elementGraph.addEdge(edge));
+        assertEquals(1, elementGraph.findAdjacentVertices("julius").size());
+        assertEquals(1, elementGraph.findAdjacentVertices("james").size());
+
+        // a single remove drops the edge from both ends
+        elementGraph.removeEdge(edge);
+        assertTrue(elementGraph.findAdjacentVertices("julius").isEmpty());
+        assertTrue(elementGraph.findAdjacentVertices("james").isEmpty());
+    }
+
     @Test
     @DisplayName("find any path between two vertices")
     void findPathBetweenVertices() {
@@ -173,6 +235,135 @@ class LwwElementGraphTest {
         assertTrue(Set.of("julius", "alice", "freda").containsAll(path));
     }
 
+    @Test
+    @DisplayName("find a shortest path within hop and visit limits")
+    void testFindShortestPath() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertices(List.of("julius", "james", "zumar", "alice", "freda"));
+        elementGraph.batch(batch -> batch
+            .addEdge("julius", "alice")
+            .addEdge("alice", "freda")
+            .addEdge("freda", "zumar")
+            .addEdge("julius", "james")
+            .addEdge("james", "zumar"));
+
+        assertIterableEquals(List.of("julius", "james", "zumar"), elementGraph.findShortestPath("julius", "zumar"));
+        assertIterableEquals(List.of("julius"), elementGraph.findShortestPath("julius", "julius"));
+        assertTrue(elementGraph.findShortestPath("julius", "zumar", 1, Integer.MAX_VALUE).isEmpty());
+        assertEquals(3, elementGraph.findShortestPath("julius", "zumar", 2, Integer.MAX_VALUE).size());
+        assertTrue(elementGraph.findShortestPath("julius", "zumar", Integer.MAX_VALUE, 0).isEmpty());
+
+        // paths do not run through removed vertices
+        elementGraph.removeVertex("james");
+        assertIterableEquals(List.of("julius", "alice", "freda", "zumar"),
+            elementGraph.findShortestPath("julius", "zumar"));
+        assertTrue(elementGraph.findShortestPath("julius", "james").isEmpty());
+        assertTrue(elementGraph.findShortestPath("julius", "kwame").isEmpty());
+    }
+
+    @Test
+    @DisplayName("find paths over vertices that are removed and added again")
+    void testFindPathOverReAddedVertices() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertices(List.of("julius", "james", "zumar"));
+        elementGraph.batch(batch -> batch
+            .addEdge("julius", "james")
+            .addEdge("james", "zumar"));
+        assertEquals(Set.of("julius", "james", "zumar"), elementGraph.findAnyPath("julius", "zumar"));
+
+        // a removed vertex neither ends nor carries a path
+        elementGraph.removeVertex("james");
+        assertTrue(elementGraph.findAnyPath("julius", "zumar").isEmpty());
+        assertTrue(elementGraph.findAnyPath("james", "james").isEmpty());
+        assertTrue(elementGraph.findShortestPath("james", "james").isEmpty());
+
+        // added again, the vertex comes back without the edges it lost
+        elementGraph.addVertex("james");
+        assertIterableEquals(List.of("james"), elementGraph.findShortestPath("james", "james"));
+        assertTrue(elementGraph.findAnyPath("julius", "zumar").isEmpty());
+        assertTrue(elementGraph.findShortestPath("julius", "zumar").isEmpty());
+
+        elementGraph.batch(batch -> batch
+            .addEdge("julius", "james")
+            .addEdge("james", "zumar"));
+        assertEquals(Set.of("julius", "james", "zumar"), elementGraph.findAnyPath("julius", "zumar"));
+        assertIterableEquals(List.of("julius", "james", "zumar"), elementGraph.findShortestPath("julius", "zumar"));
+    }
+
+    @Test
+    @DisplayName("find a shortest path across a grid")
+    void testFindShortestPathOnGrid() {
+        final int side = 20;
+        final var elementGraph = new LwwElementGraph<Integer>("node 1");
+        elementGraph.batch(batch -> {
+            for (int i = 0; i < side * side; i++) {
+                batch.addVertex(i);
+            }
+            for (int i = 0; i < side * side; i++) {
+                if (i % side > 0) {
+                    batch.addEdge(i - 1, i);
+                }
+                if (i >= side) {
+                    batch.addEdge(i - side, i);
+                }
+            }
+        });
+
+        var path = elementGraph.findShortestPath(0, side * side - 1);
+        // the manhattan distance between opposite corners, in vertices
+        assertEquals(2 * side - 1, path.size());
+        for (int i = 1; i < path.size(); i++) {
+            final var previous = path.get(i - 1);
+            assertTrue(elementGraph.findAdjacentVertices(path.get(i)).stream()
+                .anyMatch(vertex -> vertex.getValue().equals(previous)));
+        }
+        assertEquals(Set.copyOf(path), elementGraph.findAnyPath(0, side * side - 1));
+    }
+
+    @Test
+    @DisplayName("stream the vertices reachable from a vertex")
+    void testReachableFrom() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertices(List.of("julius", "james", "zumar", "alice", "freda", "kwame"));
+        elementGraph.batch(batch -> batch
+            .addEdge("julius", "alice")
+            .addEdge("alice", "freda")
+            .addEdge("julius", "james")
+            .addEdge("zumar", "kwame"));
+
+        // neighbours are visited in no particular order, but level by level breadth first
+        final var breadthFirst = elementGraph.reachableFrom("julius").collect(toList());
+        assertEquals("julius", breadthFirst.get(0));
+        assertEquals(Set.of("alice", "james"), Set.copyOf(breadthFirst.subList(1, 3)));
+        assertEquals("freda", breadthFirst.get(3));
+        assertTrue(Set.of(List.of("julius", "james", "alice", "freda"), List.of("julius", "alice", "freda", "james"))
+            .contains(elementGraph.reachableFrom("julius", Traversal.DEPTH_FIRST).collect(toList())));
+        assertEquals(Set.of("zumar", "kwame"), elementGraph.reachableFrom("kwame").collect(toSet()));
+        assertEquals(0, elementGraph.reachableFrom("kofi").count());
+
+        elementGraph.removeVertex("alice");
+        assertEquals(Set.of("julius", "james"), elementGraph.reachableFrom("julius").collect(toSet()));
+    }
+
+    @Test
+    @DisplayName("stop a traversal early and consume it in parallel")
+    void testReachableFromLazily() {
+        final int size = 10_000;
+        final var elementGraph = new LwwElementGraph<Integer>("node 1");
+        elementGraph.batch(batch -> {
+            for (int i = 0; i < size; i++) {
+                batch.addVertex(i);
+            }
+            for (int i = 1; i < size; i++) {
+                batch.addEdge(i - 1, i);
+            }
+        });
+
+        assertIterableEquals(List.of(0, 1, 2), elementGraph.reachableFrom(0).limit(3).collect(toList()));
+        assertTrue(elementGraph.reachableFrom(size / 2, Traversal.DEPTH_FIRST).anyMatch(i -> i == 0));
+        assertEquals(size, elementGraph.reachableFrom(0).parallel().map(i -> i * 2).collect(toSet()).size());
+    }
+
     @Test
     @DisplayName("merge with concurrent changes from other graph/replica")
     void testMergeTwoReplicas() {
@@ -193,4 +384,340 @@ class LwwElementGraphTest {
         elementGraph1.merge(elementGraph2);
         assertEquals(3, elementGraph1.vertexSize());
     }
+
+    @Test
+    @DisplayName("commit a batch of changes with a single clock tick")
+    void testBatch() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertex("zumar");
+        final var before = elementGraph.getVectorClock();
+        elementGraph.batch(batch -> batch
+            .addVertex("julius")
+            .addVertex("james")
+            .addVertex("alice")
+            .addEdge("julius", "james")
+            .addEdge("julius", "kwame") // kwame is not in the graph
+            .removeVertex("alice")
+            .removeVertex("zumar")
+            .addVertex("zumar"));
+
+        assertEquals(before.increment(), elementGraph.getVectorClock());
+        assertEquals(3, elementGraph.vertexSize());
+        assertEquals(elementGraph.getVectorClock(), elementGraph.findVectorClock("julius"));
+        assertEquals(elementGraph.getVectorClock(), elementGraph.findVectorClock("zumar"));
+        assertTrue(elementGraph.findVectorClock("alice") == null);
+        assertIterableEquals(
+            List.of("james"),
+            elementGraph.findAdjacentVertices("julius").stream().map(Vertex::getValue).collect(toList())
+        );
+
+        elementGraph.batch(batch -> batch.removeEdge("julius", "james"));
+        assertTrue(elementGraph.findAdjacentVertices("julius").isEmpty());
+    }
+
+    @Test
+    @DisplayName("replicate a batch like the single changes it is made of")
+    void testBatchDelta() {
+        var elementGraph1 = new LwwElementGraph<String>("node1");
+        var elementGraph2 = new LwwElementGraph<String>("node2");
+        List<GraphDelta<String>> deltas = new ArrayList<>();
+        elementGraph1.addOperationListener(new GraphOperationListener<>() {
+            @Override
+            public void onOperation(GraphOperation<String> operation) {
+                // batches arrive as deltas
+            }
+
+            @Override
+            public void onDelta(GraphDelta<String> delta) {
+                deltas.add(delta);
+            }
+        });
+        elementGraph1.addVertices(List.of("julius", "james", "zumar"));
+        elementGraph1.batch(batch -> batch.addEdge("julius", "james").removeVertex("zumar"));
+        assertEquals(2, deltas.size());
+
+        deltas.forEach(elementGraph2::applyDelta);
+        assertEquals(2, elementGraph2.vertexSize());
+        assertEquals(elementGraph1.findVectorClock("julius"), elementGraph2.findVectorClock("julius"));
+        assertIterableEquals(
+            List.of("james"),
+            elementGraph2.findAdjacentVertices("julius").stream().map(Vertex::getValue).collect(toList())
+        );
+        assertTrue(elementGraph1.deltaSince(elementGraph2.getVectorClock()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("ship only the changes another replica has not seen")
+    void testDeltaSinceClock() {
+        var elementGraph1 = new LwwElementGraph<String>("node1");
+        var elementGraph2 = new LwwElementGraph<String>("node2");
+        elementGraph1.addVertex("julius");
+        elementGraph1.addVertex("james");
+        elementGraph2.applyDelta(elementGraph1.deltaSince(elementGraph2.getVectorClock()));
+        assertEquals(2, elementGraph2.vertexSize());
+
+        // node2 has seen julius and james, only the new changes travel
+        elementGraph1.addVertex("alice");
+        elementGraph1.removeVertex("julius");
+        var delta = elementGraph1.deltaSince(elementGraph2.getVectorClock());
+        assertEquals(Set.of("alice", "julius"),
+            delta.getEntries().stream().map(GraphDelta.Entry::getElement).collect(toSet()));
+
+        elementGraph2.applyDelta(delta);
+        assertEquals(2, elementGraph2.vertexSize());
+        assertTrue(elementGraph2.findVectorClock("alice") != null);
+        assertTrue(elementGraph2.findVectorClock("julius") == null);
+        assertTrue(elementGraph1.deltaSince(elementGraph2.getVectorClock()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("apply deltas in both directions to converge like a full merge")
+    void testApplyDeltaConverges() {
+        var elementGraph1 = new LwwElementGraph<String>("node1");
+        var elementGraph2 = new LwwElementGraph<String>("node2");
+        elementGraph1.addVertex("julius");
+        elementGraph1.addVertex("james");
+        elementGraph1.addEdge(Edge.of(
+            Vertex.of("julius", elementGraph1.findVectorClock("julius")),
+            Vertex.of("james", elementGraph1.findVectorClock("james"))
+        ));
+        elementGraph2.addVertex("zumar");
+        elementGraph2.removeVertex("julius");
+
+        var delta1 = elementGraph1.deltaSince(elementGraph2.getVectorClock());
+        var delta2 = elementGraph2.deltaSince(elementGraph1.getVectorClock());
+        elementGraph1.applyDelta(delta2);
+        elementGraph2.applyDelta(delta1);
+
+        assertEquals(elementGraph1.vertexSize(), elementGraph2.vertexSize());
+        assertEquals(elementGraph1.findVectorClock("james"), elementGraph2.findVectorClock("james"));
+        assertEquals(elementGraph1.findVectorClock("julius"), elementGraph2.findVectorClock("julius"));
+        assertIterableEquals(
+            elementGraph1.findAdjacentVertices("james").stream().map(Vertex::getValue).collect(toList()),
+            elementGraph2.findAdjacentVertices("james").stream().map(Vertex::getValue).collect(toList())
+        );
+    }
+
+    @Test
+    @DisplayName("merge many replicas at once, logging the state a replica lacks")
+    void testMergeAll() {
+        var elementGraph1 = new LwwElementGraph<String>("node1");
+        elementGraph1.addVertex("julius");
+        elementGraph1.addVertex("james");
+        var edge = Edge.of(
+            Vertex.of("julius", elementGraph1.findVectorClock("julius")),
+            Vertex.of("james", elementGraph1.findVectorClock("james"))
+        );
+        elementGraph1.addEdge(edge);
+        // node2 has seen the edge and removed it, node3 has changes of its own
+        var elementGraph2 = new LwwElementGraph<String>("node2").merge(elementGraph1);
+        elementGraph2.removeEdge(edge);
+        var elementGraph3 = new LwwElementGraph<String>("node3");
+        elementGraph3.addVertex("zumar");
+        elementGraph3.addVertex("james");
+
+        elementGraph1.mergeAll(List.of(elementGraph2, elementGraph3));
+        assertEquals(3, elementGraph1.vertexSize());
+        assertTrue(elementGraph1.getVectorClock().dominates(elementGraph2.getVectorClock()));
+        assertTrue(elementGraph1.getVectorClock().dominates(elementGraph3.getVectorClock()));
+        // the edge node1 still holds is logged again, as node2 has seen every change of julius before
+        assertEquals(1, elementGraph1.findAdjacentVertices("julius").size());
+        elementGraph2.merge(elementGraph1);
+        assertEquals(1, elementGraph2.findAdjacentVertices("julius").size());
+    }
+
+    @Test
+    @DisplayName("purge the tombstones every replica has seen, without bringing them back on merge")
+    void testCompact() {
+        var elementGraph1 = new LwwElementGraph<String>("node1");
+        var elementGraph2 = new LwwElementGraph<String>("node2");
+        elementGraph1.trackReplicas(List.of("node2"));
+        elementGraph1.addVertex("julius");
+        elementGraph1.addVertex("james");
+        elementGraph1.removeVertex("julius");
+
+        // node2 has not seen the removal yet
+        assertEquals(0, elementGraph1.compact().getTombstones());
+        assertTrue(elementGraph1.containsVertex("julius"));
+
+        elementGraph2.merge(elementGraph1);
+        elementGraph1.merge(elementGraph2);
+        var compaction = elementGraph1.compact();
+        assertEquals(1, compaction.getTombstones());
+        assertTrue(compaction.getBytesReclaimed() > 0);
+        assertFalse(elementGraph1.containsVertex("julius"));
+        assertTrue(elementGraph1.containsVertex("james"));
+
+        // the whole state of a replica that did not compact holds the tombstone
+        elementGraph1.applyDelta(elementGraph2.state());
+        assertFalse(elementGraph1.containsVertex("julius"));
+        // a later add does come through
+        elementGraph2.addVertex("julius");
+        elementGraph1.merge(elementGraph2);
+        assertEquals(elementGraph2.findVectorClock("julius"), elementGraph1.findVectorClock("julius"));
+    }
+
+    @Test
+    @DisplayName("release the ids of purged elements without changing snapshots taken before")
+    void testCompactReleasesIds() {
+        final var elementGraph = new LwwElementGraph<String>("node1");
+        elementGraph.trackReplicas(List.of());
+        elementGraph.addVertices(List.of("julius", "james", "zumar"));
+        elementGraph.batch(batch -> batch.addEdge("julius", "james").addEdge("james", "zumar"));
+        final var snapshot = elementGraph.snapshot();
+
+        elementGraph.removeVertex("james");
+        assertEquals(1, elementGraph.compact().getTombstones());
+        // kwame takes the id james had
+        elementGraph.addVertex("kwame");
+        elementGraph.batch(batch -> batch.addEdge("julius", "kwame").addEdge("kwame", "zumar"));
+
+        assertIterableEquals(List.of("julius", "james", "zumar"), snapshot.findShortestPath("julius", "zumar"));
+        assertEquals(Set.of("julius", "james", "zumar"), snapshot.reachableFrom("julius").collect(toSet()));
+        assertIterableEquals(List.of("julius", "kwame", "zumar"), elementGraph.findShortestPath("julius", "zumar"));
+        assertEquals(Set.of("julius", "kwame", "zumar"), elementGraph.reachableFrom("julius").collect(toSet()));
+        assertTrue(elementGraph.isConnected("julius", "zumar"));
+        assertFalse(elementGraph.containsVertex("james"));
+    }
+
+    @Test
+    @DisplayName("keep every tombstone while replicas are not tracked")
+    void testCompactUntracked() {
+        var elementGraph = new LwwElementGraph<String>("node1");
+        elementGraph.addVertex("julius");
+        elementGraph.removeVertex("julius");
+        assertEquals(0, elementGraph.compact().getTombstones());
+
+        elementGraph.trackReplicas(List.of());
+        assertEquals(1, elementGraph.compact().getTombstones());
+    }
+
+    @Test
+    @DisplayName("read a snapshot that later changes of the graph do not reach")
+    void testSnapshot() {
+        final var elementGraph = new LwwElementGraph<String>("node 1");
+        elementGraph.addVertices(List.of("julius", "james", "alice"));
+        elementGraph.batch(batch -> batch.addEdge("julius", "james").addEdge("james", "alice"));
+        final var clock = elementGraph.getVectorClock();
+        final var snapshot = elementGraph.snapshot();
+
+        elementGraph.removeVertex("james");
+        elementGraph.addVertex("zumar");
+        elementGraph.batch(batch -> batch.addEdge("julius", "zumar"));
+
+        assertEquals(clock, snapshot.getVectorClock());
+        assertEquals(3, snapshot.vertexSize());
+        assertFalse(snapshot.containsVertex("zumar"));
+        assertEquals(Set.of("james"),
+            snapshot.findAdjacentVertices("julius").stream().map(Vertex::getValue).collect(toSet()));
+        assertIterableEquals(List.of("julius", "james", "alice"), snapshot.findShortestPath("julius", "alice"));
+        assertEquals(Set.of("julius", "james", "alice"), snapshot.reachableFrom("julius").collect(toSet()));
+        assertTrue(elementGraph.findAnyPath("julius", "alice").isEmpty());
+        assertTrue(elementGraph.findAdjacentVertices("julius").stream().anyMatch(vertex -> vertex.getValue()
+            .equals("zumar")));
+
+        // the state of the snapshot restores the graph as it was
+        final var restored = new LwwElementGraph<String>("node 2").applyDelta(snapshot.state());
+        assertEquals(3, restored.vertexSize());
+        assertEquals(snapshot.findVectorClock("james"), restored.findVectorClock("james"));
+        assertTrue(snapshot.deltaSince(clock).isEmpty());
+        restored.merge(elementGraph);
+        assertEquals(Set.of("julius", "zumar"), restored.reachableFrom("julius").collect(toSet()));
+    }
+
+    @Test
+    @DisplayName("traverse a snapshot on another thread while the graph changes")
+    void testSnapshotConcurrentReads() throws Exception {
+        final int size = 10_000;
+        final var elementGraph = new LwwElementGraph<Integer>("node 1");
+        elementGraph.batch(batch -> {
+            for (int i = 0; i < size; i++) {
+                batch.addVertex(i);
+            }
+            for (int i = 1; i < size; i++) {
+                batch.addEdge(i - 1, i);
+            }
+        });
+        final var snapshot = elementGraph.snapshot();
+        final var executor = Executors.newSingleThreadExecutor();
+        try {
+            final var reads = executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(size, snapshot.reachableFrom(0).count());
+                    assertEquals(size, snapshot.findShortestPath(0, size - 1).size());
+                }
+            });
+            for (int i = 0; i < size; i += 2) {
+                elementGraph.removeVertex(i);
+                elementGraph.addVertex(size + i);
+            }
+            reads.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(size, snapshot.vertexSize());
+        assertEquals(1, elementGraph.reachableFrom(1).count());
+    }
+
+    @Test
+    @DisplayName("report operations, merges, conflicts, searches and compactions to the metrics")
+    void testMetrics() {
+        final Map<Type, Integer> operations = new EnumMap<>(Type.class);
+        final List<Integer> merges = new ArrayList<>();
+        final List<Boolean> conflicts = new ArrayList<>();
+        final List<Integer> searches = new ArrayList<>();
+        final List<Integer> tombstones = new ArrayList<>();
+        final var elementGraph1 = new LwwElementGraph<String>("node1");
+        final var elementGraph2 = new LwwElementGraph<String>("node2");
+        elementGraph1.setMetrics(new GraphMetrics() {
+            @Override
+            public void onOperation(Type type, long nanos) {
+                assertTrue(nanos >= 0);
+                operations.merge(type, 1, Integer::sum);
+            }
+
+            @Override
+            public void onMerge(int elements, int clockSize, long nanos) {
+                assertEquals(2, clockSize);
+                merges.add(elements);
+            }
+
+            @Override
+            public void onConflict(LWWBias bias, boolean added) {
+                assertEquals(LWWBias.ADD, bias);
+                conflicts.add(added);
+            }
+
+            @Override
+            public void onSearch(int visited) {
+                searches.add(visited);
+            }
+
+            @Override
+            public void onCompaction(Compaction compaction, int remaining) {
+                tombstones.add(remaining);
+            }
+        });
+        elementGraph1.addVertex("julius");
+        elementGraph1.addVertex("james");
+        elementGraph1.addEdge(Edge.of(Vertex.of("julius", elementGraph1.findVectorClock("julius")),
+            Vertex.of("james", elementGraph1.findVectorClock("james"))));
+        elementGraph1.removeVertex("james");
+        elementGraph1.addVertex("james");
+        assertEquals(Map.of(Type.ADD_VERTEX, 3, Type.ADD_EDGE, 1, Type.REMOVE_VERTEX, 1), operations);
+        // the add after the remove wins
+        assertEquals(List.of(true), conflicts);
+
+        assertEquals(List.of("julius", "james"), elementGraph1.findShortestPath("julius", "james"));
+        assertEquals(1, searches.size());
+        assertTrue(searches.get(0) >= 2);
+
+        elementGraph2.addVertex("zumar");
+        elementGraph1.merge(elementGraph2);
+        assertEquals(List.of(1), merges);
+
+        elementGraph1.compact();
+        // james keeps its remove vertex
+        assertEquals(List.of(1), tombstones);
+    }
 }
@@ -0,0 +1,249 @@
+package com.juliuskrah.crdt;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ReplicatorTest {
+    private static final int SIZE = 200;
+    private static final Replicator.Options OPTIONS = Replicator.Options.defaults()
+        .withApplySliceSize(16)
+        .withRetryDelay(Duration.ofMillis(5));
+    private final Map<String, Replicator<Integer>> replicators = new ConcurrentHashMap<>();
+
+    /**
+     * Hands every batch to the replicator of the peer, in process.
+     */
+    private final ReplicationTransport<Integer> loopback = (peer, batch) -> {
+        final var replicator = replicators.get(peer);
+        if (replicator == null) {
+            throw new IOException("no such peer: " + peer);
+        }
+        replicator.receive(batch);
+    };
+
+    @AfterEach
+    void tearDown() {
+        replicators.values().forEach(Replicator::close);
+    }
+
+    private Replicator<Integer> start(String name, ReplicationTransport<Integer> transport,
+            Replicator.Options options, String... peers) {
+        final var replicator = Replicator.start(name, new LwwElementGraph<Integer>(name), transport,
+            List.of(peers), options);
+        replicators.put(name, replicator);
+        return replicator;
+    }
+
+    private static void change(LwwElementGraph<Integer> elementGraph, Random random) {
+        final int element = random.nextInt(SIZE);
+        switch (random.nextInt(4)) {
+            case 0:
+                elementGraph.removeVertex(element);
+                break;
+            case 1:
+                final int neighbor = random.nextInt(SIZE);
+                if (elementGraph.containsVertex(element) && elementGraph.containsVertex(neighbor)) {
+                    elementGraph.addEdge(Edge.of(Vertex.of(element, elementGraph.findVectorClock(element)),
+                        Vertex.of(neighbor, elementGraph.findVectorClock(neighbor))));
+                }
+                break;
+            default:
+                elementGraph.addVertex(element);
+        }
+    }
+
+    private static boolean sameState(GraphSnapshot<Integer> expected, GraphSnapshot<Integer> actual) {
+        for (int i = 0; i < SIZE; i++) {
+            if (expected.containsVertex(i) != actual.containsVertex(i)
+                    || !expected.findAdjacentVertices(i).stream().collect(toSet())
+                        .equals(actual.findAdjacentVertices(i).stream().collect(toSet()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void assertConverges(Replicator<Integer> expected, Replicator<Integer> actual)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!sameState(expected.snapshot(), actual.snapshot())) {
+            assertTrue(System.nanoTime() < deadline, "replicas did not converge");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("converge while every replica changes its graph concurrently")
+    void testConverges() throws InterruptedException {
+        final var replicator1 = start("node1", loopback, OPTIONS, "node2", "node3");
+        final var replicator2 = start("node2", loopback, OPTIONS, "node1", "node3");
+        final var replicator3 = start("node3", loopback, OPTIONS, "node1", "node2");
+        List<Thread> writers = new ArrayList<>();
+        for (Replicator<Integer> replicator : List.of(replicator1, replicator2, replicator3)) {
+            final var random = new Random(writers.size());
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    replicator.update(graph -> change(graph, random));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertConverges(replicator1, replicator2);
+        assertConverges(replicator1, replicator3);
+    }
+
+    @Test
+    @DisplayName("send a batch again after the transport failed")
+    void testRetry() throws InterruptedException {
+        final var failures = new AtomicInteger(3);
+        final ReplicationTransport<Integer> flaky = (peer, batch) -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("connection reset");
+            }
+            loopback.send(peer, batch);
+        };
+        final var failed = new AtomicInteger();
+        final var replicator1 = start("node1", flaky, OPTIONS, "node2");
+        replicator1.setMetrics(new ReplicationMetrics() {
+            @Override
+            public void onSendFailure(String peer) {
+                failed.incrementAndGet();
+            }
+        });
+        final var replicator2 = start("node2", loopback, OPTIONS, "node1");
+        replicator1.update(graph -> graph.addVertices(List.of(1, 2, 3)));
+        assertConverges(replicator1, replicator2);
+        assertTrue(replicator2.<Boolean>query(graph -> graph.containsVertex(3)));
+        assertTrue(failed.get() > 0);
+    }
+
+    @Test
+    @DisplayName("send the elements of a batch again until the peer acknowledges it")
+    void testLostBatches() throws InterruptedException {
+        final var losses = new AtomicInteger(3);
+        // returns as if the batch was delivered, but loses it
+        final ReplicationTransport<Integer> lossy = (peer, batch) -> {
+            if (losses.getAndDecrement() <= 0) {
+                loopback.send(peer, batch);
+            }
+        };
+        final var options = OPTIONS.withAckTimeout(Duration.ofMillis(20));
+        final var replicator1 = start("node1", lossy, options, "node2");
+        final var replicator2 = start("node2", loopback, options, "node1");
+        replicator1.update(graph -> graph.addVertices(List.of(1, 2, 3)));
+        assertConverges(replicator1, replicator2);
+        assertTrue(replicator2.<Boolean>query(graph -> graph.containsVertex(3)));
+        assertTrue(losses.get() < 0);
+        assertThrows(IllegalArgumentException.class, () -> OPTIONS.withAckTimeout(Duration.ZERO));
+    }
+
+    @Test
+    @DisplayName("report the lag of every applied batch")
+    void testLagMetrics() throws InterruptedException {
+        final var applied = new AtomicInteger();
+        final var lag = new AtomicLong(-1);
+        final var origins = ConcurrentHashMap.<String>newKeySet();
+        final var replicator2 = start("node2", loopback, OPTIONS, "node1");
+        replicator2.setMetrics(new ReplicationMetrics() {
+            @Override
+            public void onApply(String origin, int entries, long lagMillis, int queued) {
+                origins.add(origin);
+                applied.addAndGet(entries);
+                lag.set(lagMillis);
+            }
+        });
+        final var replicator1 = start("node1", loopback, OPTIONS.withLinger(Duration.ofMillis(20)), "node2");
+        replicator1.update(graph -> graph.addVertices(List.of(1, 2, 3)));
+        assertConverges(replicator1, replicator2);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (applied.get() < 3) {
+            assertTrue(System.nanoTime() < deadline, "batch not applied");
+            Thread.sleep(5);
+        }
+        assertEquals(Set.of("node1"), origins);
+        assertTrue(lag.get() >= 0, "lag " + lag.get());
+    }
+
+    @Test
+    @DisplayName("hold back the sender while the inbound batches are not applied")
+    void testBackpressure() throws InterruptedException {
+        final var replicator = start("node2", loopback, OPTIONS.withInboundCapacity(2), "node1");
+        final var sender = new LwwElementGraph<Integer>("node1");
+        final var holding = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        // the applier waits for the lock held by the query
+        final var holder = new Thread(() -> replicator.query(graph -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        holder.start();
+        holding.await();
+        final var received = new AtomicInteger();
+        final var peer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 10; i++) {
+                    final int element = i;
+                    sender.addVertex(element);
+                    replicator.receive(ReplicationBatch.of("node1", sender.deltaSince(VectorClock.of("")),
+                        System.currentTimeMillis()));
+                    received.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        peer.start();
+        peer.join(200);
+        assertTrue(peer.isAlive(), "receive did not block");
+        // one batch taken by the applier, two in the queue
+        assertTrue(received.get() <= 3, "received " + received.get());
+        release.countDown();
+        peer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(peer.isAlive());
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (replicator.query(LwwElementGraph::vertexSize) < 10) {
+            assertTrue(System.nanoTime() < deadline, "batches not applied");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("refuse batches once closed")
+    void testClosed() {
+        final var replicator = start("node1", loopback, OPTIONS, "node2");
+        replicator.close();
+        final var batch = ReplicationBatch.of("node2", new LwwElementGraph<Integer>("node2").deltaSince(
+            VectorClock.of("")), System.currentTimeMillis());
+        assertThrows(IllegalStateException.class, () -> replicator.receive(batch));
+        assertThrows(IllegalArgumentException.class,
+            () -> Replicator.start("node1", new LwwElementGraph<Integer>("node1"), loopback, List.of("node1")));
+    }
+}
@@ -0,0 +1,118 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+class TrieMapTest {
+
+    /**
+     * A key whose hash is shared by many keys, so that tries nest deep and collide.
+     */
+    private static final class Key {
+        private final int value;
+
+        Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            // 1 in 8 keys share a hash with another key
+            return value / 8 * 8 == value ? value + 1 : value;
+        }
+    }
+
+    private static void assertSameEntries(Map<Key, Integer> expected, TrieMap<Key, Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        final Map<Key, Integer> entries = new HashMap<>();
+        actual.forEach(entries::put);
+        assertEquals(expected, entries);
+        final var keys = new HashSet<Key>();
+        actual.keyIterator().forEachRemaining(keys::add);
+        assertEquals(expected.keySet(), keys);
+        expected.forEach((key, value) -> assertEquals(value, actual.get(key)));
+    }
+
+    @RepeatedTest(10)
+    @DisplayName("put and remove like a hash map, leaving frozen versions untouched")
+    void testAgainstHashMap(RepetitionInfo repetition) {
+        final var random = new Random(repetition.getCurrentRepetition());
+        final Map<Key, Integer> expected = new HashMap<>();
+        var edit = new Object();
+        TrieMap<Key, Integer> actual = TrieMap.empty();
+        Map<Key, Integer> frozenExpected = Map.of();
+        TrieMap<Key, Integer> frozen = actual;
+        for (int i = 0; i < 5_000; i++) {
+            final var key = new Key(random.nextInt(2_000));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.remove(key, edit);
+            } else {
+                expected.put(key, i);
+                actual = actual.put(key, i, edit);
+            }
+            if (i % 500 == 0) {
+                assertSameEntries(frozenExpected, frozen);
+                // retire the token, the current version must not change from now on
+                edit = new Object();
+                frozenExpected = Map.copyOf(expected);
+                frozen = actual;
+            }
+        }
+        assertSameEntries(expected, actual);
+        assertSameEntries(frozenExpected, frozen);
+    }
+
+    @Test
+    @DisplayName("return the same map when nothing changes")
+    void testUnchanged() {
+        final var edit = new Object();
+        final TrieMap<Key, Integer> map = TrieMap.<Key, Integer>empty().put(new Key(1), 1, edit);
+        assertSame(map, map.remove(new Key(2), edit));
+        assertSame(map, map.put(new Key(1), map.get(new Key(1)), edit));
+        assertTrue(map.containsKey(new Key(1)));
+        assertFalse(map.remove(new Key(1), edit).containsKey(new Key(1)));
+        assertTrue(map.remove(new Key(1), edit).isEmpty());
+    }
+
+    @Test
+    @DisplayName("visit the entries whose keys hash to the lowest bits, however many bits there are")
+    void testForEachWithHash() {
+        final var edit = new Object();
+        TrieMap<Key, Integer> map = TrieMap.empty();
+        for (int i = 0; i < 5_000; i++) {
+            map = map.put(new Key(i), i, edit);
+        }
+        final var random = new Random(1);
+        for (int count = 0; count < 16; count++) {
+            final int bits = random.nextInt();
+            final int mask = (1 << count) - 1;
+            final Map<Key, Integer> expected = new HashMap<>();
+            map.forEach((key, value) -> {
+                if (((TrieMap.hash(key) ^ bits) & mask) == 0) {
+                    expected.put(key, value);
+                }
+            });
+            final Map<Key, Integer> actual = new HashMap<>();
+            map.forEachWithHash(bits, count, actual::put);
+            assertEquals(expected, actual, count + " bits");
+        }
+    }
+}
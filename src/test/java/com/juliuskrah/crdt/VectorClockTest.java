@@ -0,0 +1,121 @@
+package com.juliuskrah.crdt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class VectorClockTest {
+
+    @Test
+    @DisplayName("order clocks where one has seen everything the other has")
+    void testHappenedBefore() {
+        var earlier = VectorClock.of("node1", Map.of("node1", 2L, "node2", 3L));
+        var later = VectorClock.of("node2", Map.of("node1", 2L, "node2", 4L));
+        assertEquals(-1, earlier.compareTo(later));
+        assertEquals(1, later.compareTo(earlier));
+        assertTrue(later.dominates(earlier));
+        assertFalse(earlier.dominates(later));
+    }
+
+    @Test
+    @DisplayName("detect concurrent clocks and order them by node id")
+    void testConcurrentClocks() {
+        var clock1 = VectorClock.of("node1", Map.of("node1", 3L, "node2", 2L));
+        var clock2 = VectorClock.of("node2", Map.of("node1", 2L, "node2", 3L));
+        assertTrue(clock1.compareTo(clock2) < 0);
+        assertTrue(clock2.compareTo(clock1) > 0);
+        assertFalse(clock1.dominates(clock2));
+        assertFalse(clock2.dominates(clock1));
+        assertNotEquals(clock1, clock2);
+    }
+
+    @Test
+    @DisplayName("merge takes the maximum of every entry")
+    void testMerge() {
+        var clock1 = VectorClock.of("node1", Map.of("node1", 3L, "node2", 2L));
+        var clock2 = VectorClock.of("node2", Map.of("node2", 5L, "node3", 1L));
+        var merged = clock1.merge(clock2);
+        assertEquals(VectorClock.of("node1", Map.of("node1", 3L, "node2", 5L, "node3", 1L)), merged);
+        assertEquals(merged.hashCode(), clock2.merge(clock1).hashCode());
+        assertTrue(merged.dominates(clock1) && merged.dominates(clock2));
+    }
+
+    @Test
+    @DisplayName("increment advances only the owning node and keeps the rest")
+    void testIncrement() {
+        var clock = VectorClock.of("node1").increment();
+        assertEquals(VectorClock.of("node1", Map.of("node1", 2L)), clock);
+        var merged = clock.merge(VectorClock.of("node2", Map.of("node2", 4L))).increment();
+        assertEquals(VectorClock.of("node1", Map.of("node1", 3L, "node2", 4L)), merged);
+        assertTrue(merged.toString().contains("node1=3") && merged.toString().contains("node2=4"));
+    }
+
+    @Test
+    @DisplayName("meet takes the minimum of every entry")
+    void testMeet() {
+        var clock1 = VectorClock.of("node1", Map.of("node1", 3L, "node2", 2L));
+        var clock2 = VectorClock.of("node2", Map.of("node2", 5L, "node3", 1L));
+        var met = clock1.meet(clock2);
+        assertEquals(VectorClock.of("node1", Map.of("node2", 2L)), met);
+        assertEquals(met, clock2.meet(clock1));
+        assertTrue(clock1.dominates(met) && clock2.dominates(met));
+    }
+
+    @Test
+    @DisplayName("compare, merge and hash clocks sharing a version vector like copied clocks")
+    void testSharedEntries() {
+        final var random = new Random(7);
+        final String[] nodeIds = {"node1", "node2", "node3", "node4"};
+        final List<VectorClock> shared = new ArrayList<>();
+        final List<VectorClock> copied = new ArrayList<>();
+        var clock = VectorClock.of("node1");
+        final Map<String, Long> entries = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            final var nodeId = nodeIds[random.nextInt(nodeIds.length)];
+            final long counter = entries.getOrDefault(nodeId, 0L) + 1 + random.nextInt(3);
+            switch (random.nextInt(3)) {
+                case 0:
+                    clock = clock.increment();
+                    // a node's first tick is 2
+                    entries.merge("node1", 2L, (current, first) -> current + 1);
+                    break;
+                case 1:
+                    clock = clock.merge(Dot.of(nodeId, counter));
+                    entries.put(nodeId, counter);
+                    break;
+                default:
+                    clock = clock.merge(VectorClock.of(nodeId, Map.of(nodeId, counter)));
+                    entries.put(nodeId, counter);
+            }
+            shared.add(clock);
+            copied.add(VectorClock.of("node1", entries));
+        }
+        VectorClock previous = null;
+        for (int i = 0; i < shared.size(); i++) {
+            // as a reader of a message does, share the arrays of the clock read before
+            previous = copied.get(i).shareWith(previous);
+            assertEquals(copied.get(i), previous);
+            assertEquals(copied.get(i), shared.get(i));
+            assertEquals(copied.get(i).hashCode(), shared.get(i).hashCode());
+            assertEquals(copied.get(i).toString(), shared.get(i).toString());
+            final int j = random.nextInt(copied.size());
+            final var expected = copied.get(j);
+            final var other = shared.get(j);
+            assertEquals(copied.get(i).compareTo(expected), shared.get(i).compareTo(other));
+            assertEquals(copied.get(i).compareTo(expected), previous.compareTo(other));
+            assertEquals(copied.get(i).dominates(expected), shared.get(i).dominates(other));
+            assertEquals(copied.get(i).merge(expected), shared.get(i).merge(other));
+            assertEquals(copied.get(i).meet(expected), previous.meet(other));
+        }
+    }
+}